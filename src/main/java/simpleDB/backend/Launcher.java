@@ -2,6 +2,7 @@ package simpleDB.backend;
 
 import simpleDB.backend.dm.DataManager;
 import simpleDB.backend.server.Server;
+import simpleDB.backend.tbm.Booter;
 import simpleDB.backend.tbm.TableManager;
 import simpleDB.backend.tm.TransactionManager;
 import simpleDB.backend.utils.Panic;
@@ -49,6 +50,8 @@ public class Launcher {
     }
 
     private static void openDB(String path, long mem) {
+        // 先检查文件格式，不兼容时在恢复修改文件之前退出
+        Booter.open(path);
         TransactionManager tm = TransactionManager.open(path);
         DataManager dm = DataManager.open(path, mem, tm);
         VersionManager vm = new VersionManagerImpl(tm, dm);
@@ -2,7 +2,9 @@ package simpleDB.backend.common;
 
 import simpleDB.common.Error;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -85,6 +87,55 @@ public abstract class AbstractCache<T> {
         return obj;
     }
 
+    /**
+     * 预读keys中不在缓存中的资源，已在缓存或正在被获取的资源会被跳过
+     */
+    protected void preload(List<Long> keys) throws Exception {
+        List<Long> absent = new ArrayList<>();
+        lock.lock();
+        try {
+            for (long key : keys) {
+                if (!cache.containsKey(key) && !getting.containsKey(key)) {
+                    getting.put(key, true);
+                    absent.add(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (absent.size() == 0) {
+            return;
+        }
+
+        List<T> objs = null;
+        try {
+            objs = getBatchForCache(absent);
+        } catch (Exception e) {
+            for (long key : absent) {
+                getting.remove(key);
+            }
+            throw e;
+        }
+
+        lock.lock();
+        try {
+            for (int i = 0; i < absent.size(); i ++) {
+                if (maxResource > 0 && cache.size() == maxResource) {
+                    Node node = lruTail.pre;
+                    removeNode(node);
+                    cache.remove(node.key);
+                    releaseForCache(node.val);
+                }
+                Node node = new Node(absent.get(i), objs.get(i));
+                getting.remove(absent.get(i));
+                cache.put(absent.get(i), node);
+                addToHead(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * 关闭缓存，写回所有资源
      */
@@ -108,6 +159,17 @@ public abstract class AbstractCache<T> {
      */
     protected abstract T getForCache(long key) throws Exception;
 
+    /**
+     * 批量获取多个不在缓存中的资源，默认逐个获取
+     */
+    protected List<T> getBatchForCache(List<Long> keys) throws Exception {
+        List<T> objs = new ArrayList<>();
+        for (long key : keys) {
+            objs.add(getForCache(key));
+        }
+        return objs;
+    }
+
     /**
      * 当资源被驱逐时的写回行为
      */
@@ -7,9 +7,21 @@ import simpleDB.backend.dm.page.PageOne;
 import simpleDB.backend.dm.pageCache.PageCache;
 import simpleDB.backend.tm.TransactionManager;
 
+import java.util.List;
+
 public interface DataManager {
     DataItem read(long uid) throws Exception;
     long insert(long xid, byte[] data) throws Exception;
+    // 将数据插入到属于段owner的页面中
+    long insert(long xid, long owner, byte[] data) throws Exception;
+    // 批量插入到段owner中，按顺序返回每条数据的uid
+    List<Long> insert(long xid, long owner, List<byte[]> datas) throws Exception;
+    long newSegment() throws Exception;
+    void dropSegment(long owner) throws Exception;
+    // uid所在页面所属的段
+    long ownerOf(long uid) throws Exception;
+    ItemScanner scan(long owner);
+    int pageNumber(long owner);
     void close();
 
     public static DataManager create(String path, long mem, TransactionManager tm) {
@@ -1,6 +1,7 @@
 package simpleDB.backend.dm;
 
 
+import simpleDB.backend.common.SubArray;
 import simpleDB.backend.dm.dataItem.DataItem;
 import simpleDB.backend.dm.dataItem.DataItemImpl;
 import simpleDB.backend.dm.logger.Logger;
@@ -11,23 +12,120 @@ import simpleDB.backend.dm.pageCache.PageCache;
 import simpleDB.backend.dm.pageIndex.PageIndex;
 import simpleDB.backend.dm.pageIndex.PageInfo;
 import simpleDB.backend.tm.TransactionManager;
+import simpleDB.backend.tm.TransactionManagerImpl;
 import simpleDB.backend.utils.Panic;
 import simpleDB.backend.utils.Parser;
 import simpleDB.common.Error;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class DataManagerImpl implements DataManager {
+    // 段每次扩展时分配的连续页面数
+    static final int EXTENT_PAGES = 8;
+    static final byte SEGMENT_ALIVE = 0;
+    static final byte SEGMENT_DROPPED = 1;
 
     TransactionManager tm;
     PageCache pc;
     Logger logger;
-    PageIndex pIndex;
     Page pageOne;
+    // 每个段各自的空闲空间索引和按页号排列的页面，段号为0表示公共页面
+    private Map<Long, PageIndex> pIndexes;
+    private Map<Long, List<Integer>> ownerPages;
+    // 打开时已删除的段的页面，按页号升序排列，分配新区时优先复用
+    private List<Integer> freePages;
+    private Lock ownerLock;
 
     public DataManagerImpl(PageCache pc, Logger logger, TransactionManager tm) {
         this.pc = pc;
         this.logger = logger;
         this.tm = tm;
-        this.pIndex = new PageIndex();
+        this.pIndexes = new HashMap<>();
+        this.ownerPages = new HashMap<>();
+        this.freePages = new ArrayList<>();
+        this.ownerLock = new ReentrantLock();
+    }
+
+    private PageIndex pageIndex(long owner) {
+        ownerLock.lock();
+        try {
+            return pIndexes.computeIfAbsent(owner, k -> new PageIndex());
+        } finally {
+            ownerLock.unlock();
+        }
+    }
+
+    private void addPage(long owner, int pgno, int freeSpace) {
+        ownerLock.lock();
+        try {
+            pIndexes.computeIfAbsent(owner, k -> new PageIndex()).add(pgno, freeSpace);
+            List<Integer> pages = ownerPages.computeIfAbsent(owner, k -> new ArrayList<>());
+            // 批量插入的页面在写入后才加入，可能晚于之后分配的区
+            int i = pages.size();
+            while(i > 0 && pages.get(i-1) > pgno) {
+                i --;
+            }
+            pages.add(i, pgno);
+        } finally {
+            ownerLock.unlock();
+        }
+    }
+
+    /**
+     * 为owner分配一个区，先复用已删除的段的页面，不足时在文件末尾分配连续的页面
+     * 复用的页面先记入重置日志再修改所属的段，崩溃后由Recover重做
+     */
+    private void newExtent(long owner) {
+        ownerLock.lock();
+        try {
+            for(int i = 0; i < EXTENT_PAGES; i ++) {
+                int pgno;
+                if(freePages.isEmpty()) {
+                    pgno = pc.newPage(PageX.initRaw(owner));
+                } else {
+                    pgno = freePages.remove(0);
+                    logger.log(Recover.resetLog(TransactionManagerImpl.SUPER_XID, pgno, owner));
+                    Page pg = pc.getPage(pgno);
+                    pg.lock();
+                    try {
+                        PageX.reset(pg, owner);
+                    } finally {
+                        pg.unlock();
+                    }
+                }
+                addPage(owner, pgno, PageX.MAX_FREE_SPACE);
+            }
+        } catch(Exception e) {
+            Panic.panic(e);
+        } finally {
+            ownerLock.unlock();
+        }
+    }
+
+    // 可以复用的页面数
+    int freePageNumber() {
+        ownerLock.lock();
+        try {
+            return freePages.size();
+        } finally {
+            ownerLock.unlock();
+        }
+    }
+
+    // 返回owner的所有页面，按页号升序排列
+    List<Integer> pages(long owner) {
+        ownerLock.lock();
+        try {
+            List<Integer> pages = ownerPages.get(owner);
+            return pages == null ? new ArrayList<>() : new ArrayList<>(pages);
+        } finally {
+            ownerLock.unlock();
+        }
     }
 
     @Override
@@ -41,19 +139,24 @@ public class DataManagerImpl implements DataManager {
 
     @Override
     public long insert(long xid, byte[] data) throws Exception {
+        return insert(xid, 0, data);
+    }
+
+    @Override
+    public long insert(long xid, long owner, byte[] data) throws Exception {
         byte[] raw = DataItem.wrapDataItemRaw(data);
         if(raw.length > PageX.MAX_FREE_SPACE) {
             throw Error.DataTooLargeException;
         }
 
+        PageIndex pIndex = pageIndex(owner);
         PageInfo pi = null;
         for(int i = 0; i < 5; i ++) {
             pi = pIndex.select(raw.length);
             if (pi != null) {
                 break;
             } else {
-                int newPgno = pc.newPage(PageX.initRaw());
-                pIndex.add(newPgno, PageX.MAX_FREE_SPACE);
+                newExtent(owner);
             }
         }
         if(pi == null) {
@@ -81,6 +184,63 @@ public class DataManagerImpl implements DataManager {
         }
     }
 
+    /**
+     * 批量插入只使用新分配的页面，数据先在内存中填满整页，每页只记一条页面日志
+     * 页面先以空页分配，全部页面日志一次写入后再直接写入页面，最后才加入空闲空间索引
+     * 总量不足一页时逐条插入已有页面，避免零散的批量插入各自占用新页面
+     */
+    @Override
+    public List<Long> insert(long xid, long owner, List<byte[]> datas) throws Exception {
+        List<byte[]> raws = new ArrayList<>(datas.size());
+        int total = 0;
+        for(byte[] data : datas) {
+            byte[] raw = DataItem.wrapDataItemRaw(data);
+            if(raw.length > PageX.MAX_FREE_SPACE) {
+                throw Error.DataTooLargeException;
+            }
+            raws.add(raw);
+            total += raw.length;
+        }
+        List<Long> uids = new ArrayList<>(datas.size());
+        if(total < PageX.MAX_FREE_SPACE) {
+            for(byte[] data : datas) {
+                uids.add(insert(xid, owner, data));
+            }
+            return uids;
+        }
+
+        List<byte[]> pgRaws = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>(raws.size());
+        byte[] pgRaw = null;
+        for(byte[] raw : raws) {
+            if(pgRaw == null || PageX.getFreeSpace(pgRaw) < raw.length) {
+                pgRaw = PageX.initRaw(owner);
+                pgRaws.add(pgRaw);
+            }
+            offsets.add((pgRaws.size()-1) * PageCache.PAGE_SIZE + PageX.insert(pgRaw, raw));
+        }
+
+        List<byte[]> emptyRaws = new ArrayList<>(pgRaws.size());
+        for(int i = 0; i < pgRaws.size(); i ++) {
+            emptyRaws.add(PageX.initRaw(owner));
+        }
+        int first = pc.newPages(emptyRaws);
+        List<byte[]> logs = new ArrayList<>(pgRaws.size());
+        for(int i = 0; i < pgRaws.size(); i ++) {
+            logs.add(Recover.pageLog(xid, first + i, pgRaws.get(i)));
+        }
+        logger.log(logs);
+        pc.writePages(first, pgRaws);
+        for(int i = 0; i < pgRaws.size(); i ++) {
+            addPage(owner, first + i, PageX.getFreeSpace(pgRaws.get(i)));
+        }
+
+        for(int offset : offsets) {
+            uids.add(Parser.addressToUid(first + offset / PageCache.PAGE_SIZE, (short)(offset % PageCache.PAGE_SIZE)));
+        }
+        return uids;
+    }
+
     @Override
     public void close() {
         logger.close();
@@ -88,6 +248,60 @@ public class DataManagerImpl implements DataManager {
         pc.close();
     }
 
+    @Override
+    public ItemScanner scan(long owner) {
+        return new ItemScanner(this, pages(owner));
+    }
+
+    /**
+     * 段号为段头记录的uid，段头存放在公共页面中并被记入日志
+     * 段的页面在第一次插入时才按区分配，崩溃恢复截断文件后段号也不会被重复分配
+     * 段头为[Dropped]，1字节，段被删除后为1，旧版本的段头为空，视为未删除
+     */
+    @Override
+    public long newSegment() throws Exception {
+        return insert(TransactionManagerImpl.SUPER_XID, 0, new byte[]{SEGMENT_ALIVE});
+    }
+
+    /**
+     * 段的页面不再接受插入，也不会再被扫描到
+     * 删除标记写入段头并记入日志，重新打开时fillPageIndex把已删除的段的页面作为空闲页面
+     * 删除之前开始的语句可能仍在读取这些页面，因此直到下次打开才复用
+     */
+    @Override
+    public void dropSegment(long owner) throws Exception {
+        DataItem header = read(owner);
+        if(header != null && header.data().end > header.data().start) {
+            header.before();
+            SubArray sa = header.data();
+            sa.raw[sa.start] = SEGMENT_DROPPED;
+            header.after(TransactionManagerImpl.SUPER_XID);
+        }
+        ownerLock.lock();
+        try {
+            pIndexes.remove(owner);
+            ownerPages.remove(owner);
+        } finally {
+            ownerLock.unlock();
+        }
+    }
+
+    @Override
+    public long ownerOf(long uid) throws Exception {
+        return PageX.getOwner(pc.getPage(Parser.uidToPageNo(uid)));
+    }
+
+    @Override
+    public int pageNumber(long owner) {
+        ownerLock.lock();
+        try {
+            List<Integer> pages = ownerPages.get(owner);
+            return pages == null ? 0 : pages.size();
+        } finally {
+            ownerLock.unlock();
+        }
+    }
+
     // 为xid生成update日志
     public void logDataItem(long xid, DataItem di) {
         byte[] log = Recover.updateLog(xid, di);
@@ -117,17 +331,39 @@ public class DataManagerImpl implements DataManager {
         return PageOne.checkVc(pageOne);
     }
 
-    // 初始化pageIndex
+    // 初始化pageIndex，已删除的段的页面加入freePages
     void fillPageIndex() {
         int pageNumber = pc.getPageNumber();
+        Map<Long, Boolean> dropped = new HashMap<>();
         for(int i = 2; i <= pageNumber; i ++) {
             Page pg = null;
+            boolean skip = false;
             try {
                 pg = pc.getPage(i);
+                long owner = PageX.getOwner(pg);
+                Boolean d = dropped.get(owner);
+                if(d == null) {
+                    d = owner != 0 && segmentDropped(owner);
+                    dropped.put(owner, d);
+                }
+                skip = d;
             } catch (Exception e) {
                 Panic.panic(e);
             }
-            pIndex.add(pg.getPageNumber(), PageX.getFreeSpace(pg));
+            if(skip) {
+                freePages.add(pg.getPageNumber());
+            } else {
+                addPage(PageX.getOwner(pg), pg.getPageNumber(), PageX.getFreeSpace(pg));
+            }
+        }
+    }
+
+    private boolean segmentDropped(long owner) throws Exception {
+        DataItem header = read(owner);
+        if(header == null) {
+            return false;
         }
+        SubArray sa = header.data();
+        return sa.end > sa.start && sa.raw[sa.start] == SEGMENT_DROPPED;
     }
 }
@@ -0,0 +1,59 @@
+package simpleDB.backend.dm;
+
+import simpleDB.backend.dm.dataItem.DataItem;
+import simpleDB.backend.dm.dataItem.DataItemImpl;
+import simpleDB.backend.dm.page.Page;
+import simpleDB.backend.dm.page.PageX;
+
+import java.util.List;
+
+/**
+ * ItemScanner 按页号顺序遍历一组页面中所有合法的DataItem
+ * 每次进入未预读的页面时，一次性预读之后的READ_AHEAD个页面
+ */
+public class ItemScanner {
+    static final int READ_AHEAD = 8;
+
+    private DataManagerImpl dm;
+    private List<Integer> pages;
+    private int kth;
+    private int prefetched;
+    private Page pg;
+    private int offset, fso;
+
+    ItemScanner(DataManagerImpl dm, List<Integer> pages) {
+        this.dm = dm;
+        this.pages = pages;
+        this.kth = -1;
+    }
+
+    // 返回下一个合法的DataItem，遍历结束时返回null
+    public DataItem next() throws Exception {
+        while(true) {
+            if(pg != null && offset < fso) {
+                DataItemImpl di = (DataItemImpl)DataItem.parseDataItem(pg, (short)offset, dm);
+                offset += di.getRaw().end - di.getRaw().start;
+                if(di.isValid()) {
+                    return di;
+                }
+                continue;
+            }
+            kth ++;
+            if(kth >= pages.size()) {
+                pg = null;
+                return null;
+            }
+            if(kth >= prefetched) {
+                prefetched = Math.min(kth + READ_AHEAD, pages.size());
+                dm.pc.prefetch(pages.subList(kth, prefetched));
+            }
+            pg = dm.pc.getPage(pages.get(kth));
+            offset = PageX.OF_DATA;
+            fso = PageX.getFSO(pg);
+        }
+    }
+
+    public int pageNumber() {
+        return pages.size();
+    }
+}
@@ -18,6 +18,8 @@ public class Recover {
 
     private static final byte LOG_TYPE_INSERT = 0;
     private static final byte LOG_TYPE_UPDATE = 1;
+    private static final byte LOG_TYPE_PAGE = 2;
+    private static final byte LOG_TYPE_RESET = 3;
 
     private static final int REDO = 0;
     private static final int UNDO = 1;
@@ -29,6 +31,18 @@ public class Recover {
         byte[] raw;
     }
 
+    static class PageLogInfo {
+        long xid;
+        int pgno;
+        byte[] data;
+    }
+
+    static class ResetLogInfo {
+        long xid;
+        int pgno;
+        long owner;
+    }
+
     static class UpdateLogInfo {
         long xid;
         int pgno;
@@ -42,20 +56,18 @@ public class Recover {
 
         lg.rewind();
         int maxPgno = 0;
-        while (true) {
+        // 每个页面最后一次被重置的日志序号
+        Map<Integer, Integer> resets = new HashMap<>();
+        for (int i = 0; ; i ++) {
             byte[] log = lg.next();
             if (log == null) break;
-            int pgno;
-            if (isInsertLog(log)) {
-                InsertLogInfo li = parseInsertLog(log);
-                pgno = li.pgno;
-            } else {
-                UpdateLogInfo li = parseUpdateLog(log);
-                pgno = li.pgno;
-            }
+            int pgno = parsePgno(log);
             if (pgno > maxPgno) {
                 maxPgno = pgno;
             }
+            if (isResetLog(log)) {
+                resets.put(pgno, i);
+            }
         }
         if (maxPgno == 0) {
             maxPgno = 1;
@@ -66,7 +78,7 @@ public class Recover {
         redoTranscations(tm, lg, pc);
         System.out.println("Redo Transactions Over.");
 
-        undoTranscations(tm, lg, pc);
+        undoTranscations(tm, lg, pc, resets);
         System.out.println("Undo Transactions Over.");
 
         System.out.println("Recovery Over.");
@@ -77,46 +89,25 @@ public class Recover {
         while (true) {
             byte[] log = lg.next();
             if (log == null) break;
-            if (isInsertLog(log)) {
-                InsertLogInfo li = parseInsertLog(log);
-                long xid = li.xid;
-                if (!tm.isActive(xid)) {
-                    doInsertLog(pc, log, REDO);
-                }
-            } else {
-                UpdateLogInfo xi = parseUpdateLog(log);
-                long xid = xi.xid;
-                if (!tm.isActive(xid)) {
-                    doUpdateLog(pc, log, REDO);
-                }
+            if (!tm.isActive(parseXid(log))) {
+                doLog(pc, log, REDO);
             }
         }
     }
 
-    private static void undoTranscations(TransactionManager tm, Logger lg, PageCache pc) {
+    // 页面被重置前的日志属于已删除的段，不再撤销，以免覆盖之后写入的数据
+    private static void undoTranscations(TransactionManager tm, Logger lg, PageCache pc, Map<Integer, Integer> resets) {
         Map<Long, List<byte[]>> logCache = new HashMap<>();
         lg.rewind();
-        while (true) {
+        for (int i = 0; ; i ++) {
             byte[] log = lg.next();
             if (log == null) break;
-            if (isInsertLog(log)) {
-                InsertLogInfo li = parseInsertLog(log);
-                long xid = li.xid;
-                if (tm.isActive(xid)) {
-                    if (!logCache.containsKey(xid)) {
-                        logCache.put(xid, new ArrayList<>());
-                    }
-                    logCache.get(xid).add(log);
-                }
-            } else {
-                UpdateLogInfo xi = parseUpdateLog(log);
-                long xid = xi.xid;
-                if (tm.isActive(xid)) {
-                    if (!logCache.containsKey(xid)) {
-                        logCache.put(xid, new ArrayList<>());
-                    }
-                    logCache.get(xid).add(log);
+            long xid = parseXid(log);
+            if (tm.isActive(xid) && i > resets.getOrDefault(parsePgno(log), -1)) {
+                if (!logCache.containsKey(xid)) {
+                    logCache.put(xid, new ArrayList<>());
                 }
+                logCache.get(xid).add(log);
             }
         }
 
@@ -124,21 +115,53 @@ public class Recover {
         for (Map.Entry<Long, List<byte[]>> entry : logCache.entrySet()) {
             List<byte[]> logs = entry.getValue();
             for (int i = logs.size() - 1; i >= 0; i--) {
-                byte[] log = logs.get(i);
-                if (isInsertLog(log)) {
-                    doInsertLog(pc, log, UNDO);
-                } else {
-                    doUpdateLog(pc, log, UNDO);
-                }
+                doLog(pc, logs.get(i), UNDO);
             }
             tm.abort(entry.getKey());
         }
     }
 
+    private static void doLog(PageCache pc, byte[] log, int flag) {
+        if (isInsertLog(log)) {
+            doInsertLog(pc, log, flag);
+        } else if (isPageLog(log)) {
+            doPageLog(pc, log, flag);
+        } else if (isResetLog(log)) {
+            doResetLog(pc, log);
+        } else {
+            doUpdateLog(pc, log, flag);
+        }
+    }
+
+    private static int parsePgno(byte[] log) {
+        if (isInsertLog(log)) {
+            return parseInsertLog(log).pgno;
+        } else if (isPageLog(log)) {
+            return parsePageLog(log).pgno;
+        } else if (isResetLog(log)) {
+            return parseResetLog(log).pgno;
+        } else {
+            return parseUpdateLog(log).pgno;
+        }
+    }
+
+    // 所有类型的日志都在相同位置记录XID
+    private static long parseXid(byte[] log) {
+        return Parser.parseLong(Arrays.copyOfRange(log, OF_XID, OF_XID + 8));
+    }
+
     private static boolean isInsertLog(byte[] log) {
         return log[0] == LOG_TYPE_INSERT;
     }
 
+    private static boolean isPageLog(byte[] log) {
+        return log[0] == LOG_TYPE_PAGE;
+    }
+
+    private static boolean isResetLog(byte[] log) {
+        return log[0] == LOG_TYPE_RESET;
+    }
+
     // [LogType] [XID] [UID] [OldRaw] [NewRaw]
     private static final int OF_TYPE = 0;
     private static final int OF_XID = OF_TYPE + 1;
@@ -227,4 +250,77 @@ public class Recover {
         }
         PageX.recoverInsert(pg, li.raw, li.offset);
     }
+
+    /**
+     * 批量插入时整页写入的数据，Data为页面中从数据区开始到FSO的全部内容
+     * [LogType] [XID] [Pgno] [Data]
+     */
+    private static final int OF_PAGE_PGNO = OF_XID + 8;
+    private static final int OF_PAGE_DATA = OF_PAGE_PGNO + 4;
+
+    public static byte[] pageLog(long xid, int pgno, byte[] pgRaw) {
+        byte[] logTypeRaw = {LOG_TYPE_PAGE};
+        byte[] xidRaw = Parser.long2Byte(xid);
+        byte[] pgnoRaw = Parser.int2Byte(pgno);
+        return Bytes.concat(logTypeRaw, xidRaw, pgnoRaw, PageX.getData(pgRaw));
+    }
+
+    private static PageLogInfo parsePageLog(byte[] log) {
+        PageLogInfo li = new PageLogInfo();
+        li.xid = Parser.parseLong(Arrays.copyOfRange(log, OF_XID, OF_PAGE_PGNO));
+        li.pgno = Parser.parseInt(Arrays.copyOfRange(log, OF_PAGE_PGNO, OF_PAGE_DATA));
+        li.data = Arrays.copyOfRange(log, OF_PAGE_DATA, log.length);
+        return li;
+    }
+
+    // 之后可能有其他事务插入到同一页面，因此只写入数据区并取较大的FSO，与insert日志相同
+    private static void doPageLog(PageCache pc, byte[] log, int flag) {
+        PageLogInfo li = parsePageLog(log);
+        Page pg = null;
+        try {
+            pg = pc.getPage(li.pgno);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+
+        if (flag == UNDO) {
+            DataItem.setDataItemsRawInvalid(li.data);
+        }
+        PageX.recoverInsert(pg, li.data, PageX.OF_DATA);
+    }
+
+    /**
+     * 已删除的段的页面被分配给新的段时，清空页面并修改所属的段
+     * 只由SUPER_XID写入，因此只会被重做
+     * [LogType] [XID] [Pgno] [Owner]
+     */
+    private static final int OF_RESET_PGNO = OF_XID + 8;
+    private static final int OF_RESET_OWNER = OF_RESET_PGNO + 4;
+
+    public static byte[] resetLog(long xid, int pgno, long owner) {
+        byte[] logTypeRaw = {LOG_TYPE_RESET};
+        byte[] xidRaw = Parser.long2Byte(xid);
+        byte[] pgnoRaw = Parser.int2Byte(pgno);
+        byte[] ownerRaw = Parser.long2Byte(owner);
+        return Bytes.concat(logTypeRaw, xidRaw, pgnoRaw, ownerRaw);
+    }
+
+    private static ResetLogInfo parseResetLog(byte[] log) {
+        ResetLogInfo li = new ResetLogInfo();
+        li.xid = Parser.parseLong(Arrays.copyOfRange(log, OF_XID, OF_RESET_PGNO));
+        li.pgno = Parser.parseInt(Arrays.copyOfRange(log, OF_RESET_PGNO, OF_RESET_OWNER));
+        li.owner = Parser.parseLong(Arrays.copyOfRange(log, OF_RESET_OWNER, OF_RESET_OWNER + 8));
+        return li;
+    }
+
+    private static void doResetLog(PageCache pc, byte[] log) {
+        ResetLogInfo li = parseResetLog(log);
+        Page pg = null;
+        try {
+            pg = pc.getPage(li.pgno);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+        PageX.reset(pg, li.owner);
+    }
 }
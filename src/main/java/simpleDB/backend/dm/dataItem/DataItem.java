@@ -4,11 +4,15 @@ import com.google.common.primitives.Bytes;
 import simpleDB.backend.common.SubArray;
 import simpleDB.backend.dm.DataManagerImpl;
 import simpleDB.backend.dm.page.Page;
+import simpleDB.backend.dm.page.PageX;
 import simpleDB.backend.utils.Parser;
 
 import java.util.Arrays;
 
 public interface DataItem {
+    // 单个DataItem能存放的最大数据长度，此时正好占满一页
+    int MAX_DATA_SIZE = PageX.MAX_FREE_SPACE - DataItemImpl.OF_DATA;
+
     SubArray data();
     
     void before();
@@ -37,10 +41,20 @@ public interface DataItem {
         short size = Parser.parseShort(Arrays.copyOfRange(raw, offset+DataItemImpl.OF_SIZE, offset+DataItemImpl.OF_DATA));
         short length = (short)(size + DataItemImpl.OF_DATA);
         long uid = Parser.addressToUid(pg.getPageNumber(), offset);
-        return new DataItemImpl(new SubArray(raw, offset, offset+length), new byte[length], pg, uid, dm);
+        return new DataItemImpl(new SubArray(raw, offset, offset+length), null, pg, uid, dm);
     }
 
     public static void setDataItemRawInvalid(byte[] raw) {
         raw[DataItemImpl.OF_VALID] = (byte)1;
     }
+
+    // 将raw中连续存放的所有DataItem置为无效
+    public static void setDataItemsRawInvalid(byte[] raw) {
+        int pos = 0;
+        while(pos < raw.length) {
+            raw[pos+DataItemImpl.OF_VALID] = (byte)1;
+            short size = Parser.parseShort(Arrays.copyOfRange(raw, pos+DataItemImpl.OF_SIZE, pos+DataItemImpl.OF_DATA));
+            pos += DataItemImpl.OF_DATA + size;
+        }
+    }
 }
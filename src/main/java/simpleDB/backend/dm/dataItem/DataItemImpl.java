@@ -7,9 +7,6 @@ import simpleDB.backend.dm.page.Page;
 import simpleDB.backend.utils.Parser;
 
 import java.util.Arrays;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * dataItem 结构如下：
@@ -24,9 +21,8 @@ public class DataItemImpl implements DataItem {
     static final int OF_DATA = 3;
 
     private SubArray raw;
+    // 只在before()时才分配，只读的DataItem不需要
     private byte[] oldRaw;
-    private Lock rLock;
-    private Lock wLock;
     private DataManagerImpl dm;
     private long uid;
     private Page pg;
@@ -34,9 +30,6 @@ public class DataItemImpl implements DataItem {
     public DataItemImpl(SubArray raw, byte[] oldRaw, Page pg, long uid, DataManagerImpl dm) {
         this.raw = raw;
         this.oldRaw = oldRaw;
-        ReadWriteLock lock = new ReentrantReadWriteLock();
-        rLock = lock.readLock();
-        wLock = lock.writeLock();
         this.dm = dm;
         this.uid = uid;
         this.pg = pg;
@@ -51,43 +44,50 @@ public class DataItemImpl implements DataItem {
         return new SubArray(raw.raw, raw.start+OF_DATA, raw.end);
     }
 
+    /**
+     * 每次读取同一条数据都会生成新的DataItem，各自的锁无法互斥
+     * 因此读写都加所在页面的读写锁，页面在缓存中唯一，同一页面上的修改互斥，读取可以并发
+     */
     @Override
     public void before() {
-        wLock.lock();
+        pg.lock();
         pg.setDirty(true);
+        if(oldRaw == null) {
+            oldRaw = new byte[raw.end - raw.start];
+        }
         System.arraycopy(raw.raw, raw.start, oldRaw, 0, oldRaw.length);
     }
 
     @Override
     public void unBefore() {
         System.arraycopy(oldRaw, 0, raw.raw, raw.start, oldRaw.length);
-        wLock.unlock();
+        pg.unlock();
     }
 
     @Override
     public void after(long xid) {
         dm.logDataItem(xid, this);
-        wLock.unlock();
+        pg.unlock();
     }
 
     @Override
     public void lock() {
-        wLock.lock();
+        pg.lock();
     }
 
     @Override
     public void unlock() {
-        wLock.unlock();
+        pg.unlock();
     }
 
     @Override
     public void rLock() {
-        rLock.lock();
+        pg.rLock();
     }
 
     @Override
     public void rUnLock() {
-        rLock.unlock();
+        pg.rUnLock();
     }
 
     @Override
@@ -122,7 +122,7 @@ public class DataItemImpl implements DataItem {
         short size = Parser.parseShort(Arrays.copyOfRange(raw, offset+DataItemImpl.OF_SIZE, offset+DataItemImpl.OF_DATA));
         short length = (short)(size + DataItemImpl.OF_DATA);
         long uid = Parser.addressToUid(pg.getPageNumber(), offset);
-        return new DataItemImpl(new SubArray(raw, offset, offset+length), new byte[length], pg, uid, dm);
+        return new DataItemImpl(new SubArray(raw, offset, offset+length), null, pg, uid, dm);
     }
 
     public static void setDataItemRawInvalid(byte[] raw) {
@@ -10,9 +10,12 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
 public interface Logger {
     void log(byte[] data);
+    // 多条日志一次写入
+    void log(List<byte[]> datas);
     void truncate(long x) throws Exception;
     byte[] next();
     void rewind();
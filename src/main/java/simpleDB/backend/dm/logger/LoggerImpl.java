@@ -10,6 +10,8 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -117,28 +119,35 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void log(byte[] data) {
-        byte[] log = wrapLog(data);
-        ByteBuffer buf = ByteBuffer.wrap(log);
-        lock.lock();
-        try {
-            fc.position(fc.size());
-            fc.write(buf);
-        } catch(IOException e) {
-            Panic.panic(e);
-        } finally {
-            lock.unlock();
-        }
-        updateXChecksum(log);
+        log(Collections.singletonList(data));
     }
 
-    private void updateXChecksum(byte[] log) {
-        this.xChecksum = calChecksum(this.xChecksum, log);
+    /**
+     * 多条日志一次写入文件，只更新一次XChecksum并force一次
+     * XChecksum按日志在文件中的顺序计算，更新和写入在同一个锁中完成
+     */
+    @Override
+    public void log(List<byte[]> datas) {
+        byte[][] logs = new byte[datas.size()][];
+        for(int i = 0; i < logs.length; i ++) {
+            logs[i] = wrapLog(datas.get(i));
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Bytes.concat(logs));
+        lock.lock();
         try {
-            fc.position(0);
-            fc.write(ByteBuffer.wrap(Parser.int2Byte(xChecksum)));
+            long pos = fc.size();
+            while(buf.hasRemaining()) {
+                pos += fc.write(buf, pos);
+            }
+            for(byte[] log : logs) {
+                xChecksum = calChecksum(xChecksum, log);
+            }
+            fc.write(ByteBuffer.wrap(Parser.int2Byte(xChecksum)), 0);
             fc.force(false);
         } catch(IOException e) {
             Panic.panic(e);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -3,6 +3,8 @@ package simpleDB.backend.dm.page;
 public interface Page {
     void lock();
     void unlock();
+    void rLock();
+    void rUnLock();
     void setDirty(boolean dirty);
     boolean isDirty();
     int getPageNumber();
@@ -3,29 +3,41 @@ package simpleDB.backend.dm.page;
 import simpleDB.backend.dm.pageCache.PageCache;
 import simpleDB.backend.dm.pageCache.PageCacheImpl;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * 页面的读写锁，读取页面上数据的线程可以并发，修改时独占
+ * 持有写锁的线程可以再获取读锁，持有读锁时不能获取写锁
+ */
 public class PageImpl implements Page {
     private int pageNumber;
     private byte[] data;
     private boolean dirty;
-    private Lock lock;
+    private ReadWriteLock lock;
     public PageCacheImpl pc;
 
     public PageImpl(int pageNumber, byte[] data, PageCacheImpl pc) {
         this.pageNumber = pageNumber;
         this.data = data;
         this.pc = pc;
-        lock = new ReentrantLock();
+        lock = new ReentrantReadWriteLock();
     }
 
     public void lock() {
-        lock.lock();
+        lock.writeLock().lock();
     }
 
     public void unlock() {
-        lock.unlock();
+        lock.writeLock().unlock();
+    }
+
+    public void rLock() {
+        lock.readLock().lock();
+    }
+
+    public void rUnLock() {
+        lock.readLock().unlock();
     }
 
     public void setDirty(boolean dirty) {
@@ -8,23 +8,37 @@ import java.util.Arrays;
 /**
  * PageX管理普通页
  * 普通页结构
- * [FreeSpaceOffset] [Data]
+ * [FreeSpaceOffset] [Owner] [Data]
  * FreeSpaceOffset: 2字节 空闲位置开始偏移
+ * Owner: 8字节 页面所属的段，每张表的记录和每个索引各自占用一个段，0表示公共页面
  */
 public class PageX {
     
     private static final short OF_FREE = 0;
-    private static final short OF_DATA = 2;
+    private static final short OF_OWNER = OF_FREE+2;
+    public static final short OF_DATA = OF_OWNER+8;
     public static final int MAX_FREE_SPACE = PageCache.PAGE_SIZE - OF_DATA;
 
-    public static byte[] initRaw() {
+    public static byte[] initRaw(long owner) {
         byte[] raw = new byte[PageCache.PAGE_SIZE];
         setFSO(raw, OF_DATA);
+        System.arraycopy(Parser.long2Byte(owner), 0, raw, OF_OWNER, 8);
         return raw;
     }
 
+    // 清空pg并将其分配给owner
+    public static void reset(Page pg, long owner) {
+        pg.setDirty(true);
+        setFSO(pg.getData(), OF_DATA);
+        System.arraycopy(Parser.long2Byte(owner), 0, pg.getData(), OF_OWNER, 8);
+    }
+
     private static void setFSO(byte[] raw, short ofData) {
-        System.arraycopy(Parser.short2Byte(ofData), 0, raw, OF_FREE, OF_DATA);
+        System.arraycopy(Parser.short2Byte(ofData), 0, raw, OF_FREE, 2);
+    }
+
+    public static long getOwner(Page pg) {
+        return Parser.parseLong(Arrays.copyOfRange(pg.getData(), OF_OWNER, OF_OWNER+8));
     }
 
     // 获取pg的FSO
@@ -45,9 +59,26 @@ public class PageX {
         return offset;
     }
 
+    // 将raw追加到页面内容pgRaw中，返回插入位置，用于在内存中构造整个页面
+    public static short insert(byte[] pgRaw, byte[] raw) {
+        short offset = getFSO(pgRaw);
+        System.arraycopy(raw, 0, pgRaw, offset, raw.length);
+        setFSO(pgRaw, (short)(offset + raw.length));
+        return offset;
+    }
+
     // 获取页面的空闲空间大小
     public static int getFreeSpace(Page pg) {
-        return PageCache.PAGE_SIZE - (int)getFSO(pg.getData());
+        return getFreeSpace(pg.getData());
+    }
+
+    public static int getFreeSpace(byte[] pgRaw) {
+        return PageCache.PAGE_SIZE - (int)getFSO(pgRaw);
+    }
+
+    // 页面内容pgRaw中已写入的数据部分
+    public static byte[] getData(byte[] pgRaw) {
+        return Arrays.copyOfRange(pgRaw, OF_DATA, getFSO(pgRaw));
     }
 
     // 将raw插入pg中的offset位置，并将pg的offset设置为较大的offset
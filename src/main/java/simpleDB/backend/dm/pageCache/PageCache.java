@@ -8,13 +8,19 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
 public interface PageCache {
     
     public static final int PAGE_SIZE = 1 << 13;
 
     int newPage(byte[] initData);
+    // 连续分配多个页面，返回第一个页号
+    int newPages(List<byte[]> initDatas);
+    // 不经过缓存直接写入从pgno开始的连续页面
+    void writePages(int pgno, List<byte[]> datas);
     Page getPage(int pgno) throws Exception;
+    void prefetch(List<Integer> pgnos) throws Exception;
     void close();
     void truncateByBgno(int maxPgno);
     int getPageNumber();
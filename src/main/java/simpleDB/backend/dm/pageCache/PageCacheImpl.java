@@ -10,6 +10,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -48,6 +50,33 @@ public class PageCacheImpl extends AbstractCache<Page> implements PageCache {
         return pgno;
     }
 
+    public int newPages(List<byte[]> initDatas) {
+        int pgno = pageNumbers.addAndGet(initDatas.size()) - initDatas.size() + 1;
+        writePages(pgno, initDatas);
+        return pgno;
+    }
+
+    // 多个页面一次写入并只force一次，调用者保证这些页面不在缓存中
+    public void writePages(int pgno, List<byte[]> datas) {
+        ByteBuffer buf = ByteBuffer.allocate(datas.size() * PAGE_SIZE);
+        for(byte[] data : datas) {
+            buf.put(data);
+        }
+        buf.flip();
+        fileLock.lock();
+        try {
+            long offset = pageOffset(pgno);
+            while(buf.hasRemaining()) {
+                offset += fc.write(buf, offset);
+            }
+            fc.force(false);
+        } catch(IOException e) {
+            Panic.panic(e);
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
     public Page getPage(int pgno) throws Exception {
         return get((long)pgno);
     }
@@ -72,6 +101,48 @@ public class PageCacheImpl extends AbstractCache<Page> implements PageCache {
         return new PageImpl(pgno, buf.array(), this);
     }
 
+    /**
+     * 预读多个页面，页号连续的页面只需一次读取
+     */
+    public void prefetch(List<Integer> pgnos) throws Exception {
+        List<Long> keys = new ArrayList<>();
+        for (int pgno : pgnos) {
+            keys.add((long)pgno);
+        }
+        preload(keys);
+    }
+
+    @Override
+    protected List<Page> getBatchForCache(List<Long> keys) throws Exception {
+        List<Page> pages = new ArrayList<>();
+        int i = 0;
+        while(i < keys.size()) {
+            int j = i + 1;
+            while(j < keys.size() && keys.get(j) == keys.get(j-1) + 1) {
+                j ++;
+            }
+            int first = (int)(long)keys.get(i);
+            ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE * (j - i));
+            fileLock.lock();
+            try {
+                fc.position(pageOffset(first));
+                fc.read(buf);
+            } catch(IOException e) {
+                Panic.panic(e);
+            } finally {
+                fileLock.unlock();
+            }
+            byte[] raw = buf.array();
+            for(int k = 0; k < j - i; k ++) {
+                byte[] data = new byte[PAGE_SIZE];
+                System.arraycopy(raw, k * PAGE_SIZE, data, 0, PAGE_SIZE);
+                pages.add(new PageImpl(first + k, data, this));
+            }
+            i = j;
+        }
+        return pages;
+    }
+
     @Override
     protected void releaseForCache(Page pg) {
         if(pg.isDirty()) {
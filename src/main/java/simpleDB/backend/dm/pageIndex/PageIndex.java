@@ -44,6 +44,15 @@ public class PageIndex {
                     number ++;
                     continue;
                 }
+                if(number == INTERVALS_NO) {
+                    // 最后一个区间中的页不一定放得下
+                    for(int i = 0; i < lists[number].size(); i ++) {
+                        if(lists[number].get(i).freeSpace >= spaceSize) {
+                            return lists[number].remove(i);
+                        }
+                    }
+                    return null;
+                }
                 return lists[number].remove(0);
             }
             return null;
@@ -4,27 +4,45 @@ import simpleDB.backend.common.SubArray;
 import simpleDB.backend.dm.DataManager;
 import simpleDB.backend.dm.dataItem.DataItem;
 import simpleDB.backend.im.Node.InsertAndSplitRes;
+import simpleDB.backend.im.Node.Internal;
 import simpleDB.backend.im.Node.LeafSearchRangeRes;
-import simpleDB.backend.im.Node.SearchNextRes;
+import simpleDB.backend.im.Node.PatchRes;
 import simpleDB.backend.tm.TransactionManagerImpl;
 import simpleDB.backend.utils.Parser;
+import simpleDB.common.Error;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class BPlusTree {
+    // 每棵树最多缓存的内部节点数，自上而下访问，先缓存的总是靠近根的节点
+    static final int MAX_CACHED_NODES = 1024;
+
     DataManager dm;
+    // 树的所有节点所在的段
+    long segment;
     long bootUid;
     DataItem bootDataItem;
     Lock bootLock;
 
-    public static long create(DataManager dm) throws Exception {
+    /**
+     * 根节点uid与内部节点的解码结果常驻内存，查找时只有叶子需要读取页面
+     * 每个内部节点有各自的版本号，节点被修改时其版本号加一，只有该节点的解码结果失效
+     * 即使读到刚失效的节点，B-link的右移也能保证找到正确的叶子
+     */
+    private volatile long rootUid;
+    // 被修改过的内部节点的版本号，未修改过的为0
+    private Map<Long, Long> versions;
+    private Map<Long, Internal> internals;
+    // 内部节点的子节点是否为叶子，节点所在的层数不会改变，无需失效
+    private Map<Long, Boolean> leafSons;
+
+    public static long create(DataManager dm, long segment) throws Exception {
         byte[] rawRoot = Node.newNilRootRaw();
-        long rootUid = dm.insert(TransactionManagerImpl.SUPER_XID, rawRoot);
-        return dm.insert(TransactionManagerImpl.SUPER_XID, Parser.long2Byte(rootUid));
+        long rootUid = dm.insert(TransactionManagerImpl.SUPER_XID, segment, rawRoot);
+        return dm.insert(TransactionManagerImpl.SUPER_XID, segment, Parser.long2Byte(rootUid));
     }
 
     public static BPlusTree load(long bootUid, DataManager dm) throws Exception {
@@ -33,119 +51,296 @@ public class BPlusTree {
         BPlusTree t = new BPlusTree();
         t.bootUid = bootUid;
         t.dm = dm;
+        t.segment = dm.ownerOf(bootUid);
         t.bootDataItem = bootDataItem;
         t.bootLock = new ReentrantLock();
+        SubArray sa = bootDataItem.data();
+        t.rootUid = Parser.parseLong(Arrays.copyOfRange(sa.raw, sa.start, sa.start+8));
+        t.versions = new ConcurrentHashMap<>();
+        t.internals = new ConcurrentHashMap<>();
+        t.leafSons = new ConcurrentHashMap<>();
         return t;
     }
 
-    private long rootUid() {
-        bootLock.lock();
-        try {
-            SubArray sa = bootDataItem.data();
-            return Parser.parseLong(Arrays.copyOfRange(sa.raw, sa.start, sa.start+8));
-        } finally {
-            bootLock.unlock();
-        }
+    long rootUid() {
+        return rootUid;
     }
 
-    private void updateRootUid(long left, long right, long rightKey) throws Exception {
+    private void updateRootUid(long left, long right, byte[] rightKey) throws Exception {
         bootLock.lock();
         try {
             byte[] rootRaw = Node.newRootRaw(left, right, rightKey);
-            long newRootUid = dm.insert(TransactionManagerImpl.SUPER_XID, rootRaw);
+            long newRootUid = dm.insert(TransactionManagerImpl.SUPER_XID, segment, rootRaw);
             bootDataItem.before();
             SubArray diRaw = bootDataItem.data();
             System.arraycopy(Parser.long2Byte(newRootUid), 0, diRaw.raw, diRaw.start, 8);
             bootDataItem.after(TransactionManagerImpl.SUPER_XID);
+            rootUid = newRootUid;
         } finally {
             bootLock.unlock();
         }
     }
 
-    private long searchLeaf(long nodeUid, long key) throws Exception {
-        Node node = Node.loadNode(this, nodeUid);
-        boolean isLeaf = node.isLeaf();
+    long version(long nodeUid) {
+        return versions.getOrDefault(nodeUid, 0L);
+    }
+
+    // 在持有节点写锁时调用，使该节点已缓存的解码结果失效
+    void invalidate(long nodeUid) {
+        versions.merge(nodeUid, 1L, Long::sum);
+    }
 
-        if(isLeaf) {
-            return nodeUid;
-        } else {
-            long next = searchNext(nodeUid, key);
-            return searchLeaf(next, key);
+    // 返回内部节点的解码结果，节点为叶子时返回null
+    Internal internal(long nodeUid) throws Exception {
+        Internal node = internals.get(nodeUid);
+        if(node != null && node.version == version(nodeUid)) {
+            return node;
+        }
+        node = Node.loadNode(this, nodeUid).decodeInternal();
+        if(node == null) {
+            return null;
+        }
+        Boolean ls = leafSons.get(nodeUid);
+        if(ls == null) {
+            ls = Node.loadNode(this, node.sons[0]).isLeaf();
+            leafSons.put(nodeUid, ls);
         }
+        node.leafSons = ls;
+        if(internals.size() < MAX_CACHED_NODES || internals.containsKey(nodeUid)) {
+            internals.put(nodeUid, node);
+        }
+        return node;
     }
 
-    private long searchNext(long nodeUid, long key) throws Exception {
+    private long searchLeaf(long nodeUid, byte[] key) throws Exception {
+        return searchLeaf(nodeUid, key, null);
+    }
+
+    // 从nodeUid向下查找key所在的叶子，path不为null时记录经过的内部节点
+    private long searchLeaf(long nodeUid, byte[] key, Deque<Long> path) throws Exception {
         while(true) {
-            Node node = Node.loadNode(this, nodeUid);
-            SearchNextRes res = node.searchNext(key);
-            if(res.uid != 0) return res.uid;
-            nodeUid = res.siblingUid;
+            Internal node = internal(nodeUid);
+            if(node == null) {
+                return nodeUid;
+            }
+            long next = node.searchNext(key);
+            if(next == 0) {
+                nodeUid = node.siblingUid;
+                continue;
+            }
+            if(path != null) {
+                path.push(nodeUid);
+            }
+            if(node.leafSons) {
+                return next;
+            }
+            nodeUid = next;
         }
     }
 
-    public List<Long> search(long key) throws Exception {
+    public long getSegment() {
+        return segment;
+    }
+
+    public List<Long> search(byte[] key) throws Exception {
         return searchRange(key, key);
     }
 
-    public List<Long> searchRange(long leftKey, long rightKey) throws Exception {
-        long rootUid = rootUid();
-        long leafUid = searchLeaf(rootUid, leftKey);
+    /**
+     * 返回key在[leftKey, rightKey]内的所有uid，rightKey为null表示无上界
+     */
+    public List<Long> searchRange(byte[] leftKey, byte[] rightKey) throws Exception {
         List<Long> uids = new ArrayList<>();
+        searchRange(leftKey, rightKey, uids, null, Integer.MAX_VALUE);
+        return uids;
+    }
+
+    /**
+     * 同searchRange，但结果超过limit个时立即停止并返回null
+     */
+    public List<Long> searchRange(byte[] leftKey, byte[] rightKey, int limit) throws Exception {
+        List<Long> uids = new ArrayList<>();
+        if(!searchRange(leftKey, rightKey, uids, null, limit)) {
+            return null;
+        }
+        return uids;
+    }
+
+    /**
+     * 返回key在[leftKey, rightKey]内的所有完整key
+     */
+    public List<byte[]> searchKeys(byte[] leftKey, byte[] rightKey) throws Exception {
+        List<byte[]> keys = new ArrayList<>();
+        searchRange(leftKey, rightKey, new ArrayList<>(), keys, Integer.MAX_VALUE);
+        return keys;
+    }
+
+    // 结果超过limit个时提前返回false
+    private boolean searchRange(byte[] leftKey, byte[] rightKey, List<Long> uids, List<byte[]> keys, int limit) throws Exception {
+        RangeCursor cursor = cursor(leftKey, rightKey, keys != null);
+        while(cursor.next()) {
+            uids.addAll(cursor.uids());
+            if(keys != null) {
+                keys.addAll(cursor.keys());
+            }
+            if(uids.size() > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 返回按key的顺序读取[leftKey, rightKey]的游标，rightKey为null表示无上界
+     * withKeys为true时同时读取完整的key
+     */
+    public RangeCursor cursor(byte[] leftKey, byte[] rightKey, boolean withKeys) {
+        return new RangeCursor(leftKey, rightKey, withKeys);
+    }
+
+    /**
+     * 返回从最右侧的叶子开始读取的游标，即最大的若干个key所在的叶子
+     */
+    public RangeCursor lastLeaf(boolean withKeys) throws Exception {
+        RangeCursor cursor = new RangeCursor(new byte[0], null, withKeys);
+        cursor.leafUid = searchLeaf(rootUid(), prefixUpperBound(new byte[0]));
+        return cursor;
+    }
+
+    /**
+     * RangeCursor 每次只读取一个叶子，调用者不再需要后面的条目时直接丢弃游标即可
+     * 叶子之间通过兄弟指针移动，与searchRange相同
+     */
+    public class RangeCursor {
+        private byte[] leftKey, rightKey;
+        private boolean withKeys;
+        // 下一个要读取的叶子，为0时已读完
+        private long leafUid = -1;
+        private LeafSearchRangeRes res;
+
+        private RangeCursor(byte[] leftKey, byte[] rightKey, boolean withKeys) {
+            this.leftKey = leftKey;
+            this.rightKey = rightKey;
+            this.withKeys = withKeys;
+        }
+
+        // 读取下一个叶子中范围内的条目，没有更多叶子时返回false
+        public boolean next() throws Exception {
+            if(leafUid == -1) {
+                leafUid = searchLeaf(rootUid(), leftKey);
+            }
+            if(leafUid == 0) {
+                return false;
+            }
+            res = Node.loadNode(BPlusTree.this, leafUid).leafSearchRange(leftKey, rightKey, withKeys);
+            leafUid = res.siblingUid;
+            return true;
+        }
+
+        public List<Long> uids() {
+            return res.uids;
+        }
+
+        public List<byte[]> keys() {
+            return res.keys;
+        }
+    }
+
+    /**
+     * 返回大于等于所有以prefix开头的key的上界
+     */
+    public static byte[] prefixUpperBound(byte[] prefix) {
+        byte[] upper = Arrays.copyOf(prefix, Math.max(prefix.length, Node.MAX_KEY_SIZE) + 1);
+        Arrays.fill(upper, prefix.length, upper.length, (byte)0xff);
+        return upper;
+    }
+
+    /**
+     * 用bytes覆盖以prefix开头的唯一条目中，从offset开始的部分
+     * 被覆盖的部分必须位于决定key顺序的部分之后
+     */
+    public boolean patch(byte[] prefix, int offset, byte[] bytes) throws Exception {
+        long leafUid = searchLeaf(rootUid(), prefix);
         while(true) {
             Node leaf = Node.loadNode(this, leafUid);
-            LeafSearchRangeRes res = leaf.leafSearchRange(leftKey, rightKey);
-            uids.addAll(res.uids);
+            PatchRes res = leaf.patchKey(prefix, offset, bytes);
+            if(res.found) {
+                return true;
+            }
             if(res.siblingUid == 0) {
-                break;
-            } else {
-                leafUid = res.siblingUid;
+                return false;
             }
+            leafUid = res.siblingUid;
         }
-        return uids;
     }
 
-    public void insert(long key, long uid) throws Exception {
-        long rootUid = rootUid();
-        InsertRes res = insert(rootUid, uid, key);
-        assert res != null;
-        if(res.newNode != 0) {
-            updateRootUid(rootUid, res.newNode, res.newKey);
+    public void insert(byte[] key, long uid) throws Exception {
+        if(key.length > Node.MAX_KEY_SIZE) {
+            throw Error.KeyTooLargeException;
         }
+        insertSorted(Collections.singletonList(key), Collections.singletonList(uid));
     }
 
-    class InsertRes {
-        long newNode, newKey;
+    /**
+     * 批量插入，先按key排序，再把落在同一个叶子中的相邻key一次插入该叶子
+     * 顺序导入时每个叶子只修改和记录一次日志，而不是每个key一次
+     */
+    public void insert(List<byte[]> keys, List<Long> uids) throws Exception {
+        Integer[] order = new Integer[keys.size()];
+        for(int i = 0; i < order.length; i ++) {
+            if(keys.get(i).length > Node.MAX_KEY_SIZE) {
+                throw Error.KeyTooLargeException;
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Node.compare(keys.get(a), keys.get(b)));
+        List<byte[]> sortedKeys = new ArrayList<>(order.length);
+        List<Long> sortedUids = new ArrayList<>(order.length);
+        for(int i : order) {
+            sortedKeys.add(keys.get(i));
+            sortedUids.add(uids.get(i));
+        }
+        insertSorted(sortedKeys, sortedUids);
     }
 
-    private InsertRes insert(long nodeUid, long uid, long key) throws Exception {
-        Node node = Node.loadNode(this, nodeUid);
-        boolean isLeaf = node.isLeaf();
-
-        InsertRes res = null;
-        if(isLeaf) {
-            res = insertAndSplit(nodeUid, uid, key);
-        } else {
-            long next = searchNext(nodeUid, key);
-            InsertRes ir = insert(next, uid, key);
-            if(ir.newNode != 0) {
-                res = insertAndSplit(nodeUid, ir.newNode, ir.newKey);
-            } else {
-                res = new InsertRes();
+    private void insertSorted(List<byte[]> keys, List<Long> uids) throws Exception {
+        int i = 0;
+        while(i < keys.size()) {
+            long rootUid = rootUid();
+            Deque<Long> path = new ArrayDeque<>();
+            long leafUid = searchLeaf(rootUid, keys.get(i), path);
+            InsertRes res = insertAndSplit(leafUid, uids, keys, i);
+            i += res.count;
+            while(res.newNode != 0 && !path.isEmpty()) {
+                res = insertAndSplit(path.pop(), res.newNode, res.newKey);
+            }
+            if(res.newNode != 0) {
+                updateRootUid(rootUid, res.newNode, res.newKey);
             }
         }
-        return res;
     }
 
-    private InsertRes insertAndSplit(long nodeUid, long uid, long key) throws Exception {
+    class InsertRes {
+        long newNode;
+        byte[] newKey;
+        int count;
+    }
+
+    private InsertRes insertAndSplit(long nodeUid, long uid, byte[] key) throws Exception {
+        return insertAndSplit(nodeUid, Collections.singletonList(uid), Collections.singletonList(key), 0);
+    }
+
+    private InsertRes insertAndSplit(long nodeUid, List<Long> uids, List<byte[]> keys, int from) throws Exception {
         while(true) {
             Node node = Node.loadNode(this, nodeUid);
-            InsertAndSplitRes iasr = node.insertAndSplit(uid, key);
-            if(iasr.siblingUid != 0) {
+            InsertAndSplitRes iasr = node.insertAndSplit(uids, keys, from);
+            if(iasr.count == 0) {
                 nodeUid = iasr.siblingUid;
             } else {
                 InsertRes res = new InsertRes();
                 res.newNode = iasr.newSon;
                 res.newKey = iasr.newKey;
+                res.count = iasr.count;
                 return res;
             }
         }
@@ -0,0 +1,224 @@
+package simpleDB.backend.im;
+
+import simpleDB.backend.common.SubArray;
+import simpleDB.backend.dm.dataItem.DataItem;
+import simpleDB.backend.tm.TransactionManagerImpl;
+import simpleDB.backend.utils.Parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bucket结构如下：
+ * [EntryNumber][UsedSize][OverflowUid]
+ * [Hash0][Key0Length][Key0][Uid0][Hash1][Key1Length][Key1][Uid1]...
+ * 一个桶放不下时，通过OverflowUid链接到溢出桶
+ */
+public class Bucket {
+    static final int NO_ENTRIES_OFFSET = 0;
+    static final int USED_OFFSET = NO_ENTRIES_OFFSET+2;
+    static final int OVERFLOW_OFFSET = USED_OFFSET+2;
+    static final int BUCKET_HEADER_SIZE = OVERFLOW_OFFSET+8;
+
+    static final int ENTRY_HEADER_SIZE = 4+2;
+
+    static final int BUCKET_SIZE = 1 << 10;
+    public static final int MAX_KEY_SIZE = BUCKET_SIZE / 4;
+
+    LinearHash hash;
+    DataItem dataItem;
+    SubArray raw;
+    long uid;
+
+    static class Entry {
+        int hash;
+        byte[] key;
+        long uid;
+    }
+
+    static int getRawNoEntries(SubArray raw) {
+        return (int)Parser.parseShort(Arrays.copyOfRange(raw.raw, raw.start+NO_ENTRIES_OFFSET, raw.start+NO_ENTRIES_OFFSET+2));
+    }
+
+    static int getRawUsed(SubArray raw) {
+        return (int)Parser.parseShort(Arrays.copyOfRange(raw.raw, raw.start+USED_OFFSET, raw.start+USED_OFFSET+2));
+    }
+
+    static void setRawOverflow(SubArray raw, long overflow) {
+        System.arraycopy(Parser.long2Byte(overflow), 0, raw.raw, raw.start+OVERFLOW_OFFSET, 8);
+    }
+
+    static long getRawOverflow(SubArray raw) {
+        return Parser.parseLong(Arrays.copyOfRange(raw.raw, raw.start+OVERFLOW_OFFSET, raw.start+OVERFLOW_OFFSET+8));
+    }
+
+    static int entrySize(byte[] key) {
+        return ENTRY_HEADER_SIZE + key.length + 8;
+    }
+
+    static List<Entry> getRawEntries(SubArray raw) {
+        int noEntries = getRawNoEntries(raw);
+        List<Entry> entries = new ArrayList<>(noEntries);
+        int pos = raw.start + BUCKET_HEADER_SIZE;
+        for(int i = 0; i < noEntries; i ++) {
+            Entry e = new Entry();
+            e.hash = Parser.parseInt(Arrays.copyOfRange(raw.raw, pos, pos+4));
+            int keyLength = Parser.parseShort(Arrays.copyOfRange(raw.raw, pos+4, pos+6));
+            pos += ENTRY_HEADER_SIZE;
+            e.key = Arrays.copyOfRange(raw.raw, pos, pos+keyLength);
+            pos += keyLength;
+            e.uid = Parser.parseLong(Arrays.copyOfRange(raw.raw, pos, pos+8));
+            pos += 8;
+            entries.add(e);
+        }
+        return entries;
+    }
+
+    /**
+     * 从from开始，将能放下的entry写入桶中，覆盖桶中原有的entry
+     * 返回第一个未写入的entry的下标
+     */
+    static int setRawEntries(SubArray raw, List<Entry> entries, int from) {
+        int pos = raw.start + BUCKET_HEADER_SIZE;
+        int i = from;
+        while(i < entries.size() && pos - raw.start + entrySize(entries.get(i).key) <= BUCKET_SIZE) {
+            pos = writeEntry(raw, pos, entries.get(i));
+            i ++;
+        }
+        setRawHeader(raw, i - from, pos - raw.start);
+        return i;
+    }
+
+    private static int writeEntry(SubArray raw, int pos, Entry e) {
+        System.arraycopy(Parser.int2Byte(e.hash), 0, raw.raw, pos, 4);
+        System.arraycopy(Parser.short2Byte((short)e.key.length), 0, raw.raw, pos+4, 2);
+        pos += ENTRY_HEADER_SIZE;
+        System.arraycopy(e.key, 0, raw.raw, pos, e.key.length);
+        pos += e.key.length;
+        System.arraycopy(Parser.long2Byte(e.uid), 0, raw.raw, pos, 8);
+        return pos + 8;
+    }
+
+    private static void setRawHeader(SubArray raw, int noEntries, int used) {
+        System.arraycopy(Parser.short2Byte((short)noEntries), 0, raw.raw, raw.start+NO_ENTRIES_OFFSET, 2);
+        System.arraycopy(Parser.short2Byte((short)used), 0, raw.raw, raw.start+USED_OFFSET, 2);
+    }
+
+    static SubArray newBucketRaw() {
+        SubArray raw = new SubArray(new byte[BUCKET_SIZE], 0, BUCKET_SIZE);
+        setRawHeader(raw, 0, BUCKET_HEADER_SIZE);
+        setRawOverflow(raw, 0);
+        return raw;
+    }
+
+    static Bucket loadBucket(LinearHash hash, long uid) throws Exception {
+        DataItem di = hash.dm.read(uid);
+        assert di != null;
+        Bucket b = new Bucket();
+        b.hash = hash;
+        b.dataItem = di;
+        b.raw = di.data();
+        b.uid = uid;
+        return b;
+    }
+
+    /**
+     * 将桶中与key相等的entry的uid加入uids，返回溢出桶的uid
+     */
+    public long search(int h, byte[] key, List<Long> uids) {
+        dataItem.rLock();
+        try {
+            int noEntries = getRawNoEntries(raw);
+            int pos = raw.start + BUCKET_HEADER_SIZE;
+            for(int i = 0; i < noEntries; i ++) {
+                int eh = Parser.parseInt(Arrays.copyOfRange(raw.raw, pos, pos+4));
+                int keyLength = Parser.parseShort(Arrays.copyOfRange(raw.raw, pos+4, pos+6));
+                pos += ENTRY_HEADER_SIZE;
+                if(eh == h && keyLength == key.length &&
+                    Node.compare(raw.raw, pos, keyLength, key, 0, key.length) == 0) {
+                    uids.add(Parser.parseLong(Arrays.copyOfRange(raw.raw, pos+keyLength, pos+keyLength+8)));
+                }
+                pos += keyLength + 8;
+            }
+            return getRawOverflow(raw);
+        } finally {
+            dataItem.rUnLock();
+        }
+    }
+
+    public List<Entry> entries() {
+        dataItem.rLock();
+        try {
+            return getRawEntries(raw);
+        } finally {
+            dataItem.rUnLock();
+        }
+    }
+
+    public long overflow() {
+        dataItem.rLock();
+        try {
+            return getRawOverflow(raw);
+        } finally {
+            dataItem.rUnLock();
+        }
+    }
+
+    /**
+     * 桶中空间足够时插入entry并返回true
+     */
+    public boolean insert(Entry e) {
+        dataItem.before();
+        boolean success = false;
+        try {
+            int used = getRawUsed(raw);
+            if(used + entrySize(e.key) > BUCKET_SIZE) {
+                return false;
+            }
+            writeEntry(raw, raw.start + used, e);
+            setRawHeader(raw, getRawNoEntries(raw) + 1, used + entrySize(e.key));
+            success = true;
+            return true;
+        } finally {
+            if(success) {
+                dataItem.after(TransactionManagerImpl.SUPER_XID);
+            } else {
+                dataItem.unBefore();
+            }
+        }
+    }
+
+    public void setOverflow(long overflow) {
+        dataItem.before();
+        try {
+            setRawOverflow(raw, overflow);
+        } finally {
+            dataItem.after(TransactionManagerImpl.SUPER_XID);
+        }
+    }
+
+    /**
+     * 用src覆盖整个桶，复用空闲的桶时使用
+     */
+    public void overwrite(SubArray src) {
+        dataItem.before();
+        try {
+            System.arraycopy(src.raw, src.start, raw.raw, raw.start, BUCKET_SIZE);
+        } finally {
+            dataItem.after(TransactionManagerImpl.SUPER_XID);
+        }
+    }
+
+    /**
+     * 用entries中从from开始的部分覆盖桶的内容，返回第一个未写入的entry的下标
+     */
+    public int rewrite(List<Entry> entries, int from) {
+        dataItem.before();
+        try {
+            return setRawEntries(raw, entries, from);
+        } finally {
+            dataItem.after(TransactionManagerImpl.SUPER_XID);
+        }
+    }
+}
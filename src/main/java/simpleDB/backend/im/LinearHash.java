@@ -0,0 +1,343 @@
+package simpleDB.backend.im;
+
+import com.google.common.hash.Hashing;
+import simpleDB.backend.common.SubArray;
+import simpleDB.backend.dm.DataManager;
+import simpleDB.backend.dm.dataItem.DataItem;
+import simpleDB.backend.im.Bucket.Entry;
+import simpleDB.backend.tm.TransactionManagerImpl;
+import simpleDB.backend.utils.Parser;
+import simpleDB.common.Error;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LinearHash 是建立在DataManager上的线性哈希索引，只支持等值查询
+ * Boot结构如下：
+ * [Level][Next][Chunk0Uid][Chunk1Uid]...[Chunk(MAX_CHUNKS-1)Uid][FreeUid]
+ * 共有 2^Level + Next 个桶，第i个桶的uid存放在第 i/CHUNK_CAPACITY 个Chunk中
+ * FreeUid为空闲桶链表的表头，分裂后不再使用的溢出桶加入其中，新建桶链时优先复用
+ * Chunk结构如下：
+ * [Bucket0Uid][Bucket1Uid]...[Bucket(CHUNK_CAPACITY-1)Uid]
+ *
+ * 查找和插入只需访问Chunk和目标桶，每当插入产生溢出桶时分裂第Next个桶
+ */
+public class LinearHash {
+    static final int LEVEL_OFFSET = 0;
+    static final int NEXT_OFFSET = LEVEL_OFFSET+4;
+    static final int CHUNKS_OFFSET = NEXT_OFFSET+4;
+
+    static final int CHUNK_CAPACITY = 512;
+    static final int MAX_CHUNKS = 512;
+    static final int FREE_OFFSET = CHUNKS_OFFSET + MAX_CHUNKS*8;
+    static final int BOOT_SIZE = FREE_OFFSET + 8;
+    static final int CHUNK_SIZE = CHUNK_CAPACITY*8;
+
+    DataManager dm;
+    // 所有桶、Chunk和Boot所在的段
+    long segment;
+    long bootUid;
+    DataItem bootDataItem;
+    ReadWriteLock lock;
+
+    private int level;
+    private int next;
+    private long[] chunks;
+    // 空闲桶链表的表头，0表示没有空闲的桶
+    long free;
+    // 没有FreeUid的旧索引不回收溢出桶
+    private boolean hasFree;
+
+    public static long create(DataManager dm, long segment) throws Exception {
+        long bucketUid = dm.insert(TransactionManagerImpl.SUPER_XID, segment, Bucket.newBucketRaw().raw);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        System.arraycopy(Parser.long2Byte(bucketUid), 0, chunk, 0, 8);
+        long chunkUid = dm.insert(TransactionManagerImpl.SUPER_XID, segment, chunk);
+        byte[] boot = new byte[BOOT_SIZE];
+        System.arraycopy(Parser.long2Byte(chunkUid), 0, boot, CHUNKS_OFFSET, 8);
+        return dm.insert(TransactionManagerImpl.SUPER_XID, segment, boot);
+    }
+
+    public static LinearHash load(long bootUid, DataManager dm) throws Exception {
+        DataItem bootDataItem = dm.read(bootUid);
+        assert bootDataItem != null;
+        LinearHash h = new LinearHash();
+        h.bootUid = bootUid;
+        h.dm = dm;
+        h.segment = dm.ownerOf(bootUid);
+        h.bootDataItem = bootDataItem;
+        h.lock = new ReentrantReadWriteLock();
+        h.chunks = new long[MAX_CHUNKS];
+        SubArray sa = bootDataItem.data();
+        h.level = Parser.parseInt(Arrays.copyOfRange(sa.raw, sa.start+LEVEL_OFFSET, sa.start+LEVEL_OFFSET+4));
+        h.next = Parser.parseInt(Arrays.copyOfRange(sa.raw, sa.start+NEXT_OFFSET, sa.start+NEXT_OFFSET+4));
+        for(int i = 0; i < MAX_CHUNKS; i ++) {
+            int pos = sa.start + CHUNKS_OFFSET + i*8;
+            h.chunks[i] = Parser.parseLong(Arrays.copyOfRange(sa.raw, pos, pos+8));
+        }
+        h.hasFree = sa.end - sa.start >= BOOT_SIZE;
+        if(h.hasFree) {
+            h.free = Parser.parseLong(Arrays.copyOfRange(sa.raw, sa.start+FREE_OFFSET, sa.start+FREE_OFFSET+8));
+        }
+        return h;
+    }
+
+    public long getSegment() {
+        return segment;
+    }
+
+    static int hash(byte[] key) {
+        return Hashing.murmur3_32_fixed().hashBytes(key).asInt();
+    }
+
+    int bucketNumber() {
+        return (1 << level) + next;
+    }
+
+    private int bucketIndex(int h) {
+        int mask = (1 << level) - 1;
+        int index = h & mask;
+        if(index < next) {
+            index = h & ((mask << 1) | 1);
+        }
+        return index;
+    }
+
+    long bucketUid(int index) throws Exception {
+        DataItem chunk = dm.read(chunks[index / CHUNK_CAPACITY]);
+        chunk.rLock();
+        try {
+            SubArray sa = chunk.data();
+            int pos = sa.start + (index % CHUNK_CAPACITY)*8;
+            return Parser.parseLong(Arrays.copyOfRange(sa.raw, pos, pos+8));
+        } finally {
+            chunk.rUnLock();
+        }
+    }
+
+    private void setBucketUid(int index, long uid) throws Exception {
+        int c = index / CHUNK_CAPACITY;
+        if(chunks[c] == 0) {
+            byte[] raw = new byte[CHUNK_SIZE];
+            System.arraycopy(Parser.long2Byte(uid), 0, raw, (index % CHUNK_CAPACITY)*8, 8);
+            chunks[c] = dm.insert(TransactionManagerImpl.SUPER_XID, segment, raw);
+            return;
+        }
+        DataItem chunk = dm.read(chunks[c]);
+        chunk.before();
+        try {
+            SubArray sa = chunk.data();
+            System.arraycopy(Parser.long2Byte(uid), 0, sa.raw, sa.start + (index % CHUNK_CAPACITY)*8, 8);
+        } finally {
+            chunk.after(TransactionManagerImpl.SUPER_XID);
+        }
+    }
+
+    private void updateBoot() {
+        bootDataItem.before();
+        try {
+            SubArray sa = bootDataItem.data();
+            System.arraycopy(Parser.int2Byte(level), 0, sa.raw, sa.start+LEVEL_OFFSET, 4);
+            System.arraycopy(Parser.int2Byte(next), 0, sa.raw, sa.start+NEXT_OFFSET, 4);
+            for(int i = 0; i < MAX_CHUNKS; i ++) {
+                System.arraycopy(Parser.long2Byte(chunks[i]), 0, sa.raw, sa.start+CHUNKS_OFFSET+i*8, 8);
+            }
+            if(hasFree) {
+                System.arraycopy(Parser.long2Byte(free), 0, sa.raw, sa.start+FREE_OFFSET, 8);
+            }
+        } finally {
+            bootDataItem.after(TransactionManagerImpl.SUPER_XID);
+        }
+    }
+
+    /**
+     * 返回所有等于key的uid
+     */
+    public List<Long> search(byte[] key) throws Exception {
+        int h = hash(key);
+        List<Long> uids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            long bucketUid = bucketUid(bucketIndex(h));
+            while(bucketUid != 0) {
+                Bucket bucket = Bucket.loadBucket(this, bucketUid);
+                bucketUid = bucket.search(h, key, uids);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return uids;
+    }
+
+    /**
+     * 返回索引中的全部uid
+     */
+    public List<Long> scan() throws Exception {
+        List<Long> uids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int number = bucketNumber();
+            for(int i = 0; i < number; i ++) {
+                for(Entry e : chainEntries(bucketUid(i))) {
+                    // 分裂中途崩溃时，旧桶中可能残留已迁移的entry
+                    if(bucketIndex(e.hash) == i) {
+                        uids.add(e.uid);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return uids;
+    }
+
+    public void insert(byte[] key, long uid) throws Exception {
+        if(key.length > Bucket.MAX_KEY_SIZE) {
+            throw Error.KeyTooLargeException;
+        }
+        Entry e = new Entry();
+        e.hash = hash(key);
+        e.key = key;
+        e.uid = uid;
+        lock.writeLock().lock();
+        try {
+            boolean overflow = append(bucketUid(bucketIndex(e.hash)), e);
+            if(overflow && bucketNumber() < MAX_CHUNKS*CHUNK_CAPACITY) {
+                split();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 将e追加到桶链中，需要新建溢出桶时返回true
+    private boolean append(long bucketUid, Entry e) throws Exception {
+        while(true) {
+            Bucket bucket = Bucket.loadBucket(this, bucketUid);
+            if(bucket.insert(e)) {
+                return false;
+            }
+            long overflow = bucket.overflow();
+            if(overflow == 0) {
+                List<Entry> entries = new ArrayList<>();
+                entries.add(e);
+                bucket.setOverflow(newChain(entries));
+                return true;
+            }
+            bucketUid = overflow;
+        }
+    }
+
+    /**
+     * 将第Next个桶按高一位的hash拆分到第Next和第Next+2^Level个桶中
+     * 先写入新桶和目录，再重写旧桶
+     */
+    private void split() throws Exception {
+        int half = 1 << level;
+        int mask = (half << 1) - 1;
+        long oldUid = bucketUid(next);
+        List<Entry> stay = new ArrayList<>();
+        List<Entry> move = new ArrayList<>();
+        for(Entry e : chainEntries(oldUid)) {
+            if((e.hash & mask) == next) {
+                stay.add(e);
+            } else {
+                move.add(e);
+            }
+        }
+
+        setBucketUid(next + half, newChain(move));
+        next ++;
+        if(next == half) {
+            level ++;
+            next = 0;
+        }
+        updateBoot();
+
+        rewriteChain(oldUid, stay);
+    }
+
+    /**
+     * 用entries依次覆盖桶链中的桶，原有的桶放不下时在链尾追加溢出桶
+     * entries写完后截断桶链，剩余的桶加入空闲链表
+     */
+    void rewriteChain(long bucketUid, List<Entry> entries) throws Exception {
+        Bucket last = Bucket.loadBucket(this, bucketUid);
+        int from = last.rewrite(entries, 0);
+        long rest = last.overflow();
+        while(rest != 0 && from < entries.size()) {
+            last = Bucket.loadBucket(this, rest);
+            from = last.rewrite(entries, from);
+            rest = last.overflow();
+        }
+        if(from < entries.size()) {
+            last.setOverflow(newChain(entries.subList(from, entries.size())));
+        } else if(rest != 0) {
+            last.setOverflow(0);
+            release(rest);
+        }
+    }
+
+    /**
+     * 将以bucketUid开头的桶链接到空闲链表的表头
+     * 先断开桶链再更新Boot，中途崩溃时这些桶只是不再被使用
+     */
+    private void release(long bucketUid) throws Exception {
+        if(!hasFree) {
+            return;
+        }
+        Bucket tail = Bucket.loadBucket(this, bucketUid);
+        for(long overflow = tail.overflow(); overflow != 0; overflow = tail.overflow()) {
+            tail = Bucket.loadBucket(this, overflow);
+        }
+        tail.setOverflow(free);
+        free = bucketUid;
+        updateBoot();
+    }
+
+    private List<Entry> chainEntries(long bucketUid) throws Exception {
+        List<Entry> entries = new ArrayList<>();
+        while(bucketUid != 0) {
+            Bucket bucket = Bucket.loadBucket(this, bucketUid);
+            entries.addAll(bucket.entries());
+            bucketUid = bucket.overflow();
+        }
+        return entries;
+    }
+
+    // 为entries新建一条桶链，返回链首的uid
+    private long newChain(List<Entry> entries) throws Exception {
+        List<SubArray> raws = new ArrayList<>();
+        int from = 0;
+        do {
+            SubArray raw = Bucket.newBucketRaw();
+            from = Bucket.setRawEntries(raw, entries, from);
+            raws.add(raw);
+        } while(from < entries.size());
+        // 先从空闲链表中取出要复用的桶并更新Boot，再覆盖它们
+        List<Bucket> reused = new ArrayList<>();
+        while(free != 0 && reused.size() < raws.size()) {
+            Bucket b = Bucket.loadBucket(this, free);
+            reused.add(b);
+            free = b.overflow();
+        }
+        if(!reused.isEmpty()) {
+            updateBoot();
+        }
+        long overflow = 0;
+        for(int i = raws.size()-1; i >= 0; i --) {
+            Bucket.setRawOverflow(raws.get(i), overflow);
+            if(i < reused.size()) {
+                reused.get(i).overwrite(raws.get(i));
+                overflow = reused.get(i).uid;
+            } else {
+                overflow = dm.insert(TransactionManagerImpl.SUPER_XID, segment, raws.get(i).raw);
+            }
+        }
+        return overflow;
+    }
+}
@@ -7,12 +7,18 @@ import simpleDB.backend.utils.Parser;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Node结构如下：
  * [LeafFlag][KeyNumber][SiblingUid]
- * [Son0][Key0][Son1][Key1]...[SonN][KeyN]
+ * [Son0][Shared0][Suffix0Length][Suffix0][Son1][Shared1][Suffix1Length][Suffix1]...
+ * 节点大小与页面相同，一个节点正好占满一页
+ * key为变长的字节串，按无符号字典序比较
+ * 每个key只存储与前一个key的公共前缀长度Shared，以及剩余的后缀，节点内第一个key的Shared为0
+ * Son按uid的高32位和低32位分别变长编码，Shared和SuffixLength也是变长编码
+ * 内部节点最右侧的key可能为无穷大，其SuffixLength编码为0，否则编码为后缀长度加一
  */
 public class Node {
     static final int IS_LEAF_OFFSET = 0;
@@ -20,8 +26,11 @@ public class Node {
     static final int SIBLING_OFFSET = NO_KEYS_OFFSET+2;
     static final int NODE_HEADER_SIZE = SIBLING_OFFSET+8;
 
-    static final int BALANCE_NUMBER = 32;
-    static final int NODE_SIZE = NODE_HEADER_SIZE + (2*8)*(BALANCE_NUMBER*2+2);
+    static final int INF_KEY = -1;
+
+    static final int NODE_SIZE = DataItem.MAX_DATA_SIZE;
+    // 保证分裂后的两个节点都能容纳下
+    public static final int MAX_KEY_SIZE = NODE_SIZE / 5;
 
     BPlusTree tree;
     DataItem dataItem;
@@ -56,49 +65,223 @@ public class Node {
         return Parser.parseLong(Arrays.copyOfRange(raw.raw, raw.start+SIBLING_OFFSET, raw.start+SIBLING_OFFSET+8));
     }
 
-    static void setRawKthSon(SubArray raw, long uid, int kth) {
-        int offset = raw.start+NODE_HEADER_SIZE+kth*(8*2);
-        System.arraycopy(Parser.long2Byte(uid), 0, raw.raw, offset, 8);
+    /**
+     * 节点中的条目，key为null表示无穷大
+     */
+    static class Entries {
+        List<Long> sons = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>();
+
+        int size() {
+            return sons.size();
+        }
+    }
+
+    // 解码出节点中的全部条目
+    static Entries getRawEntries(SubArray raw) {
+        Entries entries = new Entries();
+        Cursor c = new Cursor(raw);
+        while(c.next()) {
+            entries.sons.add(c.son);
+            entries.keys.add(c.keyLength == INF_KEY ? null : c.key());
+        }
+        return entries;
     }
 
-    static long getRawKthSon(SubArray raw, int kth) {
-        int offset = raw.start+NODE_HEADER_SIZE+kth*(8*2);
-        return Parser.parseLong(Arrays.copyOfRange(raw.raw, offset, offset+8));
+    static int sharedLength(byte[] a, byte[] b) {
+        if(a == null || b == null) {
+            return 0;
+        }
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while(i < n && a[i] == b[i]) {
+            i ++;
+        }
+        return i;
     }
 
-    static void setRawKthKey(SubArray raw, long key, int kth) {
-        int offset = raw.start+NODE_HEADER_SIZE+kth*(8*2)+8;
-        System.arraycopy(Parser.long2Byte(key), 0, raw.raw, offset, 8);
+    static int sonSize(long son) {
+        return Parser.varLongSize(son >>> 32) + Parser.varLongSize(son & 0xffffffffL);
     }
 
-    static long getRawKthKey(SubArray raw, int kth) {
-        int offset = raw.start+NODE_HEADER_SIZE+kth*(8*2)+8;
-        return Parser.parseLong(Arrays.copyOfRange(raw.raw, offset, offset+8));
+    // 第i个条目编码后的大小，prev为前一个条目的key
+    static int entrySize(long son, byte[] prev, byte[] key) {
+        if(key == null) {
+            return sonSize(son) + 2;
+        }
+        int shared = sharedLength(prev, key);
+        int suffixLength = key.length - shared;
+        return sonSize(son) + Parser.varLongSize(shared) + Parser.varLongSize(suffixLength+1) + suffixLength;
     }
 
-    static void copyRawFromKth(SubArray from, SubArray to, int kth) {
-        int offset = from.start+NODE_HEADER_SIZE+kth*(8*2);
-        System.arraycopy(from.raw, offset, to.raw, to.start+NODE_HEADER_SIZE, from.end-offset);
+    // 计算条目[from, to)编码后的大小
+    static int rawSize(Entries entries, int from, int to) {
+        int size = NODE_HEADER_SIZE;
+        for(int i = from; i < to; i ++) {
+            byte[] prev = i == from ? null : entries.keys.get(i-1);
+            size += entrySize(entries.sons.get(i), prev, entries.keys.get(i));
+        }
+        return size;
     }
 
-    static void shiftRawKth(SubArray raw, int kth) {
-        int begin = raw.start+NODE_HEADER_SIZE+(kth+1)*(8*2);
-        int end = raw.start+NODE_SIZE-1;
-        for(int i = end; i >= begin; i --) {
-            raw.raw[i] = raw.raw[i-(8*2)];
+    // 将条目[from, to)编码写入raw
+    static void setRawEntries(SubArray raw, Entries entries, int from, int to) {
+        setRawNoKeys(raw, to - from);
+        int pos = raw.start + NODE_HEADER_SIZE;
+        for(int i = from; i < to; i ++) {
+            long son = entries.sons.get(i);
+            pos = Parser.putVarLong(raw.raw, pos, son >>> 32);
+            pos = Parser.putVarLong(raw.raw, pos, son & 0xffffffffL);
+            byte[] key = entries.keys.get(i);
+            if(key == null) {
+                pos = Parser.putVarLong(raw.raw, pos, 0);
+                pos = Parser.putVarLong(raw.raw, pos, 0);
+                continue;
+            }
+            int shared = sharedLength(i == from ? null : entries.keys.get(i-1), key);
+            pos = Parser.putVarLong(raw.raw, pos, shared);
+            pos = Parser.putVarLong(raw.raw, pos, key.length - shared + 1);
+            System.arraycopy(key, shared, raw.raw, pos, key.length - shared);
+            pos += key.length - shared;
         }
     }
 
-    static byte[] newRootRaw(long left, long right, long key)  {
+    /**
+     * 按无符号字典序比较两个key，null表示无穷大
+     */
+    public static int compare(byte[] a, byte[] b) {
+        if(a == null || b == null) {
+            if(a == b) return 0;
+            return a == null ? 1 : -1;
+        }
+        return compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    static int compare(byte[] a, int aStart, int aLength, byte[] b, int bStart, int bLength) {
+        int n = Math.min(aLength, bLength);
+        for(int i = 0; i < n; i ++) {
+            int x = a[aStart+i] & 0xff, y = b[bStart+i] & 0xff;
+            if(x != y) {
+                return x - y;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    // 返回满足 left < sep <= right 的最短分隔key
+    static byte[] shortestSeparator(byte[] left, byte[] right) {
+        int i = 0;
+        while(i < left.length && left[i] == right[i]) {
+            i ++;
+        }
+        return Arrays.copyOf(right, i+1);
+    }
+
+    /**
+     * 顺序遍历节点条目，在复用的缓冲区中还原出每个key
+     */
+    static class Cursor {
+        SubArray raw;
+        int noKeys, pos, kth;
+        long son;
+        int shared, keyLength;
+        byte[] buf = new byte[64];
+
+        Cursor(SubArray raw) {
+            this.raw = raw;
+            noKeys = getRawNoKeys(raw);
+            pos = raw.start + NODE_HEADER_SIZE;
+            kth = -1;
+        }
+
+        boolean next() {
+            kth ++;
+            if(kth >= noKeys) {
+                return false;
+            }
+            long high = Parser.parseVarLong(raw.raw, pos);
+            pos += Parser.varLongSize(high);
+            long low = Parser.parseVarLong(raw.raw, pos);
+            pos += Parser.varLongSize(low);
+            son = high << 32 | low;
+            shared = (int)Parser.parseVarLong(raw.raw, pos);
+            pos += Parser.varLongSize(shared);
+            int suffixLength = (int)Parser.parseVarLong(raw.raw, pos) - 1;
+            pos += Parser.varLongSize(suffixLength+1);
+            if(suffixLength < 0) {
+                keyLength = INF_KEY;
+                return true;
+            }
+            keyLength = shared + suffixLength;
+            if(keyLength > buf.length) {
+                buf = Arrays.copyOf(buf, keyLength);
+            }
+            System.arraycopy(raw.raw, pos, buf, shared, suffixLength);
+            pos += suffixLength;
+            return true;
+        }
+
+        /**
+         * 比较当前key与probe的目标，必须对连续的每个条目依次调用
+         * 利用上一个key与目标的公共前缀长度，大多数情况下无需逐字节比较
+         */
+        int compareTo(Probe p) {
+            if(keyLength == INF_KEY) {
+                return 1;
+            }
+            int from;
+            if(p.lcp < 0) {
+                from = 0;
+            } else if(shared > p.lcp) {
+                // 与上一个key在不同处的字节相同，比较结果不变
+                return p.cmp;
+            } else if(shared < p.lcp) {
+                // 在shared处大于上一个key，而上一个key在此处与目标相同
+                p.lcp = shared;
+                p.cmp = 1;
+                return 1;
+            } else {
+                from = shared;
+            }
+            byte[] target = p.target;
+            int n = Math.min(keyLength, target.length);
+            int i = from;
+            while(i < n && buf[i] == target[i]) {
+                i ++;
+            }
+            p.lcp = i;
+            p.cmp = i < n ? (buf[i] & 0xff) - (target[i] & 0xff) : keyLength - target.length;
+            return p.cmp;
+        }
+
+        // 当前条目的完整key
+        byte[] key() {
+            return Arrays.copyOf(buf, keyLength);
+        }
+    }
+
+    // 与Cursor配合使用的比较目标，记录上一个key与目标的公共前缀长度和比较结果
+    static class Probe {
+        byte[] target;
+        int lcp = -1;
+        int cmp;
+
+        Probe(byte[] target) {
+            this.target = target;
+        }
+    }
+
+    static byte[] newRootRaw(long left, long right, byte[] key)  {
         SubArray raw = new SubArray(new byte[NODE_SIZE], 0, NODE_SIZE);
 
         setRawIsLeaf(raw, false);
-        setRawNoKeys(raw, 2);
         setRawSibling(raw, 0);
-        setRawKthSon(raw, left, 0);
-        setRawKthKey(raw, key, 0);
-        setRawKthSon(raw, right, 1);
-        setRawKthKey(raw, Long.MAX_VALUE, 1);
+        Entries entries = new Entries();
+        entries.sons.add(left);
+        entries.keys.add(key);
+        entries.sons.add(right);
+        entries.keys.add(null);
+        setRawEntries(raw, entries, 0, 2);
 
         return raw.raw;
     }
@@ -134,28 +317,50 @@ public class Node {
         }
     }
 
-    class SearchNextRes {
-        long uid;
+    /**
+     * 解码后的内部节点，由BPlusTree缓存，查找时无需再读取页面
+     * version为解码时该节点的版本号，节点被修改后缓存即失效，其他节点的缓存不受影响
+     */
+    static class Internal {
+        long version;
         long siblingUid;
+        boolean leafSons;
+        long[] sons;
+        byte[][] keys;
+
+        // 返回第一个key大于目标的son，均不大于时返回0
+        long searchNext(byte[] key) {
+            int low = 0, high = keys.length;
+            while(low < high) {
+                int mid = (low + high) >>> 1;
+                if(compare(keys[mid], key) > 0) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low < keys.length ? sons[low] : 0;
+        }
     }
 
-    public SearchNextRes searchNext(long key) {
+    // 解码内部节点，叶子返回null
+    Internal decodeInternal() {
         dataItem.rLock();
         try {
-            SearchNextRes res = new SearchNextRes();
-            int noKeys = getRawNoKeys(raw);
-            for(int i = 0; i < noKeys; i ++) {
-                long ik = getRawKthKey(raw, i);
-                if(key < ik) {
-                    res.uid = getRawKthSon(raw, i);
-                    res.siblingUid = 0;
-                    return res;
-                }
+            if(getRawIfLeaf(raw)) {
+                return null;
             }
-            res.uid = 0;
-            res.siblingUid = getRawSibling(raw);
-            return res;
-
+            Internal node = new Internal();
+            node.version = tree.version(uid);
+            node.siblingUid = getRawSibling(raw);
+            Entries entries = getRawEntries(raw);
+            node.sons = new long[entries.size()];
+            node.keys = new byte[entries.size()][];
+            for(int i = 0; i < entries.size(); i ++) {
+                node.sons[i] = entries.sons.get(i);
+                node.keys[i] = entries.keys.get(i);
+            }
+            return node;
         } finally {
             dataItem.rUnLock();
         }
@@ -163,37 +368,44 @@ public class Node {
 
     class LeafSearchRangeRes {
         List<Long> uids;
+        List<byte[]> keys;
         long siblingUid;
     }
 
-    public LeafSearchRangeRes leafSearchRange(long leftKey, long rightKey) {
+    // rightKey为null表示无上界，withKeys为true时同时返回完整的key
+    public LeafSearchRangeRes leafSearchRange(byte[] leftKey, byte[] rightKey, boolean withKeys) {
         dataItem.rLock();
         try {
-            int noKeys = getRawNoKeys(raw);
-            int kth = 0;
-            while(kth < noKeys) {
-                long ik = getRawKthKey(raw, kth);
-                if(ik >= leftKey) {
-                    break;
-                }
-                kth ++;
-            }
             List<Long> uids = new ArrayList<>();
-            while(kth < noKeys) {
-                long ik = getRawKthKey(raw, kth);
-                if(ik <= rightKey) {
-                    uids.add(getRawKthSon(raw, kth));
-                    kth ++;
-                } else {
+            List<byte[]> keys = withKeys ? new ArrayList<>() : null;
+            Cursor c = new Cursor(raw);
+            Probe left = new Probe(leftKey);
+            Probe right = rightKey == null ? null : new Probe(rightKey);
+            boolean reachLeft = false;
+            boolean reachEnd = true;
+            while(c.next()) {
+                // 两个probe都需要依次看到每个条目，right在越过left之前也要比较
+                int rightCmp = right == null ? -1 : c.compareTo(right);
+                if(!reachLeft && c.compareTo(left) < 0) {
+                    continue;
+                }
+                reachLeft = true;
+                if(rightCmp > 0) {
+                    reachEnd = false;
                     break;
                 }
+                uids.add(c.son);
+                if(withKeys) {
+                    keys.add(c.key());
+                }
             }
             long siblingUid = 0;
-            if(kth == noKeys) {
+            if(reachEnd) {
                 siblingUid = getRawSibling(raw);
             }
             LeafSearchRangeRes res = new LeafSearchRangeRes();
             res.uids = uids;
+            res.keys = keys;
             res.siblingUid = siblingUid;
             return res;
         } finally {
@@ -202,24 +414,45 @@ public class Node {
     }
 
     class InsertAndSplitRes {
-        long siblingUid, newSon, newKey;
+        long siblingUid, newSon;
+        byte[] newKey;
+        // 插入的key数
+        int count;
+    }
+
+    public InsertAndSplitRes insertAndSplit(long uid, byte[] key) throws Exception {
+        return insertAndSplit(Collections.singletonList(uid), Collections.singletonList(key), 0);
     }
 
-    public InsertAndSplitRes insertAndSplit(long uid, long key) throws Exception {
+    /**
+     * 从第from个开始依次插入升序的key，直到节点需要分裂或key不属于该节点，count为插入的个数
+     * 多个key只修改一次节点，只记一条日志，插入后节点至多分裂一次
+     * 第一个key就不属于该节点时count为0，siblingUid为右侧的节点
+     */
+    public InsertAndSplitRes insertAndSplit(List<Long> uids, List<byte[]> keys, int from) throws Exception {
         boolean success = false;
         Exception err = null;
         InsertAndSplitRes res = new InsertAndSplitRes();
 
         dataItem.before();
         try {
-            success = insert(uid, key);
+            Entries entries = getRawEntries(raw);
+            int i = from;
+            while(i < keys.size() && insert(entries, uids.get(i), keys.get(i))) {
+                i ++;
+                if(needSplit(entries)) {
+                    break;
+                }
+            }
+            res.count = i - from;
+            success = res.count > 0;
             if(!success) {
                 res.siblingUid = getRawSibling(raw);
                 return res;
             }
-            if(needSplit()) {
+            if(needSplit(entries)) {
                 try {
-                    SplitRes r = split();
+                    SplitRes r = split(entries);
                     res.newSon = r.newSon;
                     res.newKey = r.newKey;
                     return res;
@@ -228,10 +461,52 @@ public class Node {
                     throw e;
                 }
             } else {
+                setRawEntries(raw, entries, 0, entries.size());
                 return res;
             }
         } finally {
             if(err == null && success) {
+                if(!getRawIfLeaf(raw)) {
+                    tree.invalidate(uid);
+                }
+                dataItem.after(TransactionManagerImpl.SUPER_XID);
+            } else {
+                dataItem.unBefore();
+            }
+        }
+    }
+
+    class PatchRes {
+        boolean found;
+        long siblingUid;
+    }
+
+    /**
+     * 找到以prefix开头的条目，用bytes覆盖其key中从offset开始的部分
+     * prefix必须唯一确定一个条目，且被覆盖的部分不能影响key的顺序
+     */
+    public PatchRes patchKey(byte[] prefix, int offset, byte[] bytes) throws Exception {
+        PatchRes res = new PatchRes();
+        dataItem.before();
+        try {
+            Entries entries = getRawEntries(raw);
+            for(int i = 0; i < entries.size(); i ++) {
+                byte[] key = entries.keys.get(i);
+                int cmp = compare(key, 0, Math.min(key.length, prefix.length), prefix, 0, prefix.length);
+                if(cmp == 0) {
+                    System.arraycopy(bytes, 0, key, offset, bytes.length);
+                    setRawEntries(raw, entries, 0, entries.size());
+                    res.found = true;
+                    return res;
+                }
+                if(cmp > 0) {
+                    return res;
+                }
+            }
+            res.siblingUid = getRawSibling(raw);
+            return res;
+        } finally {
+            if(res.found) {
                 dataItem.after(TransactionManagerImpl.SUPER_XID);
             } else {
                 dataItem.unBefore();
@@ -239,12 +514,12 @@ public class Node {
         }
     }
 
-    private boolean insert(long uid, long key) {
-        int noKeys = getRawNoKeys(raw);
+    private boolean insert(Entries entries, long uid, byte[] key) {
+        int noKeys = entries.size();
         int kth = 0;
         while(kth < noKeys) {
-            long ik = getRawKthKey(raw, kth);
-            if(ik < key) {
+            byte[] ik = entries.keys.get(kth);
+            if(compare(ik, key) < 0) {
                 kth ++;
             } else {
                 break;
@@ -253,42 +528,53 @@ public class Node {
         if(kth == noKeys && getRawSibling(raw) != 0) return false;
 
         if(getRawIfLeaf(raw)) {
-            shiftRawKth(raw, kth);
-            setRawKthKey(raw, key, kth);
-            setRawKthSon(raw, uid, kth);
-            setRawNoKeys(raw, noKeys+1);
+            entries.keys.add(kth, key);
+            entries.sons.add(kth, uid);
         } else {
-            long kk = getRawKthKey(raw, kth);
-            setRawKthKey(raw, key, kth);
-            shiftRawKth(raw, kth+1);
-            setRawKthKey(raw, kk, kth+1);
-            setRawKthSon(raw, uid, kth+1);
-            setRawNoKeys(raw, noKeys+1);
+            byte[] kk = entries.keys.get(kth);
+            entries.keys.set(kth, key);
+            entries.keys.add(kth+1, kk);
+            entries.sons.add(kth+1, uid);
         }
         return true;
     }
 
-    private boolean needSplit() {
-        return BALANCE_NUMBER*2 == getRawNoKeys(raw);
+    private boolean needSplit(Entries entries) {
+        return rawSize(entries, 0, entries.size()) > NODE_SIZE;
     }
 
     class SplitRes {
-        long newSon, newKey;
+        long newSon;
+        byte[] newKey;
     }
 
-    private SplitRes split() throws Exception {
+    private SplitRes split(Entries entries) throws Exception {
+        // 按编码后的字节数对半分裂
+        int noKeys = entries.size();
+        int total = rawSize(entries, 0, noKeys) - NODE_HEADER_SIZE;
+        int half = 0, mid = 0;
+        while(mid < noKeys-1 && half*2 < total) {
+            byte[] prev = mid == 0 ? null : entries.keys.get(mid-1);
+            half += entrySize(entries.sons.get(mid), prev, entries.keys.get(mid));
+            mid ++;
+        }
+        if(mid == 0) mid = 1;
+
         SubArray nodeRaw = new SubArray(new byte[NODE_SIZE], 0, NODE_SIZE);
         setRawIsLeaf(nodeRaw, getRawIfLeaf(raw));
-        setRawNoKeys(nodeRaw, BALANCE_NUMBER);
         setRawSibling(nodeRaw, getRawSibling(raw));
-        copyRawFromKth(raw, nodeRaw, BALANCE_NUMBER);
-        long son = tree.dm.insert(TransactionManagerImpl.SUPER_XID, nodeRaw.raw);
-        setRawNoKeys(raw, BALANCE_NUMBER);
+        setRawEntries(nodeRaw, entries, mid, noKeys);
+        long son = tree.dm.insert(TransactionManagerImpl.SUPER_XID, tree.segment, nodeRaw.raw);
         setRawSibling(raw, son);
+        setRawEntries(raw, entries, 0, mid);
 
         SplitRes res = new SplitRes();
         res.newSon = son;
-        res.newKey = getRawKthKey(nodeRaw, 0);
+        if(getRawIfLeaf(raw)) {
+            res.newKey = shortestSeparator(entries.keys.get(mid-1), entries.keys.get(mid));
+        } else {
+            res.newKey = entries.keys.get(mid-1);
+        }
         return res;
     }
 
@@ -296,11 +582,12 @@ public class Node {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Is leaf: ").append(getRawIfLeaf(raw)).append("\n");
-        int KeyNumber = getRawNoKeys(raw);
-        sb.append("KeyNumber: ").append(KeyNumber).append("\n");
+        Entries entries = getRawEntries(raw);
+        sb.append("KeyNumber: ").append(entries.size()).append("\n");
         sb.append("sibling: ").append(getRawSibling(raw)).append("\n");
-        for(int i = 0; i < KeyNumber; i ++) {
-            sb.append("son: ").append(getRawKthSon(raw, i)).append(", key: ").append(getRawKthKey(raw, i)).append("\n");
+        for(int i = 0; i < entries.size(); i ++) {
+            byte[] key = entries.keys.get(i);
+            sb.append("son: ").append(entries.sons.get(i)).append(", key: ").append(key == null ? "INF" : Arrays.toString(key)).append("\n");
         }
         return sb.toString();
     }
@@ -1,6 +1,7 @@
 package simpleDB.backend.parser;
 
 import simpleDB.backend.parser.statement.*;
+import simpleDB.backend.utils.Log;
 import simpleDB.common.Error;
 
 import java.util.ArrayList;
@@ -15,39 +16,10 @@ public class Parser {
         Object stat = null;
         Exception statErr = null;
         try {
-            switch(token.toLowerCase()) {
-                case "begin":
-                    stat = parseBegin(tokenizer);
-                    break;
-                case "commit":
-                    stat = parseCommit(tokenizer);
-                    break;
-                case "abort":
-                    stat = parseAbort(tokenizer);
-                    break;
-                case "create":
-                    stat = parseCreate(tokenizer);
-                    break;
-                case "drop":
-                    stat = parseDrop(tokenizer);
-                    break;
-                case "select":
-                    stat = parseSelect(tokenizer);
-                    break;
-                case "insert":
-                    stat = parseInsert(tokenizer);
-                    break;
-                case "delete":
-                    stat = parseDelete(tokenizer);
-                    break;
-                case "update":
-                    stat = parseUpdate(tokenizer);
-                    break;
-                case "show":
-                    stat = parseShow(tokenizer);
-                    break;
-                default:
-                    throw Error.InvalidCommandException;
+            stat = parseStatement(token, tokenizer);
+            // 占位符只能出现在prepare的语句中
+            if(!Prepare.class.isInstance(stat) && !Placeholders.find(stat).isEmpty()) {
+                throw Error.InvalidCommandException;
             }
         } catch(Exception e) {
             statErr = e;
@@ -59,7 +31,7 @@ public class Parser {
                 statErr = new RuntimeException("Invalid statement: " + new String(errStat));
             }
         } catch(Exception e) {
-            e.printStackTrace();
+            Log.debug("Tokenize failed", e);
             byte[] errStat = tokenizer.errStat();
             statErr = new RuntimeException("Invalid statement: " + new String(errStat));
         }
@@ -69,6 +41,69 @@ public class Parser {
         return stat;
     }
 
+    private static Object parseStatement(String token, Tokenizer tokenizer) throws Exception {
+        Object stat;
+        switch(token.toLowerCase()) {
+            case "begin":
+                stat = parseBegin(tokenizer);
+                break;
+            case "commit":
+                stat = parseCommit(tokenizer);
+                break;
+            case "abort":
+                stat = parseAbort(tokenizer);
+                break;
+            case "create":
+                stat = parseCreate(tokenizer);
+                break;
+            case "drop":
+                stat = parseDrop(tokenizer);
+                break;
+            case "select":
+                stat = parseSelect(tokenizer);
+                break;
+            case "insert":
+                stat = parseInsert(tokenizer);
+                break;
+            case "delete":
+                stat = parseDelete(tokenizer);
+                break;
+            case "update":
+                stat = parseUpdate(tokenizer);
+                break;
+            case "show":
+                stat = parseShow(tokenizer);
+                break;
+            case "analyze":
+                stat = parseAnalyze(tokenizer);
+                break;
+            case "declare":
+                stat = parseDeclare(tokenizer);
+                break;
+            case "fetch":
+                stat = parseFetch(tokenizer);
+                break;
+            case "close":
+                stat = parseClose(tokenizer);
+                break;
+            case "prepare":
+                stat = parsePrepare(tokenizer);
+                break;
+            case "execute":
+                stat = parseExecute(tokenizer);
+                break;
+            case "deallocate":
+                stat = parseDeallocate(tokenizer);
+                break;
+            case "copy":
+                stat = parseCopy(tokenizer);
+                break;
+            default:
+                throw Error.InvalidCommandException;
+        }
+        return stat;
+    }
+
     private static Show parseShow(Tokenizer tokenizer) throws Exception {
         String tmp = tokenizer.peek();
         if("".equals(tmp)) {
@@ -145,38 +180,78 @@ public class Parser {
         if(!"values".equals(tokenizer.peek())) {
             throw Error.InvalidCommandException;
         }
+        tokenizer.pop();
+
+        // values (v1, v2), (v3, v4) ... 插入多行，values v1 v2 插入一行
+        if("(".equals(tokenizer.peek())) {
+            List<String[]> rows = new ArrayList<>();
+            while(true) {
+                rows.add(parseValueList(tokenizer));
+                if(!",".equals(tokenizer.peek())) {
+                    break;
+                }
+                tokenizer.pop();
+            }
+            insert.values = rows.toArray(new String[rows.size()][]);
+            return insert;
+        }
 
         List<String> values = new ArrayList<>();
         while(true) {
-            tokenizer.pop();
             String value = tokenizer.peek();
             if("".equals(value)) {
                 break;
             } else {
                 values.add(value);
             }
+            tokenizer.pop();
         }
-        insert.values = values.toArray(new String[values.size()]);
+        insert.values = new String[][] {values.toArray(new String[values.size()])};
 
         return insert;
     }
 
+    private static Copy parseCopy(Tokenizer tokenizer) throws Exception {
+        Copy copy = new Copy();
+        String tableName = tokenizer.peek();
+        if(!isName(tableName)) {
+            throw Error.InvalidCommandException;
+        }
+        copy.tableName = tableName;
+        tokenizer.pop();
+
+        if(!"from".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+
+        String file = tokenizer.peek();
+        if("".equals(file)) {
+            throw Error.InvalidCommandException;
+        }
+        copy.file = "stdin".equals(file) ? null : file;
+        tokenizer.pop();
+        return copy;
+    }
+
     private static Select parseSelect(Tokenizer tokenizer) throws Exception {
         Select read = new Select();
 
         List<String> fields = new ArrayList<>();
+        List<Aggregate> aggregates = new ArrayList<>();
         String asterisk = tokenizer.peek();
         if("*".equals(asterisk)) {
             fields.add(asterisk);
+            aggregates.add(null);
             tokenizer.pop();
         } else {
             while(true) {
-                String field = tokenizer.peek();
-                if(!isName(field)) {
-                    throw Error.InvalidCommandException;
+                Aggregate aggregate = parseColumn(tokenizer);
+                fields.add(aggregate.field);
+                aggregates.add(aggregate.func == null ? null : aggregate);
+                if(aggregate.func != null) {
+                    fields.set(fields.size()-1, aggregate.func + "(" + aggregate.field + ")");
                 }
-                fields.add(field);
-                tokenizer.pop();
                 if(",".equals(tokenizer.peek())) {
                     tokenizer.pop();
                 } else {
@@ -185,6 +260,7 @@ public class Parser {
             }
         }
         read.fields = fields.toArray(new String[fields.size()]);
+        read.aggregates = aggregates.toArray(new Aggregate[0]);
 
         if(!"from".equals(tokenizer.peek())) {
             throw Error.InvalidCommandException;
@@ -198,48 +274,242 @@ public class Parser {
         read.tableName = tableName;
         tokenizer.pop();
 
-        String tmp = tokenizer.peek();
-        if("".equals(tmp)) {
-            read.where = null;
-            return read;
+        String join = tokenizer.peek();
+        if("inner".equals(join)) {
+            tokenizer.pop();
+            if(!"join".equals(tokenizer.peek())) {
+                throw Error.InvalidCommandException;
+            }
+        }
+        if("inner".equals(join) || "join".equals(join)) {
+            read.join = parseJoin(tokenizer);
         }
+        if("where".equals(tokenizer.peek())) {
+            read.where = parseWhere(tokenizer);
+        }
+        read.groupBy = parseGroupBy(tokenizer);
+        read.orderBy = parseOrderBy(tokenizer);
 
-        read.where = parseWhere(tokenizer);
+        read.limit = -1;
+        if("limit".equals(tokenizer.peek())) {
+            tokenizer.pop();
+            read.limit = parseCount(tokenizer);
+            if("offset".equals(tokenizer.peek())) {
+                tokenizer.pop();
+                read.offset = parseCount(tokenizer);
+            }
+        }
         return read;
     }
 
-    private static Where parseWhere(Tokenizer tokenizer) throws Exception {
-        Where where = new Where();
+    // join table on field = field
+    private static Join parseJoin(Tokenizer tokenizer) throws Exception {
+        tokenizer.pop();
+        Join join = new Join();
+        join.tableName = tokenizer.peek();
+        if("".equals(join.tableName) || !isName(join.tableName)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        if(!"on".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        join.leftField = tokenizer.peek();
+        if("".equals(join.leftField) || !isName(join.leftField)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        if(!"=".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        join.rightField = tokenizer.peek();
+        if("".equals(join.rightField) || !isName(join.rightField)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        return join;
+    }
 
-        if(!"where".equals(tokenizer.peek())) {
+    /**
+     * 解析选择的一列：field 或 func(field)，只有count可以使用 *
+     * 返回的func为null时是普通的字段
+     */
+    private static Aggregate parseColumn(Tokenizer tokenizer) throws Exception {
+        Aggregate column = new Aggregate();
+        String name = tokenizer.peek();
+        if("".equals(name) || !isName(name)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        if(!"(".equals(tokenizer.peek())) {
+            column.field = name;
+            return column;
+        }
+        tokenizer.pop();
+        column.func = name.toLowerCase();
+        if(!isAggregateFunc(column.func)) {
+            throw Error.InvalidCommandException;
+        }
+        column.field = tokenizer.peek();
+        boolean asterisk = "*".equals(column.field);
+        if(asterisk && !"count".equals(column.func) || !asterisk && ("".equals(column.field) || !isName(column.field))) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        if(!")".equals(tokenizer.peek())) {
             throw Error.InvalidCommandException;
         }
         tokenizer.pop();
+        return column;
+    }
 
-        SingleExpression exp1 = parseSingleExp(tokenizer);
-        where.singleExp1 = exp1;
+    private static boolean isAggregateFunc(String func) {
+        switch(func) {
+            case "count": case "sum": case "avg": case "min": case "max":
+                return true;
+        }
+        return false;
+    }
 
-        String logicOp = tokenizer.peek();
-        if("".equals(logicOp)) {
-            where.logicOp = logicOp;
-            return where;
+    // group by field {, field}
+    private static String[] parseGroupBy(Tokenizer tokenizer) throws Exception {
+        List<String> groupBy = new ArrayList<>();
+        if(!"group".equals(tokenizer.peek())) {
+            return new String[0];
         }
-        if(!isLogicOp(logicOp)) {
+        tokenizer.pop();
+        if(!"by".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        while(true) {
+            String field = tokenizer.peek();
+            if("".equals(field) || !isName(field)) {
+                throw Error.InvalidCommandException;
+            }
+            groupBy.add(field);
+            tokenizer.pop();
+            if(!",".equals(tokenizer.peek())) {
+                break;
+            }
+            tokenizer.pop();
+        }
+        return groupBy.toArray(new String[0]);
+    }
+
+    // order by column [asc|desc] {, column [asc|desc]}，column 为 field 或 func(field)
+    private static OrderBy[] parseOrderBy(Tokenizer tokenizer) throws Exception {
+        List<OrderBy> orderBy = new ArrayList<>();
+        if(!"order".equals(tokenizer.peek())) {
+            return new OrderBy[0];
+        }
+        tokenizer.pop();
+        if(!"by".equals(tokenizer.peek())) {
             throw Error.InvalidCommandException;
         }
-        where.logicOp = logicOp;
         tokenizer.pop();
+        while(true) {
+            OrderBy ob = new OrderBy();
+            Aggregate column = parseColumn(tokenizer);
+            if(column.func == null) {
+                ob.field = column.field;
+            } else {
+                ob.field = column.func + "(" + column.field + ")";
+                ob.aggregate = column;
+            }
+            String dir = tokenizer.peek();
+            if("asc".equals(dir) || "desc".equals(dir)) {
+                ob.desc = "desc".equals(dir);
+                tokenizer.pop();
+            }
+            orderBy.add(ob);
+            if(!",".equals(tokenizer.peek())) {
+                break;
+            }
+            tokenizer.pop();
+        }
+        return orderBy.toArray(new OrderBy[0]);
+    }
 
-        SingleExpression exp2 = parseSingleExp(tokenizer);
-        where.singleExp2 = exp2;
+    // limit和offset的行数，必须是非负整数
+    private static long parseCount(Tokenizer tokenizer) throws Exception {
+        long count;
+        try {
+            count = Long.parseLong(tokenizer.peek());
+        } catch(NumberFormatException e) {
+            throw Error.InvalidCommandException;
+        }
+        if(count < 0) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        return count;
+    }
 
-        if(!"".equals(tokenizer.peek())) {
+    /**
+     * where条件的语法如下，and的优先级高于or：
+     * or   := and {or and}
+     * and  := not {and not}
+     * not  := not not | ( or ) | exp
+     * exp  := field cmp value | field [not] in (value {, value})
+     *       | field [not] between value and value | field [not] like value
+     */
+    private static Where parseWhere(Tokenizer tokenizer) throws Exception {
+        if(!"where".equals(tokenizer.peek())) {
             throw Error.InvalidCommandException;
         }
+        tokenizer.pop();
+
+        return parseOr(tokenizer);
+    }
+
+    private static Where parseOr(Tokenizer tokenizer) throws Exception {
+        Where where = parseAnd(tokenizer);
+        while("or".equals(tokenizer.peek())) {
+            tokenizer.pop();
+            where = logic("or", where, parseAnd(tokenizer));
+        }
         return where;
     }
 
-    private static SingleExpression parseSingleExp(Tokenizer tokenizer) throws Exception {
+    private static Where parseAnd(Tokenizer tokenizer) throws Exception {
+        Where where = parseNot(tokenizer);
+        while("and".equals(tokenizer.peek())) {
+            tokenizer.pop();
+            where = logic("and", where, parseNot(tokenizer));
+        }
+        return where;
+    }
+
+    private static Where parseNot(Tokenizer tokenizer) throws Exception {
+        String token = tokenizer.peek();
+        if("not".equals(token)) {
+            tokenizer.pop();
+            return logic("not", parseNot(tokenizer), null);
+        }
+        if("(".equals(token)) {
+            tokenizer.pop();
+            Where where = parseOr(tokenizer);
+            if(!")".equals(tokenizer.peek())) {
+                throw Error.InvalidCommandException;
+            }
+            tokenizer.pop();
+            return where;
+        }
+        return parseSingleExp(tokenizer);
+    }
+
+    private static Where logic(String logicOp, Where left, Where right) {
+        Where where = new Where();
+        where.logicOp = logicOp;
+        where.left = left;
+        where.right = right;
+        return where;
+    }
+
+    private static Where parseSingleExp(Tokenizer tokenizer) throws Exception {
         SingleExpression exp = new SingleExpression();
         
         String field = tokenizer.peek();
@@ -250,23 +520,190 @@ public class Parser {
         tokenizer.pop();
 
         String op = tokenizer.peek();
+        boolean not = false;
+        if("not".equals(op)) {
+            not = true;
+            tokenizer.pop();
+            op = tokenizer.peek();
+            if(!"in".equals(op) && !"between".equals(op) && !"like".equals(op)) {
+                throw Error.InvalidCommandException;
+            }
+        }
         if(!isCmpOp(op)) {
             throw Error.InvalidCommandException;
         }
-        exp.compareOp = op;
+        exp.compareOp = "<>".equals(op) ? "!=" : op;
         tokenizer.pop();
 
-        exp.value = tokenizer.peek();
+        switch(exp.compareOp) {
+            case "in":
+                exp.values = parseValueList(tokenizer);
+                break;
+            case "between":
+                String low = parseValue(tokenizer);
+                if(!"and".equals(tokenizer.peek())) {
+                    throw Error.InvalidCommandException;
+                }
+                tokenizer.pop();
+                exp.values = new String[]{low, parseValue(tokenizer)};
+                break;
+            default:
+                exp.value = parseValue(tokenizer);
+        }
+
+        Where where = new Where();
+        where.logicOp = "";
+        where.exp = exp;
+        return not ? logic("not", where, null) : where;
+    }
+
+    private static String parseValue(Tokenizer tokenizer) throws Exception {
+        String value = tokenizer.peek();
+        if("".equals(value)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        return value;
+    }
+
+    private static String[] parseValueList(Tokenizer tokenizer) throws Exception {
+        if(!"(".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
         tokenizer.pop();
-        return exp;
+        List<String> values = new ArrayList<>();
+        while(true) {
+            values.add(parseValue(tokenizer));
+            String next = tokenizer.peek();
+            tokenizer.pop();
+            if(")".equals(next)) {
+                break;
+            }
+            if(!",".equals(next)) {
+                throw Error.InvalidCommandException;
+            }
+        }
+        return values.toArray(new String[0]);
     }
 
     private static boolean isCmpOp(String op) {
-        return ("=".equals(op) || ">".equals(op) || "<".equals(op));
+        switch(op) {
+            case "<": case "<=": case "=": case "!=": case "<>": case ">=": case ">":
+            case "in": case "between": case "like":
+                return true;
+        }
+        return false;
+    }
+
+    private static Analyze parseAnalyze(Tokenizer tokenizer) throws Exception {
+        String tableName = tokenizer.peek();
+        if(!isName(tableName)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+
+        Analyze analyze = new Analyze();
+        analyze.tableName = tableName;
+        return analyze;
+    }
+
+    private static Declare parseDeclare(Tokenizer tokenizer) throws Exception {
+        Declare declare = new Declare();
+        declare.name = parseCursorName(tokenizer);
+        if(!"cursor".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        if(!"for".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        if(!"select".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        declare.select = parseSelect(tokenizer);
+        return declare;
     }
 
-    private static boolean isLogicOp(String op) {
-        return ("and".equals(op) || "or".equals(op));
+    private static Fetch parseFetch(Tokenizer tokenizer) throws Exception {
+        Fetch fetch = new Fetch();
+        fetch.count = 1;
+        if("all".equals(tokenizer.peek())) {
+            tokenizer.pop();
+            fetch.count = -1;
+        } else if(!"".equals(tokenizer.peek()) && Character.isDigit(tokenizer.peek().charAt(0))) {
+            fetch.count = parseCount(tokenizer);
+        }
+        if("from".equals(tokenizer.peek())) {
+            tokenizer.pop();
+        }
+        fetch.name = parseCursorName(tokenizer);
+        return fetch;
+    }
+
+    private static Close parseClose(Tokenizer tokenizer) throws Exception {
+        Close close = new Close();
+        close.name = parseCursorName(tokenizer);
+        return close;
+    }
+
+    private static Prepare parsePrepare(Tokenizer tokenizer) throws Exception {
+        Prepare prepare = new Prepare();
+        prepare.name = parseCursorName(tokenizer);
+        if(!"as".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        String token = tokenizer.peek();
+        tokenizer.pop();
+        switch(token) {
+            case "select": case "insert": case "update": case "delete":
+                prepare.statement = parseStatement(token, tokenizer);
+                break;
+            default:
+                throw Error.InvalidCommandException;
+        }
+        markPrepared(prepare.statement);
+        return prepare;
+    }
+
+    // prepare的语句每次执行时where只有值改变，执行计划可以按where缓存
+    private static void markPrepared(Object stat) {
+        Where where = null;
+        if(Select.class.isInstance(stat)) {
+            where = ((Select)stat).where;
+        } else if(Update.class.isInstance(stat)) {
+            where = ((Update)stat).where;
+        } else if(Delete.class.isInstance(stat)) {
+            where = ((Delete)stat).where;
+        }
+        if(where != null) {
+            where.prepared = true;
+        }
+    }
+
+    private static Execute parseExecute(Tokenizer tokenizer) throws Exception {
+        Execute execute = new Execute();
+        execute.name = parseCursorName(tokenizer);
+        execute.params = "(".equals(tokenizer.peek()) ? parseValueList(tokenizer) : new String[0];
+        return execute;
+    }
+
+    private static Deallocate parseDeallocate(Tokenizer tokenizer) throws Exception {
+        Deallocate deallocate = new Deallocate();
+        deallocate.name = parseCursorName(tokenizer);
+        return deallocate;
+    }
+
+    // 游标和prepare的语句的名字
+    private static String parseCursorName(Tokenizer tokenizer) throws Exception {
+        String name = tokenizer.peek();
+        if("".equals(name) || !isName(name)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        return name;
     }
 
     private static Drop parseDrop(Tokenizer tokenizer) throws Exception {
@@ -344,20 +781,35 @@ public class Parser {
             throw Error.InvalidCommandException;
         }
 
-        List<String> indexes = new ArrayList<>();
+        List<IndexDef> indexes = new ArrayList<>();
+        boolean advanced = false;
         while(true) {
-            tokenizer.pop();
+            if(!advanced) {
+                tokenizer.pop();
+            }
+            advanced = false;
             String field = tokenizer.peek();
             if(")".equals(field)) {
                 break;
             }
-            if(!isName(field)) {
+            if("(".equals(field)) {
+                indexes.add(parseIndexDef(tokenizer));
+            } else if(!isName(field)) {
                 throw Error.InvalidCommandException;
+            } else if("hash".equals(field)) {
+                tokenizer.pop();
+                if("(".equals(tokenizer.peek())) {
+                    indexes.add(parseHashIndexDef(tokenizer));
+                } else {
+                    // 名为hash的字段
+                    indexes.add(fieldIndexDef(field));
+                    advanced = true;
+                }
             } else {
-                indexes.add(field);
+                indexes.add(fieldIndexDef(field));
             }
         }
-        create.index = indexes.toArray(new String[indexes.size()]);
+        create.index = indexes.toArray(new IndexDef[indexes.size()]);
         tokenizer.pop();
 
         if(!"".equals(tokenizer.peek())) {
@@ -366,6 +818,58 @@ public class Parser {
         return create;
     }
 
+    // (field1 field2 ... [include field3 field4 ...])
+    private static IndexDef parseIndexDef(Tokenizer tokenizer) throws Exception {
+        List<String> fields = new ArrayList<>();
+        List<String> include = new ArrayList<>();
+        List<String> names = fields;
+        while(true) {
+            tokenizer.pop();
+            String field = tokenizer.peek();
+            if(")".equals(field)) {
+                break;
+            }
+            if("include".equals(field) && names == fields) {
+                names = include;
+                continue;
+            }
+            if(!isName(field)) {
+                throw Error.InvalidCommandException;
+            }
+            names.add(field);
+        }
+        if(fields.size() == 0) {
+            throw Error.InvalidCommandException;
+        }
+        IndexDef def = new IndexDef();
+        def.fields = fields.toArray(new String[fields.size()]);
+        def.include = include.toArray(new String[include.size()]);
+        return def;
+    }
+
+    // hash(field)
+    private static IndexDef parseHashIndexDef(Tokenizer tokenizer) throws Exception {
+        tokenizer.pop();
+        String field = tokenizer.peek();
+        if(!isName(field)) {
+            throw Error.InvalidCommandException;
+        }
+        tokenizer.pop();
+        if(!")".equals(tokenizer.peek())) {
+            throw Error.InvalidCommandException;
+        }
+        IndexDef def = fieldIndexDef(field);
+        def.hash = true;
+        return def;
+    }
+
+    private static IndexDef fieldIndexDef(String field) {
+        IndexDef def = new IndexDef();
+        def.fields = new String[]{field};
+        def.include = new String[0];
+        return def;
+    }
+
     private static boolean isType(String tp) {
         return ("int32".equals(tp) || "int64".equals(tp) ||
         "string".equals(tp));
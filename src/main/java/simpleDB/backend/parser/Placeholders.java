@@ -0,0 +1,63 @@
+package simpleDB.backend.parser;
+
+import simpleDB.backend.parser.statement.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Placeholders 找出语句中的参数占位符，按在语句中出现的顺序返回为每个占位符赋值的方法
+ * 赋值直接修改语句，同一个语句可以反复赋值后执行，但同一时刻只能被一个线程使用
+ */
+public class Placeholders {
+
+    public static List<Consumer<String>> find(Object stat) {
+        List<Consumer<String>> res = new ArrayList<>();
+        if(Select.class.isInstance(stat)) {
+            find(((Select)stat).where, res);
+        } else if(Insert.class.isInstance(stat)) {
+            for(String[] values : ((Insert)stat).values) {
+                find(values, res);
+            }
+        } else if(Update.class.isInstance(stat)) {
+            Update update = (Update)stat;
+            if(update.value == Tokenizer.PARAM) {
+                res.add(v -> update.value = v);
+            }
+            find(update.where, res);
+        } else if(Delete.class.isInstance(stat)) {
+            find(((Delete)stat).where, res);
+        } else if(Declare.class.isInstance(stat)) {
+            find(((Declare)stat).select.where, res);
+        }
+        return res;
+    }
+
+    private static void find(Where where, List<Consumer<String>> res) {
+        if(where == null) {
+            return;
+        }
+        if(where.exp != null) {
+            SingleExpression exp = where.exp;
+            if(exp.value == Tokenizer.PARAM) {
+                res.add(v -> exp.value = v);
+            }
+            find(exp.values, res);
+        }
+        find(where.left, res);
+        find(where.right, res);
+    }
+
+    private static void find(String[] values, List<Consumer<String>> res) {
+        if(values == null) {
+            return;
+        }
+        for(int i = 0; i < values.length; i ++) {
+            if(values[i] == Tokenizer.PARAM) {
+                int k = i;
+                res.add(v -> values[k] = v);
+            }
+        }
+    }
+}
@@ -3,6 +3,9 @@ package simpleDB.backend.parser;
 import simpleDB.common.Error;
 
 public class Tokenizer {
+    // 参数占位符，总是返回这一个实例，用引用比较与值为?的字符串区分
+    static final String PARAM = new String("?");
+
     private byte[] stat;
     private int pos;
     private String currentToken;
@@ -79,13 +82,30 @@ public class Tokenizer {
             popByte();
         }
         byte b = peekByte();
-        if(isSymbol(b)) {
+        if(isSymbol(b) || b == '!') {
             popByte();
+            // <= >= != <> 为两个字节的比较运算符
+            Byte c = peekByte();
+            if(c != null && (c == '=' && (b == '<' || b == '>' || b == '!') || c == '>' && b == '<')) {
+                popByte();
+                return new String(new byte[]{b, c});
+            }
+            if(b == '!') {
+                err = Error.InvalidCommandException;
+                throw err;
+            }
             return new String(new byte[]{b});
+        } else if(b == '?') {
+            popByte();
+            return PARAM;
         } else if(b == '"' || b == '\'') {
             return nextQuoteState();
         } else if(isAlphaBeta(b) || isDigit(b)) {
             return nextTokenState();
+        } else if(b == '-' && pos + 1 < stat.length && isDigit(stat[pos + 1])) {
+            // 没有算术运算，-后紧跟数字时是负数的一部分
+            popByte();
+            return "-" + nextTokenState();
         } else {
             err = Error.InvalidCommandException;
             throw err;
@@ -96,7 +116,8 @@ public class Tokenizer {
         StringBuilder sb = new StringBuilder();
         while(true) {
             Byte b = peekByte();
-            if(b == null || !(isAlphaBeta(b) || isDigit(b) || b == '_')) {
+            // 表名.字段名 作为一个token
+            if(b == null || !(isAlphaBeta(b) || isDigit(b) || b == '_' || b == '.')) {
                 if(b != null && isBlank(b)) {
                     popByte();
                 }
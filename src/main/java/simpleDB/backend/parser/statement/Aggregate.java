@@ -0,0 +1,9 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * func 为 count sum avg min max，field 为聚合的字段，count(*) 时为 *
+ */
+public class Aggregate {
+    public String func;
+    public String field;
+}
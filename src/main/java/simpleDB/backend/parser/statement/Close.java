@@ -0,0 +1,5 @@
+package simpleDB.backend.parser.statement;
+
+public class Close {
+    public String name;
+}
@@ -0,0 +1,10 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * copy table from 'file' | stdin
+ * 从服务端的文件或客户端发送的数据中批量导入记录，file为null表示stdin
+ */
+public class Copy {
+    public String tableName;
+    public String file;
+}
@@ -4,5 +4,5 @@ public class Create {
     public String tableName;
     public String[] fieldName;
     public String[] fieldType;
-    public String[] index;
+    public IndexDef[] index;
 }
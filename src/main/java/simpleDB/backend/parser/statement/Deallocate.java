@@ -0,0 +1,5 @@
+package simpleDB.backend.parser.statement;
+
+public class Deallocate {
+    public String name;
+}
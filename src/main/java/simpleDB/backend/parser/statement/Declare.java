@@ -0,0 +1,10 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * declare name cursor for select ...
+ * 在当前事务中打开一个名为name的游标，事务结束时自动关闭
+ */
+public class Declare {
+    public String name;
+    public Select select;
+}
@@ -0,0 +1,10 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * execute name [(value1, value2, ...)]
+ * params 为依次绑定到占位符的值
+ */
+public class Execute {
+    public String name;
+    public String[] params;
+}
@@ -0,0 +1,10 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * fetch [count | all] [from] name
+ * count 为取出的行数，省略时为1，为-1时取出剩余的全部记录
+ */
+public class Fetch {
+    public String name;
+    public long count;
+}
@@ -0,0 +1,7 @@
+package simpleDB.backend.parser.statement;
+
+public class IndexDef {
+    public String[] fields;
+    public String[] include;
+    public boolean hash;
+}
@@ -2,5 +2,6 @@ package simpleDB.backend.parser.statement;
 
 public class Insert {
     public String tableName;
-    public String[] values;
+    // 每个元素为一行的值
+    public String[][] values;
 }
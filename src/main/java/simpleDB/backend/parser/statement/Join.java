@@ -0,0 +1,10 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * join tableName on leftField = rightField，两个字段可以带表名
+ */
+public class Join {
+    public String tableName;
+    public String leftField;
+    public String rightField;
+}
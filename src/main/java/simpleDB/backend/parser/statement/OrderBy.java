@@ -0,0 +1,10 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * 按聚合函数排序时field为 func(field)，aggregate 不为null
+ */
+public class OrderBy {
+    public String field;
+    public Aggregate aggregate;
+    public boolean desc;
+}
@@ -0,0 +1,10 @@
+package simpleDB.backend.parser.statement;
+
+/**
+ * prepare name as statement
+ * statement 为select、insert、update或delete，值的位置可以是参数占位符?，执行时按出现的顺序绑定
+ */
+public class Prepare {
+    public String name;
+    public Object statement;
+}
@@ -1,7 +1,19 @@
 package simpleDB.backend.parser.statement;
 
+/**
+ * fields 为选择的列名，聚合函数的列名为 func(field)，此时aggregates中对应位置不为null
+ * join 不为null时与另一个表连接，列名可以写作 表名.字段名
+ * groupBy 和 orderBy 为空数组时不分组、不排序
+ * limit 为-1时不限制返回的行数，offset 为跳过的行数
+ */
 public class Select {
     public String tableName;
     public String[] fields;
+    public Aggregate[] aggregates;
+    public Join join;
     public Where where;
+    public String[] groupBy;
+    public OrderBy[] orderBy;
+    public long limit;
+    public long offset;
 }
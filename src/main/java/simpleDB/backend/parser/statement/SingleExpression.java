@@ -1,7 +1,12 @@
 package simpleDB.backend.parser.statement;
 
+/**
+ * compareOp 为 < <= = != >= > like 时比较对象为value
+ * 为 in 时为values中的所有值，为 between 时values为上下界
+ */
 public class SingleExpression {
     public String field;
     public String compareOp;
     public String value;
+    public String[] values;
 }
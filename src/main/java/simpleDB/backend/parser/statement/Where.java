@@ -1,7 +1,16 @@
 package simpleDB.backend.parser.statement;
 
+/**
+ * Where 是where条件的语法树
+ * logicOp 为 and/or 时有左右子树，为 not 时只有left，为空串时是叶子节点，条件为exp
+ * prepared 只在根节点上设置，为true时where属于prepare的语句，每次执行时只有值改变
+ * 此时plan保存tbm为该where选择的访问路径，再次执行时直接使用
+ */
 public class Where {
-    public SingleExpression singleExp1;
     public String logicOp;
-    public SingleExpression singleExp2;
+    public Where left;
+    public Where right;
+    public SingleExpression exp;
+    public boolean prepared;
+    public Object plan;
 }
@@ -1,14 +1,55 @@
 package simpleDB.backend.server;
 
 import simpleDB.backend.parser.Parser;
+import simpleDB.backend.parser.Placeholders;
 import simpleDB.backend.parser.statement.*;
 import simpleDB.backend.tbm.BeginRes;
+import simpleDB.backend.tbm.ResultCursor;
 import simpleDB.backend.tbm.TableManager;
+import simpleDB.backend.utils.Log;
 import simpleDB.common.Error;
+import simpleDB.transport.Columns;
+import simpleDB.transport.Package;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Executor 执行一个连接上的语句，保存连接当前的事务和打开的游标
+ * 游标有两种：
+ * declare打开的命名游标，只能在事务中使用，在fetch时读取记录，事务结束时关闭
+ * stream打开的结果流，每次返回fetchSize行，没有事务时使用临时事务，结果读完、被关闭或执行下一条语句时提交
+ * prepare的语句只解析一次，execute时将参数赋值到解析好的语句中直接执行，连接关闭时释放
+ * copy from stdin的数据分块发送，导入期间执行其他语句或关闭连接时放弃导入
+ * 连接被客户端的连接池回收时reset，之后的会话与新连接相同，只保留prepare的语句
+ * 执行的语句以debug级别写入日志，超过阈值的语句的各阶段耗时由SlowLog记录
+ * drop table立即释放表的段且无法回滚，因此只能在事务之外执行
+ */
 public class Executor {
     private long xid;
     TableManager tbm;
+    private Map<String, ResultCursor> cursors = new HashMap<>();
+    private Map<String, Prepared> prepared = new HashMap<>();
+    private SlowLog slow = new SlowLog();
+
+    private ResultCursor stream;
+    private long fetchSize;
+    // stream的结果按列编码
+    private boolean columnar;
+    // stream使用的是临时事务
+    private boolean streamTransaction;
+
+    private Copy copy;
+    private long copied;
+    private Exception copyErr;
+    // copy使用的是临时事务
+    private boolean copyTransaction;
 
     public Executor(TableManager tbm) {
         this.tbm = tbm;
@@ -16,15 +57,273 @@ public class Executor {
     }
 
     public void close() {
+        closeCopy();
+        if(stream != null) {
+            stream.close();
+            stream = null;
+            if(streamTransaction) {
+                tbm.abort(xid);
+                streamTransaction = false;
+                xid = 0;
+            }
+        }
+        closeCursors();
         if(xid != 0) {
-            System.out.println("Abnormal Abort: " + xid);
+            Log.warn("Abnormal Abort: {}", xid);
             tbm.abort(xid);
         }
     }
 
+    // 放弃导入、结果流和游标，回滚未结束的事务
+    public void reset() throws Exception {
+        closeCopy();
+        closeStream();
+        closeCursors();
+        if(xid != 0) {
+            long t = xid;
+            xid = 0;
+            tbm.abort(t);
+        }
+    }
+
     public byte[] execute(byte[] sql) throws Exception {
-        System.out.println("Execute: " + new String(sql));
-        Object stat = Parser.Parse(sql);
+        Log.debug("Execute: {}", sql);
+        slow.start(sql);
+        try {
+            closeCopy();
+            closeStream();
+            Object stat = Parser.Parse(sql);
+            slow.mark("parse");
+            return execute(stat);
+        } finally {
+            slow.finish();
+        }
+    }
+
+    /**
+     * 执行一条语句，语句为select时只返回前fetchSize行，hasMore为true时其余的记录通过fetchMore取出
+     * fetchSize小于等于0时返回全部记录
+     */
+    public byte[] stream(byte[] sql, int fetchSize) throws Exception {
+        return stream(sql, fetchSize, false);
+    }
+
+    /**
+     * columnar为true时每批结果以Columns.RESULT_COLUMNS开头并按列编码，
+     * 不是select的语句的结果以Columns.RESULT_TEXT开头
+     */
+    public byte[] stream(byte[] sql, int fetchSize, boolean columnar) throws Exception {
+        Log.debug("Execute: {}", sql);
+        slow.start(sql);
+        try {
+            closeCopy();
+            closeStream();
+            Object stat = bind(Parser.Parse(sql));
+            slow.mark("parse");
+            if(!Select.class.isInstance(stat)) {
+                return columnar ? prefix(Columns.RESULT_TEXT, execute(stat)) : execute(stat);
+            }
+            if(xid == 0) {
+                BeginRes r = tbm.begin(new Begin());
+                xid = r.xid;
+                streamTransaction = true;
+                slow.mark("begin");
+            }
+            try {
+                stream = tbm.open(xid, (Select)stat);
+            } catch(Exception e) {
+                endStream(e);
+                throw e;
+            }
+            slow.mark("plan");
+            this.fetchSize = fetchSize > 0 ? fetchSize : -1;
+            this.columnar = columnar;
+            byte[] res = fetchMore();
+            slow.mark("fetch");
+            return res;
+        } finally {
+            slow.finish();
+        }
+    }
+
+    /**
+     * 在一个事务中依次执行多条语句，返回各条语句的结果，不在事务中时使用临时事务，全部成功后提交
+     * 语句在执行前全部解析，只能是select、insert、update、delete、show、analyze或execute，解析失败时不执行任何语句
+     * 任一条失败时停止执行，最后一个结果为该条语句的错误，与单独执行它时的错误相同
+     * 此时临时事务回滚；在显式的事务中时事务的状态与单独执行这些语句时相同
+     */
+    public List<Package> batch(List<byte[]> sqls) throws Exception {
+        closeCopy();
+        closeStream();
+        List<Object> stats = new ArrayList<>();
+        for(byte[] sql : sqls) {
+            Object stat = Parser.Parse(sql);
+            if(!isBatchable(stat)) {
+                throw Error.InvalidCommandException;
+            }
+            stats.add(stat);
+        }
+        boolean tmpTransaction = false;
+        if(xid == 0) {
+            tmpTransaction = true;
+            BeginRes r = tbm.begin(new Begin());
+            xid = r.xid;
+        }
+        List<Package> res = new ArrayList<>();
+        Exception err = null;
+        for(Object parsed : stats) {
+            try {
+                Object stat = bind(parsed);
+                if(Execute.class.isInstance(parsed) && !isBatchable(stat)) {
+                    throw Error.InvalidCommandException;
+                }
+                res.add(new Package(execute2(stat), null));
+            } catch(Exception e) {
+                res.add(new Package(null, e));
+                err = e;
+                break;
+            }
+        }
+        if(tmpTransaction) {
+            long t = xid;
+            xid = 0;
+            if(err != null) {
+                tbm.abort(t);
+            } else {
+                tbm.commit(t);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * copy table from stdin，data为一块完整的行，data为空表示数据已全部发送，返回导入的行数
+     * 不在事务中时使用临时事务，全部导入后提交；中途出错时临时事务立即回滚，
+     * 之后的数据被丢弃，最后返回该错误。每块数据在收到时导入，不必等待全部数据
+     */
+    public byte[] copy(byte[] sql, byte[] data) throws Exception {
+        closeStream();
+        if(copy == null) {
+            Object stat = Parser.Parse(sql);
+            if(!Copy.class.isInstance(stat) || ((Copy)stat).file != null) {
+                throw Error.InvalidCommandException;
+            }
+            Log.debug("Execute: {}", sql);
+            copy = (Copy)stat;
+            copied = 0;
+            copyErr = null;
+            if(xid == 0) {
+                BeginRes r = tbm.begin(new Begin());
+                xid = r.xid;
+                copyTransaction = true;
+            }
+        }
+        if(data.length > 0) {
+            if(copyErr == null) {
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data)));
+                    copied += tbm.copy(xid, copy.tableName, in);
+                } catch(Exception e) {
+                    copyErr = e;
+                    abortCopy();
+                }
+            }
+            return new byte[0];
+        }
+        Exception e = copyErr;
+        long n = copied;
+        copy = null;
+        copyErr = null;
+        if(e != null) {
+            throw e;
+        }
+        if(copyTransaction) {
+            copyTransaction = false;
+            long t = xid;
+            xid = 0;
+            tbm.commit(t);
+        }
+        return ("copy " + n).getBytes();
+    }
+
+    // 放弃未完成的copy
+    public void closeCopy() {
+        if(copy != null) {
+            copy = null;
+            copyErr = null;
+            abortCopy();
+        }
+    }
+
+    // 回滚copy的临时事务
+    private void abortCopy() {
+        if(copyTransaction) {
+            copyTransaction = false;
+            tbm.abort(xid);
+            xid = 0;
+        }
+    }
+
+    private static boolean isBatchable(Object stat) {
+        return Select.class.isInstance(stat) || Insert.class.isInstance(stat) || Update.class.isInstance(stat)
+            || Delete.class.isInstance(stat) || Show.class.isInstance(stat) || Analyze.class.isInstance(stat)
+            || Execute.class.isInstance(stat);
+    }
+
+    // 取出stream的下一批记录，全部取出后stream被关闭
+    public byte[] fetchMore() throws Exception {
+        if(stream == null) {
+            throw Error.CursorNotFoundException;
+        }
+        try {
+            byte[] res = columnar ? prefix(Columns.RESULT_COLUMNS, stream.fetchColumns(fetchSize)) : stream.fetch(fetchSize);
+            if(stream.isDone()) {
+                endStream(null);
+            }
+            return res;
+        } catch(Exception e) {
+            endStream(e);
+            throw e;
+        }
+    }
+
+    private static byte[] prefix(byte kind, byte[] res) {
+        byte[] out = new byte[res.length + 1];
+        out[0] = kind;
+        System.arraycopy(res, 0, out, 1, res.length);
+        return out;
+    }
+
+    public boolean hasMore() {
+        return stream != null;
+    }
+
+    // 放弃stream中剩余的记录
+    public void closeStream() throws Exception {
+        if(stream != null) {
+            endStream(null);
+        }
+    }
+
+    private void endStream(Exception e) throws Exception {
+        if(stream != null) {
+            stream.close();
+            stream = null;
+        }
+        if(streamTransaction) {
+            streamTransaction = false;
+            long t = xid;
+            xid = 0;
+            if(e != null) {
+                tbm.abort(t);
+            } else {
+                tbm.commit(t);
+            }
+        }
+    }
+
+    private byte[] execute(Object stat) throws Exception {
+        stat = bind(stat);
         if(Begin.class.isInstance(stat)) {
             if(xid != 0) {
                 throw Error.NestedTransactionException;
@@ -36,6 +335,7 @@ public class Executor {
             if(xid == 0) {
                 throw Error.NoTransactionException;
             }
+            closeCursors();
             byte[] res = tbm.commit(xid);
             xid = 0;
             return res;
@@ -43,21 +343,90 @@ public class Executor {
             if(xid == 0) {
                 throw Error.NoTransactionException;
             }
+            closeCursors();
             byte[] res = tbm.abort(xid);
             xid = 0;
             return res;
+        } else if(Declare.class.isInstance(stat)) {
+            Declare declare = (Declare)stat;
+            if(xid == 0) {
+                throw Error.NoTransactionException;
+            }
+            if(cursors.containsKey(declare.name)) {
+                throw Error.DuplicatedCursorException;
+            }
+            cursors.put(declare.name, tbm.open(xid, declare.select));
+            return ("declare " + declare.name).getBytes();
+        } else if(Fetch.class.isInstance(stat)) {
+            return cursor(((Fetch)stat).name).fetch(((Fetch)stat).count);
+        } else if(Close.class.isInstance(stat)) {
+            String name = ((Close)stat).name;
+            cursor(name).close();
+            cursors.remove(name);
+            return ("close " + name).getBytes();
+        } else if(Prepare.class.isInstance(stat)) {
+            Prepare prepare = (Prepare)stat;
+            if(prepared.containsKey(prepare.name)) {
+                throw Error.DuplicatedPreparedException;
+            }
+            prepared.put(prepare.name, new Prepared(prepare.statement));
+            return ("prepare " + prepare.name).getBytes();
+        } else if(Deallocate.class.isInstance(stat)) {
+            String name = ((Deallocate)stat).name;
+            if(prepared.remove(name) == null) {
+                throw Error.PreparedNotFoundException;
+            }
+            return ("deallocate " + name).getBytes();
         } else {
             return execute2(stat);
         }
     }
 
+    // execute替换为绑定了参数的语句，其余语句不变
+    private Object bind(Object stat) throws Exception {
+        if(!Execute.class.isInstance(stat)) {
+            return stat;
+        }
+        Execute execute = (Execute)stat;
+        Prepared p = prepared.get(execute.name);
+        if(p == null) {
+            throw Error.PreparedNotFoundException;
+        }
+        if(execute.params.length != p.params.size()) {
+            throw Error.InvalidValuesException;
+        }
+        for(int i = 0; i < execute.params.length; i ++) {
+            p.params.get(i).accept(execute.params[i]);
+        }
+        return p.statement;
+    }
+
+    private ResultCursor cursor(String name) throws Exception {
+        ResultCursor cursor = cursors.get(name);
+        if(cursor == null) {
+            throw Error.CursorNotFoundException;
+        }
+        return cursor;
+    }
+
+    private void closeCursors() {
+        for(ResultCursor cursor : cursors.values()) {
+            cursor.close();
+        }
+        cursors.clear();
+    }
+
     private byte[] execute2(Object stat) throws Exception {
+        if(Drop.class.isInstance(stat) && xid != 0) {
+            throw Error.DropInTransactionException;
+        }
         boolean tmpTransaction = false;
         Exception e = null;
         if(xid == 0) {
             tmpTransaction = true;
             BeginRes r = tbm.begin(new Begin());
             xid = r.xid;
+            slow.mark("begin");
         }
         try {
             byte[] res = null;
@@ -68,14 +437,25 @@ public class Executor {
             } else if (Drop.class.isInstance(stat)) {
                 res = tbm.drop(xid, (Drop) stat);
             } else if(Select.class.isInstance(stat)) {
-                res = tbm.read(xid, (Select)stat);
+                ResultCursor cursor = tbm.open(xid, (Select)stat);
+                slow.mark("plan");
+                try {
+                    res = cursor.fetch(-1);
+                } finally {
+                    cursor.close();
+                }
             } else if(Insert.class.isInstance(stat)) {
                 res = tbm.insert(xid, (Insert)stat);
+            } else if(Copy.class.isInstance(stat)) {
+                res = tbm.copy(xid, (Copy)stat);
             } else if(Delete.class.isInstance(stat)) {
                 res = tbm.delete(xid, (Delete)stat);
             } else if(Update.class.isInstance(stat)) {
                 res = tbm.update(xid, (Update)stat);
+            } else if(Analyze.class.isInstance(stat)) {
+                res = tbm.analyze(xid, (Analyze)stat);
             }
+            slow.mark("execute");
             return res;
         } catch(Exception e1) {
             e = e1;
@@ -88,7 +468,18 @@ public class Executor {
                     tbm.commit(xid);
                 }
                 xid = 0;
+                slow.mark(e != null ? "abort" : "commit");
             }
         }
     }
+
+    private static class Prepared {
+        Object statement;
+        List<Consumer<String>> params;
+
+        Prepared(Object statement) {
+            this.statement = statement;
+            this.params = Placeholders.find(statement);
+        }
+    }
 }
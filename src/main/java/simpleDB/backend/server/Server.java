@@ -1,22 +1,49 @@
 package simpleDB.backend.server;
 
 import simpleDB.backend.tbm.TableManager;
+import simpleDB.backend.utils.Log;
+import simpleDB.transport.Compressor;
 import simpleDB.transport.Encoder;
+import simpleDB.transport.Frame;
+import simpleDB.transport.NioTransporter;
 import simpleDB.transport.Package;
-import simpleDB.transport.Packager;
-import simpleDB.transport.Transporter;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Server 由一个线程通过Selector处理所有连接的读写，语句在有界的线程池中执行
+ * 每个连接同一时刻最多只有一条语句在执行，执行期间不再读取该连接，收到的其余语句按顺序排队
+ * 语句执行完成后，结果由执行线程放入完成队列并唤醒Selector，由Selector线程写出
+ * 空闲的连接只占用一个SelectionKey和读缓冲区，不占用线程
+ * 流式读取的结果每批都要等客户端发送MORE才继续读取，因此每个连接最多缓存一批结果
+ */
 public class Server {
+    // 执行语句的线程数，语句可能在等待行锁时阻塞，因此多于CPU数
+    // 等待超时的语句被回滚并释放线程，见LockTable，持有行锁的事务不会因没有空闲线程而无法提交
+    static final int WORKERS = 32;
+    // 等待执行的语句数超过该值时直接返回错误
+    static final int QUEUE_SIZE = 16384;
+
     private int port;
     TableManager tbm;
+    private Selector selector;
+    private ThreadPoolExecutor workers;
+    private Encoder encoder = new Encoder();
+    private ConcurrentLinkedQueue<Connection> done = new ConcurrentLinkedQueue<>();
 
     public Server(int port, TableManager tbm) {
         this.port = port;
@@ -24,91 +51,230 @@ public class Server {
     }
 
     public void start() {
-        ServerSocket ss = null;
+        ServerSocketChannel ss;
         try {
-            ss = new ServerSocket(port);
+            selector = Selector.open();
+            ss = ServerSocketChannel.open();
+            ss.bind(new InetSocketAddress(port), 1024);
+            ss.configureBlocking(false);
+            ss.register(selector, SelectionKey.OP_ACCEPT);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.error("Server failed to listen to port: {}", port, e);
             return;
         }
-        System.out.println("Server listen to port: " + port);
-        ThreadPoolExecutor tpe = new ThreadPoolExecutor(10, 20,
-                1L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100),
-                new ThreadPoolExecutor.CallerRunsPolicy());
+        Log.info("Server listen to port: {}", port);
+        workers = new ThreadPoolExecutor(WORKERS, WORKERS,
+                1L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE),
+                new ThreadPoolExecutor.AbortPolicy());
         try {
             while(true) {
-                Socket socket = ss.accept();
-                Runnable worker = new HandleSocket(socket, tbm);
-                tpe.execute(worker);
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while(it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if(!key.isValid()) {
+                        continue;
+                    }
+                    if(key.isAcceptable()) {
+                        accept(ss);
+                        continue;
+                    }
+                    Connection conn = (Connection)key.attachment();
+                    if(key.isReadable()) {
+                        read(conn);
+                    }
+                    if(key.isValid() && key.isWritable()) {
+                        write(conn);
+                    }
+                }
+                Connection conn;
+                while((conn = done.poll()) != null) {
+                    finish(conn);
+                }
             }
         } catch(IOException e) {
-            e.printStackTrace();
+            Log.error("Server stopped", e);
         } finally {
+            workers.shutdown();
             try {
                 ss.close();
+                selector.close();
             } catch (IOException ignored) {}
         }
     }
-}
 
-class HandleSocket implements Runnable {
-    private Socket socket;
-    private TableManager tbm;
+    private void accept(ServerSocketChannel ss) throws IOException {
+        SocketChannel channel;
+        while((channel = ss.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection conn = new Connection(new NioTransporter(channel), new Executor(tbm));
+            conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+        }
+    }
 
-    public HandleSocket(Socket socket, TableManager tbm) {
-        this.socket = socket;
-        this.tbm = tbm;
+    private void read(Connection conn) {
+        try {
+            List<Frame> frames = conn.transporter.read();
+            conn.pending.addAll(frames);
+        } catch(Exception e) {
+            close(conn);
+            return;
+        }
+        write(conn);
+        dispatch(conn);
     }
 
-    @Override
-    public void run() {
-        InetSocketAddress address = (InetSocketAddress)socket.getRemoteSocketAddress();
-        System.out.println("Establish connection: " + address.getAddress().getHostAddress()+":"+address.getPort());
-        Packager packager = null;
+    private void write(Connection conn) {
         try {
-            Transporter t = new Transporter(socket);
-            Encoder e = new Encoder();
-            packager = new Packager(t, e);
+            boolean flushed = conn.transporter.flush();
+            conn.flushed = flushed;
         } catch(IOException e) {
-            e.printStackTrace();
-            try {
-                socket.close();
-            } catch (IOException e1) {
-                e1.printStackTrace();
-            }
+            close(conn);
             return;
         }
-        Executor exe = new Executor(tbm);
-        while(true) {
-            Package pkg = null;
-            try {
-                pkg = packager.receive();
-            } catch(Exception e) {
-                break;
-            }
-            byte[] sql = pkg.getData();
-            byte[] result = null;
-            Exception e = null;
-            try {
-                result = exe.execute(sql);
-            } catch (Exception e1) {
-                e = e1;
-                e.printStackTrace();
-            }
-            pkg = new Package(result, e);
-            try {
-                packager.send(pkg);
-            } catch (Exception e1) {
-                e1.printStackTrace();
-                break;
+        if(conn.flushed) {
+            dispatch(conn);
+        }
+        interest(conn);
+    }
+
+    // 连接空闲且结果已写完时，提交下一条语句
+    private void dispatch(Connection conn) {
+        if(conn.closed || conn.running || !conn.flushed || conn.pending.isEmpty()) {
+            interest(conn);
+            return;
+        }
+        Frame frame = conn.pending.poll();
+        conn.running = true;
+        try {
+            workers.execute(() -> {
+                // 执行线程中的任何异常都要返回结果，否则连接不会再被读取
+                try {
+                    conn.result = conn.transporter.compress(handle(conn, frame));
+                } catch(Throwable e) {
+                    Log.error("Statement failed", e);
+                    conn.result = encoder.encode(new Package(null, e instanceof Exception ? (Exception)e : new RuntimeException(e)));
+                } finally {
+                    done.add(conn);
+                    selector.wakeup();
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            conn.result = encoder.encode(new Package(null, e));
+            done.add(conn);
+        }
+        interest(conn);
+    }
+
+    // 在执行线程中执行一个帧，流式读取的结果还有剩余记录时返回ROWS
+    private Frame handle(Connection conn, Frame frame) {
+        Executor exe = conn.exe;
+        try {
+            frame = conn.transporter.decompress(frame);
+            byte[] res;
+            switch(frame.getType()) {
+                case Frame.STREAM:
+                    res = exe.stream(frame.statement(), frame.fetchSize());
+                    break;
+                case Frame.COLUMNS:
+                    res = exe.stream(frame.statement(), frame.fetchSize(), true);
+                    break;
+                case Frame.MORE:
+                    res = exe.fetchMore();
+                    break;
+                case Frame.CLOSE:
+                    exe.closeStream();
+                    exe.closeCopy();
+                    res = new byte[0];
+                    break;
+                case Frame.PING:
+                    res = new byte[0];
+                    break;
+                case Frame.RESET:
+                    exe.reset();
+                    res = new byte[0];
+                    break;
+                case Frame.COPY:
+                    List<byte[]> copy = Frame.unpack(frame.getPayload());
+                    res = exe.copy(copy.get(0), copy.get(1));
+                    break;
+                case Frame.BATCH:
+                    res = encoder.encodeBatch(exe.batch(Frame.unpack(frame.getPayload())));
+                    break;
+                default:
+                    res = exe.execute(encoder.decode(frame).getData());
             }
+            return new Frame(exe.hasMore() ? Frame.ROWS : Frame.DATA, res);
+        } catch(Exception e) {
+            return encoder.encode(new Package(null, e));
+        }
+    }
+
+    private void finish(Connection conn) {
+        conn.running = false;
+        if(conn.closed) {
+            release(conn);
+            return;
+        }
+        conn.transporter.send(conn.result);
+        conn.result = null;
+        write(conn);
+    }
+
+    // 没有语句在执行且结果已写完时才读取，结果未写完时等待可写
+    private void interest(Connection conn) {
+        if(conn.closed || !conn.key.isValid()) {
+            return;
         }
-        exe.close();
+        int ops = 0;
+        if(!conn.running && conn.flushed && conn.pending.isEmpty()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if(!conn.flushed) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        conn.key.interestOps(ops);
+    }
+
+    private void close(Connection conn) {
+        if(conn.closed) {
+            return;
+        }
+        conn.closed = true;
+        conn.key.cancel();
         try {
-            packager.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+            conn.transporter.close();
+        } catch(IOException ignored) {}
+        if(!conn.running) {
+            release(conn);
+        }
+    }
+
+    // 连接已关闭且没有语句在执行时，结束事务并输出压缩的统计
+    private void release(Connection conn) {
+        conn.exe.close();
+        Compressor compressor = conn.transporter.compressor();
+        if(compressor != null) {
+            Log.info("Compression: {}", compressor.toString());
+            compressor.close();
         }
     }
-    
-}
\ No newline at end of file
+
+    private static class Connection {
+        NioTransporter transporter;
+        Executor exe;
+        SelectionKey key;
+        Deque<Frame> pending = new ArrayDeque<>();
+        Frame result;
+        boolean running;
+        boolean flushed = true;
+        boolean closed;
+
+        Connection(NioTransporter transporter, Executor exe) {
+            this.transporter = transporter;
+            this.exe = exe;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package simpleDB.backend.server;
+
+import simpleDB.backend.utils.Log;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SlowLog 记录一条语句各阶段的耗时，总耗时超过阈值时按采样率写入日志
+ * 阈值由系统属性simpledb.slowlog.ms指定，默认为-1，即不记录；采样率为simpledb.slowlog.sample，默认为1
+ * 每个Executor一个，同一时刻只在一个线程中使用
+ */
+class SlowLog {
+    static final long THRESHOLD = Long.getLong("simpledb.slowlog.ms", -1);
+    static final double SAMPLE = Double.parseDouble(System.getProperty("simpledb.slowlog.sample", "1"));
+    private static final int MAX_PHASES = 8;
+
+    private byte[] sql;
+    private long start, last;
+    private String[] phases = new String[MAX_PHASES];
+    private long[] nanos = new long[MAX_PHASES];
+    private int n;
+
+    void start(byte[] sql) {
+        if(THRESHOLD < 0) {
+            return;
+        }
+        this.sql = sql;
+        this.n = 0;
+        this.start = this.last = System.nanoTime();
+    }
+
+    // 一个阶段结束，耗时为从上一个阶段结束到现在
+    void mark(String phase) {
+        if(sql == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if(n < MAX_PHASES) {
+            phases[n] = phase;
+            nanos[n ++] = now - last;
+        }
+        last = now;
+    }
+
+    void finish() {
+        if(sql == null) {
+            return;
+        }
+        long total = System.nanoTime() - start;
+        if(total >= THRESHOLD * 1000000 && (SAMPLE >= 1 || ThreadLocalRandom.current().nextDouble() < SAMPLE)) {
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < n; i ++) {
+                sb.append(' ').append(phases[i]).append('=').append(String.format("%.3fms", nanos[i] / 1e6));
+            }
+            Log.warn("Slow query {}ms:{} sql: {}", String.format("%.3f", total / 1e6), sb, sql);
+        }
+        sql = null;
+    }
+}
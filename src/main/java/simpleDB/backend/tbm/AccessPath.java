@@ -0,0 +1,191 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.backend.parser.statement.Where;
+
+import java.util.*;
+
+/**
+ * AccessPath 是通过索引找到可能满足where的记录的一种方式，在有统计信息时按代价选择
+ * 叶子为单字段索引或联合索引首字段上的一组范围
+ * and的多个条件可以分别查找索引，再对uid取交集；or的每个条件都能使用索引时，对uid取并集并去重
+ * rows为估算的uid个数，cost为查找索引的代价，不包含按uid读取记录
+ * 叶子记录计算范围所用的where节点，prepare的语句再次执行时只需用新的值重新计算范围
+ */
+class AccessPath {
+    private Field field;
+    private Index index;
+    private List<FieldCalRes> ranges;
+    private Where where;
+    // 为true时children取并集，否则取交集
+    private boolean union;
+    private List<AccessPath> children;
+
+    double rows;
+    double cost;
+
+    // 查找索引并按uid读取所有记录的代价
+    double totalCost() {
+        return cost + rows * (Table.RANDOM_PAGE_COST + Table.CPU_ROW_COST);
+    }
+
+    List<Long> uids() throws Exception {
+        if(children == null) {
+            return search();
+        }
+        if(union) {
+            Set<Long> res = new LinkedHashSet<>();
+            for(AccessPath child : children) {
+                res.addAll(child.uids());
+            }
+            return new ArrayList<>(res);
+        }
+        // 先查找估算行数最少的路径，其余路径的结果只用于过滤
+        List<Long> res = children.get(0).uids();
+        for(int i = 1; i < children.size() && !res.isEmpty(); i ++) {
+            res.retainAll(new HashSet<>(children.get(i).uids()));
+        }
+        return res;
+    }
+
+    // 按where中新的值重新计算每个叶子的范围，哈希索引的条件不再是等值时返回false
+    boolean rebind() throws Exception {
+        if(children != null) {
+            for(AccessPath child : children) {
+                if(!child.rebind()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        ranges = Table.calWhere(index == null ? field : index.leading(), where);
+        return ranges != null && !(field != null && field.isHashIndexed() && !Table.isPoints(ranges));
+    }
+
+    private List<Long> search() throws Exception {
+        List<Long> uids = new ArrayList<>();
+        for(FieldCalRes r : ranges) {
+            if(field != null && field.isHashIndexed()) {
+                uids.addAll(field.lookup(r.left));
+            } else if(field != null) {
+                uids.addAll(field.search(r.left, r.right));
+            } else {
+                uids.addAll(index.search(r.left, r.right));
+            }
+        }
+        return uids;
+    }
+
+    /**
+     * 选择totalCost最小的路径，没有可用的索引时返回null
+     * 候选为：每个索引在整个where上的范围；and时各条件的最优路径按估算行数从小到大依次取交集，
+     * 只要交集使总代价降低就继续加入；or时各条件的最优路径的并集
+     */
+    static AccessPath choose(Table tb, TableStats stats, Where where) throws Exception {
+        List<AccessPath> candidates = new ArrayList<>();
+        double total = tb.estimatedRows();
+        for(Field field : tb.fields) {
+            if(field.isIndexed()) {
+                addLeaf(candidates, stats, field, null, where, total);
+            }
+        }
+        for(Index index : tb.indexes) {
+            addLeaf(candidates, stats, index.leading(), index, where, total);
+        }
+        if("and".equals(where.logicOp)) {
+            List<AccessPath> paths = new ArrayList<>();
+            for(Where conjunct : flatten(where, "and", new ArrayList<>())) {
+                AccessPath path = choose(tb, stats, conjunct);
+                if(path != null) {
+                    paths.add(path);
+                }
+            }
+            paths.sort(Comparator.comparingDouble(p -> p.rows));
+            if(paths.size() > 1) {
+                AccessPath best = paths.get(0);
+                List<AccessPath> chosen = new ArrayList<>(Collections.singletonList(best));
+                for(int i = 1; i < paths.size(); i ++) {
+                    AccessPath and = intersect(chosen, paths.get(i), total);
+                    if(and.totalCost() >= best.totalCost()) {
+                        break;
+                    }
+                    chosen.add(paths.get(i));
+                    best = and;
+                }
+                candidates.add(best);
+            }
+        } else if("or".equals(where.logicOp)) {
+            List<AccessPath> paths = new ArrayList<>();
+            for(Where disjunct : flatten(where, "or", new ArrayList<>())) {
+                AccessPath path = choose(tb, stats, disjunct);
+                if(path == null) {
+                    paths = null;
+                    break;
+                }
+                paths.add(path);
+            }
+            if(paths != null) {
+                candidates.add(union(paths, total));
+            }
+        }
+        AccessPath best = null;
+        for(AccessPath path : candidates) {
+            if(best == null || path.totalCost() < best.totalCost()) {
+                best = path;
+            }
+        }
+        return best;
+    }
+
+    // 哈希索引只能用于等值条件，索引的每个范围按一次随机读定位，每个uid按一次记录的处理计算
+    private static void addLeaf(List<AccessPath> candidates, TableStats stats, Field field, Index index,
+                                Where where, double total) throws Exception {
+        List<FieldCalRes> ranges = Table.calWhere(field, where);
+        if(ranges == null || field.isHashIndexed() && index == null && !Table.isPoints(ranges)) {
+            return;
+        }
+        AccessPath path = new AccessPath();
+        path.field = index == null ? field : null;
+        path.index = index;
+        path.ranges = ranges;
+        path.where = where;
+        path.rows = total * stats.selectivity(field, ranges);
+        path.cost = ranges.size() * Table.RANDOM_PAGE_COST + path.rows * Table.CPU_ROW_COST;
+        candidates.add(path);
+    }
+
+    // 将chosen与path取交集，估算行数按条件相互独立计算
+    private static AccessPath intersect(List<AccessPath> chosen, AccessPath path, double total) {
+        AccessPath res = new AccessPath();
+        res.children = new ArrayList<>(chosen);
+        res.children.add(path);
+        res.rows = path.rows;
+        res.cost = path.cost;
+        for(AccessPath child : chosen) {
+            res.rows = total == 0 ? 0 : res.rows * child.rows / total;
+            res.cost += child.cost;
+        }
+        return res;
+    }
+
+    private static AccessPath union(List<AccessPath> paths, double total) {
+        AccessPath res = new AccessPath();
+        res.union = true;
+        res.children = paths;
+        for(AccessPath path : paths) {
+            res.rows += path.rows;
+            res.cost += path.cost;
+        }
+        res.rows = Math.min(res.rows, total);
+        return res;
+    }
+
+    private static List<Where> flatten(Where where, String op, List<Where> res) {
+        if(op.equals(where.logicOp)) {
+            flatten(where.left, op, res);
+            flatten(where.right, op, res);
+        } else {
+            res.add(where);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,441 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.common.Error;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * AggregateOperator 按groupBy对下层的记录进行哈希聚合，每个分组只保存聚合的中间状态
+ * 每批记录先逐行求出分组号，各个聚合函数再逐列累加到分组上，数值以int/long累加，不装箱
+ * 只有一个数值分组字段时使用以long为key的开放寻址哈希表，其余情况以分组字段的值组成的List为key
+ *
+ * 内存中的分组数达到MAX_GROUPS后不再创建新的分组，属于新分组的记录按分组字段的哈希写入PARTITIONS个临时文件，
+ * 已有的分组继续在内存中聚合。下层读完后先输出内存中的分组，再依次对每个临时文件重复上述过程
+ * 同一分组的记录总是写入同一个文件，因此每个分组只在一处被聚合
+ *
+ * 输出的列依次为groupBy中的字段和aggs中的聚合函数，由columns()给出
+ */
+class AggregateOperator implements Operator {
+    static final int MAX_GROUPS = 1 << 16;
+    static final int PARTITIONS = 16;
+
+    static final String COUNT = "count";
+    static final String SUM = "sum";
+    static final String AVG = "avg";
+    static final String MIN = "min";
+    static final String MAX = "max";
+
+    // 聚合函数，count(*)的field为null
+    static class Agg {
+        String func;
+        Field field;
+        String name;
+
+        Agg(String func, Field field) throws Exception {
+            this.func = func;
+            this.field = field;
+            this.name = func + "(" + (field == null ? "*" : field.fieldName) + ")";
+            boolean numeric = field != null && ColumnVector.typeOf(field) != ColumnVector.STRING;
+            if((SUM.equals(func) || AVG.equals(func)) && !numeric) {
+                throw Error.InvalidFieldException;
+            }
+        }
+    }
+
+    private Operator child;
+    private int width;
+    private Field[] groupBy;
+    private Agg[] aggs;
+    // 分组和聚合函数需要读取的字段，溢出到文件的记录只保存这些字段
+    private List<Field> inputs;
+    private List<Field> columns;
+    private Batch batch;
+
+    private Groups groups;
+    private int[] gids = new int[Batch.CAPACITY];
+    // 当前分组表溢出的文件，level为分区时使用的哈希种子
+    private int level;
+    private SpillFile[] spills;
+    private Deque<SpillFile> pending = new ArrayDeque<>();
+    private Deque<Integer> pendingLevels = new ArrayDeque<>();
+    private boolean consumed;
+    private int pos;
+
+    // width为下层的Batch中columns的长度
+    AggregateOperator(Operator child, int width, Field[] groupBy, Agg[] aggs) {
+        this.child = child;
+        this.width = width;
+        this.groupBy = groupBy;
+        this.aggs = aggs;
+        Set<Field> inputs = new LinkedHashSet<>(Arrays.asList(groupBy));
+        for(Agg agg : aggs) {
+            if(agg.field != null) {
+                inputs.add(agg.field);
+            }
+        }
+        this.inputs = new ArrayList<>(inputs);
+        this.columns = new ArrayList<>();
+        for(Field field : groupBy) {
+            columns.add(new Field(null, field.fieldName, field.fieldType, 0));
+        }
+        for(Agg agg : aggs) {
+            String type;
+            switch(agg.func) {
+                case COUNT: case SUM:
+                    type = "int64";
+                    break;
+                case AVG:
+                    type = "string";
+                    break;
+                default:
+                    type = agg.field.fieldType;
+            }
+            columns.add(new Field(null, agg.name, type, 0));
+        }
+        ColumnVector[] vectors = new ColumnVector[columns.size()];
+        for(int i = 0; i < vectors.length; i ++) {
+            columns.get(i).position = i;
+            vectors[i] = new ColumnVector(columns.get(i), Batch.CAPACITY);
+        }
+        this.batch = new Batch(vectors, Batch.CAPACITY);
+    }
+
+    // 输出的列，position为列的下标
+    List<Field> columns() {
+        return columns;
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        if(!consumed) {
+            groups = new Groups();
+            for(Batch b = child.next(); b != null; b = child.next()) {
+                consume(b);
+            }
+            // 没有groupBy时，即使没有任何记录也输出一行
+            if(groupBy.length == 0 && groups.size == 0) {
+                groups.create(null);
+            }
+            consumed = true;
+        }
+        while(pos == groups.size) {
+            if(!nextPartition()) {
+                return null;
+            }
+        }
+        int n = 0;
+        while(n < Batch.CAPACITY && pos < groups.size) {
+            for(int i = 0; i < groupBy.length; i ++) {
+                batch.columns[i].set(n, groups.key(pos, i));
+            }
+            for(int i = 0; i < aggs.length; i ++) {
+                batch.columns[groupBy.length + i].set(n, groups.states[i].result(pos));
+            }
+            n ++;
+            pos ++;
+        }
+        batch.rows = n;
+        batch.selectAll();
+        return batch;
+    }
+
+    // 关闭下层，删除所有溢出文件
+    @Override
+    public void close() {
+        child.close();
+        if(spills != null) {
+            for(SpillFile spill : spills) {
+                if(spill != null) {
+                    spill.delete();
+                }
+            }
+            spills = null;
+        }
+        for(SpillFile spill : pending) {
+            spill.delete();
+        }
+        pending.clear();
+        pendingLevels.clear();
+        consumed = true;
+        if(groups != null) {
+            pos = groups.size;
+        }
+    }
+
+    private void consume(Batch b) throws Exception {
+        for(int i = 0; i < b.size; i ++) {
+            int r = b.sel[i];
+            gids[i] = groups.find(b, r);
+            if(gids[i] < 0) {
+                spill(b, r);
+            }
+        }
+        for(State state : groups.states) {
+            state.accumulate(b, gids);
+        }
+    }
+
+    // 聚合完内存中的分组后，读取下一个溢出文件重新聚合，没有更多文件时返回false
+    private boolean nextPartition() throws Exception {
+        closeSpills();
+        if(pending.isEmpty()) {
+            return false;
+        }
+        SpillFile file = pending.pop();
+        level = pendingLevels.pop() + 1;
+        groups = new Groups();
+        pos = 0;
+        Operator in = file.open();
+        for(Batch b = in.next(); b != null; b = in.next()) {
+            consume(b);
+        }
+        return true;
+    }
+
+    private void spill(Batch b, int r) throws Exception {
+        if(spills == null) {
+            spills = new SpillFile[PARTITIONS];
+        }
+        int p = SpillFile.partition(groups.hash(b, r), level, PARTITIONS);
+        if(spills[p] == null) {
+            spills[p] = new SpillFile(inputs, width);
+        }
+        spills[p].write(b, r);
+    }
+
+    private void closeSpills() throws Exception {
+        if(spills == null) {
+            return;
+        }
+        for(SpillFile spill : spills) {
+            if(spill != null) {
+                spill.finish();
+                pending.push(spill);
+                pendingLevels.push(level);
+            }
+        }
+        spills = null;
+    }
+
+    /**
+     * Groups 是分组号与分组字段的值之间的映射，以及每个聚合函数在各分组上的中间状态
+     */
+    private class Groups {
+        int size;
+        State[] states;
+
+        // 一个数值分组字段
+        private boolean numeric;
+        private LongIntMap numbers;
+        private long[] numberKeys = new long[16];
+        private int nullGroup = -1;
+
+        // 其他情况
+        private Map<List<Object>, Integer> map;
+        private List<List<Object>> keys;
+
+        Groups() {
+            numeric = groupBy.length == 1 && ColumnVector.typeOf(groupBy[0]) != ColumnVector.STRING;
+            if(numeric) {
+                numbers = new LongIntMap();
+            } else {
+                map = new HashMap<>();
+                keys = new ArrayList<>();
+            }
+            states = new State[aggs.length];
+            for(int i = 0; i < aggs.length; i ++) {
+                states[i] = new State(aggs[i]);
+            }
+        }
+
+        // 返回第r行所在的分组，分组不存在时创建，分组数已满时返回-1
+        int find(Batch b, int r) {
+            if(groupBy.length == 0) {
+                return size == 0 ? create(null) : 0;
+            }
+            if(numeric) {
+                ColumnVector c = b.columns[groupBy[0].position];
+                if(c.nulls[r]) {
+                    if(nullGroup < 0 && size < MAX_GROUPS) {
+                        nullGroup = create(null);
+                    }
+                    return nullGroup;
+                }
+                long v = c.type == ColumnVector.INT32 ? c.ints[r] : c.longs[r];
+                int g = numbers.get(v);
+                if(g < 0 && size < MAX_GROUPS) {
+                    g = create(null);
+                    numbers.put(v, g);
+                    if(g == numberKeys.length) {
+                        numberKeys = Arrays.copyOf(numberKeys, g * 2);
+                    }
+                    numberKeys[g] = v;
+                }
+                return g;
+            }
+            List<Object> key = new ArrayList<>(groupBy.length);
+            for(Field field : groupBy) {
+                key.add(b.columns[field.position].get(r));
+            }
+            Integer g = map.get(key);
+            if(g == null) {
+                if(size == MAX_GROUPS) {
+                    return -1;
+                }
+                g = create(key);
+                map.put(key, g);
+            }
+            return g;
+        }
+
+        int create(List<Object> key) {
+            if(keys != null) {
+                keys.add(key);
+            }
+            for(State state : states) {
+                state.grow(size + 1);
+            }
+            return size ++;
+        }
+
+        // 第g个分组中第i个分组字段的值
+        Object key(int g, int i) {
+            if(!numeric) {
+                return keys.get(g).get(i);
+            }
+            if(g == nullGroup) {
+                return null;
+            }
+            return ColumnVector.typeOf(groupBy[0]) == ColumnVector.INT32 ? (Object)(int)numberKeys[g] : (Object)numberKeys[g];
+        }
+
+        // 分组字段的哈希，用于选择溢出的文件
+        int hash(Batch b, int r) {
+            int h = 1;
+            for(Field field : groupBy) {
+                h = h * 31 + Objects.hashCode(b.columns[field.position].get(r));
+            }
+            return h;
+        }
+    }
+
+    /**
+     * State 是一个聚合函数在所有分组上的中间状态，按分组号存放
+     * cnt 为参与聚合的非null值的个数，acc 为数值的和或最值，strs 为string的最值
+     */
+    private static class State {
+        Agg agg;
+        long[] cnt = new long[16];
+        long[] acc;
+        String[] strs;
+
+        State(Agg agg) {
+            this.agg = agg;
+            if(agg.field != null && ColumnVector.typeOf(agg.field) == ColumnVector.STRING) {
+                strs = new String[16];
+            } else {
+                acc = new long[16];
+            }
+        }
+
+        void grow(int groups) {
+            if(groups <= cnt.length) {
+                return;
+            }
+            int capacity = cnt.length * 2;
+            cnt = Arrays.copyOf(cnt, capacity);
+            if(acc != null) {
+                acc = Arrays.copyOf(acc, capacity);
+            } else {
+                strs = Arrays.copyOf(strs, capacity);
+            }
+        }
+
+        // 将b中被选中的行累加到gids给出的分组上，分组号为-1的行已被溢出
+        void accumulate(Batch b, int[] gids) {
+            int n = b.size;
+            int[] sel = b.sel;
+            if(agg.field == null) {
+                for(int i = 0; i < n; i ++) {
+                    if(gids[i] >= 0) cnt[gids[i]] ++;
+                }
+                return;
+            }
+            ColumnVector c = b.columns[agg.field.position];
+            boolean[] nulls = c.nulls;
+            if(COUNT.equals(agg.func)) {
+                for(int i = 0; i < n; i ++) {
+                    if(gids[i] >= 0 && !nulls[sel[i]]) cnt[gids[i]] ++;
+                }
+                return;
+            }
+            if(c.type == ColumnVector.STRING) {
+                boolean min = MIN.equals(agg.func);
+                for(int i = 0; i < n; i ++) {
+                    int g = gids[i], r = sel[i];
+                    if(g < 0 || nulls[r]) continue;
+                    String v = c.strings[r];
+                    if(cnt[g] ++ == 0) {
+                        strs[g] = v;
+                        continue;
+                    }
+                    int cmp = v.compareTo(strs[g]);
+                    if(min ? cmp < 0 : cmp > 0) {
+                        strs[g] = v;
+                    }
+                }
+                return;
+            }
+            switch(agg.func) {
+                case SUM: case AVG:
+                    for(int i = 0; i < n; i ++) {
+                        int g = gids[i], r = sel[i];
+                        if(g < 0 || nulls[r]) continue;
+                        acc[g] += c.type == ColumnVector.INT32 ? c.ints[r] : c.longs[r];
+                        cnt[g] ++;
+                    }
+                    break;
+                case MIN:
+                    for(int i = 0; i < n; i ++) {
+                        int g = gids[i], r = sel[i];
+                        if(g < 0 || nulls[r]) continue;
+                        long v = c.type == ColumnVector.INT32 ? c.ints[r] : c.longs[r];
+                        if(cnt[g] ++ == 0 || v < acc[g]) acc[g] = v;
+                    }
+                    break;
+                case MAX:
+                    for(int i = 0; i < n; i ++) {
+                        int g = gids[i], r = sel[i];
+                        if(g < 0 || nulls[r]) continue;
+                        long v = c.type == ColumnVector.INT32 ? c.ints[r] : c.longs[r];
+                        if(cnt[g] ++ == 0 || v > acc[g]) acc[g] = v;
+                    }
+                    break;
+            }
+        }
+
+        // 分组g的结果，没有任何非null值时sum avg min max为null
+        Object result(int g) {
+            if(COUNT.equals(agg.func)) {
+                return cnt[g];
+            }
+            if(cnt[g] == 0) {
+                return null;
+            }
+            switch(agg.func) {
+                case SUM:
+                    return acc[g];
+                case AVG:
+                    return BigDecimal.valueOf(acc[g])
+                        .divide(BigDecimal.valueOf(cnt[g]), 4, RoundingMode.HALF_UP)
+                        .stripTrailingZeros().toPlainString();
+            }
+            if(strs != null) {
+                return strs[g];
+            }
+            return ColumnVector.typeOf(agg.field) == ColumnVector.INT32 ? (Object)(int)acc[g] : (Object)acc[g];
+        }
+    }
+}
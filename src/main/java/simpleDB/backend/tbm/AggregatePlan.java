@@ -0,0 +1,104 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.backend.parser.statement.Aggregate;
+import simpleDB.backend.parser.statement.Select;
+import simpleDB.common.Error;
+
+import java.util.*;
+
+/**
+ * AggregatePlan 生成聚合查询的执行计划：Input -> Aggregate -> Sort -> Limit -> Project
+ * 选择的普通字段必须出现在group by中，order by可以使用分组字段和聚合函数
+ * 单表查询和连接查询只有Input不同
+ */
+class AggregatePlan {
+    // 根据聚合需要读取的字段生成输入
+    interface Input {
+        Operator open(Collection<Field> columns, Field[] groupBy, AggregateOperator.Agg[] aggs) throws Exception;
+    }
+
+    static boolean isAggregate(Select read) {
+        if(read.groupBy.length > 0) {
+            return true;
+        }
+        for(Aggregate aggregate : read.aggregates) {
+            if(aggregate != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // width为输入的Batch中columns的长度
+    static ProjectOperator plan(Select read, Predicate.Columns columns, int width, Input input) throws Exception {
+        Field[] groupBy = new Field[read.groupBy.length];
+        for(int i = 0; i < groupBy.length; i ++) {
+            groupBy[i] = columns.get(read.groupBy[i]);
+        }
+        Map<String, AggregateOperator.Agg> aggs = new LinkedHashMap<>();
+        for(Aggregate aggregate : read.aggregates) {
+            addAggregate(aggs, columns, aggregate);
+        }
+        for(int i = 0; i < read.orderBy.length; i ++) {
+            addAggregate(aggs, columns, read.orderBy[i].aggregate);
+        }
+        AggregateOperator.Agg[] aggArray = aggs.values().toArray(new AggregateOperator.Agg[0]);
+
+        Set<Field> needed = new LinkedHashSet<>(Arrays.asList(groupBy));
+        for(AggregateOperator.Agg agg : aggArray) {
+            if(agg.field != null) {
+                needed.add(agg.field);
+            }
+        }
+        AggregateOperator agg = new AggregateOperator(input.open(needed, groupBy, aggArray), width, groupBy, aggArray);
+        List<Field> output = agg.columns();
+        List<String> names = new ArrayList<>(aggs.keySet());
+
+        Operator op = agg;
+        if(read.orderBy.length > 0) {
+            Field[] keys = new Field[read.orderBy.length];
+            boolean[] desc = new boolean[keys.length];
+            for(int i = 0; i < keys.length; i ++) {
+                keys[i] = outputColumn(output, columns, groupBy, names, read.orderBy[i].field, read.orderBy[i].aggregate);
+                desc[i] = read.orderBy[i].desc;
+            }
+            long rows = read.limit < 0 ? -1 : read.offset + read.limit;
+            op = new SortOperator(op, output.size(), keys, desc, rows < -1 ? Long.MAX_VALUE : rows, output);
+        }
+        if(read.limit >= 0 || read.offset > 0) {
+            op = new LimitOperator(op, read.offset, read.limit);
+        }
+        List<Field> projection = new ArrayList<>();
+        for(int i = 0; i < read.fields.length; i ++) {
+            projection.add(outputColumn(output, columns, groupBy, names, read.fields[i], read.aggregates[i]));
+        }
+        return new ProjectOperator(op, projection);
+    }
+
+    private static AggregateOperator.Agg toAgg(Predicate.Columns columns, Aggregate aggregate) throws Exception {
+        Field field = "*".equals(aggregate.field) ? null : columns.get(aggregate.field);
+        return new AggregateOperator.Agg(aggregate.func, field);
+    }
+
+    private static void addAggregate(Map<String, AggregateOperator.Agg> aggs, Predicate.Columns columns, Aggregate aggregate) throws Exception {
+        if(aggregate != null) {
+            AggregateOperator.Agg agg = toAgg(columns, aggregate);
+            aggs.putIfAbsent(agg.name, agg);
+        }
+    }
+
+    // 聚合结果中对应的列，普通字段不在group by中时无法输出
+    private static Field outputColumn(List<Field> output, Predicate.Columns columns, Field[] groupBy,
+                                      List<String> aggs, String name, Aggregate aggregate) throws Exception {
+        if(aggregate != null) {
+            return output.get(groupBy.length + aggs.indexOf(toAgg(columns, aggregate).name));
+        }
+        Field field = columns.get(name);
+        for(int i = 0; i < groupBy.length; i ++) {
+            if(groupBy[i] == field) {
+                return output.get(i);
+            }
+        }
+        throw Error.FieldNotGroupedException;
+    }
+}
@@ -0,0 +1,30 @@
+package simpleDB.backend.tbm;
+
+/**
+ * Batch 是算子之间传递的一批记录，按列存放
+ * columns 按字段的position下标，未被读取的字段为null
+ * sel 为选择向量，sel[0..size)是仍被选中的行在批内的下标，按升序排列
+ */
+class Batch {
+    static final int CAPACITY = 1024;
+
+    int rows;
+    long[] uids;
+    ColumnVector[] columns;
+    int[] sel;
+    int size;
+
+    Batch(ColumnVector[] columns, int capacity) {
+        this.columns = columns;
+        this.uids = new long[capacity];
+        this.sel = new int[capacity];
+    }
+
+    // 选中批内所有行
+    void selectAll() {
+        for(int i = 0; i < rows; i ++) {
+            sel[i] = i;
+        }
+        size = rows;
+    }
+}
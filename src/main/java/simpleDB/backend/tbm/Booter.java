@@ -5,13 +5,21 @@ import simpleDB.common.Error;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 // 记录第一个表的uid
+// 文件为[Magic][Version][Data]，Version为数据库文件格式的版本，打开时不一致则直接退出，
+// 避免用新的索引键和记录格式读取旧格式的数据库。没有Magic的旧文件为版本1
 public class Booter {
     public static final String BOOTER_SUFFIX = ".bt";
     public static final String BOOTER_TMP_SUFFIX = ".bt_tmp";
+    static final byte[] MAGIC = "SDBF".getBytes();
+    // 索引键、节点、记录或日志的格式改变时加一
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = MAGIC.length + 4;
 
     String path;
     File file;
@@ -41,7 +49,21 @@ public class Booter {
         if(!f.canRead() || !f.canWrite()) {
             Panic.panic(Error.FileCannotRWException);
         }
-        return new Booter(path, f);
+        Booter booter = new Booter(path, f);
+        try {
+            checkFormat(booter.read());
+        } catch(Exception e) {
+            Panic.panic(e);
+        }
+        return booter;
+    }
+
+    // 检查文件的格式版本，在恢复数据之前调用，格式不兼容时抛出异常
+    static void checkFormat(byte[] raw) throws Exception {
+        if(raw.length < HEADER_SIZE || !Arrays.equals(Arrays.copyOf(raw, MAGIC.length), MAGIC)
+            || ByteBuffer.wrap(raw, MAGIC.length, 4).getInt() != FORMAT_VERSION) {
+            throw Error.IncompatibleFormatException;
+        }
     }
 
     private static void removeBadTmp(String path) {
@@ -54,6 +76,11 @@ public class Booter {
     }
 
     public byte[] load() {
+        byte[] raw = read();
+        return Arrays.copyOfRange(raw, HEADER_SIZE, raw.length);
+    }
+
+    private byte[] read() {
         byte[] buf = null;
         try {
             buf = Files.readAllBytes(file.toPath());
@@ -74,6 +101,8 @@ public class Booter {
             Panic.panic(Error.FileCannotRWException);
         }
         try(FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(MAGIC);
+            out.write(ByteBuffer.allocate(4).putInt(FORMAT_VERSION).array());
             out.write(data);
             out.flush();
         } catch(IOException e) {
@@ -0,0 +1,95 @@
+package simpleDB.backend.tbm;
+
+/**
+ * ColumnVector 按列保存一批记录中某个字段的值
+ * int32和int64分别存放在ints和longs中，避免装箱
+ */
+class ColumnVector {
+    static final int INT32 = 0;
+    static final int INT64 = 1;
+    static final int STRING = 2;
+
+    Field field;
+    int type;
+    int[] ints;
+    long[] longs;
+    String[] strings;
+    boolean[] nulls;
+
+    ColumnVector(Field field, int capacity) {
+        this.field = field;
+        this.type = typeOf(field);
+        switch(type) {
+            case INT32:
+                ints = new int[capacity];
+                break;
+            case INT64:
+                longs = new long[capacity];
+                break;
+            default:
+                strings = new String[capacity];
+        }
+        nulls = new boolean[capacity];
+    }
+
+    static int typeOf(Field field) {
+        switch(field.fieldType) {
+            case "int32":
+                return INT32;
+            case "int64":
+                return INT64;
+            default:
+                return STRING;
+        }
+    }
+
+    // 从编码后的记录中读出该字段，放在第row行
+    void load(RowCodec codec, byte[] raw, int row) {
+        int i = field.position;
+        nulls[row] = codec.isNull(raw, i);
+        if(nulls[row]) {
+            return;
+        }
+        switch(type) {
+            case INT32:
+                ints[row] = codec.getInt(raw, i);
+                break;
+            case INT64:
+                longs[row] = codec.getLong(raw, i);
+                break;
+            default:
+                strings[row] = codec.getString(raw, i);
+        }
+    }
+
+    void set(int row, Object v) {
+        nulls[row] = v == null;
+        if(v == null) {
+            return;
+        }
+        switch(type) {
+            case INT32:
+                ints[row] = (int)v;
+                break;
+            case INT64:
+                longs[row] = (long)v;
+                break;
+            default:
+                strings[row] = (String)v;
+        }
+    }
+
+    Object get(int row) {
+        if(nulls[row]) {
+            return null;
+        }
+        switch(type) {
+            case INT32:
+                return ints[row];
+            case INT64:
+                return longs[row];
+            default:
+                return strings[row];
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package simpleDB.backend.tbm;
 
 import com.google.common.primitives.Bytes;
+import simpleDB.backend.dm.DataManager;
 import simpleDB.backend.im.BPlusTree;
+import simpleDB.backend.im.LinearHash;
+import simpleDB.backend.im.Node;
 import simpleDB.backend.parser.statement.SingleExpression;
 import simpleDB.backend.tm.TransactionManagerImpl;
 import simpleDB.backend.utils.Panic;
@@ -9,22 +12,32 @@ import simpleDB.backend.utils.ParseStringRes;
 import simpleDB.backend.utils.Parser;
 import simpleDB.common.Error;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * field 表示字段信息
  * 二进制格式为：
- * [FieldName][TypeName][IndexUid]
+ * [FieldName][TypeName][IndexUid][IndexType]
  * 如果field无索引，IndexUid为0
+ * IndexType为INDEX_BTREE或INDEX_HASH，哈希索引只支持等值查询
  */
 public class Field {
+    static final byte INDEX_BTREE = 0;
+    static final byte INDEX_HASH = 1;
+
     long uid;
     private Table tb;
     String fieldName;
     String fieldType;
+    // 字段在表中的位置，即在记录中的下标
+    int position;
     private long index;
+    private byte indexType;
     private BPlusTree bt;
+    private LinearHash ht;
 
     public static Field loadField(Table tb, long uid) {
         byte[] raw = null;
@@ -58,9 +71,15 @@ public class Field {
         fieldType = res.str;
         position += res.next;
         this.index = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+        position += 8;
+        this.indexType = raw[position];
         if(index != 0) {
             try {
-                bt = BPlusTree.load(index, ((TableManagerImpl)tb.tbm).dm);
+                if(indexType == INDEX_HASH) {
+                    ht = LinearHash.load(index, ((TableManagerImpl)tb.tbm).dm);
+                } else {
+                    bt = BPlusTree.load(index, ((TableManagerImpl)tb.tbm).dm);
+                }
             } catch(Exception e) {
                 Panic.panic(e);
             }
@@ -68,14 +87,19 @@ public class Field {
         return this;
     }
 
-    public static Field createField(Table tb, long xid, String fieldName, String fieldType, boolean indexed) throws Exception {
+    public static Field createField(Table tb, long xid, String fieldName, String fieldType, boolean indexed, byte indexType) throws Exception {
         typeCheck(fieldType);
         Field f = new Field(tb, fieldName, fieldType, 0);
         if(indexed) {
-            long index = BPlusTree.create(((TableManagerImpl)tb.tbm).dm);
-            BPlusTree bt = BPlusTree.load(index, ((TableManagerImpl)tb.tbm).dm);
-            f.index = index;
-            f.bt = bt;
+            DataManager dm = ((TableManagerImpl)tb.tbm).dm;
+            f.indexType = indexType;
+            if(indexType == INDEX_HASH) {
+                f.index = LinearHash.create(dm, dm.newSegment());
+                f.ht = LinearHash.load(f.index, dm);
+            } else {
+                f.index = BPlusTree.create(dm, dm.newSegment());
+                f.bt = BPlusTree.load(f.index, dm);
+            }
         }
         f.persistSelf(xid);
         return f;
@@ -85,7 +109,7 @@ public class Field {
         byte[] nameRaw = Parser.string2Byte(fieldName);
         byte[] typeRaw = Parser.string2Byte(fieldType);
         byte[] indexRaw = Parser.long2Byte(index);
-        this.uid = ((TableManagerImpl)tb.tbm).vm.insert(xid, Bytes.concat(nameRaw, typeRaw, indexRaw));
+        this.uid = ((TableManagerImpl)tb.tbm).vm.insert(xid, Bytes.concat(nameRaw, typeRaw, indexRaw, new byte[]{indexType}));
     }
 
     private static void typeCheck(String fieldType) throws Exception {
@@ -98,15 +122,73 @@ public class Field {
         return index != 0;
     }
 
+    public boolean isHashIndexed() {
+        return index != 0 && indexType == INDEX_HASH;
+    }
+
+    // 索引所在的段
+    public long segment() {
+        return indexType == INDEX_HASH ? ht.getSegment() : bt.getSegment();
+    }
+
     public void insert(Object key, long uid) throws Exception {
-        long uKey = value2Uid(key);
-        bt.insert(uKey, uid);
+        if(indexType == INDEX_HASH) {
+            ht.insert(value2Key(key), uid);
+        } else {
+            bt.insert(Bytes.concat(value2Key(key), Parser.long2Byte(uid)), uid);
+        }
+    }
+
+    // 批量插入，B+树索引按key排序后插入
+    public void insert(List<Object> keys, List<Long> uids) throws Exception {
+        if(indexType == INDEX_HASH) {
+            for(int i = 0; i < keys.size(); i ++) {
+                ht.insert(value2Key(keys.get(i)), uids.get(i));
+            }
+            return;
+        }
+        List<byte[]> raws = new ArrayList<>(keys.size());
+        for(int i = 0; i < keys.size(); i ++) {
+            raws.add(Bytes.concat(value2Key(keys.get(i)), Parser.long2Byte(uids.get(i))));
+        }
+        bt.insert(raws, uids);
     }
 
-    public List<Long> search(long left, long right) throws Exception {
+    public List<Long> search(byte[] left, byte[] right) throws Exception {
         return bt.searchRange(left, right);
     }
 
+    public List<Long> search(byte[] left, byte[] right, int limit) throws Exception {
+        return bt.searchRange(left, right, limit);
+    }
+
+    public BPlusTree.RangeCursor cursor(byte[] left, byte[] right) {
+        return bt.cursor(left, right, false);
+    }
+
+    public BPlusTree.RangeCursor lastLeaf() throws Exception {
+        return bt.lastLeaf(false);
+    }
+
+    // 通过索引查找值等于v的记录
+    public List<Long> equal(Object v) throws Exception {
+        byte[] key = value2Key(v);
+        if(indexType == INDEX_HASH) {
+            return ht.search(key);
+        }
+        return bt.searchRange(key, BPlusTree.prefixUpperBound(key));
+    }
+
+    // 通过哈希索引查找值编码后等于key的记录
+    public List<Long> lookup(byte[] key) throws Exception {
+        return ht.search(key);
+    }
+
+    // 通过哈希索引返回全部记录
+    public List<Long> scan() throws Exception {
+        return ht.scan();
+    }
+
     public Object string2Value(String str) {
         switch(fieldType) {
             case "int32":
@@ -119,20 +201,95 @@ public class Field {
         return null;
     }
 
-    public long value2Uid(Object key) {
-        long uid = 0;
+    /**
+     * 将值编码为保序的索引key，编码后的字节串按无符号字典序比较与原值的大小关系一致
+     * int32/int64 翻转符号位后按大端存储
+     * string 中的0x00转义为0x00 0xFF，并以0x00 0x01结尾，保证任何key都不是另一个key的前缀
+     * 索引中实际存储的key为 [ValueKey][Uid]，以区分重复的值
+     */
+    public byte[] value2Key(Object v) {
+        byte[] key = null;
         switch(fieldType) {
+            case "int32":
+                key = Parser.int2Byte((int)v ^ Integer.MIN_VALUE);
+                break;
+            case "int64":
+                key = Parser.long2Byte((long)v ^ Long.MIN_VALUE);
+                break;
             case "string":
-                uid = Parser.str2Uid((String)key);
+                key = string2Key((String)v);
                 break;
+        }
+        return key;
+    }
+
+    private static byte[] string2Key(String str) {
+        byte[] escaped = escapeString(str);
+        byte[] key = Arrays.copyOf(escaped, escaped.length + 2);
+        key[escaped.length] = 0;
+        key[escaped.length + 1] = 1;
+        return key;
+    }
+
+    // 转义后不带结尾的string，以str开头的所有string的key都以它为前缀
+    private static byte[] escapeString(String str) {
+        byte[] raw = str.getBytes();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length + 2);
+        for(byte b : raw) {
+            out.write(b);
+            if(b == 0) {
+                out.write(0xff);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // 从编码后的索引key的pos处解析出值，是value2Key的逆过程
+    public ParseValueRes parserKey(byte[] key, int pos) {
+        ParseValueRes res = new ParseValueRes();
+        switch(fieldType) {
             case "int32":
-                int uint = (int)key;
-                return (long)uint;
+                res.v = Parser.parseInt(Arrays.copyOfRange(key, pos, pos+4)) ^ Integer.MIN_VALUE;
+                res.shift = 4;
+                break;
             case "int64":
-                uid = (long)key;
+                res.v = Parser.parseLong(Arrays.copyOfRange(key, pos, pos+8)) ^ Long.MIN_VALUE;
+                res.shift = 8;
+                break;
+            case "string":
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                int i = pos;
+                while(true) {
+                    if(key[i] == 0) {
+                        if(key[i+1] == 1) break;
+                        // 0x00 0xFF 为转义的0x00
+                        out.write(0);
+                        i += 2;
+                        continue;
+                    }
+                    out.write(key[i]);
+                    i ++;
+                }
+                res.v = new String(out.toByteArray());
+                res.shift = i + 2 - pos;
                 break;
         }
-        return uid;
+        return res;
+    }
+
+    // 返回key中pos处编码后的值的长度，不解析出值本身
+    public int skipKey(byte[] key, int pos) {
+        switch(fieldType) {
+            case "int32":
+                return 4;
+            case "int64":
+                return 8;
+        }
+        int i = pos;
+        while(key[i] != 0 || key[i+1] != 1) {
+            i += key[i] == 0 ? 2 : 1;
+        }
+        return i + 2 - pos;
     }
 
     public byte[] value2Raw(Object v) {
@@ -157,26 +314,45 @@ public class Field {
     }
 
     public ParseValueRes parserValue(byte[] raw) {
+        return parserValue(raw, 0);
+    }
+
+    // 从raw的pos处解析出value2Raw编码的值
+    public ParseValueRes parserValue(byte[] raw, int pos) {
         ParseValueRes res = new ParseValueRes();
         switch(fieldType) {
             case "int32":
-                res.v = Parser.parseInt(Arrays.copyOf(raw, 4));
+                res.v = Parser.parseInt(Arrays.copyOfRange(raw, pos, pos+4));
                 res.shift = 4;
                 break;
             case "int64":
-                res.v = Parser.parseLong(Arrays.copyOf(raw, 8));
+                res.v = Parser.parseLong(Arrays.copyOfRange(raw, pos, pos+8));
                 res.shift = 8;
                 break;
             case "string":
-                ParseStringRes r = Parser.parseString(raw);
-                res.v = r.str;
-                res.shift = r.next;
+                int length = Parser.parseInt(Arrays.copyOfRange(raw, pos, pos+4));
+                res.v = new String(raw, pos+4, length);
+                res.shift = length + 4;
                 break;
         }
         return res;
     }
 
+    // 返回raw中pos处value2Raw编码的值的长度，不解析出值本身
+    public int skipValue(byte[] raw, int pos) {
+        switch(fieldType) {
+            case "int32":
+                return 4;
+            case "int64":
+                return 8;
+        }
+        return Parser.parseInt(Arrays.copyOfRange(raw, pos, pos+4)) + 4;
+    }
+
     public String printValue(Object v) {
+        if(v == null) {
+            return "null";
+        }
         String str = null;
         switch(fieldType) {
             case "int32":
@@ -198,34 +374,92 @@ public class Field {
             .append(fieldName)
             .append(", ")
             .append(fieldType)
-            .append(index!=0?", Index":", NoIndex")
+            .append(index==0?", NoIndex":indexType==INDEX_HASH?", HashIndex":", Index")
             .append(")")
             .toString();
     }
 
-    public FieldCalRes calExp(SingleExpression exp) throws Exception {
-        Object v = null;
-        FieldCalRes res = new FieldCalRes();
+    /**
+     * 返回满足exp的记录在索引key上所处的范围，范围互不相交且按升序排列
+     * 返回null表示无法通过索引缩小范围
+     */
+    public List<FieldCalRes> calExp(SingleExpression exp) throws Exception {
+        List<FieldCalRes> res = new ArrayList<>();
+        byte[] key;
         switch(exp.compareOp) {
             case "<":
-                res.left = 0;
-                v = string2Value(exp.value);
-                res.right = value2Uid(v);
-                if(res.right > 0) {
-                    res.right --;
-                }
+                res.add(range(new byte[0], value2Key(string2Value(exp.value))));
+                break;
+            case "<=":
+                res.add(range(new byte[0], BPlusTree.prefixUpperBound(value2Key(string2Value(exp.value)))));
                 break;
             case "=":
-                v = string2Value(exp.value);
-                res.left = value2Uid(v);
-                res.right = res.left;
+                res.add(point(value2Key(string2Value(exp.value))));
+                break;
+            case "!=":
+                key = value2Key(string2Value(exp.value));
+                res.add(range(new byte[0], key));
+                res.add(range(BPlusTree.prefixUpperBound(key), null));
+                break;
+            case ">=":
+                res.add(range(value2Key(string2Value(exp.value)), null));
                 break;
             case ">":
-                res.right = Long.MAX_VALUE;
-                v = string2Value(exp.value);
-                res.left = value2Uid(v) + 1;
+                res.add(range(BPlusTree.prefixUpperBound(value2Key(string2Value(exp.value))), null));
+                break;
+            case "between":
+                byte[] low = value2Key(string2Value(exp.values[0]));
+                byte[] high = BPlusTree.prefixUpperBound(value2Key(string2Value(exp.values[1])));
+                if(Node.compare(low, high) <= 0) {
+                    res.add(range(low, high));
+                }
+                break;
+            case "in":
+                List<byte[]> keys = new ArrayList<>();
+                for(String value : exp.values) {
+                    keys.add(value2Key(string2Value(value)));
+                }
+                keys.sort(Node::compare);
+                for(int i = 0; i < keys.size(); i ++) {
+                    if(i == 0 || Node.compare(keys.get(i-1), keys.get(i)) != 0) {
+                        res.add(point(keys.get(i)));
+                    }
+                }
+                break;
+            case "like":
+                // 只有以固定前缀开头的模式可以使用索引
+                String prefix = likePrefix(exp.value);
+                if(!"string".equals(fieldType) || prefix.length() == 0) {
+                    return null;
+                }
+                key = escapeString(prefix);
+                res.add(range(key, BPlusTree.prefixUpperBound(key)));
                 break;
+            default:
+                throw Error.InvalidCommandException;
         }
         return res;
     }
+
+    static FieldCalRes range(byte[] left, byte[] right) {
+        FieldCalRes res = new FieldCalRes();
+        res.left = left;
+        res.right = right;
+        return res;
+    }
+
+    private static FieldCalRes point(byte[] key) {
+        FieldCalRes res = range(key, BPlusTree.prefixUpperBound(key));
+        res.point = true;
+        return res;
+    }
+
+    // like模式中第一个通配符之前的部分
+    static String likePrefix(String pattern) {
+        int i = 0;
+        while(i < pattern.length() && pattern.charAt(i) != '%' && pattern.charAt(i) != '_') {
+            i ++;
+        }
+        return pattern.substring(0, i);
+    }
 }
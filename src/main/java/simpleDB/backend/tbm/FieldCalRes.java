@@ -1,6 +1,9 @@
 package simpleDB.backend.tbm;
 
+// 索引key的查询范围[left, right]，两端都包含，right为null表示无上界
+// point为true时范围内只有一个值，left即为该值的key
 public class FieldCalRes {
-    public long left;
-    public long right;
+    public byte[] left;
+    public byte[] right;
+    public boolean point;
 }
@@ -0,0 +1,33 @@
+package simpleDB.backend.tbm;
+
+/**
+ * FilterOperator 在选择向量上对每批记录求值，过滤后为空的批会被跳过
+ */
+class FilterOperator implements Operator {
+    private Operator child;
+    private Predicate predicate;
+
+    FilterOperator(Operator child, Predicate predicate) {
+        this.child = child;
+        this.predicate = predicate;
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        while(true) {
+            Batch b = child.next();
+            if(b == null) {
+                return null;
+            }
+            predicate.filter(b);
+            if(b.size > 0) {
+                return b;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+}
@@ -0,0 +1,243 @@
+package simpleDB.backend.tbm;
+
+import java.util.*;
+
+/**
+ * HashJoinOperator 对build和probe两侧按连接字段做等值连接，在build一侧上建立哈希表，probe一侧逐批探测
+ * 数值的连接字段统一按long比较，使用LongIntMap；string使用HashMap。连接字段为null的记录不与任何记录连接
+ * 哈希表中相同key的记录通过next串成链表
+ *
+ * build一侧超过MAX_BUILD_ROWS行时改为grace哈希连接：两侧的记录都按连接字段的哈希写入PARTITIONS个临时文件，
+ * 再依次对每一对分区做连接，分区仍然过大时以新的种子继续划分
+ * 划分MAX_LEVEL层后仍然过大，说明同一个值的记录过多，此时不再划分，直接在内存中建立哈希表
+ */
+class HashJoinOperator implements Operator {
+    static final int MAX_BUILD_ROWS = 1 << 16;
+    static final int PARTITIONS = 16;
+    static final int MAX_LEVEL = 4;
+
+    private JoinSide build, probe;
+    private Batch batch;
+    private boolean started;
+
+    // 当前分区的哈希表，rows按build一侧字段的position存放
+    private List<Object[]> rows;
+    private int[] next;
+    private LongIntMap numbers;
+    private Map<String, Integer> strings;
+
+    // 当前正在探测的记录，chain为下一个与之连接的build记录
+    private Operator probeInput;
+    private Batch pb;
+    private int pi, pr;
+    private int chain = -1;
+
+    // 尚未连接的分区，每项依次为build和probe的文件
+    private Deque<SpillFile[]> pending = new ArrayDeque<>();
+    private Deque<Integer> pendingLevels = new ArrayDeque<>();
+
+    // width为连接后Batch中columns的长度
+    HashJoinOperator(JoinSide build, JoinSide probe, int width) {
+        this.build = build;
+        this.probe = probe;
+        ColumnVector[] vectors = new ColumnVector[width];
+        for(JoinSide side : new JoinSide[]{build, probe}) {
+            for(Field field : side.columns) {
+                vectors[side.offset + field.position] = new ColumnVector(field, Batch.CAPACITY);
+            }
+        }
+        this.batch = new Batch(vectors, Batch.CAPACITY);
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        if(!started) {
+            started = true;
+            load(build.input, probe.input, 0);
+        }
+        int n = 0;
+        while(n < Batch.CAPACITY) {
+            if(chain >= 0) {
+                emit(n ++, rows.get(chain));
+                chain = next[chain];
+                continue;
+            }
+            if(probeInput == null) {
+                if(!nextPartition()) {
+                    break;
+                }
+                continue;
+            }
+            if(pb == null || pi == pb.size) {
+                pb = probeInput.next();
+                pi = 0;
+                if(pb == null) {
+                    probeInput = null;
+                }
+                continue;
+            }
+            pr = pb.sel[pi ++];
+            chain = lookup(pb.columns[probe.key.position], pr);
+        }
+        if(n == 0) {
+            return null;
+        }
+        batch.rows = n;
+        batch.selectAll();
+        return batch;
+    }
+
+    // 关闭两侧的输入，删除尚未连接的分区
+    @Override
+    public void close() {
+        build.input.close();
+        probe.input.close();
+        if(probeInput != null) {
+            probeInput.close();
+            probeInput = null;
+        }
+        for(SpillFile[] pair : pending) {
+            pair[0].delete();
+            pair[1].delete();
+        }
+        pending.clear();
+        pendingLevels.clear();
+        rows = null;
+        chain = -1;
+        started = true;
+    }
+
+    private boolean nextPartition() throws Exception {
+        if(pending.isEmpty()) {
+            return false;
+        }
+        SpillFile[] pair = pending.pop();
+        int level = pendingLevels.pop() + 1;
+        load(pair[0].open(), pair[1].open(), level);
+        return true;
+    }
+
+    // 读入build一侧建立哈希表，超过MAX_BUILD_ROWS时将两侧都划分到临时文件中
+    private void load(Operator buildInput, Operator probeInput, int level) throws Exception {
+        rows = new ArrayList<>();
+        next = new int[1024];
+        if(JoinSide.isNumeric(build.key)) {
+            numbers = new LongIntMap();
+        } else {
+            strings = new HashMap<>();
+        }
+        for(Batch b = buildInput.next(); b != null; b = buildInput.next()) {
+            for(int i = 0; i < b.size; i ++) {
+                int r = b.sel[i];
+                if(b.columns[build.key.position].nulls[r]) {
+                    continue;
+                }
+                if(rows.size() == MAX_BUILD_ROWS && level < MAX_LEVEL) {
+                    partition(buildInput, probeInput, level, b, i);
+                    return;
+                }
+                add(b, r);
+            }
+        }
+        this.probeInput = probeInput;
+    }
+
+    private void add(Batch b, int r) {
+        Object[] row = new Object[build.width];
+        for(Field field : build.columns) {
+            row[field.position] = b.columns[field.position].get(r);
+        }
+        int index = rows.size();
+        rows.add(row);
+        if(index == next.length) {
+            next = Arrays.copyOf(next, index * 2);
+        }
+        ColumnVector c = b.columns[build.key.position];
+        if(numbers != null) {
+            long key = JoinSide.longValue(c, r);
+            next[index] = numbers.get(key);
+            numbers.put(key, index);
+        } else {
+            String key = c.strings[r];
+            next[index] = strings.getOrDefault(key, -1);
+            strings.put(key, index);
+        }
+    }
+
+    // 返回与第r行连接的第一条build记录，没有时返回-1
+    private int lookup(ColumnVector c, int r) {
+        if(c.nulls[r]) {
+            return -1;
+        }
+        if(numbers != null) {
+            return numbers.get(JoinSide.longValue(c, r));
+        }
+        return strings.getOrDefault(c.strings[r], -1);
+    }
+
+    private void emit(int n, Object[] row) {
+        for(Field field : probe.columns) {
+            batch.columns[probe.offset + field.position].set(n, pb.columns[field.position].get(pr));
+        }
+        for(Field field : build.columns) {
+            batch.columns[build.offset + field.position].set(n, row[field.position]);
+        }
+    }
+
+    /**
+     * 将已读入的build记录、b中第i行开始的记录和buildInput中剩余的记录，以及probeInput中的全部记录
+     * 按连接字段的哈希写入临时文件，每对分区留待之后连接，只有一侧有记录的分区被直接丢弃
+     */
+    private void partition(Operator buildInput, Operator probeInput, int level, Batch b, int i) throws Exception {
+        SpillFile[] builds = new SpillFile[PARTITIONS];
+        SpillFile[] probes = new SpillFile[PARTITIONS];
+        for(Object[] row : rows) {
+            file(builds, build, row[build.key.position], level).write(row);
+        }
+        rows = null;
+        for(; b != null; b = buildInput.next(), i = 0) {
+            for(; i < b.size; i ++) {
+                spill(builds, build, level, b, b.sel[i]);
+            }
+        }
+        for(b = probeInput.next(); b != null; b = probeInput.next()) {
+            for(i = 0; i < b.size; i ++) {
+                spill(probes, probe, level, b, b.sel[i]);
+            }
+        }
+        for(int p = 0; p < PARTITIONS; p ++) {
+            if(builds[p] != null) {
+                builds[p].finish();
+            }
+            if(probes[p] != null) {
+                probes[p].finish();
+            }
+            if(builds[p] != null && probes[p] != null) {
+                pending.push(new SpillFile[]{builds[p], probes[p]});
+                pendingLevels.push(level);
+            } else if(builds[p] != null) {
+                builds[p].delete();
+            } else if(probes[p] != null) {
+                probes[p].delete();
+            }
+        }
+        this.probeInput = null;
+    }
+
+    private static void spill(SpillFile[] files, JoinSide side, int level, Batch b, int r) throws Exception {
+        Object key = b.columns[side.key.position].get(r);
+        if(key != null) {
+            file(files, side, key, level).write(b, r);
+        }
+    }
+
+    // 两侧相等的连接字段落在同一个分区中，数值统一按long计算哈希
+    private static SpillFile file(SpillFile[] files, JoinSide side, Object key, int level) throws Exception {
+        int hash = key instanceof String ? key.hashCode() : Long.hashCode(((Number)key).longValue());
+        int p = SpillFile.partition(hash, level, PARTITIONS);
+        if(files[p] == null) {
+            files[p] = new SpillFile(side.columns, side.width);
+        }
+        return files[p];
+    }
+}
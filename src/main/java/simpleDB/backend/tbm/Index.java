@@ -0,0 +1,233 @@
+package simpleDB.backend.tbm;
+
+import com.google.common.primitives.Bytes;
+import simpleDB.backend.dm.DataManager;
+import simpleDB.backend.im.BPlusTree;
+import simpleDB.backend.parser.statement.IndexDef;
+import simpleDB.backend.tbm.Field.ParseValueRes;
+import simpleDB.backend.tm.TransactionManagerImpl;
+import simpleDB.backend.utils.Panic;
+import simpleDB.backend.utils.ParseStringRes;
+import simpleDB.backend.utils.Parser;
+
+import java.util.*;
+
+/**
+ * Index 表示建立在多个字段上的联合索引，叶子中还可以附带包含列
+ * 二进制格式为：
+ * [KeyNumber][Key1Name]...[KeyNName][IncludeNumber][Include1Name]...[IncludeMName][BootUid]
+ *
+ * 索引中存储的key为：
+ * [Key1]...[KeyN][Uid][Xmin][Xmax][Include1]...[IncludeM]
+ * Key由Field.value2Key编码，Include由Field.value2Raw编码
+ * Xmin和Xmax与记录的版本信息保持一致，只读取索引即可判断可见性
+ */
+public class Index {
+    long uid;
+    private Table tb;
+    List<Field> keys = new ArrayList<>();
+    List<Field> include = new ArrayList<>();
+    private long bootUid;
+    private BPlusTree bt;
+
+    public static Index loadIndex(Table tb, long uid) {
+        byte[] raw = null;
+        try {
+            raw = ((TableManagerImpl)tb.tbm).vm.read(TransactionManagerImpl.SUPER_XID, uid);
+        } catch (Exception e) {
+            Panic.panic(e);
+        }
+        assert raw != null;
+        Index idx = new Index(tb);
+        idx.uid = uid;
+        return idx.parseSelf(raw);
+    }
+
+    public static Index createIndex(Table tb, long xid, IndexDef def) throws Exception {
+        Index idx = new Index(tb);
+        for(String name : def.fields) {
+            idx.keys.add(tb.getField(name));
+        }
+        for(String name : def.include) {
+            idx.include.add(tb.getField(name));
+        }
+        DataManager dm = ((TableManagerImpl)tb.tbm).dm;
+        idx.bootUid = BPlusTree.create(dm, dm.newSegment());
+        idx.bt = BPlusTree.load(idx.bootUid, ((TableManagerImpl)tb.tbm).dm);
+        idx.persistSelf(xid);
+        return idx;
+    }
+
+    private Index(Table tb) {
+        this.tb = tb;
+    }
+
+    private Index parseSelf(byte[] raw) {
+        int position = 0;
+        position = parseFields(raw, position, keys);
+        position = parseFields(raw, position, include);
+        bootUid = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+        try {
+            bt = BPlusTree.load(bootUid, ((TableManagerImpl)tb.tbm).dm);
+        } catch(Exception e) {
+            Panic.panic(e);
+        }
+        return this;
+    }
+
+    private int parseFields(byte[] raw, int position, List<Field> fields) {
+        int number = Parser.parseInt(Arrays.copyOfRange(raw, position, position+4));
+        position += 4;
+        for(int i = 0; i < number; i ++) {
+            ParseStringRes res = Parser.parseString(Arrays.copyOfRange(raw, position, raw.length));
+            position += res.next;
+            try {
+                fields.add(tb.getField(res.str));
+            } catch(Exception e) {
+                Panic.panic(e);
+            }
+        }
+        return position;
+    }
+
+    private void persistSelf(long xid) throws Exception {
+        byte[] raw = Bytes.concat(fieldsRaw(keys), fieldsRaw(include), Parser.long2Byte(bootUid));
+        this.uid = ((TableManagerImpl)tb.tbm).vm.insert(xid, raw);
+    }
+
+    private byte[] fieldsRaw(List<Field> fields) {
+        byte[] raw = Parser.int2Byte(fields.size());
+        for(Field field : fields) {
+            raw = Bytes.concat(raw, Parser.string2Byte(field.fieldName));
+        }
+        return raw;
+    }
+
+    public Field leading() {
+        return keys.get(0);
+    }
+
+    // 判断索引是否包含了fields中的所有字段
+    public boolean covers(Collection<Field> fields) {
+        for(Field field : fields) {
+            if(!keys.contains(field) && !include.contains(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void insert(Object[] row, long uid, long xmin) throws Exception {
+        bt.insert(key(row, uid, xmin), uid);
+    }
+
+    // 批量插入，key排序后插入
+    public void insert(List<Object[]> rows, List<Long> uids, long xmin) throws Exception {
+        List<byte[]> keys = new ArrayList<>(rows.size());
+        for(int i = 0; i < rows.size(); i ++) {
+            keys.add(key(rows.get(i), uids.get(i), xmin));
+        }
+        bt.insert(keys, uids);
+    }
+
+    private byte[] key(Object[] row, long uid, long xmin) {
+        byte[] includeRaw = new byte[0];
+        for(Field field : include) {
+            includeRaw = Bytes.concat(includeRaw, field.value2Raw(row[field.position]));
+        }
+        return Bytes.concat(keyPrefix(row, uid), Parser.long2Byte(xmin), new byte[8], includeRaw);
+    }
+
+    // 记录被xmax删除时，同步更新索引中的Xmax
+    public void delete(Object[] row, long uid, long xmax) throws Exception {
+        byte[] prefix = keyPrefix(row, uid);
+        bt.patch(prefix, prefix.length+8, Parser.long2Byte(xmax));
+    }
+
+    private byte[] keyPrefix(Object[] row, long uid) {
+        byte[] prefix = new byte[0];
+        for(Field field : keys) {
+            prefix = Bytes.concat(prefix, field.value2Key(row[field.position]));
+        }
+        return Bytes.concat(prefix, Parser.long2Byte(uid));
+    }
+
+    public long segment() {
+        return bt.getSegment();
+    }
+
+    public List<Long> search(byte[] left, byte[] right) throws Exception {
+        return bt.searchRange(left, right);
+    }
+
+    public List<Long> search(byte[] left, byte[] right, int limit) throws Exception {
+        return bt.searchRange(left, right, limit);
+    }
+
+    public BPlusTree.RangeCursor cursor(byte[] left, byte[] right, boolean withKeys) {
+        return bt.cursor(left, right, withKeys);
+    }
+
+    public BPlusTree.RangeCursor lastLeaf() throws Exception {
+        return bt.lastLeaf(true);
+    }
+
+    /**
+     * 只根据索引中的key读取记录，返回projection包含的字段，其余字段为null，记录对xid不可见时返回null
+     * 先判断可见性，未被投影的字段只跳过而不解析
+     */
+    public Object[] read(long xid, byte[] key, List<Field> projection) throws Exception {
+        int pos = 0;
+        for(Field field : keys) {
+            pos += field.skipKey(key, pos);
+        }
+        pos += 8;
+        long xmin = Parser.parseLong(Arrays.copyOfRange(key, pos, pos+8));
+        long xmax = Parser.parseLong(Arrays.copyOfRange(key, pos+8, pos+16));
+        if(!((TableManagerImpl)tb.tbm).vm.isVisible(xid, xmin, xmax)) {
+            return null;
+        }
+        Object[] row = new Object[tb.fields.size()];
+        pos = 0;
+        for(Field field : keys) {
+            if(projection.contains(field)) {
+                ParseValueRes r = field.parserKey(key, pos);
+                row[field.position] = r.v;
+                pos += r.shift;
+            } else {
+                pos += field.skipKey(key, pos);
+            }
+        }
+        pos += 24;
+        for(Field field : include) {
+            if(projection.contains(field)) {
+                ParseValueRes r = field.parserValue(key, pos);
+                row[field.position] = r.v;
+                pos += r.shift;
+            } else {
+                pos += field.skipValue(key, pos);
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Index(");
+        appendNames(sb, keys);
+        sb.append(")");
+        if(include.size() > 0) {
+            sb.append(" Include(");
+            appendNames(sb, include);
+            sb.append(")");
+        }
+        return sb.toString();
+    }
+
+    private void appendNames(StringBuilder sb, List<Field> fields) {
+        for(int i = 0; i < fields.size(); i ++) {
+            if(i > 0) sb.append(", ");
+            sb.append(fields.get(i).fieldName);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.backend.im.BPlusTree;
+
+import java.util.List;
+
+/**
+ * IndexCursor 按key的顺序依次读取单字段B+树索引或联合索引中ranges的每个范围
+ * 每次只读取一个叶子，ranges有序且互不相交，因此读出的条目整体上也按key有序
+ */
+class IndexCursor {
+    private Field field;
+    private Index index;
+    private List<FieldCalRes> ranges;
+    private boolean withKeys;
+
+    private int kth;
+    private BPlusTree.RangeCursor cursor;
+
+    IndexCursor(Field field, List<FieldCalRes> ranges) {
+        this.field = field;
+        this.ranges = ranges;
+    }
+
+    IndexCursor(Index index, List<FieldCalRes> ranges, boolean withKeys) {
+        this.index = index;
+        this.ranges = ranges;
+        this.withKeys = withKeys;
+    }
+
+    // 读取下一个叶子，没有更多条目时返回false
+    boolean next() throws Exception {
+        while(cursor == null || !cursor.next()) {
+            if(kth == ranges.size()) {
+                return false;
+            }
+            FieldCalRes r = ranges.get(kth ++);
+            cursor = field != null ? field.cursor(r.left, r.right) : index.cursor(r.left, r.right, withKeys);
+        }
+        return true;
+    }
+
+    List<Long> uids() {
+        return cursor.uids();
+    }
+
+    List<byte[]> keys() {
+        return cursor.keys();
+    }
+}
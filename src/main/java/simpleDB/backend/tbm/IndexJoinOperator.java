@@ -0,0 +1,85 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.backend.vm.VersionManager;
+
+import java.util.List;
+
+/**
+ * IndexJoinOperator 是索引嵌套循环连接，对外表的每条记录，通过内表连接字段上的索引查找连接字段相等的记录
+ * 内表的记录逐条通过uid读取，对xid不可见的版本被跳过，内表只解码inner.columns中的字段
+ * 两侧的连接字段类型相同
+ */
+class IndexJoinOperator implements Operator {
+    private JoinSide outer, inner;
+    private Table innerTable;
+    private VersionManager vm;
+    private long xid;
+    private Batch batch;
+
+    private Batch ob;
+    private int oi, or;
+    private List<Long> uids;
+    private int kth;
+
+    // inner.input不会被使用，width为连接后Batch中columns的长度
+    IndexJoinOperator(JoinSide outer, JoinSide inner, Table innerTable, long xid, int width) {
+        this.outer = outer;
+        this.inner = inner;
+        this.innerTable = innerTable;
+        this.vm = ((TableManagerImpl)innerTable.tbm).vm;
+        this.xid = xid;
+        ColumnVector[] vectors = new ColumnVector[width];
+        for(JoinSide side : new JoinSide[]{outer, inner}) {
+            for(Field field : side.columns) {
+                vectors[side.offset + field.position] = new ColumnVector(field, Batch.CAPACITY);
+            }
+        }
+        this.batch = new Batch(vectors, Batch.CAPACITY);
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        int n = 0;
+        while(n < Batch.CAPACITY) {
+            if(uids != null && kth < uids.size()) {
+                byte[] raw = vm.read(xid, uids.get(kth ++));
+                if(raw != null) {
+                    emit(n ++, raw);
+                }
+                continue;
+            }
+            if(ob == null || oi == ob.size) {
+                ob = outer.input.next();
+                oi = 0;
+                if(ob == null) {
+                    break;
+                }
+                continue;
+            }
+            or = ob.sel[oi ++];
+            Object key = ob.columns[outer.key.position].get(or);
+            uids = key == null ? null : inner.key.equal(key);
+            kth = 0;
+        }
+        if(n == 0) {
+            return null;
+        }
+        batch.rows = n;
+        batch.selectAll();
+        return batch;
+    }
+
+    @Override
+    public void close() {
+        outer.input.close();
+    }
+
+    private void emit(int n, byte[] raw) {
+        for(Field field : outer.columns) {
+            batch.columns[outer.offset + field.position].set(n, ob.columns[field.position].get(or));
+        }
+        for(Field field : inner.columns) {
+            batch.columns[inner.offset + field.position].load(innerTable.codec, raw, n);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package simpleDB.backend.tbm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * IndexReadOperator 只读取覆盖索引，按key的顺序读出ranges中每个范围内可见的记录
+ * 每次只读取凑满一批所需的叶子，记录的uid不会被读取
+ */
+class IndexReadOperator implements Operator {
+    private Index index;
+    private long xid;
+    private IndexCursor cursor;
+    private List<Field> columns;
+    private Batch batch;
+
+    private List<byte[]> keys;
+    private int pos;
+
+    IndexReadOperator(Table tb, Index index, long xid, List<FieldCalRes> ranges, Collection<Field> columns) {
+        this.index = index;
+        this.xid = xid;
+        this.cursor = new IndexCursor(index, ranges, true);
+        this.columns = new ArrayList<>(columns);
+        ColumnVector[] vectors = new ColumnVector[tb.fields.size()];
+        for(Field field : columns) {
+            vectors[field.position] = new ColumnVector(field, Batch.CAPACITY);
+        }
+        this.batch = new Batch(vectors, Batch.CAPACITY);
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        int n = 0;
+        while(n < Batch.CAPACITY) {
+            if(keys == null || pos == keys.size()) {
+                if(!cursor.next()) {
+                    break;
+                }
+                keys = cursor.keys();
+                pos = 0;
+                continue;
+            }
+            Object[] row = index.read(xid, keys.get(pos ++), columns);
+            if(row == null) {
+                continue;
+            }
+            for(Field field : columns) {
+                batch.columns[field.position].set(n, row[field.position]);
+            }
+            n ++;
+        }
+        if(n == 0) {
+            return null;
+        }
+        batch.rows = n;
+        batch.selectAll();
+        return batch;
+    }
+}
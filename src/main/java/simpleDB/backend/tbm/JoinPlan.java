@@ -0,0 +1,279 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.backend.parser.statement.SingleExpression;
+import simpleDB.backend.parser.statement.Select;
+import simpleDB.backend.parser.statement.Where;
+import simpleDB.common.Error;
+
+import java.util.*;
+
+/**
+ * JoinPlan 生成两表等值内连接的执行计划：
+ * Join -> Filter -> (Aggregate) -> Sort -> Limit -> Project
+ * 连接后的记录中左表的字段在前，右表字段的下标为左表字段数加上其position，字段名为 表名.字段名
+ * 字段可以带表名，不带表名时只能在一个表中出现
+ *
+ * where顶层的and被拆开，只涉及一个表的条件下推到该表的读取中，其余条件在连接之后求值
+ * 连接方式按代价选择：
+ * 哈希连接：两侧各读一遍，在估算行数较少的一侧建立哈希表，该侧过大时两侧都要写入临时文件再读出一次
+ * 索引嵌套循环连接：内表的连接字段上有索引时，外表的每条记录按一次索引查找和一次随机读计算
+ * 内表通过索引按uid读取，其上的条件改为在连接之后求值
+ */
+class JoinPlan {
+    private long xid;
+    private Table left, right;
+    private Select read;
+    // 连接后的字段，左表的字段在前
+    private List<Field> columns = new ArrayList<>();
+
+    // 连接字段和只涉及一侧的条件
+    private Field leftKey, rightKey;
+    private List<Where> leftWheres = new ArrayList<>();
+    private List<Where> rightWheres = new ArrayList<>();
+    private List<Where> residual = new ArrayList<>();
+
+    static ProjectOperator query(long xid, Table left, Table right, Select read) throws Exception {
+        if(left == right) {
+            throw Error.InvalidCommandException;
+        }
+        JoinPlan plan = new JoinPlan(xid, left, right, read);
+        if(AggregatePlan.isAggregate(read)) {
+            return AggregatePlan.plan(read, plan::column, plan.columns.size(), (columns, groupBy, aggs) -> plan.join(columns));
+        }
+        return plan.select();
+    }
+
+    private JoinPlan(long xid, Table left, Table right, Select read) throws Exception {
+        this.xid = xid;
+        this.left = left;
+        this.right = right;
+        this.read = read;
+        for(Table tb : new Table[]{left, right}) {
+            for(Field field : tb.fields) {
+                Field column = new Field(null, tb.name + "." + field.fieldName, field.fieldType, 0);
+                column.position = columns.size();
+                columns.add(column);
+            }
+        }
+        Field l = source(column(read.join.leftField)), r = source(column(read.join.rightField));
+        if(isLeft(l) == isLeft(r)) {
+            throw Error.InvalidCommandException;
+        }
+        leftKey = isLeft(l) ? l : r;
+        rightKey = isLeft(l) ? r : l;
+        if(JoinSide.isNumeric(leftKey) != JoinSide.isNumeric(rightKey)) {
+            throw Error.InvalidFieldException;
+        }
+        List<Where> conjuncts = new ArrayList<>();
+        if(read.where != null) {
+            split(read.where, conjuncts);
+        }
+        for(Where where : conjuncts) {
+            int sides = sides(where);
+            if(sides == 1) {
+                leftWheres.add(where);
+            } else if(sides == 2) {
+                rightWheres.add(where);
+            } else {
+                residual.add(where);
+            }
+        }
+    }
+
+    // 根据字段名找到连接后的字段
+    Field column(String name) throws Exception {
+        int dot = name.indexOf('.');
+        if(dot >= 0) {
+            String table = name.substring(0, dot);
+            String field = name.substring(dot+1);
+            if(table.equals(left.name)) {
+                return columns.get(left.getField(field).position);
+            }
+            if(table.equals(right.name)) {
+                return columns.get(left.fields.size() + right.getField(field).position);
+            }
+            throw Error.TableNotFoundException;
+        }
+        Field l = find(left, name), r = find(right, name);
+        if(l != null && r != null) {
+            throw Error.AmbiguousFieldException;
+        }
+        if(l == null && r == null) {
+            throw Error.FieldNotFoundException;
+        }
+        return l != null ? columns.get(l.position) : columns.get(left.fields.size() + r.position);
+    }
+
+    private static Field find(Table tb, String name) {
+        for(Field field : tb.fields) {
+            if(field.fieldName.equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    // 连接后的字段在原表中对应的字段
+    private Field source(Field column) {
+        int l = left.fields.size();
+        return column.position < l ? left.fields.get(column.position) : right.fields.get(column.position - l);
+    }
+
+    private boolean isLeft(Field field) {
+        return left.fields.contains(field);
+    }
+
+    private ProjectOperator select() throws Exception {
+        List<Field> projection = new ArrayList<>();
+        if(read.fields.length == 1 && "*".equals(read.fields[0])) {
+            projection.addAll(columns);
+        } else {
+            for(String name : read.fields) {
+                projection.add(column(name));
+            }
+        }
+        Field[] keys = new Field[read.orderBy.length];
+        boolean[] desc = new boolean[keys.length];
+        for(int i = 0; i < keys.length; i ++) {
+            keys[i] = column(read.orderBy[i].field);
+            desc[i] = read.orderBy[i].desc;
+        }
+        Set<Field> needed = new LinkedHashSet<>(projection);
+        needed.addAll(Arrays.asList(keys));
+        Operator op = join(needed);
+        if(keys.length > 0) {
+            long rows = read.limit < 0 ? -1 : read.offset + read.limit;
+            op = new SortOperator(op, columns.size(), keys, desc, rows < -1 ? Long.MAX_VALUE : rows, needed);
+        }
+        if(read.limit >= 0 || read.offset > 0) {
+            op = new LimitOperator(op, read.offset, read.limit);
+        }
+        return new ProjectOperator(op, projection);
+    }
+
+    /**
+     * 读出连接后满足where的记录，needed为上层需要的字段
+     */
+    private Operator join(Collection<Field> needed) throws Exception {
+        Table.CostRes le = left.estimate(and(rename(leftWheres)));
+        Table.CostRes re = right.estimate(and(rename(rightWheres)));
+        double hashCost = le.cost + re.cost + (le.rows + re.rows) * Table.CPU_ROW_COST;
+        if(Math.min(le.rows, re.rows) > HashJoinOperator.MAX_BUILD_ROWS) {
+            hashCost += 2 * (left.pages() + right.pages()) * Table.SEQ_PAGE_COST;
+        }
+        double leftOuter = indexJoinCost(le, rightKey, leftKey), rightOuter = indexJoinCost(re, leftKey, rightKey);
+        boolean outerLeft = leftOuter <= rightOuter;
+        boolean indexJoin = Math.min(leftOuter, rightOuter) < hashCost;
+
+        List<Where> after = new ArrayList<>(residual);
+        if(indexJoin) {
+            after.addAll(outerLeft ? rightWheres : leftWheres);
+        }
+        Where where = and(after);
+        Predicate p = Predicate.compile(this::column, where);
+        Set<Field> loaded = new LinkedHashSet<>(needed);
+        loaded.addAll(p.columns());
+
+        JoinSide l = side(left, leftKey, 0, loaded);
+        JoinSide r = side(right, rightKey, left.fields.size(), loaded);
+        Operator op;
+        if(indexJoin) {
+            JoinSide outer = outerLeft ? l : r, inner = outerLeft ? r : l;
+            outer.input = (outerLeft ? left : right).plan(xid, and(rename(outerLeft ? leftWheres : rightWheres)), outer.columns, true, -1);
+            op = new IndexJoinOperator(outer, inner, outerLeft ? right : left, xid, columns.size());
+        } else {
+            l.input = left.plan(xid, and(rename(leftWheres)), l.columns, true, -1);
+            r.input = right.plan(xid, and(rename(rightWheres)), r.columns, true, -1);
+            op = le.rows <= re.rows ? new HashJoinOperator(l, r, columns.size()) : new HashJoinOperator(r, l, columns.size());
+        }
+        return where == null ? op : new FilterOperator(op, p);
+    }
+
+    // 以outer为外表、key所在的表为内表的索引嵌套循环连接的代价，key上没有索引或与外表的连接字段类型不同时不可用
+    private static double indexJoinCost(Table.CostRes outer, Field key, Field outerKey) {
+        if(!key.isIndexed() || !key.fieldType.equals(outerKey.fieldType)) {
+            return Double.MAX_VALUE;
+        }
+        return outer.cost + outer.rows * (2 * Table.RANDOM_PAGE_COST + Table.CPU_ROW_COST);
+    }
+
+    // tb一侧需要读取的字段为loaded中属于tb的字段和连接字段
+    private JoinSide side(Table tb, Field key, int offset, Collection<Field> loaded) {
+        JoinSide side = new JoinSide();
+        side.key = key;
+        side.offset = offset;
+        side.width = tb.fields.size();
+        Set<Field> columns = new LinkedHashSet<>();
+        columns.add(key);
+        for(Field column : loaded) {
+            Field field = source(column);
+            if(tb.fields.contains(field)) {
+                columns.add(field);
+            }
+        }
+        side.columns = new ArrayList<>(columns);
+        return side;
+    }
+
+    private static void split(Where where, List<Where> conjuncts) {
+        if("and".equals(where.logicOp)) {
+            split(where.left, conjuncts);
+            split(where.right, conjuncts);
+        } else {
+            conjuncts.add(where);
+        }
+    }
+
+    // 条件涉及的表，1为左表，2为右表，3为两个表
+    private int sides(Where where) throws Exception {
+        if("".equals(where.logicOp)) {
+            return isLeft(source(column(where.exp.field))) ? 1 : 2;
+        }
+        int sides = sides(where.left);
+        return where.right == null ? sides : sides | sides(where.right);
+    }
+
+    private static Where and(List<Where> wheres) {
+        Where res = null;
+        for(Where where : wheres) {
+            if(res == null) {
+                res = where;
+            } else {
+                Where and = new Where();
+                and.logicOp = "and";
+                and.left = res;
+                and.right = where;
+                res = and;
+            }
+        }
+        return res;
+    }
+
+    // 将条件中的字段名换为原表中的字段名，用于下推到单表的读取中
+    private List<Where> rename(List<Where> wheres) throws Exception {
+        List<Where> res = new ArrayList<>();
+        for(Where where : wheres) {
+            res.add(rename(where));
+        }
+        return res;
+    }
+
+    private Where rename(Where where) throws Exception {
+        if(where == null) {
+            return null;
+        }
+        Where res = new Where();
+        res.logicOp = where.logicOp;
+        res.left = rename(where.left);
+        res.right = rename(where.right);
+        if(where.exp != null) {
+            SingleExpression exp = new SingleExpression();
+            exp.field = source(column(where.exp.field)).fieldName;
+            exp.compareOp = where.exp.compareOp;
+            exp.value = where.exp.value;
+            exp.values = where.exp.values;
+            res.exp = exp;
+        }
+        return res;
+    }
+}
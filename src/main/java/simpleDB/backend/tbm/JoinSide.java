@@ -0,0 +1,26 @@
+package simpleDB.backend.tbm;
+
+import java.util.List;
+
+/**
+ * JoinSide 是连接的一侧，input读出的Batch中字段位于各自的position
+ * 连接后的记录中，该侧的字段位于offset + position
+ */
+class JoinSide {
+    Operator input;
+    // 连接字段
+    Field key;
+    // 需要读取的字段，包含连接字段
+    List<Field> columns;
+    // input读出的Batch中columns的长度
+    int width;
+    int offset;
+
+    static boolean isNumeric(Field field) {
+        return ColumnVector.typeOf(field) != ColumnVector.STRING;
+    }
+
+    static long longValue(ColumnVector c, int r) {
+        return c.type == ColumnVector.INT32 ? c.ints[r] : c.longs[r];
+    }
+}
@@ -0,0 +1,48 @@
+package simpleDB.backend.tbm;
+
+/**
+ * LimitOperator 跳过前offset行后最多向上层返回limit行，limit为-1时不限制
+ * 达到limit后不再读取下层，并关闭下层以尽早释放其资源
+ */
+class LimitOperator implements Operator {
+    private Operator child;
+    private long skip;
+    private long remaining;
+
+    LimitOperator(Operator child, long offset, long limit) {
+        this.child = child;
+        this.skip = offset;
+        this.remaining = limit < 0 ? Long.MAX_VALUE : limit;
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        while(remaining > 0) {
+            Batch b = child.next();
+            if(b == null) {
+                return null;
+            }
+            if(skip >= b.size) {
+                skip -= b.size;
+                continue;
+            }
+            if(skip > 0) {
+                System.arraycopy(b.sel, (int)skip, b.sel, 0, b.size - (int)skip);
+                b.size -= (int)skip;
+                skip = 0;
+            }
+            if(b.size > remaining) {
+                b.size = (int)remaining;
+            }
+            remaining -= b.size;
+            return b;
+        }
+        child.close();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+}
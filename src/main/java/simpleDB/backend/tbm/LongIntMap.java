@@ -0,0 +1,61 @@
+package simpleDB.backend.tbm;
+
+/**
+ * LongIntMap 是以long为key、非负int为value的开放寻址哈希表，线性探测，装载因子不超过1/2
+ */
+class LongIntMap {
+    private long[] keys = new long[64];
+    private int[] values = new int[64];
+    private boolean[] used = new boolean[64];
+    private int size;
+
+    // key不存在时返回-1
+    int get(long key) {
+        int mask = keys.length - 1;
+        for(int i = slot(key, mask); used[i]; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                return values[i];
+            }
+        }
+        return -1;
+    }
+
+    void put(long key, int value) {
+        if(size * 2 >= keys.length) {
+            rehash();
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while(used[i]) {
+            if(keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        size ++;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i ++) {
+            if(oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int)(h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,12 @@
+package simpleDB.backend.tbm;
+
+/**
+ * Operator 是执行计划中的算子，每次向上层返回一批记录
+ * 返回的Batch在下一次调用next前有效，没有更多记录时返回null
+ * 不再读取时调用close释放临时文件等资源，close可以重复调用，之后不能再调用next
+ */
+interface Operator {
+    Batch next() throws Exception;
+
+    default void close() {}
+}
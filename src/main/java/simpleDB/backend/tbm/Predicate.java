@@ -0,0 +1,432 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.backend.parser.statement.SingleExpression;
+import simpleDB.backend.parser.statement.Where;
+import simpleDB.common.Error;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Predicate 是编译后的where条件，语法树中的每个节点编译为一个求值器，常量只在编译时转换一次
+ * 求值时对一批记录的列向量逐列过滤，只缩小选择向量，不移动数据
+ * 记录中的null不满足任何比较条件，not直接对子条件的结果取补集
+ */
+class Predicate {
+    private Node root;
+
+    /**
+     * 每个节点将sel[0..n)中满足条件的行按原顺序写入out，返回写入的行数
+     * out可以与sel相同
+     */
+    private static abstract class Node {
+        abstract int filter(Batch b, int[] sel, int n, int[] out);
+        abstract void columns(List<Field> columns);
+    }
+
+    // 根据where中的字段名找到字段，字段的position即为它在Batch中的下标
+    interface Columns {
+        Field get(String name) throws Exception;
+    }
+
+    static Predicate compile(Table tb, Where where) throws Exception {
+        return compile(tb::getField, where);
+    }
+
+    static Predicate compile(Columns columns, Where where) throws Exception {
+        Predicate p = new Predicate();
+        p.root = where == null ? null : compileNode(columns, where);
+        return p;
+    }
+
+    private static Node compileNode(Columns columns, Where where) throws Exception {
+        switch(where.logicOp) {
+            case "":
+                return compileExp(columns, where.exp);
+            case "and":
+                return new And(compileNode(columns, where.left), compileNode(columns, where.right));
+            case "or":
+                return new Or(compileNode(columns, where.left), compileNode(columns, where.right));
+            case "not":
+                return new Not(compileNode(columns, where.left));
+            default:
+                throw Error.InvalidLogOpException;
+        }
+    }
+
+    private static Node compileExp(Columns columns, SingleExpression exp) throws Exception {
+        Field fd = columns.get(exp.field);
+        switch(exp.compareOp) {
+            case "in":
+                return new In(fd, exp.values);
+            case "like":
+                if(!"string".equals(fd.fieldType)) {
+                    throw Error.InvalidFieldException;
+                }
+                return new Like(fd, exp.value);
+        }
+        if(ColumnVector.typeOf(fd) == ColumnVector.STRING) {
+            return new StringRange(fd, exp);
+        }
+        return new NumberRange(fd, exp);
+    }
+
+    // 条件中出现的字段，扫描时需要解码
+    List<Field> columns() {
+        List<Field> columns = new ArrayList<>();
+        if(root != null) {
+            root.columns(columns);
+        }
+        return columns;
+    }
+
+    // 只保留b中满足条件的行
+    void filter(Batch b) {
+        if(root != null) {
+            b.size = root.filter(b, b.sel, b.size, b.sel);
+        }
+    }
+
+    private static class And extends Node {
+        Node left, right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int filter(Batch b, int[] sel, int n, int[] out) {
+            int k = left.filter(b, sel, n, out);
+            return right.filter(b, out, k, out);
+        }
+
+        @Override
+        void columns(List<Field> columns) {
+            left.columns(columns);
+            right.columns(columns);
+        }
+    }
+
+    // 分别求出满足left的行和不满足left但满足right的行，再按下标归并
+    private static class Or extends Node {
+        Node left, right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int filter(Batch b, int[] sel, int n, int[] out) {
+            int[] hit = new int[n];
+            int h = left.filter(b, sel, n, hit);
+            int[] rest = new int[n - h];
+            int r = minus(sel, n, hit, h, rest);
+            r = right.filter(b, rest, r, rest);
+            int i = 0, j = 0, k = 0;
+            while(i < h || j < r) {
+                if(j == r || (i < h && hit[i] < rest[j])) {
+                    out[k ++] = hit[i ++];
+                } else {
+                    out[k ++] = rest[j ++];
+                }
+            }
+            return k;
+        }
+
+        @Override
+        void columns(List<Field> columns) {
+            left.columns(columns);
+            right.columns(columns);
+        }
+    }
+
+    private static class Not extends Node {
+        Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        int filter(Batch b, int[] sel, int n, int[] out) {
+            int[] hit = new int[n];
+            int h = child.filter(b, sel, n, hit);
+            return minus(sel, n, hit, h, out);
+        }
+
+        @Override
+        void columns(List<Field> columns) {
+            child.columns(columns);
+        }
+    }
+
+    // 将sel[0..n)中不在hit[0..h)里的行写入out，hit是sel的子序列
+    private static int minus(int[] sel, int n, int[] hit, int h, int[] out) {
+        int k = 0;
+        for(int i = 0, j = 0; i < n; i ++) {
+            if(j < h && hit[j] == sel[i]) {
+                j ++;
+            } else {
+                out[k ++] = sel[i];
+            }
+        }
+        return k;
+    }
+
+    /**
+     * int32和int64上的 < <= = >= > between 统一为闭区间[low, high]，!= 为区间[v, v]之外
+     * 每种类型只有一个循环
+     */
+    private static class NumberRange extends Node {
+        Field field;
+        long low = Long.MIN_VALUE, high = Long.MAX_VALUE;
+        boolean outside;
+
+        NumberRange(Field field, SingleExpression exp) {
+            this.field = field;
+            switch(exp.compareOp) {
+                case "<":
+                    high = value(exp.value);
+                    if(high == Long.MIN_VALUE) {
+                        low = 1;
+                        high = 0;
+                    } else {
+                        high --;
+                    }
+                    break;
+                case "<=":
+                    high = value(exp.value);
+                    break;
+                case "=":
+                    low = high = value(exp.value);
+                    break;
+                case "!=":
+                    low = high = value(exp.value);
+                    outside = true;
+                    break;
+                case ">=":
+                    low = value(exp.value);
+                    break;
+                case ">":
+                    low = value(exp.value);
+                    if(low == Long.MAX_VALUE) {
+                        low = 1;
+                        high = 0;
+                    } else {
+                        low ++;
+                    }
+                    break;
+                case "between":
+                    low = value(exp.values[0]);
+                    high = value(exp.values[1]);
+                    break;
+            }
+        }
+
+        private long value(String str) {
+            return ((Number)field.string2Value(str)).longValue();
+        }
+
+        @Override
+        int filter(Batch b, int[] sel, int n, int[] out) {
+            ColumnVector c = b.columns[field.position];
+            boolean[] nulls = c.nulls;
+            long lo = low, hi = high;
+            boolean outside = this.outside;
+            int k = 0;
+            if(c.type == ColumnVector.INT32) {
+                int[] v = c.ints;
+                for(int i = 0; i < n; i ++) {
+                    int r = sel[i];
+                    if(!nulls[r] && (v[r] >= lo && v[r] <= hi) != outside) out[k ++] = r;
+                }
+            } else {
+                long[] v = c.longs;
+                for(int i = 0; i < n; i ++) {
+                    int r = sel[i];
+                    if(!nulls[r] && (v[r] >= lo && v[r] <= hi) != outside) out[k ++] = r;
+                }
+            }
+            return k;
+        }
+
+        @Override
+        void columns(List<Field> columns) {
+            columns.add(field);
+        }
+    }
+
+    // string上的比较，low和high为null表示无界
+    private static class StringRange extends Node {
+        Field field;
+        String low, high;
+        boolean lowInclusive = true, highInclusive = true;
+        String unequal;
+
+        StringRange(Field field, SingleExpression exp) {
+            this.field = field;
+            switch(exp.compareOp) {
+                case "<":
+                    high = exp.value;
+                    highInclusive = false;
+                    break;
+                case "<=":
+                    high = exp.value;
+                    break;
+                case "=":
+                    low = high = exp.value;
+                    break;
+                case "!=":
+                    unequal = exp.value;
+                    break;
+                case ">=":
+                    low = exp.value;
+                    break;
+                case ">":
+                    low = exp.value;
+                    lowInclusive = false;
+                    break;
+                case "between":
+                    low = exp.values[0];
+                    high = exp.values[1];
+                    break;
+            }
+        }
+
+        @Override
+        int filter(Batch b, int[] sel, int n, int[] out) {
+            ColumnVector c = b.columns[field.position];
+            boolean[] nulls = c.nulls;
+            String[] v = c.strings;
+            int k = 0;
+            for(int i = 0; i < n; i ++) {
+                int r = sel[i];
+                if(nulls[r]) continue;
+                if(unequal != null && v[r].equals(unequal)) continue;
+                if(low != null) {
+                    int cmp = v[r].compareTo(low);
+                    if(cmp < 0 || cmp == 0 && !lowInclusive) continue;
+                }
+                if(high != null) {
+                    int cmp = v[r].compareTo(high);
+                    if(cmp > 0 || cmp == 0 && !highInclusive) continue;
+                }
+                out[k ++] = r;
+            }
+            return k;
+        }
+
+        @Override
+        void columns(List<Field> columns) {
+            columns.add(field);
+        }
+    }
+
+    // 数值在有序数组中二分查找，string使用HashSet
+    private static class In extends Node {
+        Field field;
+        long[] numbers;
+        Set<String> strings;
+
+        In(Field field, String[] values) {
+            this.field = field;
+            if(ColumnVector.typeOf(field) == ColumnVector.STRING) {
+                strings = new HashSet<>(Arrays.asList(values));
+            } else {
+                numbers = new long[values.length];
+                for(int i = 0; i < values.length; i ++) {
+                    numbers[i] = ((Number)field.string2Value(values[i])).longValue();
+                }
+                Arrays.sort(numbers);
+            }
+        }
+
+        @Override
+        int filter(Batch b, int[] sel, int n, int[] out) {
+            ColumnVector c = b.columns[field.position];
+            boolean[] nulls = c.nulls;
+            int k = 0;
+            switch(c.type) {
+                case ColumnVector.INT32:
+                    for(int i = 0; i < n; i ++) {
+                        int r = sel[i];
+                        if(!nulls[r] && Arrays.binarySearch(numbers, c.ints[r]) >= 0) out[k ++] = r;
+                    }
+                    break;
+                case ColumnVector.INT64:
+                    for(int i = 0; i < n; i ++) {
+                        int r = sel[i];
+                        if(!nulls[r] && Arrays.binarySearch(numbers, c.longs[r]) >= 0) out[k ++] = r;
+                    }
+                    break;
+                default:
+                    for(int i = 0; i < n; i ++) {
+                        int r = sel[i];
+                        if(!nulls[r] && strings.contains(c.strings[r])) out[k ++] = r;
+                    }
+            }
+            return k;
+        }
+
+        @Override
+        void columns(List<Field> columns) {
+            columns.add(field);
+        }
+    }
+
+    /**
+     * like模式编译为正则表达式，%匹配任意个字符，_匹配一个字符
+     * 只有前缀的模式直接使用startsWith
+     */
+    private static class Like extends Node {
+        Field field;
+        String prefix;
+        Pattern pattern;
+
+        Like(Field field, String like) {
+            this.field = field;
+            String prefix = Field.likePrefix(like);
+            if(prefix.length() == like.length() - 1 && like.endsWith("%")) {
+                this.prefix = prefix;
+                return;
+            }
+            StringBuilder regex = new StringBuilder();
+            int start = 0;
+            for(int i = 0; i < like.length(); i ++) {
+                char ch = like.charAt(i);
+                if(ch == '%' || ch == '_') {
+                    regex.append(Pattern.quote(like.substring(start, i)));
+                    regex.append(ch == '%' ? ".*" : ".");
+                    start = i + 1;
+                }
+            }
+            regex.append(Pattern.quote(like.substring(start)));
+            this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        @Override
+        int filter(Batch b, int[] sel, int n, int[] out) {
+            ColumnVector c = b.columns[field.position];
+            boolean[] nulls = c.nulls;
+            String[] v = c.strings;
+            int k = 0;
+            for(int i = 0; i < n; i ++) {
+                int r = sel[i];
+                if(nulls[r]) continue;
+                if(prefix != null ? v[r].startsWith(prefix) : pattern.matcher(v[r]).matches()) out[k ++] = r;
+            }
+            return k;
+        }
+
+        @Override
+        void columns(List<Field> columns) {
+            columns.add(field);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package simpleDB.backend.tbm;
+
+import java.util.List;
+
+/**
+ * ProjectOperator 按投影的顺序重新排列列向量
+ * 返回的Batch中columns按投影下标，与下层共享列向量和选择向量，不复制数据
+ */
+class ProjectOperator implements Operator {
+    private Operator child;
+    private List<Field> projection;
+
+    ProjectOperator(Operator child, List<Field> projection) {
+        this.child = child;
+        this.projection = projection;
+    }
+
+    // 输出的各列对应的字段
+    List<Field> columns() {
+        return projection;
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        Batch b = child.next();
+        if(b == null) {
+            return null;
+        }
+        ColumnVector[] columns = new ColumnVector[projection.size()];
+        for(int i = 0; i < columns.length; i ++) {
+            columns[i] = b.columns[projection.get(i).position];
+        }
+        Batch out = new Batch(columns, 0);
+        out.rows = b.rows;
+        out.uids = b.uids;
+        out.sel = b.sel;
+        out.size = b.size;
+        return out;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+    }
+}
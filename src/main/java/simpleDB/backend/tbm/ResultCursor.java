@@ -0,0 +1,103 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.transport.Columns;
+
+import java.util.List;
+
+/**
+ * ResultCursor 是一次select的结果，每次fetch时才从执行计划中取出记录并输出为文本
+ * fetchColumns按列输出为Columns，值直接取自列向量，不经过文本
+ * 只保留执行计划当前返回的一批记录，内存与每次取出的行数有关，与结果的总行数无关
+ * 读取使用打开时的事务，在事务结束前必须关闭或读完，关闭时执行计划删除其临时文件
+ */
+public class ResultCursor {
+    private Operator plan;
+    private byte[] types;
+    private String[] names;
+    private Batch batch;
+    private int pos;
+    private boolean done;
+
+    ResultCursor(ProjectOperator plan) {
+        this.plan = plan;
+        List<Field> columns = plan.columns();
+        types = new byte[columns.size()];
+        names = new String[columns.size()];
+        for(int i = 0; i < types.length; i ++) {
+            types[i] = (byte)ColumnVector.typeOf(columns.get(i));
+            names[i] = columns.get(i).fieldName;
+        }
+    }
+
+    // 取出至多rows行，rows小于0时取出剩余的全部记录，没有更多记录时返回空
+    public byte[] fetch(long rows) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        long n = 0;
+        advance();
+        while(!done && (rows < 0 || n < rows)) {
+            Table.printRow(sb, batch, batch.sel[pos ++]);
+            n ++;
+            advance();
+        }
+        return sb.toString().getBytes();
+    }
+
+    // 与fetch相同，结果按列编码，没有更多记录时返回只有列信息的空结果
+    public byte[] fetchColumns(long rows) throws Exception {
+        Columns.Writer w = new Columns.Writer(types, names);
+        long n = 0;
+        advance();
+        while(!done && (rows < 0 || n < rows)) {
+            int end = rows < 0 ? batch.size : (int)Math.min(batch.size, pos + rows - n);
+            for(int j = 0; j < types.length; j ++) {
+                ColumnVector c = batch.columns[j];
+                for(int i = pos; i < end; i ++) {
+                    int r = batch.sel[i];
+                    if(c.nulls[r]) {
+                        w.writeNull(j);
+                        continue;
+                    }
+                    switch(c.type) {
+                        case ColumnVector.INT32:
+                            w.writeInt(j, c.ints[r]);
+                            break;
+                        case ColumnVector.INT64:
+                            w.writeLong(j, c.longs[r]);
+                            break;
+                        default:
+                            w.writeString(j, c.strings[r]);
+                    }
+                }
+            }
+            n += end - pos;
+            pos = end;
+            advance();
+        }
+        return w.encode();
+    }
+
+    // 所有记录都已取出
+    public boolean isDone() {
+        return done;
+    }
+
+    public void close() {
+        done = true;
+        batch = null;
+        if(plan != null) {
+            plan.close();
+            plan = null;
+        }
+    }
+
+    // 当前的一批记录取完时读取下一批，使done在最后一行被取出时就能确定
+    private void advance() throws Exception {
+        while(!done && (batch == null || pos == batch.size)) {
+            batch = plan.next();
+            pos = 0;
+            if(batch == null) {
+                close();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package simpleDB.backend.tbm;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * RowCodec 根据表结构对记录进行编解码，记录在内存中表示为按字段顺序排列的Object[]
+ * 二进制格式为：
+ * [NullBitmap][FixedSection][VarEnd1]...[VarEndM][VarData]
+ * NullBitmap 每个字段一位，为1表示该字段为null
+ * FixedSection 按字段顺序存放int32和int64字段
+ * VarEndi 2字节，第i个string字段在记录中的结束位置，其起始位置为前一个string的结束位置
+ * VarData 按字段顺序存放所有string字段
+ * 读取任意字段都可以直接根据偏移定位，无需解析之前的字段
+ */
+public class RowCodec {
+    // 估算记录长度时string字段的平均长度
+    static final int AVG_STRING_SIZE = 16;
+
+    private List<Field> fields;
+    // 定长字段为值的偏移，变长字段为其VarEnd的偏移
+    private int[] offsets;
+    private boolean[] var;
+    private int bitmapSize;
+    private int varEndStart;
+    private int varDataStart;
+    private int varCount;
+
+    public RowCodec(List<Field> fields) {
+        this.fields = fields;
+        int n = fields.size();
+        offsets = new int[n];
+        var = new boolean[n];
+        bitmapSize = (n + 7) / 8;
+        int pos = bitmapSize;
+        for(int i = 0; i < n; i ++) {
+            switch(fields.get(i).fieldType) {
+                case "int32":
+                    offsets[i] = pos;
+                    pos += 4;
+                    break;
+                case "int64":
+                    offsets[i] = pos;
+                    pos += 8;
+                    break;
+                case "string":
+                    var[i] = true;
+                    varCount ++;
+                    break;
+            }
+        }
+        varEndStart = pos;
+        for(int i = 0; i < n; i ++) {
+            if(var[i]) {
+                offsets[i] = pos;
+                pos += 2;
+            }
+        }
+        varDataStart = pos;
+    }
+
+    // 估算一条记录编码后的平均长度
+    public int estimatedSize() {
+        return varDataStart + varCount * AVG_STRING_SIZE;
+    }
+
+    public byte[] encode(Object[] row) {
+        byte[][] strings = new byte[row.length][];
+        int size = varDataStart;
+        for(int i = 0; i < row.length; i ++) {
+            if(var[i] && row[i] != null) {
+                strings[i] = ((String)row[i]).getBytes();
+                size += strings[i].length;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        byte[] raw = buf.array();
+        int varEnd = varDataStart;
+        for(int i = 0; i < row.length; i ++) {
+            if(row[i] == null) {
+                raw[i / 8] |= (byte)(1 << (i % 8));
+            }
+            if(var[i]) {
+                if(strings[i] != null) {
+                    System.arraycopy(strings[i], 0, raw, varEnd, strings[i].length);
+                    varEnd += strings[i].length;
+                }
+                buf.putShort(offsets[i], (short)varEnd);
+            } else if(row[i] != null) {
+                if("int32".equals(fields.get(i).fieldType)) {
+                    buf.putInt(offsets[i], (int)row[i]);
+                } else {
+                    buf.putLong(offsets[i], (long)row[i]);
+                }
+            }
+        }
+        return raw;
+    }
+
+    // 只读取第i个字段
+    public Object get(byte[] raw, int i) {
+        if((raw[i / 8] & (1 << (i % 8))) != 0) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        if(var[i]) {
+            int start = offsets[i] == varEndStart ? varDataStart : buf.getShort(offsets[i]-2) & 0xffff;
+            int end = buf.getShort(offsets[i]) & 0xffff;
+            return new String(raw, start, end - start);
+        }
+        if("int32".equals(fields.get(i).fieldType)) {
+            return buf.getInt(offsets[i]);
+        }
+        return buf.getLong(offsets[i]);
+    }
+
+    public boolean isNull(byte[] raw, int i) {
+        return (raw[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    // 以下读取方法不检查null，也不装箱，供批量解码使用
+    public int getInt(byte[] raw, int i) {
+        return int32At(raw, offsets[i]);
+    }
+
+    public long getLong(byte[] raw, int i) {
+        int o = offsets[i];
+        return (long)int32At(raw, o) << 32 | (int32At(raw, o+4) & 0xffffffffL);
+    }
+
+    private static int int32At(byte[] raw, int o) {
+        return (raw[o] & 0xff) << 24 | (raw[o+1] & 0xff) << 16 | (raw[o+2] & 0xff) << 8 | (raw[o+3] & 0xff);
+    }
+
+    public String getString(byte[] raw, int i) {
+        int start = offsets[i] == varEndStart ? varDataStart : u16(raw, offsets[i]-2);
+        int end = u16(raw, offsets[i]);
+        return new String(raw, start, end - start);
+    }
+
+    private static int u16(byte[] raw, int o) {
+        return (raw[o] & 0xff) << 8 | (raw[o+1] & 0xff);
+    }
+
+    public Object[] decode(byte[] raw) {
+        Object[] row = new Object[fields.size()];
+        for(int i = 0; i < row.length; i ++) {
+            row[i] = get(raw, i);
+        }
+        return row;
+    }
+
+    // 只解码columns中的字段，其余位置为null
+    public Object[] decode(byte[] raw, List<Field> columns) {
+        Object[] row = new Object[fields.size()];
+        for(Field field : columns) {
+            row[field.position] = get(raw, field.position);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,43 @@
+package simpleDB.backend.tbm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * RowsOperator 将已经读出的记录分批返回，记录按字段的position存放
+ */
+class RowsOperator implements Operator {
+    private List<Object[]> rows;
+    private List<Field> columns;
+    private Batch batch;
+    private int pos;
+
+    RowsOperator(Table tb, Collection<Field> columns, List<Object[]> rows) {
+        this.rows = rows;
+        this.columns = new ArrayList<>(columns);
+        ColumnVector[] vectors = new ColumnVector[tb.fields.size()];
+        for(Field field : columns) {
+            vectors[field.position] = new ColumnVector(field, Batch.CAPACITY);
+        }
+        this.batch = new Batch(vectors, Batch.CAPACITY);
+    }
+
+    @Override
+    public Batch next() {
+        int n = 0;
+        while(n < Batch.CAPACITY && pos < rows.size()) {
+            Object[] row = rows.get(pos ++);
+            for(Field field : columns) {
+                batch.columns[field.position].set(n, row[field.position]);
+            }
+            n ++;
+        }
+        if(n == 0) {
+            return null;
+        }
+        batch.rows = n;
+        batch.selectAll();
+        return batch;
+    }
+}
@@ -0,0 +1,114 @@
+package simpleDB.backend.tbm;
+
+import simpleDB.backend.vm.EntryScanner;
+import simpleDB.backend.vm.VersionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ScanOperator 读取记录并将columns中的字段解码到列向量中
+ * 记录来自顺序扫描，或者来自索引查找得到的uid，或者按key的顺序逐个叶子读取索引得到的uid
+ */
+class ScanOperator implements Operator {
+    private RowCodec codec;
+    private ColumnVector[] loaded;
+    private Batch batch;
+    // 本批最多读取的行数
+    private int batchRows = Batch.CAPACITY;
+
+    private EntryScanner scanner;
+
+    private VersionManager vm;
+    private long xid;
+    private List<Long> uids;
+    private int kth;
+    private IndexCursor cursor;
+
+    private long uid;
+    private byte[] raw;
+
+    ScanOperator(Table tb, Collection<Field> columns, EntryScanner scanner) {
+        init(tb, columns);
+        this.scanner = scanner;
+    }
+
+    ScanOperator(Table tb, Collection<Field> columns, VersionManager vm, long xid, List<Long> uids) {
+        init(tb, columns);
+        this.vm = vm;
+        this.xid = xid;
+        this.uids = uids;
+    }
+
+    ScanOperator(Table tb, Collection<Field> columns, VersionManager vm, long xid, IndexCursor cursor) {
+        this(tb, columns, vm, xid, new ArrayList<>());
+        this.cursor = cursor;
+    }
+
+    /**
+     * 上层只需要前rows行时，第一批只读取rows行，之后每批的行数加倍
+     * 避免通过索引读取记录时为了凑满一批而产生大量随机读
+     */
+    void expectRows(long rows) {
+        batchRows = (int)Math.max(1, Math.min(rows, Batch.CAPACITY));
+    }
+
+    private void init(Table tb, Collection<Field> columns) {
+        this.codec = tb.codec;
+        ColumnVector[] vectors = new ColumnVector[tb.fields.size()];
+        List<ColumnVector> loaded = new ArrayList<>();
+        for(Field field : columns) {
+            if(vectors[field.position] == null) {
+                vectors[field.position] = new ColumnVector(field, Batch.CAPACITY);
+                loaded.add(vectors[field.position]);
+            }
+        }
+        this.loaded = loaded.toArray(new ColumnVector[0]);
+        this.batch = new Batch(vectors, Batch.CAPACITY);
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        int rows = 0;
+        while(rows < batchRows && nextRow()) {
+            batch.uids[rows] = uid;
+            for(ColumnVector vector : loaded) {
+                vector.load(codec, raw, rows);
+            }
+            rows ++;
+        }
+        if(rows == 0) {
+            return null;
+        }
+        batch.rows = rows;
+        batch.selectAll();
+        batchRows = Math.min(batchRows * 2, Batch.CAPACITY);
+        return batch;
+    }
+
+    private boolean nextRow() throws Exception {
+        if(scanner != null) {
+            if(!scanner.next()) {
+                return false;
+            }
+            uid = scanner.uid();
+            raw = scanner.data();
+            return true;
+        }
+        while(true) {
+            while(kth < uids.size()) {
+                uid = uids.get(kth ++);
+                raw = vm.read(xid, uid);
+                if(raw != null) {
+                    return true;
+                }
+            }
+            if(cursor == null || !cursor.next()) {
+                return false;
+            }
+            uids = cursor.uids();
+            kth = 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package simpleDB.backend.tbm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * SortOperator 读出下层的全部记录，按keys排序后再分批返回，排序是稳定的，null小于任何值
+ * rows不为-1时上层只需要前rows行，此时使用大小为rows的堆保存当前最小的rows行，堆顶为其中最大的一行
+ * 新的一行先只取出排序字段与堆顶比较，小于堆顶时才复制整行并替换堆顶，内存只与rows有关
+ */
+class SortOperator implements Operator {
+    private Operator child;
+    private Field[] keys;
+    private boolean[] desc;
+    private long rows;
+    private List<Field> columns;
+    private Batch batch;
+
+    // 记录按字段的position存放，最后两个位置为uid和读入的次序
+    private int uidPos, seqPos;
+    private Comparator<Object[]> order;
+    private List<Object[]> sorted;
+    private int pos;
+
+    // width为下层的Batch中columns的长度
+    SortOperator(Operator child, int width, Field[] keys, boolean[] desc, long rows, Collection<Field> columns) {
+        this.child = child;
+        this.keys = keys;
+        this.desc = desc;
+        this.rows = rows;
+        this.columns = new ArrayList<>(columns);
+        ColumnVector[] vectors = new ColumnVector[width];
+        for(Field field : columns) {
+            vectors[field.position] = new ColumnVector(field, Batch.CAPACITY);
+        }
+        this.batch = new Batch(vectors, Batch.CAPACITY);
+        this.uidPos = width;
+        this.seqPos = uidPos + 1;
+        this.order = this::compare;
+    }
+
+    @Override
+    public Batch next() throws Exception {
+        if(sorted == null) {
+            sorted = rows < 0 ? sortAll() : topN();
+        }
+        int n = 0;
+        while(n < Batch.CAPACITY && pos < sorted.size()) {
+            Object[] row = sorted.get(pos ++);
+            for(Field field : columns) {
+                batch.columns[field.position].set(n, row[field.position]);
+            }
+            batch.uids[n] = (long)row[uidPos];
+            n ++;
+        }
+        if(n == 0) {
+            return null;
+        }
+        batch.rows = n;
+        batch.selectAll();
+        return batch;
+    }
+
+    @Override
+    public void close() {
+        child.close();
+        sorted = new ArrayList<>();
+    }
+
+    private List<Object[]> sortAll() throws Exception {
+        List<Object[]> all = new ArrayList<>();
+        long seq = 0;
+        for(Batch b = child.next(); b != null; b = child.next()) {
+            for(int i = 0; i < b.size; i ++) {
+                Object[] row = new Object[seqPos + 1];
+                copyKeys(b, b.sel[i], row);
+                copyRest(b, b.sel[i], row, seq ++);
+                all.add(row);
+            }
+        }
+        all.sort(order);
+        return all;
+    }
+
+    private List<Object[]> topN() throws Exception {
+        List<Object[]> res = new ArrayList<>();
+        if(rows == 0) {
+            return res;
+        }
+        int n = (int)Math.min(rows, Integer.MAX_VALUE - 1);
+        PriorityQueue<Object[]> heap = new PriorityQueue<>(Math.min(n, Batch.CAPACITY), order.reversed());
+        Object[] row = new Object[seqPos + 1];
+        long seq = 0;
+        for(Batch b = child.next(); b != null; b = child.next()) {
+            for(int i = 0; i < b.size; i ++) {
+                int r = b.sel[i];
+                copyKeys(b, r, row);
+                row[seqPos] = seq ++;
+                if(heap.size() == n && compare(row, heap.peek()) >= 0) {
+                    continue;
+                }
+                copyRest(b, r, row, (long)row[seqPos]);
+                if(heap.size() == n) {
+                    heap.poll();
+                }
+                heap.add(row);
+                row = new Object[seqPos + 1];
+            }
+        }
+        res.addAll(heap);
+        res.sort(order);
+        return res;
+    }
+
+    private void copyKeys(Batch b, int r, Object[] row) {
+        for(Field key : keys) {
+            row[key.position] = b.columns[key.position].get(r);
+        }
+    }
+
+    private void copyRest(Batch b, int r, Object[] row, long seq) {
+        for(Field field : columns) {
+            row[field.position] = b.columns[field.position].get(r);
+        }
+        row[uidPos] = b.uids[r];
+        row[seqPos] = seq;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object[] x, Object[] y) {
+        for(int i = 0; i < keys.length; i ++) {
+            Object a = x[keys[i].position], b = y[keys[i].position];
+            int cmp;
+            if(a == null || b == null) {
+                cmp = a == null ? (b == null ? 0 : -1) : 1;
+            } else {
+                cmp = ((Comparable<Object>)a).compareTo(b);
+            }
+            if(cmp != 0) {
+                return desc[i] ? -cmp : cmp;
+            }
+        }
+        return Long.compare((long)x[seqPos], (long)y[seqPos]);
+    }
+}
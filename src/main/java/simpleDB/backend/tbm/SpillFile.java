@@ -0,0 +1,140 @@
+package simpleDB.backend.tbm;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * SpillFile 是算子在内存不足时写出记录的临时文件，只保存fields中的字段
+ * 每条记录以1开头，之后为各字段的值，每个值以一字节的null标志开头，文件以0结尾
+ * 读回时字段仍放在Batch中原来的position上，读完或关闭后文件被删除
+ * 算子被提前关闭时由算子删除尚未读取的文件，不依赖JVM退出时的删除
+ */
+class SpillFile {
+    private List<Field> fields;
+    private int width;
+    private File file;
+    private DataOutputStream out;
+    private long rows;
+
+    SpillFile(List<Field> fields, int width) throws IOException {
+        this.fields = fields;
+        this.width = width;
+        this.file = File.createTempFile("simpledb", ".spill");
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    void write(Batch b, int r) throws IOException {
+        out.write(1);
+        for(Field field : fields) {
+            writeValue(b.columns[field.position].get(r));
+        }
+        rows ++;
+    }
+
+    // row按字段的position存放
+    void write(Object[] row) throws IOException {
+        out.write(1);
+        for(Field field : fields) {
+            writeValue(row[field.position]);
+        }
+        rows ++;
+    }
+
+    // 写完所有记录
+    void finish() throws IOException {
+        out.write(0);
+        out.close();
+    }
+
+    // 可以在写完之前删除
+    void delete() {
+        try {
+            out.close();
+        } catch(IOException ignored) {}
+        file.delete();
+    }
+
+    private void writeValue(Object v) throws IOException {
+        if(v == null) {
+            out.write(0);
+            return;
+        }
+        out.write(1);
+        if(v instanceof Integer) {
+            out.writeInt((int)v);
+        } else if(v instanceof Long) {
+            out.writeLong((long)v);
+        } else {
+            out.writeUTF((String)v);
+        }
+    }
+
+    // 根据哈希值选择分区，每一层使用不同的种子，使同一分区中的记录在下一层能被继续分开
+    static int partition(int hash, int level, int partitions) {
+        int h = hash ^ (level * 0x9e3779b9);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return Math.floorMod(h, partitions);
+    }
+
+    // 分批读回所有记录
+    Operator open() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        ColumnVector[] vectors = new ColumnVector[width];
+        for(Field field : fields) {
+            vectors[field.position] = new ColumnVector(field, Batch.CAPACITY);
+        }
+        Batch batch = new Batch(vectors, Batch.CAPACITY);
+        return new Operator() {
+            private boolean done;
+
+            @Override
+            public Batch next() throws Exception {
+                int n = 0;
+                while(!done && n < Batch.CAPACITY && in.read() == 1) {
+                    for(Field field : fields) {
+                        vectors[field.position].set(n, readValue(in, field));
+                    }
+                    n ++;
+                }
+                if(n == 0) {
+                    close();
+                    return null;
+                }
+                batch.rows = n;
+                batch.selectAll();
+                return batch;
+            }
+
+            @Override
+            public void close() {
+                if(!done) {
+                    done = true;
+                    try {
+                        in.close();
+                    } catch(IOException ignored) {}
+                    delete();
+                }
+            }
+        };
+    }
+
+    private static Object readValue(DataInputStream in, Field field) throws IOException {
+        if(in.read() == 0) {
+            return null;
+        }
+        switch(ColumnVector.typeOf(field)) {
+            case ColumnVector.INT32:
+                return in.readInt();
+            case ColumnVector.INT64:
+                return in.readLong();
+            default:
+                return in.readUTF();
+        }
+    }
+}
@@ -1,31 +1,53 @@
 package simpleDB.backend.tbm;
 
 import com.google.common.primitives.Bytes;
-import simpleDB.backend.dm.dataItem.DataItem;
-import simpleDB.backend.dm.dataItem.DataItemImpl;
+import simpleDB.backend.dm.DataManager;
+import simpleDB.backend.dm.page.PageX;
+import simpleDB.backend.im.BPlusTree;
+import simpleDB.backend.im.Node;
 import simpleDB.backend.parser.statement.*;
-import simpleDB.backend.tbm.Field.ParseValueRes;
 import simpleDB.backend.tm.TransactionManagerImpl;
 import simpleDB.backend.utils.Panic;
 import simpleDB.backend.utils.ParseStringRes;
 import simpleDB.backend.utils.Parser;
+import simpleDB.backend.vm.Entry;
+import simpleDB.backend.vm.VersionManager;
 import simpleDB.common.Error;
 
+import java.io.BufferedReader;
 import java.util.*;
 
 /**
  * Table 维护了表结构
  * 二进制结构如下：
- * [TableName][NextTable]
+ * [TableName][NextTable][Segment][Stats][FieldNumber]
  * [Field1Uid][Field2Uid]...[FieldNUid]
+ * [Index1Uid][Index2Uid]...[IndexMUid]
+ * 单字段索引记录在Field中，Index为联合索引
+ * Segment为存放表中记录的段，每个索引另有自己的段
+ * Stats为analyze收集的统计信息的uid，没有时为0，每次analyze后原地修改
  */
 public class Table {
+    // 代价模型：以顺序读一页为单位，随机读一页的代价为RANDOM_PAGE_COST，处理一条记录的代价为CPU_ROW_COST
+    static final double SEQ_PAGE_COST = 1;
+    static final double RANDOM_PAGE_COST = 4;
+    static final double CPU_ROW_COST = 0.01;
+    // DataItem头部3字节，Entry头部16字节
+    static final int ROW_OVERHEAD = 3 + 16;
+    // copy每读取这么多行批量插入一次
+    static final int COPY_ROWS = 4096;
+
     TableManager tbm;
     long uid;
     String name;
     byte status;
     long nextUid;
+    long segment;
+    long statsUid;
+    volatile TableStats stats;
     List<Field> fields = new ArrayList<>();
+    List<Index> indexes = new ArrayList<>();
+    RowCodec codec;
 
     public static Table loadTable(TableManager tbm, long uid) {
         byte[] raw = null;
@@ -41,31 +63,91 @@ public class Table {
 
     public static Table createTable(TableManager tbm, long nextUid, long xid, Create create) throws Exception {
         Table tb = new Table(tbm, create.tableName, nextUid);
+        tb.segment = ((TableManagerImpl)tbm).dm.newSegment();
         for(int i = 0; i < create.fieldName.length; i ++) {
             String fieldName = create.fieldName[i];
             String fieldType = create.fieldType[i];
             boolean indexed = false;
-            for(int j = 0; j < create.index.length; j ++) {
-                if(fieldName.equals(create.index[j])) {
+            byte indexType = Field.INDEX_BTREE;
+            for(IndexDef def : create.index) {
+                if(isFieldIndex(def) && fieldName.equals(def.fields[0])) {
                     indexed = true;
-                    break;
+                    if(def.hash) {
+                        indexType = Field.INDEX_HASH;
+                    }
                 }
             }
-            tb.fields.add(Field.createField(tb, xid, fieldName, fieldType, indexed));
+            Field field = Field.createField(tb, xid, fieldName, fieldType, indexed, indexType);
+            field.position = i;
+            tb.fields.add(field);
+        }
+        tb.codec = new RowCodec(tb.fields);
+        for(IndexDef def : create.index) {
+            if(isFieldIndex(def)) {
+                tb.getField(def.fields[0]);
+            } else {
+                tb.indexes.add(Index.createIndex(tb, xid, def));
+            }
         }
 
         return tb.persistSelf(xid);
     }
 
-    public static void dropTable(TableManager tbm, long uid, long xid, Drop drop) throws Exception {
-        Table preTable = loadTable(tbm, uid);
-        Table table = loadTable(tbm, preTable.nextUid);
-        while (!table.name.equals(drop.tableName)) {
-            preTable = table;
+    // 不带包含列的单字段索引直接记录在Field中
+    private static boolean isFieldIndex(IndexDef def) {
+        return def.fields.length == 1 && def.include.length == 0;
+    }
+
+    /**
+     * 将表从链表中摘除，并释放表和索引所占用的段
+     * 表不是第一个表时，原地修改前一个表的NextTable，第一个表由调用者修改Booter
+     * 返回从磁盘读出的被删除的表
+     */
+    public static Table dropTable(TableManager tbm, long uid, long xid, Drop drop) throws Exception {
+        Table table = loadTable(tbm, uid);
+        if(!table.name.equals(drop.tableName)) {
+            Table preTable = table;
             table = loadTable(tbm, table.nextUid);
+            while (!table.name.equals(drop.tableName)) {
+                preTable = table;
+                table = loadTable(tbm, table.nextUid);
+            }
+            preTable.setNextUid(table.nextUid);
+        }
+        table.dropSegments();
+        return table;
+    }
+
+    private void setNextUid(long nextUid) throws Exception {
+        this.nextUid = nextUid;
+        Entry entry = Entry.loadEntry(((TableManagerImpl)tbm).vm, uid);
+        entry.patch(Parser.string2Byte(name).length, Parser.long2Byte(nextUid), TransactionManagerImpl.SUPER_XID);
+    }
+
+    /**
+     * 收集统计信息，写入新的Entry后原地修改表中的Stats
+     * 统计信息不属于任何事务，以SUPER_XID写入，事务回滚后仍然保留
+     */
+    public synchronized void analyze(long xid) throws Exception {
+        TableStats stats = TableStats.collect(this, xid);
+        VersionManager vm = ((TableManagerImpl)tbm).vm;
+        statsUid = vm.insert(TransactionManagerImpl.SUPER_XID, stats.encode());
+        Entry entry = Entry.loadEntry(vm, uid);
+        entry.patch(Parser.string2Byte(name).length + 16, Parser.long2Byte(statsUid), TransactionManagerImpl.SUPER_XID);
+        this.stats = stats;
+    }
+
+    private void dropSegments() throws Exception {
+        DataManager dm = ((TableManagerImpl)tbm).dm;
+        dm.dropSegment(segment);
+        for(Field field : fields) {
+            if(field.isIndexed()) {
+                dm.dropSegment(field.segment());
+            }
+        }
+        for(Index index : indexes) {
+            dm.dropSegment(index.segment());
         }
-        preTable.nextUid = table.nextUid;
-        //todo 修改磁盤的信息
     }
 
     public Table(TableManager tbm, long uid) {
@@ -86,11 +168,32 @@ public class Table {
         position += res.next;
         nextUid = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
         position += 8;
+        segment = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+        position += 8;
+        statsUid = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+        position += 8;
+        int fieldNumber = Parser.parseInt(Arrays.copyOfRange(raw, position, position+4));
+        position += 4;
 
+        for(int i = 0; i < fieldNumber; i ++) {
+            long uid = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+            position += 8;
+            Field field = Field.loadField(this, uid);
+            field.position = i;
+            fields.add(field);
+        }
+        codec = new RowCodec(fields);
         while(position < raw.length) {
             long uid = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
             position += 8;
-            fields.add(Field.loadField(this, uid));
+            indexes.add(Index.loadIndex(this, uid));
+        }
+        if(statsUid != 0) {
+            try {
+                stats = TableStats.parse(((TableManagerImpl)tbm).vm.read(TransactionManagerImpl.SUPER_XID, statsUid), fields.size());
+            } catch (Exception e) {
+                Panic.panic(e);
+            }
         }
         return this;
     }
@@ -98,203 +201,672 @@ public class Table {
     private Table persistSelf(long xid) throws Exception {
         byte[] nameRaw = Parser.string2Byte(name);
         byte[] nextRaw = Parser.long2Byte(nextUid);
-        byte[] fieldRaw = new byte[0];
+        byte[] segmentRaw = Parser.long2Byte(segment);
+        byte[] statsRaw = Parser.long2Byte(statsUid);
+        byte[] fieldRaw = Parser.int2Byte(fields.size());
         for(Field field : fields) {
             fieldRaw = Bytes.concat(fieldRaw, Parser.long2Byte(field.uid));
         }
-        uid = ((TableManagerImpl)tbm).vm.insert(xid, Bytes.concat(nameRaw, nextRaw, fieldRaw));
+        byte[] indexRaw = new byte[0];
+        for(Index index : indexes) {
+            indexRaw = Bytes.concat(indexRaw, Parser.long2Byte(index.uid));
+        }
+        uid = ((TableManagerImpl)tbm).vm.insert(xid, Bytes.concat(nameRaw, nextRaw, segmentRaw, statsRaw, fieldRaw, indexRaw));
         return this;
     }
 
+    Field getField(String fieldName) throws Exception {
+        for (Field field : fields) {
+            if(field.fieldName.equals(fieldName)) {
+                return field;
+            }
+        }
+        throw Error.FieldNotFoundException;
+    }
+
     public int delete(long xid, Delete delete) throws Exception {
-        List<Long> uids = parseWhere(delete.where);
+        List<Long> uids = parseWhere(xid, delete.where);
         int count = 0;
         for (Long uid : uids) {
+            Object[] row = null;
+            if(indexes.size() > 0) {
+                // 联合索引需要根据记录的值定位到索引项
+                byte[] raw = ((TableManagerImpl)tbm).vm.read(xid, uid);
+                if(raw == null) continue;
+                row = codec.decode(raw, indexColumns());
+            }
             if(((TableManagerImpl)tbm).vm.delete(xid, uid)) {
                 count ++;
+                for (Index index : indexes) {
+                    index.delete(row, uid, xid);
+                }
             }
         }
         return count;
     }
 
     public int update(long xid, Update update) throws Exception {
-        List<Long> uids = parseWhere(update.where);
-        Field fd = null;
-        for (Field f : fields) {
-            if(f.fieldName.equals(update.fieldName)) {
-                fd = f;
-                break;
-            }
-        }
-        if(fd == null) {
-            throw Error.FieldNotFoundException;
-        }
+        List<Long> uids = parseWhere(xid, update.where);
+        Field fd = getField(update.fieldName);
         Object value = fd.string2Value(update.value);
         int count = 0;
         for (Long uid : uids) {
             byte[] raw = ((TableManagerImpl)tbm).vm.read(xid, uid);
             if(raw == null) continue;
 
-            ((TableManagerImpl)tbm).vm.delete(xid, uid);
+            Object[] row = codec.decode(raw);
+            if(((TableManagerImpl)tbm).vm.delete(xid, uid)) {
+                for (Index index : indexes) {
+                    index.delete(row, uid, xid);
+                }
+            }
+
+            row[fd.position] = value;
+            raw = codec.encode(row);
+            long uuid = ((TableManagerImpl)tbm).vm.insert(xid, segment, raw);
 
-            Map<String, Object> entry = parseEntry(raw);
-            entry.put(fd.fieldName, value);
-            raw = entry2Raw(entry);
-            long uuid = ((TableManagerImpl)tbm).vm.insert(xid, raw);
-            
             count ++;
 
-            for (Field field : fields) {
-                if(field.isIndexed()) {
-                    field.insert(entry.get(field.fieldName), uuid);
+            insertIndexes(xid, row, uuid);
+        }
+        return count;
+    }
+
+    // select的执行计划，返回投影或聚合后的记录
+    ProjectOperator query(long xid, Select read) throws Exception {
+        if(AggregatePlan.isAggregate(read)) {
+            return aggregate(xid, read);
+        }
+        List<Field> projection = projection(read.fields);
+        return new ProjectOperator(plan(xid, read, projection), projection);
+    }
+
+    /**
+     * 生成读取满足where的记录的执行计划，columns为需要解码的字段，依次尝试：
+     * 覆盖索引：IndexRead -> Filter，只有indexOnly时可用，读出的记录没有uid
+     * 索引查找：IndexScan -> Filter
+     * 顺序扫描：SeqScan -> Filter
+     * 索引只用于缩小范围，where总是在读出的记录上重新求值
+     * rows不为-1时上层最多只需要rows行
+     */
+    Operator plan(long xid, Where where, Collection<Field> columns, boolean indexOnly, long rows) throws Exception {
+        VersionManager vm = ((TableManagerImpl)tbm).vm;
+        Predicate p = Predicate.compile(this, where);
+        Set<Field> loaded = new LinkedHashSet<>(columns);
+        loaded.addAll(p.columns());
+        Operator scan = indexOnly ? coveringScan(xid, where, loaded) : null;
+        if(scan == null) {
+            List<Long> uids = searchIndex(where);
+            ScanOperator seq;
+            if(uids != null) {
+                seq = new ScanOperator(this, loaded, vm, xid, uids);
+            } else {
+                seq = new ScanOperator(this, loaded, vm.scan(xid, segment));
+            }
+            if(rows >= 0) {
+                seq.expectRows(rows);
+            }
+            scan = seq;
+        }
+        return new FilterOperator(scan, p);
+    }
+
+    /**
+     * 聚合查询的输入为满足where的记录
+     * 没有where和group by、只有min和max且字段上都有B+树索引时，直接从索引的两端读取
+     */
+    private ProjectOperator aggregate(long xid, Select read) throws Exception {
+        return AggregatePlan.plan(read, this::getField, fields.size(), (columns, groupBy, aggs) -> {
+            List<Object[]> extremes = read.where == null && groupBy.length == 0 ? indexExtremes(xid, aggs) : null;
+            if(extremes != null) {
+                return new RowsOperator(this, columns, extremes);
+            }
+            return plan(xid, read.where, columns, true, -1);
+        });
+    }
+
+    /**
+     * 每个min和max只需要读取索引一端第一条可见的记录，每个返回的记录只包含一个字段的值
+     * 联合索引的key中有版本信息，不需要读取记录；单字段索引需要读取记录判断可见性
+     * 索引最右侧叶子中的记录全部不可见，或者有不满足条件的聚合函数时返回null
+     */
+    private List<Object[]> indexExtremes(long xid, AggregateOperator.Agg[] aggs) throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        for(AggregateOperator.Agg agg : aggs) {
+            boolean min = AggregateOperator.MIN.equals(agg.func);
+            if(!min && !AggregateOperator.MAX.equals(agg.func)) {
+                return null;
+            }
+            Object[] row = null;
+            Index index = leadingIndex(agg.field);
+            if(index != null) {
+                row = min ? firstVisible(xid, index, new IndexCursor(index, fullRange(), true))
+                    : lastVisible(xid, index, index.lastLeaf(), true);
+            } else if(agg.field.isIndexed() && !agg.field.isHashIndexed()) {
+                row = min ? firstVisible(xid, null, new IndexCursor(agg.field, fullRange()))
+                    : lastVisible(xid, null, agg.field.lastLeaf(), false);
+            } else {
+                return null;
+            }
+            if(row == null && !min) {
+                return null;
+            }
+            if(row != null) {
+                Object v = row[agg.field.position];
+                row = new Object[fields.size()];
+                row[agg.field.position] = v;
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    // 以field为首字段的联合索引
+    private Index leadingIndex(Field field) {
+        for(Index index : indexes) {
+            if(index.leading() == field) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    private static List<FieldCalRes> fullRange() {
+        return Collections.singletonList(Field.range(new byte[0], null));
+    }
+
+    // 按key的顺序返回第一条对xid可见的记录，index为null时通过uid读取记录
+    private Object[] firstVisible(long xid, Index index, IndexCursor cursor) throws Exception {
+        while(cursor.next()) {
+            int n = index != null ? cursor.keys().size() : cursor.uids().size();
+            for(int i = 0; i < n; i ++) {
+                Object[] row = visible(xid, index, index != null ? cursor.keys().get(i) : null, cursor.uids().get(i));
+                if(row != null) {
+                    return row;
                 }
             }
         }
-        return count;
+        return null;
     }
 
-    public String read(long xid, Select read) throws Exception {
-        List<Long> uids = parseWhere(read.where);
-        StringBuilder sb = new StringBuilder();
-        for (Long uid : uids) {
-            byte[] raw = ((TableManagerImpl)tbm).vm.read(xid, uid);
-            if(raw == null) continue;
-            Map<String, Object> entry = parseEntry(raw);
-            sb.append(printEntry(entry)).append("\n");
+    // 在最右侧的叶子中从后向前返回第一条对xid可见的记录
+    private Object[] lastVisible(long xid, Index index, BPlusTree.RangeCursor cursor, boolean withKeys) throws Exception {
+        List<Long> uids = new ArrayList<>();
+        List<byte[]> keys = new ArrayList<>();
+        while(cursor.next()) {
+            uids.addAll(cursor.uids());
+            if(withKeys) {
+                keys.addAll(cursor.keys());
+            }
         }
-        return sb.toString();
+        for(int i = uids.size()-1; i >= 0; i --) {
+            Object[] row = visible(xid, index, withKeys ? keys.get(i) : null, uids.get(i));
+            if(row != null) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private Object[] visible(long xid, Index index, byte[] key, long uid) throws Exception {
+        if(index != null) {
+            return index.read(xid, key, index.keys);
+        }
+        byte[] raw = ((TableManagerImpl)tbm).vm.read(xid, uid);
+        return raw == null ? null : codec.decode(raw);
+    }
+
+    /**
+     * 生成select的执行计划，只需要前offset+limit行时：
+     * order by是某个B+树索引key的前缀且都为升序时，按索引的顺序读取，无需排序，读够后不再读取索引
+     * 按索引顺序读取时每条记录都是一次随机读，只在覆盖索引可用或需要的行数不超过indexLimit时使用
+     * 否则先按where读出所有记录再排序，有limit时只在堆中保留offset+limit行
+     */
+    private Operator plan(long xid, Select read, List<Field> projection) throws Exception {
+        Field[] keys = new Field[read.orderBy.length];
+        boolean[] desc = new boolean[keys.length];
+        for(int i = 0; i < keys.length; i ++) {
+            keys[i] = getField(read.orderBy[i].field);
+            desc[i] = read.orderBy[i].desc;
+        }
+        long rows = read.limit < 0 ? -1 : read.offset + read.limit;
+        if(rows < -1) {
+            rows = Long.MAX_VALUE;
+        }
+        Operator op;
+        if(keys.length == 0) {
+            op = plan(xid, read.where, projection, true, rows);
+        } else {
+            op = orderedScan(xid, read.where, projection, keys, desc, rows);
+            if(op == null) {
+                Set<Field> columns = new LinkedHashSet<>(projection);
+                columns.addAll(Arrays.asList(keys));
+                op = new SortOperator(plan(xid, read.where, columns, true, -1), fields.size(), keys, desc, rows, columns);
+            }
+        }
+        if(read.limit >= 0 || read.offset > 0) {
+            op = new LimitOperator(op, read.offset, read.limit);
+        }
+        return op;
+    }
+
+    // 按keys的顺序通过索引读取满足where的记录，没有合适的索引或代价过高时返回null
+    private Operator orderedScan(long xid, Where where, List<Field> projection, Field[] keys, boolean[] desc, long rows) throws Exception {
+        for(boolean d : desc) {
+            if(d) {
+                return null;
+            }
+        }
+        Predicate p = Predicate.compile(this, where);
+        Set<Field> loaded = new LinkedHashSet<>(projection);
+        loaded.addAll(p.columns());
+        List<Field> order = Arrays.asList(keys);
+        boolean cheap = rows >= 0 && rows <= indexLimit();
+        for(Index index : indexes) {
+            if(order.size() > index.keys.size() || !index.keys.subList(0, order.size()).equals(order)) {
+                continue;
+            }
+            List<FieldCalRes> ranges = orderedRanges(index.leading(), where);
+            if(index.covers(loaded)) {
+                return new FilterOperator(new IndexReadOperator(this, index, xid, ranges, loaded), p);
+            }
+            if(cheap) {
+                return new FilterOperator(orderedRead(new IndexCursor(index, ranges, false), loaded, xid, rows), p);
+            }
+        }
+        Field field = keys[0];
+        if(cheap && keys.length == 1 && field.isIndexed() && !field.isHashIndexed()) {
+            IndexCursor cursor = new IndexCursor(field, orderedRanges(field, where));
+            return new FilterOperator(orderedRead(cursor, loaded, xid, rows), p);
+        }
+        return null;
+    }
+
+    private ScanOperator orderedRead(IndexCursor cursor, Collection<Field> columns, long xid, long rows) {
+        ScanOperator scan = new ScanOperator(this, columns, ((TableManagerImpl)tbm).vm, xid, cursor);
+        scan.expectRows(rows);
+        return scan;
+    }
+
+    // where在fd上无法缩小范围时读取整个索引
+    private static List<FieldCalRes> orderedRanges(Field fd, Where where) throws Exception {
+        List<FieldCalRes> ranges = where == null ? null : calWhere(fd, where);
+        return ranges != null ? ranges : fullRange();
     }
 
     public void insert(long xid, Insert insert) throws Exception {
-        Map<String, Object> entry = string2Entry(insert.values);
-        byte[] raw = entry2Raw(entry);
-        long uid = ((TableManagerImpl)tbm).vm.insert(xid, raw);
+        List<Object[]> rows = new ArrayList<>(insert.values.length);
+        for (String[] values : insert.values) {
+            rows.add(string2Row(values));
+        }
+        insert(xid, rows);
+    }
+
+    // 多行时记录批量写入数据页，每个索引的key排序后批量插入
+    private void insert(long xid, List<Object[]> rows) throws Exception {
+        if(rows.size() == 1) {
+            Object[] row = rows.get(0);
+            byte[] raw = codec.encode(row);
+            long uid = ((TableManagerImpl)tbm).vm.insert(xid, segment, raw);
+            insertIndexes(xid, row, uid);
+            return;
+        }
+        List<byte[]> raws = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            raws.add(codec.encode(row));
+        }
+        List<Long> uids = ((TableManagerImpl)tbm).vm.insert(xid, segment, raws);
+        for (Field field : fields) {
+            if(field.isIndexed()) {
+                List<Object> keys = new ArrayList<>(rows.size());
+                for (Object[] row : rows) {
+                    keys.add(row[field.position]);
+                }
+                field.insert(keys, uids);
+            }
+        }
+        for (Index index : indexes) {
+            index.insert(rows, uids, xid);
+        }
+    }
+
+    /**
+     * 从in中逐行读取记录，每COPY_ROWS行批量插入一次，返回插入的行数
+     * 每行为一条记录，字段之间以制表符分隔，空行被忽略
+     */
+    public long copy(long xid, BufferedReader in) throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        long count = 0;
+        String line;
+        while((line = in.readLine()) != null) {
+            if(line.isEmpty()) {
+                continue;
+            }
+            try {
+                rows.add(string2Row(line.split("\t", -1)));
+            } catch(Exception e) {
+                throw new RuntimeException("Line \"" + line + "\": " + e.getMessage());
+            }
+            if(rows.size() == COPY_ROWS) {
+                insert(xid, rows);
+                count += rows.size();
+                rows = new ArrayList<>();
+            }
+        }
+        if(!rows.isEmpty()) {
+            insert(xid, rows);
+            count += rows.size();
+        }
+        return count;
+    }
+
+    private void insertIndexes(long xid, Object[] row, long uid) throws Exception {
         for (Field field : fields) {
             if(field.isIndexed()) {
-                field.insert(entry.get(field.fieldName), uid);
+                field.insert(row[field.position], uid);
             }
         }
+        for (Index index : indexes) {
+            index.insert(row, uid, xid);
+        }
     }
 
-    private Map<String, Object> string2Entry(String[] values) throws Exception {
+    private Object[] string2Row(String[] values) throws Exception {
         if(values.length != fields.size()) {
             throw Error.InvalidValuesException;
         }
-        Map<String, Object> entry = new HashMap<>();
+        Object[] row = new Object[fields.size()];
         for (int i = 0; i < fields.size(); i++) {
-            Field f = fields.get(i);
-            Object v = f.string2Value(values[i]);
-            entry.put(f.fieldName, v);
+            row[i] = fields.get(i).string2Value(values[i]);
         }
-        return entry;
+        return row;
     }
 
-    private List<Long> parseWhere(Where where) throws Exception {
-        long l0=0, r0=0, l1=0, r1=0;
-        boolean single = false;
-        Field fd = null;
-        if(where == null) {
+    private List<Field> projection(String[] names) throws Exception {
+        if(names.length == 1 && "*".equals(names[0])) {
+            return fields;
+        }
+        List<Field> projection = new ArrayList<>();
+        for (String name : names) {
+            projection.add(getField(name));
+        }
+        return projection;
+    }
+
+    // 联合索引中出现的所有字段
+    private List<Field> indexColumns() {
+        List<Field> columns = new ArrayList<>();
+        for (Index index : indexes) {
             for (Field field : fields) {
-                if(field.isIndexed()) {
-                    fd = field;
-                    break;
+                if(!columns.contains(field) && index.covers(Collections.singletonList(field))) {
+                    columns.add(field);
                 }
             }
-            l0 = 0;
-            r0 = Long.MAX_VALUE;
-            single = true;
-        } else {
-            for (Field field : fields) {
-                if(field.fieldName.equals(where.singleExp1.field)) {
-                    if(!field.isIndexed()) {
-                        throw Error.FieldNotIndexedException;
-                    }
-                    fd = field;
-                    break;
+        }
+        return columns;
+    }
+
+    // 选择一个包含了所有需要字段的联合索引，没有where时读取整个索引，否则首字段必须能缩小范围
+    private Operator coveringScan(long xid, Where where, Collection<Field> columns) throws Exception {
+        for (Index index : indexes) {
+            if(!index.covers(columns)) {
+                continue;
+            }
+            List<FieldCalRes> ranges = where == null ? fullRange() : calWhere(index.leading(), where);
+            if(ranges != null) {
+                return new IndexReadOperator(this, index, xid, ranges, columns);
+            }
+        }
+        return null;
+    }
+
+    private List<Long> parseWhere(long xid, Where where) throws Exception {
+        // 先收集所有满足条件的记录，避免update新插入的记录再次被扫描到
+        List<Long> uids = new ArrayList<>();
+        Operator plan = plan(xid, where, new ArrayList<>(), false, -1);
+        for(Batch b = plan.next(); b != null; b = plan.next()) {
+            for(int i = 0; i < b.size; i ++) {
+                uids.add(b.uids[b.sel[i]]);
+            }
+        }
+        return uids;
+    }
+
+    /**
+     * 通过索引查找可能满足where的记录
+     * 有统计信息时由AccessPath按代价选择索引，可以对多个索引的结果取交集或并集
+     * 否则依次尝试每个索引，哈希索引只用于where在该字段上只有等值条件的情况
+     * 没有可用的索引，或者命中的记录过多、估算代价高于顺序扫描时返回null
+     */
+    private List<Long> searchIndex(Where where) throws Exception {
+        if(where == null) {
+            return null;
+        }
+        TableStats stats = this.stats;
+        if(stats != null) {
+            AccessPath path = where.prepared ? cachedPath(stats, where) : choosePath(stats, where);
+            return path == null ? null : path.uids();
+        }
+        for (Field field : fields) {
+            if(!field.isHashIndexed()) {
+                continue;
+            }
+            List<FieldCalRes> ranges = calWhere(field, where);
+            if(ranges != null && isPoints(ranges)) {
+                List<Long> uids = new ArrayList<>();
+                for (FieldCalRes r : ranges) {
+                    uids.addAll(field.lookup(r.left));
                 }
+                return uids;
+            }
+        }
+        int limit = indexLimit();
+        for (Field field : fields) {
+            if(!field.isIndexed() || field.isHashIndexed()) {
+                continue;
             }
-            if(fd == null) {
-                throw Error.FieldNotFoundException;
+            List<FieldCalRes> ranges = calWhere(field, where);
+            List<Long> uids = ranges == null ? null : searchRanges(field, null, ranges, limit);
+            if(uids != null) {
+                return uids;
             }
-            CalWhereRes res = calWhere(fd, where);
-            l0 = res.l0; r0 = res.r0;
-            l1 = res.l1; r1 = res.r1;
-            single = res.single;
         }
-        List<Long> uids = fd.search(l0, r0);
-        if(!single) {
-            List<Long> tmp = fd.search(l1, r1);
+        for (Index index : indexes) {
+            List<FieldCalRes> ranges = calWhere(index.leading(), where);
+            List<Long> uids = ranges == null ? null : searchRanges(null, index, ranges, limit);
+            if(uids != null) {
+                return uids;
+            }
+        }
+        return null;
+    }
+
+    // 代价低于顺序扫描的访问路径，没有时返回null
+    private AccessPath choosePath(TableStats stats, Where where) throws Exception {
+        AccessPath path = AccessPath.choose(this, stats, where);
+        return path == null || path.totalCost() >= scanCost() ? null : path;
+    }
+
+    /**
+     * prepare的语句第一次执行时选择的访问路径保存在where中，之后的执行只按新的值重新计算范围，不再比较代价
+     * 表被重建、重新analyze或新的值无法使用原来的路径时重新选择
+     */
+    private AccessPath cachedPath(TableStats stats, Where where) throws Exception {
+        CachedPath cached = where.plan instanceof CachedPath ? (CachedPath)where.plan : null;
+        if(cached != null && cached.table == this && cached.stats == stats && (cached.path == null || cached.path.rebind())) {
+            return cached.path;
+        }
+        cached = new CachedPath();
+        cached.table = this;
+        cached.stats = stats;
+        cached.path = choosePath(stats, where);
+        where.plan = cached;
+        return cached.path;
+    }
+
+    private static class CachedPath {
+        Table table;
+        TableStats stats;
+        // 为null时顺序扫描
+        AccessPath path;
+    }
+
+    // 依次查找field或index中ranges的每个范围，结果超过limit时返回null
+    private static List<Long> searchRanges(Field field, Index index, List<FieldCalRes> ranges, int limit) throws Exception {
+        List<Long> uids = new ArrayList<>();
+        for (FieldCalRes r : ranges) {
+            int rest = limit - uids.size();
+            List<Long> tmp = field != null ? field.search(r.left, r.right, rest) : index.search(r.left, r.right, rest);
+            if(tmp == null) {
+                return null;
+            }
             uids.addAll(tmp);
         }
         return uids;
     }
 
-    class CalWhereRes {
-        long l0, r0, l1, r1;
-        boolean single;
+    static boolean isPoints(List<FieldCalRes> ranges) {
+        for (FieldCalRes r : ranges) {
+            if(!r.point) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 通过索引读取的记录数超过该值时，估算代价高于顺序扫描
+     * 通过索引读取每条记录按一次随机读计算
+     */
+    private int indexLimit() {
+        return (int)(scanCost() / (RANDOM_PAGE_COST + CPU_ROW_COST));
     }
 
-    private CalWhereRes calWhere(Field fd, Where where) throws Exception {
-        CalWhereRes res = new CalWhereRes();
+    int pages() {
+        return ((TableManagerImpl)tbm).dm.pageNumber(segment);
+    }
+
+    // 有统计信息时按收集时每页的记录数估算，否则按页数和记录的平均长度估算
+    double estimatedRows() {
+        TableStats stats = this.stats;
+        if(stats != null && stats.pages > 0) {
+            return (double)stats.rows / stats.pages * pages();
+        }
+        return (double)pages() * PageX.MAX_FREE_SPACE / (codec.estimatedSize() + ROW_OVERHEAD);
+    }
+
+    // 顺序扫描全表的代价
+    double scanCost() {
+        return pages() * SEQ_PAGE_COST + estimatedRows() * CPU_ROW_COST;
+    }
+
+    class CostRes {
+        double rows;
+        double cost;
+    }
+
+    /**
+     * 估算读取满足where的记录的行数和代价
+     * 有统计信息时按选择率估算行数，代价取最优索引路径和顺序扫描中较小的一个
+     * 否则where能通过索引缩小范围时按查找到的记录数计算，不能时按顺序扫描全表计算
+     */
+    CostRes estimate(Where where) throws Exception {
+        CostRes res = new CostRes();
+        TableStats stats = this.stats;
+        if(stats != null) {
+            res.rows = where == null ? estimatedRows() : estimatedRows() * stats.selectivity(this, where);
+            AccessPath path = where == null ? null : AccessPath.choose(this, stats, where);
+            res.cost = path == null ? scanCost() : Math.min(path.totalCost(), scanCost());
+            return res;
+        }
+        List<Long> uids = searchIndex(where);
+        if(uids != null) {
+            res.rows = uids.size();
+            res.cost = uids.size() * (RANDOM_PAGE_COST + CPU_ROW_COST);
+        } else {
+            res.rows = estimatedRows();
+            res.cost = scanCost();
+        }
+        return res;
+    }
+
+    /**
+     * 计算满足where的记录在fd的索引key上所处的范围，返回null表示无法缩小范围
+     * and取交集，or取并集，not无法缩小范围
+     */
+    static List<FieldCalRes> calWhere(Field fd, Where where) throws Exception {
+        List<FieldCalRes> l, r;
         switch(where.logicOp) {
             case "":
-                res.single = true;
-                FieldCalRes r = fd.calExp(where.singleExp1);
-                res.l0 = r.left; res.r0 = r.right;
-                break;
-            case "or":
-                res.single = false;
-                r = fd.calExp(where.singleExp1);
-                res.l0 = r.left; res.r0 = r.right;
-                r = fd.calExp(where.singleExp2);
-                res.l1 = r.left; res.r1 = r.right;
-                break;
+                return fd.fieldName.equals(where.exp.field) ? fd.calExp(where.exp) : null;
             case "and":
-                res.single = true;
-                r = fd.calExp(where.singleExp1);
-                res.l0 = r.left; res.r0 = r.right;
-                r = fd.calExp(where.singleExp2);
-                res.l1 = r.left; res.r1 = r.right;
-                if(res.l1 > res.l0) res.l0 = res.l1;
-                if(res.r1 < res.r0) res.r0 = res.r1;
-                break;
+                l = calWhere(fd, where.left);
+                r = calWhere(fd, where.right);
+                if(l == null || r == null) {
+                    return l == null ? r : l;
+                }
+                return intersect(l, r);
+            case "or":
+                l = calWhere(fd, where.left);
+                r = calWhere(fd, where.right);
+                if(l == null || r == null) {
+                    return null;
+                }
+                return union(l, r);
             default:
-                throw Error.InvalidLogOpException;
+                return null;
         }
-        return res;
     }
 
-    private String printEntry(Map<String, Object> entry) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < fields.size(); i++) {
-            Field field = fields.get(i);
-            sb.append(field.printValue(entry.get(field.fieldName)));
-            if(i == fields.size()-1) {
-                sb.append("]");
+    private static List<FieldCalRes> intersect(List<FieldCalRes> a, List<FieldCalRes> b) {
+        List<FieldCalRes> res = new ArrayList<>();
+        int i = 0, j = 0;
+        while(i < a.size() && j < b.size()) {
+            FieldCalRes x = a.get(i), y = b.get(j);
+            byte[] left = Node.compare(x.left, y.left) >= 0 ? x.left : y.left;
+            byte[] right = Node.compare(x.right, y.right) <= 0 ? x.right : y.right;
+            if(Node.compare(left, right) <= 0) {
+                FieldCalRes range = Field.range(left, right);
+                range.point = x.point && left == x.left && right == x.right || y.point && left == y.left && right == y.right;
+                res.add(range);
+            }
+            if(Node.compare(x.right, y.right) <= 0) {
+                i ++;
             } else {
-                sb.append(", ");
+                j ++;
             }
         }
-        return sb.toString();
+        return res;
     }
 
-    private Map<String, Object> parseEntry(byte[] raw) {
-        int pos = 0;
-        Map<String, Object> entry = new HashMap<>();
-        for (Field field : fields) {
-            ParseValueRes r = field.parserValue(Arrays.copyOfRange(raw, pos, raw.length));
-            entry.put(field.fieldName, r.v);
-            pos += r.shift;
+    private static List<FieldCalRes> union(List<FieldCalRes> a, List<FieldCalRes> b) {
+        List<FieldCalRes> all = new ArrayList<>(a);
+        all.addAll(b);
+        all.sort((x, y) -> Node.compare(x.left, y.left));
+        List<FieldCalRes> res = new ArrayList<>();
+        for (FieldCalRes r : all) {
+            FieldCalRes last = res.isEmpty() ? null : res.get(res.size()-1);
+            if(last == null || Node.compare(r.left, last.right) > 0) {
+                res.add(r);
+            } else {
+                boolean same = Node.compare(r.left, last.left) == 0 && Node.compare(r.right, last.right) == 0;
+                FieldCalRes merged = Field.range(last.left, Node.compare(r.right, last.right) > 0 ? r.right : last.right);
+                merged.point = same && last.point && r.point;
+                res.set(res.size()-1, merged);
+            }
         }
-        return entry;
+        return res;
     }
 
-    private byte[] entry2Raw(Map<String, Object> entry) {
-        byte[] raw = new byte[0];
-        for (Field field : fields) {
-            raw = Bytes.concat(raw, field.value2Raw(entry.get(field.fieldName)));
+    // 输出投影后的一行记录，columns已按投影的顺序排列
+    static void printRow(StringBuilder sb, Batch b, int r) {
+        sb.append("[");
+        for(int j = 0; j < b.columns.length; j ++) {
+            ColumnVector c = b.columns[j];
+            sb.append(c.field.printValue(c.get(r)));
+            sb.append(j == b.columns.length-1 ? "]" : ", ");
         }
-        return raw;
+        sb.append("\n");
     }
 
     @Override
@@ -303,7 +875,15 @@ public class Table {
         sb.append(name).append(": ");
         for(Field field : fields) {
             sb.append(field.toString());
-            if(field == fields.get(fields.size()-1)) {
+            if(field == fields.get(fields.size()-1) && indexes.size() == 0) {
+                sb.append("}");
+            } else {
+                sb.append(", ");
+            }
+        }
+        for(Index index : indexes) {
+            sb.append(index.toString());
+            if(index == indexes.get(indexes.size()-1)) {
                 sb.append("}");
             } else {
                 sb.append(", ");
@@ -5,6 +5,8 @@ import simpleDB.backend.parser.statement.*;
 import simpleDB.backend.utils.Parser;
 import simpleDB.backend.vm.VersionManager;
 
+import java.io.BufferedReader;
+
 public interface TableManager {
     BeginRes begin(Begin begin);
     byte[] commit(long xid) throws Exception;
@@ -14,9 +16,16 @@ public interface TableManager {
     byte[] create(long xid, Create create) throws Exception;
     byte[] drop(long xid, Drop drop) throws Exception;
     byte[] insert(long xid, Insert insert) throws Exception;
+    // 从服务端的文件中批量导入
+    byte[] copy(long xid, Copy copy) throws Exception;
+    // 从in中批量导入，返回导入的行数
+    long copy(long xid, String tableName, BufferedReader in) throws Exception;
     byte[] read(long xid, Select select) throws Exception;
+    // 打开select的结果，记录在fetch时才被读取
+    ResultCursor open(long xid, Select select) throws Exception;
     byte[] update(long xid, Update update) throws Exception;
     byte[] delete(long xid, Delete delete) throws Exception;
+    byte[] analyze(long xid, Analyze analyze) throws Exception;
 
     public static TableManager create(String path, VersionManager vm, DataManager dm) {
         Booter booter = Booter.create(path);
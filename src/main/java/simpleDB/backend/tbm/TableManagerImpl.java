@@ -6,6 +6,8 @@ import simpleDB.backend.utils.Parser;
 import simpleDB.backend.vm.VersionManager;
 import simpleDB.common.Error;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -40,6 +42,16 @@ public class TableManagerImpl implements TableManager {
         }
     }
 
+    // 名为name的表，不存在时返回null
+    Table table(String name) {
+        lock.lock();
+        try {
+            return tableCache.get(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private long firstTableUid() {
         byte[] raw = booter.load();
         return Parser.parseLong(raw);
@@ -115,8 +127,12 @@ public class TableManagerImpl implements TableManager {
             if(!tableCache.containsKey(drop.tableName)) {
                 throw Error.TableNotFoundException;
             }
-            Table.dropTable(this, firstTableUid(), xid, drop);
+            long first = firstTableUid();
+            Table table = Table.dropTable(this, first, xid, drop);
             tableCache.remove(drop.tableName);
+            if(table.uid == first) {
+                updateFirstTableUid(table.nextUid);
+            }
             return ("drop table " + drop.tableName).getBytes();
         } finally {
             lock.unlock();
@@ -136,14 +152,46 @@ public class TableManagerImpl implements TableManager {
         return "insert".getBytes();
     }
     @Override
+    public byte[] copy(long xid, Copy copy) throws Exception {
+        if(copy.file == null) {
+            throw Error.InvalidCommandException;
+        }
+        try(BufferedReader in = new BufferedReader(new FileReader(copy.file))) {
+            return ("copy " + copy(xid, copy.tableName, in)).getBytes();
+        }
+    }
+    @Override
+    public long copy(long xid, String tableName, BufferedReader in) throws Exception {
+        lock.lock();
+        Table table = tableCache.get(tableName);
+        lock.unlock();
+        if(table == null) {
+            throw Error.TableNotFoundException;
+        }
+        return table.copy(xid, in);
+    }
+    @Override
     public byte[] read(long xid, Select read) throws Exception {
+        ResultCursor cursor = open(xid, read);
+        try {
+            return cursor.fetch(-1);
+        } finally {
+            cursor.close();
+        }
+    }
+    @Override
+    public ResultCursor open(long xid, Select read) throws Exception {
         lock.lock();
         Table table = tableCache.get(read.tableName);
+        Table joined = read.join == null ? null : tableCache.get(read.join.tableName);
         lock.unlock();
-        if(table == null) {
+        if(table == null || read.join != null && joined == null) {
             throw Error.TableNotFoundException;
         }
-        return table.read(xid, read).getBytes();
+        if(joined != null) {
+            return new ResultCursor(JoinPlan.query(xid, table, joined, read));
+        }
+        return new ResultCursor(table.query(xid, read));
     }
     @Override
     public byte[] update(long xid, Update update) throws Exception {
@@ -167,4 +215,16 @@ public class TableManagerImpl implements TableManager {
         int count = table.delete(xid, delete);
         return ("delete " + count).getBytes();
     }
+
+    @Override
+    public byte[] analyze(long xid, Analyze analyze) throws Exception {
+        lock.lock();
+        Table table = tableCache.get(analyze.tableName);
+        lock.unlock();
+        if(table == null) {
+            throw Error.TableNotFoundException;
+        }
+        table.analyze(xid);
+        return ("analyze " + analyze.tableName).getBytes();
+    }
 }
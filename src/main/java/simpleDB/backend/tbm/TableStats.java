@@ -0,0 +1,240 @@
+package simpleDB.backend.tbm;
+
+import com.google.common.primitives.Bytes;
+import simpleDB.backend.im.Node;
+import simpleDB.backend.parser.statement.Where;
+import simpleDB.backend.utils.Parser;
+
+import java.util.*;
+
+/**
+ * TableStats 是analyze收集的表的统计信息，用于估算where的选择率
+ * 二进制结构如下：
+ * [Rows][Pages][Field1Stats]...[FieldNStats]
+ * FieldStats: [Nulls][Distinct][BoundNumber][Bound1Len][Bound1]...
+ * Bound为等深直方图的边界，按字段的索引key编码，相邻两个边界之间的记录数相同
+ * Rows和Pages为收集时的记录数和页数，表增长后按当前的页数等比例估算记录数
+ */
+class TableStats {
+    // 参与计算直方图和不同值个数的最大采样行数
+    static final int SAMPLE_ROWS = 30000;
+    static final int BUCKETS = 64;
+    // 无法估算的条件，如不以固定前缀开头的like，按该选择率计算
+    static final double DEFAULT_SELECTIVITY = 0.1;
+
+    long rows;
+    long pages;
+    ColumnStats[] columns;
+
+    static class ColumnStats {
+        long nulls;
+        long distinct;
+        byte[][] bounds;
+    }
+
+    /**
+     * 顺序扫描表中对xid可见的记录，null个数精确计算，直方图和不同值个数在蓄水池采样的记录上计算
+     * 不同值个数使用Haas-Stokes估算：D = n*d / (n - f1 + f1*n/N)
+     * n为采样中非null值的个数，N为全表非null值的个数，d为采样中不同值的个数，f1为采样中只出现一次的值的个数
+     */
+    static TableStats collect(Table tb, long xid) throws Exception {
+        int width = tb.fields.size();
+        TableStats stats = new TableStats();
+        stats.columns = new ColumnStats[width];
+        long[] nulls = new long[width];
+        List<Object[]> sample = new ArrayList<>();
+        Random random = new Random();
+        Operator scan = tb.plan(xid, null, tb.fields, false, -1);
+        for(Batch b = scan.next(); b != null; b = scan.next()) {
+            for(int i = 0; i < b.size; i ++) {
+                int r = b.sel[i];
+                Object[] row = new Object[width];
+                for(Field field : tb.fields) {
+                    row[field.position] = b.columns[field.position].get(r);
+                    if(row[field.position] == null) {
+                        nulls[field.position] ++;
+                    }
+                }
+                stats.rows ++;
+                if(sample.size() < SAMPLE_ROWS) {
+                    sample.add(row);
+                } else {
+                    long k = (long)(random.nextDouble() * stats.rows);
+                    if(k < SAMPLE_ROWS) {
+                        sample.set((int)k, row);
+                    }
+                }
+            }
+        }
+        stats.pages = tb.pages();
+        for(Field field : tb.fields) {
+            List<byte[]> keys = new ArrayList<>();
+            for(Object[] row : sample) {
+                if(row[field.position] != null) {
+                    keys.add(field.value2Key(row[field.position]));
+                }
+            }
+            keys.sort(Node::compare);
+            ColumnStats column = new ColumnStats();
+            column.nulls = nulls[field.position];
+            column.distinct = distinct(keys, stats.rows - column.nulls);
+            column.bounds = bounds(keys);
+            stats.columns[field.position] = column;
+        }
+        return stats;
+    }
+
+    private static long distinct(List<byte[]> keys, long total) {
+        int n = keys.size();
+        long d = 0, f1 = 0;
+        for(int i = 0, j; i < n; i = j) {
+            j = i + 1;
+            while(j < n && Node.compare(keys.get(i), keys.get(j)) == 0) {
+                j ++;
+            }
+            d ++;
+            if(j - i == 1) {
+                f1 ++;
+            }
+        }
+        if(n == 0 || n == total) {
+            return d;
+        }
+        double D = (double)n * d / (n - f1 + (double)f1 * n / total);
+        return Math.max(d, Math.min(total, Math.round(D)));
+    }
+
+    private static byte[][] bounds(List<byte[]> keys) {
+        int n = keys.size();
+        if(n == 0) {
+            return new byte[0][];
+        }
+        int buckets = Math.min(BUCKETS, n);
+        byte[][] bounds = new byte[buckets+1][];
+        for(int i = 0; i <= buckets; i ++) {
+            bounds[i] = keys.get((int)((long)i * (n-1) / buckets));
+        }
+        return bounds;
+    }
+
+    byte[] encode() {
+        byte[] raw = Bytes.concat(Parser.long2Byte(rows), Parser.long2Byte(pages));
+        for(ColumnStats column : columns) {
+            raw = Bytes.concat(raw, Parser.long2Byte(column.nulls), Parser.long2Byte(column.distinct), Parser.int2Byte(column.bounds.length));
+            for(byte[] bound : column.bounds) {
+                raw = Bytes.concat(raw, Parser.int2Byte(bound.length), bound);
+            }
+        }
+        return raw;
+    }
+
+    static TableStats parse(byte[] raw, int width) {
+        TableStats stats = new TableStats();
+        int position = 0;
+        stats.rows = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+        position += 8;
+        stats.pages = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+        position += 8;
+        stats.columns = new ColumnStats[width];
+        for(int i = 0; i < width; i ++) {
+            ColumnStats column = new ColumnStats();
+            column.nulls = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+            position += 8;
+            column.distinct = Parser.parseLong(Arrays.copyOfRange(raw, position, position+8));
+            position += 8;
+            column.bounds = new byte[Parser.parseInt(Arrays.copyOfRange(raw, position, position+4))][];
+            position += 4;
+            for(int j = 0; j < column.bounds.length; j ++) {
+                int len = Parser.parseInt(Arrays.copyOfRange(raw, position, position+4));
+                position += 4;
+                column.bounds[j] = Arrays.copyOfRange(raw, position, position+len);
+                position += len;
+            }
+            stats.columns[i] = column;
+        }
+        return stats;
+    }
+
+    // 满足where的记录占全表的比例，不同字段上的条件按相互独立计算
+    double selectivity(Table tb, Where where) throws Exception {
+        switch(where.logicOp) {
+            case "":
+                Field field = tb.getField(where.exp.field);
+                List<FieldCalRes> ranges = field.calExp(where.exp);
+                return ranges == null ? DEFAULT_SELECTIVITY : selectivity(field, ranges);
+            case "and":
+                return selectivity(tb, where.left) * selectivity(tb, where.right);
+            case "or":
+                double l = selectivity(tb, where.left), r = selectivity(tb, where.right);
+                return l + r - l * r;
+            default:
+                return 1 - selectivity(tb, where.left);
+        }
+    }
+
+    /**
+     * 索引key落在ranges中的记录占全表的比例，ranges互不相交
+     * 单个值按 1/不同值个数 计算，该值在直方图中占据多个桶时按所占的桶数计算
+     */
+    double selectivity(Field field, List<FieldCalRes> ranges) {
+        ColumnStats column = columns[field.position];
+        if(rows == 0 || column.bounds.length == 0) {
+            return 0;
+        }
+        double res = 0;
+        for(FieldCalRes r : ranges) {
+            res += r.point ? pointFraction(column, r.left) : cdf(column, r.right) - cdf(column, r.left);
+        }
+        return Math.min(1, res) * (rows - column.nulls) / rows;
+    }
+
+    private static double pointFraction(ColumnStats column, byte[] key) {
+        byte[][] bounds = column.bounds;
+        int buckets = bounds.length - 1;
+        if(Node.compare(key, bounds[0]) < 0 || Node.compare(key, bounds[buckets]) > 0) {
+            return 0;
+        }
+        int equal = 0;
+        for(byte[] bound : bounds) {
+            if(Node.compare(key, bound) == 0) {
+                equal ++;
+            }
+        }
+        double frequent = buckets == 0 ? 1 : (double)(equal - 1) / buckets;
+        return Math.max(frequent, 1.0 / Math.max(1, column.distinct));
+    }
+
+    // 非null值中索引key小于key的比例，key为null表示没有上界，桶内按key的前8字节线性插值
+    private static double cdf(ColumnStats column, byte[] key) {
+        if(key == null) {
+            return 1;
+        }
+        byte[][] bounds = column.bounds;
+        int buckets = bounds.length - 1;
+        if(Node.compare(key, bounds[0]) <= 0) {
+            return 0;
+        }
+        if(Node.compare(key, bounds[buckets]) > 0) {
+            return 1;
+        }
+        int i = 1;
+        while(Node.compare(bounds[i], key) < 0) {
+            i ++;
+        }
+        if(Node.compare(bounds[i], key) == 0) {
+            return (double)i / buckets;
+        }
+        double low = position(bounds[i-1]), high = position(bounds[i]);
+        double within = high > low ? (position(key) - low) / (high - low) : 0.5;
+        return (i - 1 + Math.max(0, Math.min(1, within))) / buckets;
+    }
+
+    // 将key的前8字节按无符号大端数转为double，保持key的顺序
+    private static double position(byte[] key) {
+        double res = 0;
+        for(int i = 0; i < 8; i ++) {
+            res = res * 256 + (i < key.length ? key[i] & 0xff : 0);
+        }
+        return res;
+    }
+}
@@ -83,8 +83,7 @@ public class TransactionManagerImpl implements TransactionManager {
         tmp[0] = status;
         ByteBuffer buf = ByteBuffer.wrap(tmp);
         try {
-            fc.position(offset);
-            fc.write(buf);
+            fc.write(buf, offset);
         } catch (IOException e) {
             Panic.panic(e);
         }
@@ -100,8 +99,7 @@ public class TransactionManagerImpl implements TransactionManager {
         xidCounter ++;
         ByteBuffer buf = ByteBuffer.wrap(Parser.long2Byte(xidCounter));
         try {
-            fc.position(0);
-            fc.write(buf);
+            fc.write(buf, 0);
         } catch (IOException e) {
             Panic.panic(e);
         }
@@ -140,8 +138,7 @@ public class TransactionManagerImpl implements TransactionManager {
         long offset = getXidPosition(xid);
         ByteBuffer buf = ByteBuffer.wrap(new byte[XID_FIELD_SIZE]);
         try {
-            fc.position(offset);
-            fc.read(buf);
+            fc.read(buf, offset);
         } catch (IOException e) {
             Panic.panic(e);
         }
@@ -0,0 +1,284 @@
+package simpleDB.backend.utils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log 是服务端的异步日志，调用方只把消息放入环形缓冲区，由一个后台线程格式化后写出
+ * 消息中的{}依次替换为参数，byte[]参数按字符串输出，最后一个参数为Throwable时输出其调用栈
+ * 格式化在后台线程中进行，参数在写出前不能被修改
+ * 不超过两个参数时调用固定参数的方法，级别关闭时不分配参数数组
+ * 后台线程写完所有消息后挂起，调用方放入消息时发现其已挂起则唤醒
+ * 缓冲区满时丢弃消息并计数，不阻塞调用方，丢弃的条数在之后输出
+ * 级别由系统属性simpledb.log.level指定（debug、info、warn、error、off），默认为info
+ * 默认写到标准输出，系统属性simpledb.log.file指定文件时追加到该文件
+ */
+public class Log {
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    public static final int OFF = 4;
+
+    static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    private static final String[] NAMES = {"DEBUG", "INFO", "WARN", "ERROR"};
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static volatile int level = parseLevel(System.getProperty("simpledb.log.level", "info"));
+
+    private static final Entry[] ring = new Entry[CAPACITY];
+    // 下一条消息的序号
+    private static final AtomicLong head = new AtomicLong();
+    // 下一条要写出的消息的序号，只由后台线程修改
+    private static volatile long tail;
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile boolean closing;
+    // 后台线程没有消息可写，已经或即将挂起
+    private static volatile boolean idle;
+    private static final PrintStream out = open(System.getProperty("simpledb.log.file"));
+    private static final Thread writer;
+
+    static {
+        for(int i = 0; i < CAPACITY; i ++) {
+            ring[i] = new Entry();
+            ring[i].seq = i - CAPACITY;
+        }
+        writer = new Thread(Log::write, "simpledb-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::close));
+    }
+
+    public static boolean enabled(int l) {
+        return l >= level;
+    }
+
+    public static void setLevel(int l) {
+        level = l;
+    }
+
+    public static void debug(String msg) {
+        if(DEBUG >= level) {
+            append(DEBUG, msg, NO_ARGS);
+        }
+    }
+
+    public static void debug(String msg, Object arg) {
+        if(DEBUG >= level) {
+            append(DEBUG, msg, new Object[]{arg});
+        }
+    }
+
+    public static void debug(String msg, Object arg1, Object arg2) {
+        if(DEBUG >= level) {
+            append(DEBUG, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void debug(String msg, Object... args) {
+        log(DEBUG, msg, args);
+    }
+
+    public static void info(String msg) {
+        if(INFO >= level) {
+            append(INFO, msg, NO_ARGS);
+        }
+    }
+
+    public static void info(String msg, Object arg) {
+        if(INFO >= level) {
+            append(INFO, msg, new Object[]{arg});
+        }
+    }
+
+    public static void info(String msg, Object arg1, Object arg2) {
+        if(INFO >= level) {
+            append(INFO, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void info(String msg, Object... args) {
+        log(INFO, msg, args);
+    }
+
+    public static void warn(String msg) {
+        if(WARN >= level) {
+            append(WARN, msg, NO_ARGS);
+        }
+    }
+
+    public static void warn(String msg, Object arg) {
+        if(WARN >= level) {
+            append(WARN, msg, new Object[]{arg});
+        }
+    }
+
+    public static void warn(String msg, Object arg1, Object arg2) {
+        if(WARN >= level) {
+            append(WARN, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void warn(String msg, Object... args) {
+        log(WARN, msg, args);
+    }
+
+    public static void error(String msg) {
+        if(ERROR >= level) {
+            append(ERROR, msg, NO_ARGS);
+        }
+    }
+
+    public static void error(String msg, Object arg) {
+        if(ERROR >= level) {
+            append(ERROR, msg, new Object[]{arg});
+        }
+    }
+
+    public static void error(String msg, Object arg1, Object arg2) {
+        if(ERROR >= level) {
+            append(ERROR, msg, new Object[]{arg1, arg2});
+        }
+    }
+
+    public static void error(String msg, Object... args) {
+        log(ERROR, msg, args);
+    }
+
+    public static void log(int l, String msg, Object... args) {
+        if(l >= level) {
+            append(l, msg, args);
+        }
+    }
+
+    private static void append(int l, String msg, Object[] args) {
+        long seq;
+        do {
+            seq = head.get();
+            if(seq - tail >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while(!head.compareAndSet(seq, seq + 1));
+        Entry e = ring[(int)seq & MASK];
+        e.level = l;
+        e.time = System.currentTimeMillis();
+        e.thread = Thread.currentThread().getName();
+        e.msg = msg;
+        e.args = args;
+        e.seq = seq;
+        if(idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // 写出缓冲区中剩余的消息，之后的消息被丢弃
+    public static void close() {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch(InterruptedException ignored) {}
+    }
+
+    private static void write() {
+        StringBuilder sb = new StringBuilder();
+        boolean written = false;
+        while(true) {
+            long t = tail;
+            Entry e = ring[(int)t & MASK];
+            if(e.seq != t) {
+                long n = dropped.getAndSet(0);
+                if(n > 0) {
+                    out.println(format(sb, WARN, System.currentTimeMillis(), "simpledb-log", "Dropped {} log entries", new Object[]{n}));
+                    written = true;
+                }
+                if(written) {
+                    out.flush();
+                    written = false;
+                }
+                if(closing) {
+                    return;
+                }
+                // 设置idle后再检查一次，与append中先发布消息再检查idle的顺序配合，不会漏掉唤醒
+                idle = true;
+                if(e.seq != t && !closing) {
+                    LockSupport.park();
+                }
+                idle = false;
+                continue;
+            }
+            out.println(format(sb, e.level, e.time, e.thread, e.msg, e.args));
+            written = true;
+            e.msg = null;
+            e.args = null;
+            tail = t + 1;
+        }
+    }
+
+    private static String format(StringBuilder sb, int l, long time, String thread, String msg, Object[] args) {
+        sb.setLength(0);
+        sb.append(TIME.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault())));
+        sb.append(' ').append(NAMES[l]).append(" [").append(thread).append("] ");
+        int a = 0, from = 0;
+        for(int i = msg.indexOf("{}"); i >= 0 && a < args.length; i = msg.indexOf("{}", from)) {
+            sb.append(msg, from, i).append(toString(args[a ++]));
+            from = i + 2;
+        }
+        sb.append(msg, from, msg.length());
+        if(args.length > a && args[args.length - 1] instanceof Throwable) {
+            StringWriter stack = new StringWriter();
+            ((Throwable)args[args.length - 1]).printStackTrace(new PrintWriter(stack));
+            sb.append(System.lineSeparator()).append(stack.toString().trim());
+        }
+        return sb.toString();
+    }
+
+    private static String toString(Object arg) {
+        if(arg instanceof byte[]) {
+            return new String((byte[])arg);
+        }
+        return String.valueOf(arg);
+    }
+
+    private static int parseLevel(String name) {
+        for(int i = 0; i < NAMES.length; i ++) {
+            if(NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return "off".equalsIgnoreCase(name) ? OFF : INFO;
+    }
+
+    private static PrintStream open(String file) {
+        if(file == null) {
+            return System.out;
+        }
+        try {
+            return new PrintStream(new FileOutputStream(file, true), false);
+        } catch(IOException e) {
+            return System.out;
+        }
+    }
+
+    private static class Entry {
+        // 消息写入完成后设置为其序号，之前为上一轮的序号
+        volatile long seq;
+        int level;
+        long time;
+        String thread;
+        String msg;
+        Object[] args;
+    }
+}
@@ -45,13 +45,39 @@ public class Parser {
         return Bytes.concat(l, str.getBytes());
     }
 
-    public static long str2Uid(String key) {
-        long seed = 13331;
-        long res = 0;
-        for(byte b : key.getBytes()) {
-            res = res * seed + (long)b;
+    /**
+     * 无符号变长编码，每字节存放7位，最高位为1表示后面还有字节
+     * 编码是唯一的，解码后可以由varLongSize得到所占的字节数
+     */
+    public static int varLongSize(long value) {
+        int size = 1;
+        while((value >>>= 7) != 0) {
+            size ++;
+        }
+        return size;
+    }
+
+    // 将value编码写入raw的pos处，返回写入后的位置
+    public static int putVarLong(byte[] raw, int pos, long value) {
+        while((value & ~0x7fL) != 0) {
+            raw[pos++] = (byte)((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        raw[pos++] = (byte)value;
+        return pos;
+    }
+
+    public static long parseVarLong(byte[] raw, int pos) {
+        long value = 0;
+        int shift = 0;
+        while(true) {
+            byte b = raw[pos++];
+            value |= (long)(b & 0x7f) << shift;
+            if(b >= 0) {
+                return value;
+            }
+            shift += 7;
         }
-        return res;
     }
 
     public static int uidToPageNo(long uid) {
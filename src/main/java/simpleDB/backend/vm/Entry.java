@@ -78,6 +78,17 @@ public class Entry {
         }
     }
 
+    // 原地覆盖data中从offset开始的部分，只用于事务无关的元数据
+    public void patch(int offset, byte[] bytes, long xid) {
+        dataItem.before();
+        try {
+            SubArray sa = dataItem.data();
+            System.arraycopy(bytes, 0, sa.raw, sa.start+OF_DATA+offset, bytes.length);
+        } finally {
+            dataItem.after(xid);
+        }
+    }
+
     public void setXmax(long xid) {
         dataItem.before();
         try {
@@ -0,0 +1,50 @@
+package simpleDB.backend.vm;
+
+import simpleDB.backend.dm.ItemScanner;
+import simpleDB.backend.dm.dataItem.DataItem;
+
+/**
+ * EntryScanner 按物理顺序遍历某个owner的所有记录，只返回对事务t可见的版本
+ */
+public class EntryScanner {
+    private VersionManagerImpl vm;
+    private Transaction t;
+    private ItemScanner items;
+    private long uid;
+    private byte[] data;
+
+    EntryScanner(VersionManagerImpl vm, Transaction t, ItemScanner items) {
+        this.vm = vm;
+        this.t = t;
+        this.items = items;
+    }
+
+    // 移动到下一条可见记录，没有更多记录时返回false
+    public boolean next() throws Exception {
+        while(true) {
+            DataItem di = items.next();
+            if(di == null) {
+                return false;
+            }
+            Entry entry = Entry.newEntry(vm, di, di.getUid());
+            if(Visibility.isVisible(vm.tm, t, entry)) {
+                uid = di.getUid();
+                data = entry.data();
+                return true;
+            }
+        }
+    }
+
+    public long uid() {
+        return uid;
+    }
+
+    public byte[] data() {
+        return data;
+    }
+
+    // 被扫描的页面数
+    public int pageNumber() {
+        return items.pageNumber();
+    }
+}
@@ -3,33 +3,45 @@ package simpleDB.backend.vm;
 import simpleDB.common.Error;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 维护了一个依赖等待图，以进行死锁检测
+ * 等待的XID阻塞在各自的CountDownLatch上，持有者释放UID时唤醒被选中的XID
+ * 同一事务的语句可能在不同的线程中执行，因此不使用属于线程的锁
+ * 等待超过timeout毫秒时放弃，由调用方回滚该事务，避免执行语句的线程被长时间占用
+ * timeout由系统属性simpledb.lock.timeout指定，默认为10000，不大于0时一直等待
  */
 public class LockTable {
     
     private Map<Long, List<Long>> x2u;  // 某个XID已经获得的资源的UID列表
     private Map<Long, Long> u2x;        // UID被某个XID持有
     private Map<Long, List<Long>> wait; // 正在等待UID的XID列表
-    private Map<Long, Lock> uidLock;   //  资源的锁
+    private Map<Long, CountDownLatch> waitLatch; // 正在等待的XID被唤醒的信号
     private Map<Long, Long> waitU;      // XID正在等待的UID
     private Lock lock;
+    private long timeout;
 
     public LockTable() {
+        this(Long.getLong("simpledb.lock.timeout", 10000));
+    }
+
+    public LockTable(long timeout) {
+        this.timeout = timeout;
         x2u = new HashMap<>();
         u2x = new HashMap<>();
         wait = new HashMap<>();
-        uidLock = new HashMap<>();
+        waitLatch = new HashMap<>();
         waitU = new HashMap<>();
         lock = new ReentrantLock();
     }
 
-    // 不需要等待则返回null，否则返回锁对象
+    // 不需要等待则返回null，否则返回获得UID时被唤醒的信号
     // 会造成死锁则抛出异常
-    public Lock add(long xid, long uid) throws Exception {
+    public CountDownLatch add(long xid, long uid) throws Exception {
         lock.lock();
         try {
             if(isInList(x2u, xid, uid)) {
@@ -39,9 +51,6 @@ public class LockTable {
             if(!u2x.containsKey(uid)) {
                 u2x.put(uid, xid);
                 putIntoList(x2u, xid, uid);
-                Lock l = new ReentrantLock();
-                l.lock();
-                uidLock.put(uid,l);
                 return null;
             }
             waitU.put(xid, uid);
@@ -51,13 +60,23 @@ public class LockTable {
                 removeFromList(wait, uid, xid);
                 throw Error.DeadlockException;
             }
-            Lock l = uidLock.get(uid);
+            CountDownLatch l = new CountDownLatch(1);
+            waitLatch.put(xid, l);
             return l;
         } finally {
             lock.unlock();
         }
     }
 
+    // 等待add返回的信号，超时返回false，此时调用方需要调用remove放弃等待
+    public boolean await(CountDownLatch l) throws InterruptedException {
+        if(timeout <= 0) {
+            l.await();
+            return true;
+        }
+        return l.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
     public void remove(long xid) {
         lock.lock();
         try {
@@ -68,7 +87,12 @@ public class LockTable {
                     selectNewXID(uid);
                 }
             }
-            waitU.remove(xid);
+            // 等待中被回滚时不再等待
+            Long uid = waitU.remove(xid);
+            if(uid != null) {
+                removeFromList(wait, uid, xid);
+                waitLatch.remove(xid).countDown();
+            }
             x2u.remove(xid);
         } finally {
             lock.unlock();
@@ -79,16 +103,14 @@ public class LockTable {
     private void selectNewXID(long uid) {
         u2x.remove(uid);
         List<Long> l = wait.get(uid);
-        Lock lockUid = uidLock.get(uid);
-        if(l == null) {
-            uidLock.remove(uid);
-        } else {
+        if(l != null) {
             long xid = l.remove(0);
             u2x.put(uid, xid);
+            putIntoList(x2u, xid, uid);
             waitU.remove(xid);
             if (l.size() == 0) wait.remove(uid);
+            waitLatch.remove(xid).countDown();
         }
-        lockUid.unlock();
     }
 
     private Map<Long, Integer> xidStamp;
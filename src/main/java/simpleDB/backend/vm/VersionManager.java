@@ -3,10 +3,16 @@ package simpleDB.backend.vm;
 import simpleDB.backend.dm.DataManager;
 import simpleDB.backend.tm.TransactionManager;
 
+import java.util.List;
+
 public interface VersionManager {
     byte[] read(long xid, long uid) throws Exception;
     long insert(long xid, byte[] data) throws Exception;
+    long insert(long xid, long owner, byte[] data) throws Exception;
+    List<Long> insert(long xid, long owner, List<byte[]> datas) throws Exception;
+    EntryScanner scan(long xid, long owner) throws Exception;
     boolean delete(long xid, long uid) throws Exception;
+    boolean isVisible(long xid, long xmin, long xmax) throws Exception;
 
     long begin(int level);
     void commit(long xid) throws Exception;
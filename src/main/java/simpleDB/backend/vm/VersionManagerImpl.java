@@ -7,8 +7,11 @@ import simpleDB.backend.tm.TransactionManagerImpl;
 import simpleDB.backend.utils.Panic;
 import simpleDB.common.Error;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -60,6 +63,11 @@ public class VersionManagerImpl implements VersionManager {
 
     @Override
     public long insert(long xid, byte[] data) throws Exception {
+        return insert(xid, 0, data);
+    }
+
+    @Override
+    public long insert(long xid, long owner, byte[] data) throws Exception {
         lock.lock();
         Transaction t = activeTransaction.get(xid);
         lock.unlock();
@@ -69,7 +77,37 @@ public class VersionManagerImpl implements VersionManager {
         }
 
         byte[] raw = Entry.wrapEntryRaw(xid, data);
-        return dm.insert(xid, raw);
+        return dm.insert(xid, owner, raw);
+    }
+
+    @Override
+    public List<Long> insert(long xid, long owner, List<byte[]> datas) throws Exception {
+        lock.lock();
+        Transaction t = activeTransaction.get(xid);
+        lock.unlock();
+
+        if (t.err != null) {
+            throw t.err;
+        }
+
+        List<byte[]> raws = new ArrayList<>(datas.size());
+        for (byte[] data : datas) {
+            raws.add(Entry.wrapEntryRaw(xid, data));
+        }
+        return dm.insert(xid, owner, raws);
+    }
+
+    @Override
+    public EntryScanner scan(long xid, long owner) throws Exception {
+        lock.lock();
+        Transaction t = activeTransaction.get(xid);
+        lock.unlock();
+
+        if (t.err != null) {
+            throw t.err;
+        }
+
+        return new EntryScanner(this, t, dm.scan(owner));
     }
 
     @Override
@@ -95,7 +133,7 @@ public class VersionManagerImpl implements VersionManager {
         if (!Visibility.isVisible(tm, t, entry)) {
             return false;
         }
-        Lock l = null;
+        CountDownLatch l = null;
         try {
             l = lt.add(xid, uid);
         } catch (Exception e) {
@@ -105,8 +143,11 @@ public class VersionManagerImpl implements VersionManager {
             throw t.err;
         }
 
-        if (l != null) {
-            l.lock();
+        if (l != null && !lt.await(l)) {
+            t.err = Error.LockTimeoutException;
+            internAbort(xid, true);
+            t.autoAborted = true;
+            throw t.err;
         }
 
         if (entry.getXmax() == xid) {
@@ -126,6 +167,18 @@ public class VersionManagerImpl implements VersionManager {
 
     }
 
+    @Override
+    public boolean isVisible(long xid, long xmin, long xmax) throws Exception {
+        lock.lock();
+        Transaction t = activeTransaction.get(xid);
+        lock.unlock();
+
+        if (t.err != null) {
+            throw t.err;
+        }
+        return Visibility.isVisible(tm, t, xmin, xmax);
+    }
+
     @Override
     public long begin(int level) {
         lock.lock();
@@ -159,8 +212,9 @@ public class VersionManagerImpl implements VersionManager {
         activeTransaction.remove(xid);
         lock.unlock();
 
-        lt.remove(xid);
+        // 先提交再释放锁，被唤醒的等待者才能看到该事务已提交
         tm.commit(xid);
+        lt.remove(xid);
     }
 
     @Override
@@ -14,17 +14,20 @@ public class Visibility {
     }
 
     public static boolean isVisible(TransactionManager tm, Transaction t, Entry e) {
+        return isVisible(tm, t, e.getXmin(), e.getXmax());
+    }
+
+    // 根据版本信息判断可见性，用于不读取entry的场景
+    public static boolean isVisible(TransactionManager tm, Transaction t, long xmin, long xmax) {
         if(t.level == 0) {
-            return readCommitted(tm, t, e);
+            return readCommitted(tm, t, xmin, xmax);
         } else {
-            return repeatableRead(tm, t, e);
+            return repeatableRead(tm, t, xmin, xmax);
         }
     }
 
-    private static boolean readCommitted(TransactionManager tm, Transaction t, Entry e) {
+    private static boolean readCommitted(TransactionManager tm, Transaction t, long xmin, long xmax) {
         long xid = t.xid;
-        long xmin = e.getXmin();
-        long xmax = e.getXmax();
         if(xmin == xid && xmax == 0) return true;
 
         if(tm.isCommitted(xmin)) {
@@ -38,10 +41,8 @@ public class Visibility {
         return false;
     }
 
-    private static boolean repeatableRead(TransactionManager tm, Transaction t, Entry e) {
+    private static boolean repeatableRead(TransactionManager tm, Transaction t, long xmin, long xmax) {
         long xid = t.xid;
-        long xmin = e.getXmin();
-        long xmax = e.getXmax();
         if(xmin == xid && xmax == 0) return true;
 
         if(tm.isCommitted(xmin) && xmin < xid && !t.isInSnapshot(xmin)) {
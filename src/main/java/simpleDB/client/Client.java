@@ -1,23 +1,157 @@
 package simpleDB.client;
 
-
+import simpleDB.common.Error;
+import simpleDB.transport.Compressor;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Frame;
 import simpleDB.transport.Package;
 import simpleDB.transport.Packager;
+import simpleDB.transport.Transporter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Client {
+    // copy每块数据的字节数，以及最多未确认的块数
+    static final int COPY_CHUNK = 1 << 18;
+    static final int COPY_WINDOW = 8;
+    private static final Encoder ENCODER = new Encoder();
+
     private RoundTripper rt;
+    // 最近一次query返回的结果，执行下一条语句前关闭
+    private ResultStream stream;
 
     public Client(Packager packager) {
         this.rt = new RoundTripper(packager);
     }
 
     public byte[] execute(byte[] stat) throws Exception {
-        Package pkg = new Package(stat, null);
-        Package resPkg = rt.roundTrip(pkg);
-        if(resPkg.getErr() != null) {
-            throw resPkg.getErr();
+        return RoundTripper.get(executeAsync(stat));
+    }
+
+    // 发送语句后不等待结果，可以连续发送多条语句，服务端按发送的顺序执行
+    public CompletableFuture<byte[]> executeAsync(byte[] stat) throws Exception {
+        closeStream();
+        return rt.send(new Frame(Frame.DATA, stat)).thenApply(Client::data);
+    }
+
+    /**
+     * 在一个事务中执行多条语句，返回已执行的各条语句的结果，成功时getData为结果，失败时getErr为错误
+     * 任一条失败时之后的语句不再执行，结果的最后一个为该错误；不在事务中时全部回滚
+     * 语句无法解析时不执行任何语句，直接抛出错误
+     */
+    public List<Package> executeBatch(List<byte[]> stats) throws Exception {
+        return RoundTripper.get(executeBatchAsync(stats));
+    }
+
+    public CompletableFuture<List<Package>> executeBatchAsync(List<byte[]> stats) throws Exception {
+        closeStream();
+        return rt.send(new Frame(Frame.BATCH, Frame.pack(stats))).thenApply(Client::batch);
+    }
+
+    /**
+     * 将in中的记录导入表table，每行一条记录，字段之间以制表符分隔，返回导入的结果
+     * 数据按行切分为块连续发送，服务端收到一块就导入一块，不在事务中时整个导入在一个事务中完成
+     * 读取in失败时放弃导入，连接需要使用二进制格式
+     */
+    public byte[] copy(String table, InputStream in) throws Exception {
+        if(rt.version() != Transporter.BINARY) {
+            throw Error.BinaryProtocolRequiredException;
+        }
+        closeStream();
+        byte[] stat = ("copy " + table + " from stdin").getBytes();
+        Deque<CompletableFuture<Frame>> sent = new ArrayDeque<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        try {
+            String line;
+            while((line = reader.readLine()) != null) {
+                chunk.write(line.getBytes());
+                chunk.write('\n');
+                if(chunk.size() >= COPY_CHUNK) {
+                    sent.add(rt.send(copyFrame(stat, chunk.toByteArray())));
+                    chunk.reset();
+                    if(sent.size() > COPY_WINDOW) {
+                        RoundTripper.get(sent.poll());
+                    }
+                }
+            }
+            if(chunk.size() > 0) {
+                sent.add(rt.send(copyFrame(stat, chunk.toByteArray())));
+            }
+        } catch(IOException e) {
+            rt.send(new Frame(Frame.CLOSE, new byte[0]));
+            throw e;
+        }
+        return data(rt.roundTrip(copyFrame(stat, new byte[0])));
+    }
+
+    private static Frame copyFrame(byte[] stat, byte[] rows) {
+        return new Frame(Frame.COPY, Frame.pack(Arrays.asList(stat, rows)));
+    }
+
+    /**
+     * 执行一条语句，select的结果每批fetchSize行，在ResultStream.next时才从服务端取出
+     * 其他语句的结果作为一批返回，连接使用HEX格式时服务端可能不支持流式读取，一次返回全部结果
+     */
+    public ResultStream query(byte[] stat, int fetchSize) throws Exception {
+        if(rt.version() != Transporter.BINARY) {
+            return new ResultStream(execute(stat));
         }
-        return resPkg.getData();
+        closeStream();
+        stream = new ResultStream(rt, rt.roundTrip(Frame.stream(stat, fetchSize)));
+        return stream;
+    }
+
+    /**
+     * 与query相同，但结果按列编码，通过RowSet逐行读取带类型的值，连接需要使用二进制格式
+     */
+    public RowSet queryRows(byte[] stat, int fetchSize) throws Exception {
+        if(rt.version() != Transporter.BINARY) {
+            throw Error.BinaryProtocolRequiredException;
+        }
+        closeStream();
+        stream = new ResultStream(rt, rt.roundTrip(Frame.columns(stat, fetchSize)));
+        return new RowSet(stream);
+    }
+
+    // 检查连接是否可用，连接需要使用二进制格式
+    public boolean ping() {
+        try {
+            if(rt.version() != Transporter.BINARY) {
+                throw Error.BinaryProtocolRequiredException;
+            }
+            data(rt.roundTrip(new Frame(Frame.PING, new byte[0])));
+            return true;
+        } catch(Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 重置连接上的会话：放弃未读完的结果，回滚未结束的事务，关闭游标
+     * prepare的语句被保留，连接需要使用二进制格式
+     */
+    public void reset() throws Exception {
+        if(rt.version() != Transporter.BINARY) {
+            throw Error.BinaryProtocolRequiredException;
+        }
+        stream = null;
+        data(rt.roundTrip(new Frame(Frame.RESET, new byte[0])));
+    }
+
+    // 连接上压缩的统计信息，未协商压缩时返回null
+    public Compressor compressor() {
+        return rt.compressor();
     }
 
     public void close() {
@@ -27,4 +161,28 @@ public class Client {
         }
     }
 
+    private static List<Package> batch(Frame frame) {
+        try {
+            return ENCODER.decodeBatch(data(frame));
+        } catch(RuntimeException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static byte[] data(Frame frame) {
+        if(frame.getType() == Frame.ERROR) {
+            throw new RuntimeException(new String(frame.getPayload()));
+        }
+        return frame.getPayload();
+    }
+
+    private void closeStream() throws Exception {
+        if(stream != null) {
+            ResultStream s = stream;
+            stream = null;
+            s.close();
+        }
+    }
 }
@@ -0,0 +1,315 @@
+package simpleDB.client;
+
+import simpleDB.common.Error;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Packager;
+import simpleDB.transport.Transporter;
+
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ClientPool 是线程安全的连接池，每个连接是一个Client，同一时刻只借给一个线程
+ * 创建时建立min个连接，不够用时新建，总数不超过max，达到max时borrow等待其他线程归还，超过borrowTimeout时失败
+ * 归还时重置连接上的会话，回滚未结束的事务并关闭游标，prepare的语句保留给下一次借出复用
+ * 健康检查：空闲超过checkInterval的连接在借出前先PING，后台每checkInterval检查一次空闲的连接，
+ * 丢弃PING失败的连接，关闭空闲超过idleTimeout且多于min的连接，并补足min个连接
+ * 服务端一个连接同一时刻只执行一条语句，多个会话共用一个连接时可能相互等待行锁而无法被死锁检测发现，
+ * 因此每个会话独占一个连接，不在一个连接上复用多个会话
+ */
+public class ClientPool {
+    static final long DEFAULT_BORROW_TIMEOUT = 30000;
+    static final long DEFAULT_CHECK_INTERVAL = 30000;
+    static final long DEFAULT_IDLE_TIMEOUT = 300000;
+
+    private String host;
+    private int port;
+    private int min, max;
+    private boolean compress;
+    private long borrowTimeout, checkInterval, idleTimeout;
+
+    private Lock lock = new ReentrantLock();
+    private Condition released = lock.newCondition();
+    // 空闲的连接，最近归还的在队首
+    private Deque<Idle> idle = new ArrayDeque<>();
+    // 已建立和正在建立的连接数，包括借出的连接
+    private int total;
+    private boolean closed;
+    private ScheduledExecutorService checker;
+
+    public ClientPool(String host, int port, int min, int max) throws Exception {
+        this(host, port, min, max, false, DEFAULT_BORROW_TIMEOUT, DEFAULT_CHECK_INTERVAL, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    // 时间的单位为毫秒，compress为true时每个连接协商压缩
+    public ClientPool(String host, int port, int min, int max, boolean compress,
+                      long borrowTimeout, long checkInterval, long idleTimeout) throws Exception {
+        if(min < 0 || max < 1 || min > max || checkInterval <= 0) {
+            throw new IllegalArgumentException("Invalid pool config");
+        }
+        this.host = host;
+        this.port = port;
+        this.min = min;
+        this.max = max;
+        this.compress = compress;
+        this.borrowTimeout = borrowTimeout;
+        this.checkInterval = checkInterval;
+        this.idleTimeout = idleTimeout;
+        try {
+            for(int i = 0; i < min; i ++) {
+                idle.add(new Idle(connect()));
+                total ++;
+            }
+        } catch(Exception e) {
+            close();
+            throw e;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simpledb-pool-checker");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(this::check, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // 借出一个连接，用完后必须release
+    public Client borrow() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeout);
+        while(true) {
+            Idle p = null;
+            lock.lock();
+            try {
+                while(true) {
+                    if(closed) {
+                        throw Error.PoolClosedException;
+                    }
+                    if(!idle.isEmpty()) {
+                        p = idle.pollFirst();
+                        break;
+                    }
+                    if(total < max) {
+                        total ++;
+                        break;
+                    }
+                    long wait = deadline - System.nanoTime();
+                    if(wait <= 0) {
+                        throw Error.PoolTimeoutException;
+                    }
+                    released.awaitNanos(wait);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if(p == null) {
+                try {
+                    return connect();
+                } catch(Exception e) {
+                    discard(null);
+                    throw e;
+                }
+            }
+            if(System.currentTimeMillis() - p.since < checkInterval || p.client.ping()) {
+                return p.client;
+            }
+            discard(p.client);
+        }
+    }
+
+    // 归还借出的连接，会话重置失败或连接池已关闭时关闭该连接
+    public void release(Client client) {
+        boolean reset;
+        try {
+            client.reset();
+            reset = true;
+        } catch(Exception e) {
+            reset = false;
+        }
+        lock.lock();
+        try {
+            if(reset && !closed) {
+                idle.addFirst(new Idle(client));
+                released.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        discard(client);
+    }
+
+    // 借出一个连接执行一条语句后归还
+    public byte[] execute(byte[] stat) throws Exception {
+        Client client = borrow();
+        try {
+            return client.execute(stat);
+        } finally {
+            release(client);
+        }
+    }
+
+    // 借出一个连接执行task后归还，task中可以使用事务，归还时未结束的事务被回滚
+    public <T> T run(Task<T> task) throws Exception {
+        Client client = borrow();
+        try {
+            return task.run(client);
+        } finally {
+            release(client);
+        }
+    }
+
+    public interface Task<T> {
+        T run(Client client) throws Exception;
+    }
+
+    // 关闭空闲的连接，借出的连接在归还时关闭
+    public void close() {
+        List<Idle> closing;
+        lock.lock();
+        try {
+            closed = true;
+            closing = new ArrayList<>(idle);
+            idle.clear();
+            total -= closing.size();
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for(Idle p : closing) {
+            p.client.close();
+        }
+        if(checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("connections %d (idle %d, min %d, max %d)", total, idle.size(), min, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Client connect() throws Exception {
+        Transporter t = new Transporter(new Socket(host, port));
+        if(t.negotiate(compress) != Transporter.BINARY) {
+            t.close();
+            throw Error.BinaryProtocolRequiredException;
+        }
+        return new Client(new Packager(t, new Encoder()));
+    }
+
+    private void discard(Client client) {
+        if(client != null) {
+            client.close();
+        }
+        lock.lock();
+        try {
+            total --;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 后台检查空闲的连接，检查期间这些连接不在idle中
+    private void check() {
+        List<Idle> checking = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for(Iterator<Idle> it = idle.iterator(); it.hasNext(); ) {
+                Idle p = it.next();
+                if(now - p.since >= checkInterval) {
+                    it.remove();
+                    checking.add(p);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for(Idle p : checking) {
+            boolean surplus = false;
+            if(now - p.since >= idleTimeout) {
+                lock.lock();
+                try {
+                    surplus = total > min;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if(surplus || !p.client.ping()) {
+                discard(p.client);
+                continue;
+            }
+            lock.lock();
+            try {
+                if(!closed) {
+                    idle.addLast(p);
+                    released.signal();
+                    continue;
+                }
+            } finally {
+                lock.unlock();
+            }
+            discard(p.client);
+        }
+        fill();
+    }
+
+    // 补足min个连接，失败时等待下一次检查
+    private void fill() {
+        while(true) {
+            lock.lock();
+            try {
+                if(closed || total >= min) {
+                    return;
+                }
+                total ++;
+            } finally {
+                lock.unlock();
+            }
+            Client client;
+            try {
+                client = connect();
+            } catch(Exception e) {
+                discard(null);
+                return;
+            }
+            lock.lock();
+            try {
+                if(!closed) {
+                    idle.addLast(new Idle(client));
+                    released.signal();
+                    continue;
+                }
+            } finally {
+                lock.unlock();
+            }
+            discard(client);
+        }
+    }
+
+    private static class Idle {
+        Client client;
+        // 归还的时间，毫秒
+        long since;
+
+        Idle(Client client) {
+            this.client = client;
+            this.since = System.currentTimeMillis();
+        }
+    }
+}
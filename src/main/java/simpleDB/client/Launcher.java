@@ -6,15 +6,14 @@ import simpleDB.transport.Encoder;
 import simpleDB.transport.Packager;
 import simpleDB.transport.Transporter;
 
-import java.io.IOException;
 import java.net.Socket;
-import java.net.UnknownHostException;
 
 public class Launcher {
-    public static void main(String[] args) throws UnknownHostException, IOException {
+    public static void main(String[] args) throws Exception {
         Socket socket = new Socket("127.0.0.1", 9999);
         Encoder e = new Encoder();
         Transporter t = new Transporter(socket);
+        t.negotiate(true);
         Packager packager = new Packager(t, e);
 
         Client client = new Client(packager);
@@ -0,0 +1,57 @@
+package simpleDB.client;
+
+import simpleDB.transport.Frame;
+
+/**
+ * ResultStream 是流式读取的select结果，每次next返回服务端的一批记录
+ * 只有上一批被取走后再调用next时才向服务端请求下一批，服务端同一时刻只保留一批记录
+ * 未读完时应调用close，否则服务端的事务会一直保持到该连接执行下一条语句
+ */
+public class ResultStream {
+    private RoundTripper rt;
+    // 已收到但还未被取走的一批
+    private byte[] pending;
+    // 服务端还有剩余的记录
+    private boolean more;
+
+    ResultStream(RoundTripper rt, Frame first) {
+        this.rt = rt;
+        receive(first);
+    }
+
+    // 服务端不支持流式读取时，全部结果作为一批
+    ResultStream(byte[] all) {
+        this.pending = all;
+    }
+
+    // 返回下一批记录，没有更多记录时返回null
+    public byte[] next() throws Exception {
+        if(pending == null && more) {
+            receive(rt.roundTrip(new Frame(Frame.MORE, new byte[0])));
+        }
+        byte[] res = pending;
+        pending = null;
+        return res;
+    }
+
+    public boolean isDone() {
+        return pending == null && !more;
+    }
+
+    // 放弃剩余的记录
+    public void close() throws Exception {
+        pending = null;
+        if(more) {
+            receive(rt.roundTrip(new Frame(Frame.CLOSE, new byte[0])));
+            pending = null;
+        }
+    }
+
+    private void receive(Frame frame) {
+        more = frame.getType() == Frame.ROWS;
+        if(frame.getType() == Frame.ERROR) {
+            throw new RuntimeException(new String(frame.getPayload()));
+        }
+        pending = frame.getPayload();
+    }
+}
@@ -1,22 +1,113 @@
 package simpleDB.client;
 
 
+import simpleDB.transport.Compressor;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Frame;
 import simpleDB.transport.Package;
 import simpleDB.transport.Packager;
 
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * RoundTripper 发送请求后不等待响应，可以连续发送多个请求，服务端按收到的顺序返回响应
+ * 第一次发送时启动一个读取线程，按发送的顺序将响应交给等待的future
+ * 连接断开后所有等待中和之后的请求都以该异常结束
+ */
 public class RoundTripper {
     private Packager packager;
+    private Encoder encoder = new Encoder();
+    // 按发送顺序等待响应的请求
+    private Queue<CompletableFuture<Frame>> waiting = new ConcurrentLinkedQueue<>();
+    // 加入waiting和发送在同一个锁中完成，读取线程不获取该锁，发送阻塞时仍能读取响应
+    private final Object sendLock = new Object();
+    private Thread reader;
+    private volatile Exception broken;
 
     public RoundTripper(Packager packager) {
         this.packager = packager;
     }
 
     public Package roundTrip(Package pkg) throws Exception {
-        packager.send(pkg);
-        return packager.receive();
+        return encoder.decode(roundTrip(encoder.encode(pkg)));
+    }
+
+    public Frame roundTrip(Frame frame) throws Exception {
+        return get(send(frame));
+    }
+
+    // 发送一个帧，返回的future在收到对应的响应时完成
+    public CompletableFuture<Frame> send(Frame frame) throws Exception {
+        CompletableFuture<Frame> res = new CompletableFuture<>();
+        try {
+            synchronized(sendLock) {
+                if(broken != null) {
+                    throw broken;
+                }
+                waiting.add(res);
+                if(reader == null) {
+                    reader = new Thread(this::read, "simpledb-client-reader");
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+                packager.send(frame);
+            }
+        } catch(Exception e) {
+            fail(e);
+            throw e;
+        }
+        // 读取线程可能在加入waiting之前已经退出
+        if(broken != null) {
+            fail(broken);
+        }
+        return res;
+    }
+
+    public int version() {
+        return packager.version();
+    }
+
+    public Compressor compressor() {
+        return packager.compressor();
     }
 
     public void close() throws Exception {
         packager.close();
     }
+
+    static <T> T get(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch(ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+        }
+    }
+
+    private void read() {
+        try {
+            while(true) {
+                Frame frame = packager.receiveFrame();
+                CompletableFuture<Frame> next = waiting.poll();
+                if(next == null) {
+                    throw new IllegalStateException("Unexpected response");
+                }
+                next.complete(frame);
+            }
+        } catch(Exception e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        if(broken == null) {
+            broken = e;
+        }
+        CompletableFuture<Frame> f;
+        while((f = waiting.poll()) != null) {
+            f.completeExceptionally(e);
+        }
+    }
 }
@@ -0,0 +1,150 @@
+package simpleDB.client;
+
+import simpleDB.transport.Columns;
+
+/**
+ * RowSet 是按列编码的select结果，逐行读取带类型的值，不需要解析文本
+ * 结果分批从服务端取出，当前一批读完后再调用next时才请求下一批
+ * 语句不是select时没有列和行，message返回语句的文本结果
+ * 未读完时应调用close，否则服务端的事务会一直保持到该连接执行下一条语句
+ */
+public class RowSet {
+    private ResultStream stream;
+    private Columns columns;
+    private int row = -1;
+    private byte[] message;
+
+    RowSet(ResultStream stream) throws Exception {
+        this.stream = stream;
+        receive(stream.next());
+    }
+
+    // 移动到下一行，没有更多记录时返回false
+    public boolean next() throws Exception {
+        if(columns == null) {
+            return false;
+        }
+        row ++;
+        while(row >= columns.rows()) {
+            byte[] raw = stream.next();
+            if(raw == null) {
+                row = columns.rows();
+                return false;
+            }
+            receive(raw);
+            row = 0;
+        }
+        return true;
+    }
+
+    // 不是select的语句的结果，select时返回null
+    public byte[] message() {
+        return message;
+    }
+
+    public int columnCount() {
+        return columns == null ? 0 : columns.columnCount();
+    }
+
+    public String columnName(int column) {
+        return columns.name(column);
+    }
+
+    // 列的类型，为Columns.INT32、Columns.INT64或Columns.STRING
+    public byte columnType(int column) {
+        return columns.type(column);
+    }
+
+    // 名为name的列的下标
+    public int column(String name) {
+        for(int i = 0; i < columnCount(); i ++) {
+            if(columns.name(i).equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No column " + name);
+    }
+
+    public boolean isNull(int column) {
+        return columns.isNull(column, current());
+    }
+
+    public int getInt(int column) {
+        check(column, Columns.INT32);
+        return columns.getInt(column, current());
+    }
+
+    // int32的列也可以按int64读取
+    public long getLong(int column) {
+        if(columns.type(column) == Columns.INT32) {
+            return getInt(column);
+        }
+        check(column, Columns.INT64);
+        return columns.getLong(column, current());
+    }
+
+    // 值为null时返回null
+    public String getString(int column) {
+        check(column, Columns.STRING);
+        int r = current();
+        return columns.isNull(column, r) ? null : columns.getString(column, r);
+    }
+
+    // 按列的类型返回Integer、Long或String，值为null时返回null
+    public Object getObject(int column) {
+        if(isNull(column)) {
+            return null;
+        }
+        switch(columns.type(column)) {
+            case Columns.INT32:
+                return getInt(column);
+            case Columns.INT64:
+                return getLong(column);
+            default:
+                return getString(column);
+        }
+    }
+
+    // 放弃剩余的记录
+    public void close() throws Exception {
+        stream.close();
+        row = columns == null ? -1 : columns.rows();
+    }
+
+    private void receive(byte[] raw) throws Exception {
+        if(raw == null || raw.length == 0) {
+            throw new IllegalStateException("Empty result");
+        }
+        byte[] data = new byte[raw.length - 1];
+        System.arraycopy(raw, 1, data, 0, data.length);
+        if(raw[0] == Columns.RESULT_TEXT) {
+            message = data;
+        } else {
+            columns = Columns.decode(data);
+        }
+    }
+
+    private int current() {
+        if(columns == null || row < 0 || row >= columns.rows()) {
+            throw new IllegalStateException("No current row");
+        }
+        return row;
+    }
+
+    private void check(int column, byte type) {
+        if(columns.type(column) != type) {
+            throw new IllegalArgumentException("Column " + columns.name(column) + " is not " + typeName(type));
+        }
+    }
+
+    private static String typeName(byte type) {
+        switch(type) {
+            case Columns.INT32:
+                return "int32";
+            case Columns.INT64:
+                return "int64";
+            default:
+                return "string";
+        }
+    }
+}
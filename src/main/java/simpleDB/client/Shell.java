@@ -3,6 +3,9 @@ package simpleDB.client;
 import java.util.Scanner;
 
 public class Shell {
+    // 每次从服务端取出的行数
+    static final int FETCH_SIZE = 1000;
+
     private Client client;
 
     public Shell(Client client) {
@@ -19,8 +22,11 @@ public class Shell {
                     break;
                 }
                 try {
-                    byte[] res = client.execute(statStr.getBytes());
-                    System.out.println(new String(res));
+                    ResultStream res = client.query(statStr.getBytes(), FETCH_SIZE);
+                    for(byte[] rows = res.next(); rows != null; rows = res.next()) {
+                        System.out.print(new String(rows));
+                    }
+                    System.out.println();
                 } catch(Exception e) {
                     System.out.println(e.getMessage());
                 }
@@ -20,8 +20,13 @@ public class Error {
     public static final Exception DeadlockException = new RuntimeException("Deadlock!");
     public static final Exception ConcurrentUpdateException = new RuntimeException("Concurrent update issue!");
     public static final Exception NullEntryException = new RuntimeException("Null entry!");
+    public static final Exception LockTimeoutException = new RuntimeException("Lock wait timeout!");
+
+    // im
+    public static final Exception KeyTooLargeException = new RuntimeException("Index key too large!");
 
     // tbm
+    public static final Exception IncompatibleFormatException = new RuntimeException("Incompatible database format!");
     public static final Exception InvalidFieldException = new RuntimeException("Invalid field type!");
     public static final Exception FieldNotFoundException = new RuntimeException("Field not found!");
     public static final Exception FieldNotIndexedException = new RuntimeException("Field not indexed!");
@@ -29,6 +34,8 @@ public class Error {
     public static final Exception InvalidValuesException = new RuntimeException("Invalid values!");
     public static final Exception DuplicatedTableException = new RuntimeException("Duplicated table!");
     public static final Exception TableNotFoundException = new RuntimeException("Table not found!");
+    public static final Exception FieldNotGroupedException = new RuntimeException("Field not in group by!");
+    public static final Exception AmbiguousFieldException = new RuntimeException("Ambiguous field!");
 
     // parser
     public static final Exception InvalidCommandException = new RuntimeException("Invalid command!");
@@ -36,10 +43,21 @@ public class Error {
 
     // transport
     public static final Exception InvalidPkgDataException = new RuntimeException("Invalid package data!");
+    public static final Exception UnsupportedCompressionException = new RuntimeException("Unsupported compression!");
 
     // server
     public static final Exception NestedTransactionException = new RuntimeException("Nested transaction not supported!");
     public static final Exception NoTransactionException = new RuntimeException("Not in transaction!");
+    public static final Exception CursorNotFoundException = new RuntimeException("Cursor not found!");
+    public static final Exception DuplicatedCursorException = new RuntimeException("Duplicated cursor!");
+    public static final Exception PreparedNotFoundException = new RuntimeException("Prepared statement not found!");
+    public static final Exception DuplicatedPreparedException = new RuntimeException("Duplicated prepared statement!");
+    public static final Exception DropInTransactionException = new RuntimeException("Drop table not allowed in transaction!");
+
+    // client
+    public static final Exception PoolTimeoutException = new RuntimeException("Timeout waiting for connection!");
+    public static final Exception PoolClosedException = new RuntimeException("Connection pool closed!");
+    public static final Exception BinaryProtocolRequiredException = new RuntimeException("Binary protocol required!");
 
     // launcher
     public static final Exception InvalidMemException = new RuntimeException("Invalid memory!");
@@ -0,0 +1,202 @@
+package simpleDB.transport;
+
+import simpleDB.common.Error;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Columns 是按列编码的一批查询结果，服务端由列中的值直接编码，客户端按类型读取，不经过文本
+ * 格式为 [ColumnCount][Column1]...[ColumnN][Rows][Data1]...[DataN]
+ * ColumnCount为2字节，Column为[Type][NameLength][Name]，Type为1字节，NameLength为2字节
+ * Rows为4字节，Data为该列的[NullBitmap][Values]，NullBitmap每行一位，共(Rows+7)/8字节
+ * INT32和INT64每行4或8字节，STRING每行为[Length][UTF-8]，Length为4字节，为null的行写入0或空串
+ * COLUMNS帧的每个结果以1字节开头，RESULT_COLUMNS表示之后为Columns，RESULT_TEXT表示之后为非select语句的文本结果
+ */
+public class Columns {
+    public static final byte INT32 = 0;
+    public static final byte INT64 = 1;
+    public static final byte STRING = 2;
+
+    public static final byte RESULT_TEXT = 0;
+    public static final byte RESULT_COLUMNS = 1;
+
+    private byte[] types;
+    private String[] names;
+    private int rows;
+    private BitSet[] nulls;
+    private int[][] ints;
+    private long[][] longs;
+    private String[][] strings;
+
+    public int columnCount() {
+        return types.length;
+    }
+
+    public byte type(int column) {
+        return types[column];
+    }
+
+    public String name(int column) {
+        return names[column];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public boolean isNull(int column, int row) {
+        return nulls[column].get(row);
+    }
+
+    public int getInt(int column, int row) {
+        return ints[column][row];
+    }
+
+    public long getLong(int column, int row) {
+        return longs[column][row];
+    }
+
+    public String getString(int column, int row) {
+        return strings[column][row];
+    }
+
+    public static Columns decode(byte[] raw) throws Exception {
+        try {
+            return decode(ByteBuffer.wrap(raw));
+        } catch(BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw Error.InvalidPkgDataException;
+        }
+    }
+
+    private static Columns decode(ByteBuffer buf) throws Exception {
+        Columns c = new Columns();
+        int n = buf.getShort();
+        c.types = new byte[n];
+        c.names = new String[n];
+        for(int i = 0; i < n; i ++) {
+            c.types[i] = buf.get();
+            byte[] name = new byte[buf.getShort()];
+            buf.get(name);
+            c.names[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        c.rows = buf.getInt();
+        c.nulls = new BitSet[n];
+        c.ints = new int[n][];
+        c.longs = new long[n][];
+        c.strings = new String[n][];
+        for(int i = 0; i < n; i ++) {
+            byte[] bitmap = new byte[(c.rows + 7) / 8];
+            buf.get(bitmap);
+            c.nulls[i] = BitSet.valueOf(bitmap);
+            switch(c.types[i]) {
+                case INT32:
+                    c.ints[i] = new int[c.rows];
+                    buf.asIntBuffer().get(c.ints[i]);
+                    buf.position(buf.position() + c.rows * 4);
+                    break;
+                case INT64:
+                    c.longs[i] = new long[c.rows];
+                    buf.asLongBuffer().get(c.longs[i]);
+                    buf.position(buf.position() + c.rows * 8);
+                    break;
+                case STRING:
+                    c.strings[i] = new String[c.rows];
+                    for(int r = 0; r < c.rows; r ++) {
+                        int length = buf.getInt();
+                        c.strings[i][r] = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+                        buf.position(buf.position() + length);
+                    }
+                    break;
+                default:
+                    throw Error.InvalidPkgDataException;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Writer 按列写入一批结果，每列写入的行数必须相同
+     */
+    public static class Writer {
+        private byte[] types;
+        private String[] names;
+        private int[] counts;
+        private BitSet[] nulls;
+        private ByteArrayOutputStream[] values;
+        private DataOutputStream[] outs;
+
+        public Writer(byte[] types, String[] names) {
+            this.types = types;
+            this.names = names;
+            this.counts = new int[types.length];
+            this.nulls = new BitSet[types.length];
+            this.values = new ByteArrayOutputStream[types.length];
+            this.outs = new DataOutputStream[types.length];
+            for(int i = 0; i < types.length; i ++) {
+                nulls[i] = new BitSet();
+                values[i] = new ByteArrayOutputStream();
+                outs[i] = new DataOutputStream(values[i]);
+            }
+        }
+
+        public void writeInt(int column, int v) throws IOException {
+            outs[column].writeInt(v);
+            counts[column] ++;
+        }
+
+        public void writeLong(int column, long v) throws IOException {
+            outs[column].writeLong(v);
+            counts[column] ++;
+        }
+
+        public void writeString(int column, String v) throws IOException {
+            byte[] raw = v.getBytes(StandardCharsets.UTF_8);
+            outs[column].writeInt(raw.length);
+            outs[column].write(raw);
+            counts[column] ++;
+        }
+
+        public void writeNull(int column) throws IOException {
+            nulls[column].set(counts[column]);
+            switch(types[column]) {
+                case INT32:
+                    outs[column].writeInt(0);
+                    break;
+                case INT64:
+                    outs[column].writeLong(0);
+                    break;
+                default:
+                    outs[column].writeInt(0);
+            }
+            counts[column] ++;
+        }
+
+        public byte[] encode() throws IOException {
+            int rows = types.length == 0 ? 0 : counts[0];
+            ByteArrayOutputStream res = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(res);
+            out.writeShort(types.length);
+            for(int i = 0; i < types.length; i ++) {
+                byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+                out.writeByte(types[i]);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            out.writeInt(rows);
+            for(int i = 0; i < types.length; i ++) {
+                byte[] bitmap = new byte[(rows + 7) / 8];
+                byte[] set = nulls[i].toByteArray();
+                System.arraycopy(set, 0, bitmap, 0, set.length);
+                out.write(bitmap);
+                values[i].writeTo(out);
+            }
+            return res.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package simpleDB.transport;
+
+import simpleDB.common.Error;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressor 使用Deflate压缩二进制帧的payload，每个连接各有一个
+ * 压缩后的帧Type带有COMPRESSED标记，payload为[RawLength][Deflate数据]，RawLength为4字节
+ * payload不足threshold字节或压缩后没有变小时原样发送，接收方按标记决定是否解压
+ * 压缩和解压可以在不同的线程中，但同一时刻只能各有一个线程使用
+ * 统计两个方向上压缩前后的字节数，以及压缩和解压占用的CPU时间
+ */
+public class Compressor {
+    public static final byte[] DEFLATE = "deflate".getBytes();
+    public static final int DEFAULT_THRESHOLD = 512;
+    static final byte COMPRESSED = (byte)0x80;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private int threshold;
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private Inflater inflater = new Inflater();
+
+    private volatile long sentRaw, sent, deflateFrames, deflateNanos;
+    private volatile long receivedRaw, received, inflateFrames, inflateNanos;
+
+    public Compressor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public Frame compress(Frame frame) {
+        int length = frame.payload.length;
+        sentRaw += length;
+        if(length < threshold) {
+            sent += length;
+            return frame;
+        }
+        long start = cpuTime();
+        // 输出不超过原始长度，写满时说明压缩后没有变小
+        byte[] out = new byte[length];
+        ByteBuffer.wrap(out).putInt(length);
+        int pos = 4;
+        deflater.reset();
+        deflater.setInput(frame.payload);
+        deflater.finish();
+        while(!deflater.finished() && pos < out.length) {
+            pos += deflater.deflate(out, pos, out.length - pos);
+        }
+        deflateNanos += cpuTime() - start;
+        if(!deflater.finished()) {
+            sent += length;
+            return frame;
+        }
+        sent += pos;
+        deflateFrames ++;
+        return new Frame((byte)(frame.type | COMPRESSED), Arrays.copyOf(out, pos));
+    }
+
+    public Frame decompress(Frame frame) throws IOException {
+        int length = frame.payload.length;
+        received += length;
+        if((frame.type & COMPRESSED) == 0) {
+            receivedRaw += length;
+            return frame;
+        }
+        if(length < 4) {
+            throw new IOException(Error.InvalidPkgDataException);
+        }
+        int rawLength = ByteBuffer.wrap(frame.payload).getInt();
+        if(rawLength < 0 || rawLength > Transporter.MAX_FRAME) {
+            throw new IOException(Error.InvalidPkgDataException);
+        }
+        long start = cpuTime();
+        byte[] raw = new byte[rawLength];
+        int pos = 0;
+        inflater.reset();
+        inflater.setInput(frame.payload, 4, length - 4);
+        try {
+            while(pos < rawLength) {
+                int n = inflater.inflate(raw, pos, rawLength - pos);
+                if(n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException(Error.InvalidPkgDataException);
+                }
+                pos += n;
+            }
+        } catch(DataFormatException e) {
+            throw new IOException(Error.InvalidPkgDataException);
+        }
+        inflateNanos += cpuTime() - start;
+        receivedRaw += rawLength;
+        inflateFrames ++;
+        return new Frame((byte)(frame.type & ~COMPRESSED), raw);
+    }
+
+    public void close() {
+        deflater.end();
+        inflater.end();
+    }
+
+    // 压缩比为压缩前后的字节数之比
+    @Override
+    public String toString() {
+        return String.format("sent %d -> %d bytes (ratio %.2f, %d frames, deflate %.1fms cpu), " +
+                "received %d -> %d bytes (ratio %.2f, %d frames, inflate %.1fms cpu)",
+                sentRaw, sent, ratio(sentRaw, sent), deflateFrames, deflateNanos / 1e6,
+                receivedRaw, received, ratio(receivedRaw, received), inflateFrames, inflateNanos / 1e6);
+    }
+
+    private static double ratio(long raw, long compressed) {
+        return compressed == 0 ? 1 : (double)raw / compressed;
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
@@ -1,36 +1,58 @@
 package simpleDB.transport;
 
-import com.google.common.primitives.Bytes;
 import simpleDB.common.Error;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class Encoder {
 
-    public byte[] encode(Package pkg) {
+    public Frame encode(Package pkg) {
         if(pkg.getErr() != null) {
             Exception err = pkg.getErr();
             String msg = "Intern server error!";
             if(err.getMessage() != null) {
                 msg = err.getMessage();
             }
-            return Bytes.concat(new byte[]{1}, msg.getBytes());
+            return new Frame(Frame.ERROR, msg.getBytes());
         } else {
-            return Bytes.concat(new byte[]{0}, pkg.getData());
+            return new Frame(Frame.DATA, pkg.getData());
         }
     }
 
-    public Package decode(byte[] data) throws Exception {
-        if(data.length < 1) {
-            throw Error.InvalidPkgDataException;
-        }
-        if(data[0] == 0) {
-            return new Package(Arrays.copyOfRange(data, 1, data.length), null);
-        } else if(data[0] == 1) {
-            return new Package(null, new RuntimeException(new String(Arrays.copyOfRange(data, 1, data.length))));
+    public Package decode(Frame frame) throws Exception {
+        if(frame.type == Frame.DATA) {
+            return new Package(frame.payload, null);
+        } else if(frame.type == Frame.ERROR) {
+            return new Package(null, new RuntimeException(new String(frame.payload)));
         } else {
             throw Error.InvalidPkgDataException;
         }
     }
 
+    // 批量执行的结果，每条结果与单条语句的帧相同，编码为[Type][Payload]后按Frame.pack打包
+    public byte[] encodeBatch(List<Package> pkgs) {
+        List<byte[]> items = new ArrayList<>();
+        for(Package pkg : pkgs) {
+            Frame frame = encode(pkg);
+            byte[] item = new byte[frame.payload.length + 1];
+            item[0] = frame.type;
+            System.arraycopy(frame.payload, 0, item, 1, frame.payload.length);
+            items.add(item);
+        }
+        return Frame.pack(items);
+    }
+
+    public List<Package> decodeBatch(byte[] raw) throws Exception {
+        List<Package> pkgs = new ArrayList<>();
+        for(byte[] item : Frame.unpack(raw)) {
+            if(item.length == 0) {
+                throw Error.InvalidPkgDataException;
+            }
+            pkgs.add(decode(new Frame(item[0], Arrays.copyOfRange(item, 1, item.length))));
+        }
+        return pkgs;
+    }
+
 }
@@ -0,0 +1,96 @@
+package simpleDB.transport;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Frame 是传输层的一个帧，type为DATA时payload为数据，为ERROR时payload为错误信息
+ * 流式读取结果时：
+ * 客户端发送STREAM，payload为[FetchSize][Statement]，FetchSize为4字节
+ * 服务端每次返回至多FetchSize行，还有剩余记录时类型为ROWS，最后一批为DATA，出错时为ERROR
+ * 收到ROWS后客户端发送MORE取出下一批，或发送CLOSE放弃剩余的记录，服务端只在收到MORE后才读取下一批
+ * 批量执行时客户端发送BATCH，payload为[Count][Len1][Statement1]...，服务端在一个事务中依次执行，
+ * 返回DATA，payload为相同格式的各条语句的结果，每条结果为[Type][Payload]，与单条语句返回的帧相同
+ * 任一条失败时停止执行，最后一条结果为ERROR，见Encoder.encodeBatch；语句无法解析时直接返回ERROR
+ * copy from stdin时客户端发送多个COPY，payload为[2][Len][Statement][Len][Rows]，Rows为若干完整的行，
+ * 最后一个COPY的Rows为空，服务端对其返回导入的结果，对其余的返回空的DATA；中途发送CLOSE放弃导入
+ * 客户端可以不等待响应连续发送多个帧，服务端按收到的顺序执行并返回
+ * BINARY下客户端可以发送COMPRESS协商压缩，payload为算法名，服务端支持时原样返回DATA，见Compressor
+ * COLUMNS与STREAM相同，但每批结果按列编码为带类型的二进制，见Columns
+ * PING检查连接是否可用，RESET重置连接上的会话，两者都返回空的DATA，由连接池使用
+ */
+public class Frame {
+    public static final byte DATA = 0;
+    public static final byte ERROR = 1;
+    public static final byte STREAM = 2;
+    public static final byte ROWS = 3;
+    public static final byte MORE = 4;
+    public static final byte CLOSE = 5;
+    public static final byte BATCH = 6;
+    public static final byte COPY = 7;
+    public static final byte COMPRESS = 8;
+    public static final byte COLUMNS = 9;
+    public static final byte PING = 10;
+    public static final byte RESET = 11;
+
+    byte type;
+    byte[] payload;
+
+    public Frame(byte type, byte[] payload) {
+        this.type = type;
+        this.payload = payload;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public static Frame stream(byte[] statement, int fetchSize) {
+        return new Frame(STREAM, ByteBuffer.allocate(4 + statement.length).putInt(fetchSize).put(statement).array());
+    }
+
+    public static Frame columns(byte[] statement, int fetchSize) {
+        return new Frame(COLUMNS, stream(statement, fetchSize).payload);
+    }
+
+    // STREAM和COLUMNS帧中的FetchSize
+    public int fetchSize() {
+        return ByteBuffer.wrap(payload).getInt();
+    }
+
+    // STREAM和COLUMNS帧中的语句
+    public byte[] statement() {
+        return Arrays.copyOfRange(payload, 4, payload.length);
+    }
+
+    // 将多个数据编码为[Count][Len1][Data1]...
+    public static byte[] pack(List<byte[]> list) {
+        int size = 4;
+        for(byte[] data : list) {
+            size += 4 + data.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size).putInt(list.size());
+        for(byte[] data : list) {
+            buf.putInt(data.length).put(data);
+        }
+        return buf.array();
+    }
+
+    public static List<byte[]> unpack(byte[] raw) {
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        int n = buf.getInt();
+        List<byte[]> list = new ArrayList<>(Math.min(n, raw.length / 4));
+        for(int i = 0; i < n; i ++) {
+            byte[] data = new byte[buf.getInt()];
+            buf.get(data);
+            list.add(data);
+        }
+        return list;
+    }
+}
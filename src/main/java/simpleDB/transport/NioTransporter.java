@@ -0,0 +1,199 @@
+package simpleDB.transport;
+
+import simpleDB.common.Error;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * NioTransporter 是服务端非阻塞SocketChannel上的Transporter，帧格式和协商过程与Transporter相同
+ * read从channel中读出当前可读的数据并切分出完整的帧，不完整的帧留在缓冲区中等待下次读取
+ * send只将帧放入发送队列，flush尽可能多地写出，返回false时需要等待channel可写后再次flush
+ * 二进制帧的payload直接包装为ByteBuffer写出，不复制
+ * 收到COMPRESS时立即应答，压缩和解压不在read和send中进行，由执行语句的线程调用compress和decompress
+ * 缓冲区只在写满时加倍，不按帧头声明的长度预先分配，超过MAX_FRAME的帧或十六进制行视为非法数据，连接被关闭
+ */
+public class NioTransporter {
+    private static final int BUFFER_SIZE = 8192;
+    // 服务端接收的单个帧（解压后）的最大长度
+    static final int MAX_FRAME = Integer.getInteger("simpledb.frame.max", 16 << 20);
+
+    private SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private Deque<ByteBuffer> out = new ArrayDeque<>();
+    private boolean first = true;
+    private int version = Transporter.HEX;
+    // 协商压缩后不为null
+    private volatile Compressor compressor;
+    // 已经检查过的不含'\n'的十六进制字节数，避免每次从头查找
+    private int scanned;
+
+    public NioTransporter(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    public SocketChannel channel() {
+        return channel;
+    }
+
+    // 读出当前所有完整的帧，对端关闭时抛出EOFException
+    public List<Frame> read() throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        while(true) {
+            if(!in.hasRemaining()) {
+                in = grow(in, (int)Math.min((long)in.capacity() * 2, maxBuffer()));
+            }
+            int n = channel.read(in);
+            if(n < 0) {
+                throw new EOFException();
+            }
+            Frame frame;
+            while((frame = poll()) != null) {
+                if(first) {
+                    first = false;
+                    if(version == Transporter.HEX && frame.type == Frame.DATA && Arrays.equals(frame.payload, Transporter.HELLO)) {
+                        send(frame);
+                        version = Transporter.BINARY;
+                        continue;
+                    }
+                }
+                if(version == Transporter.BINARY && frame.type == Frame.COMPRESS) {
+                    if(Arrays.equals(frame.payload, Compressor.DEFLATE)) {
+                        send(new Frame(Frame.DATA, frame.payload));
+                        compressor = new Compressor(Compressor.DEFAULT_THRESHOLD);
+                    } else {
+                        send(new Frame(Frame.ERROR, Error.UnsupportedCompressionException.getMessage().getBytes()));
+                    }
+                    continue;
+                }
+                frames.add(frame);
+            }
+            if(n == 0 || in.hasRemaining()) {
+                // 读完一个大帧后释放扩大的缓冲区
+                if(in.position() == 0 && in.capacity() > BUFFER_SIZE) {
+                    in = ByteBuffer.allocate(BUFFER_SIZE);
+                }
+                return frames;
+            }
+        }
+    }
+
+    // 从缓冲区中取出一个完整的帧，没有时返回null
+    private Frame poll() throws IOException {
+        in.flip();
+        try {
+            if(version == Transporter.BINARY) {
+                if(in.remaining() < 4) {
+                    return null;
+                }
+                int length = in.getInt(in.position());
+                if(length < 1 || length > MAX_FRAME) {
+                    throw new IOException(Error.InvalidPkgDataException);
+                }
+                if(in.remaining() < 4 + length) {
+                    return null;
+                }
+                in.getInt();
+                byte type = in.get();
+                byte[] payload = new byte[length-1];
+                in.get(payload);
+                return new Frame(type, payload);
+            }
+            int end = -1;
+            for(int i = in.position() + scanned; i < in.limit(); i ++) {
+                if(in.get(i) == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if(end < 0) {
+                scanned = in.remaining();
+                if(scanned > 2 * (MAX_FRAME + 1)) {
+                    throw new IOException(Error.InvalidPkgDataException);
+                }
+                return null;
+            }
+            scanned = 0;
+            byte[] line = new byte[end - in.position()];
+            in.get(line);
+            in.get();
+            return Transporter.hexDecode(line);
+        } finally {
+            in.compact();
+        }
+    }
+
+    // 缓冲区的最大容量，能放下一个最大的帧
+    private long maxBuffer() {
+        return version == Transporter.BINARY ? 4L + MAX_FRAME : 2L * (MAX_FRAME + 1) + 1;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf, int capacity) {
+        ByteBuffer res = ByteBuffer.allocate(capacity);
+        buf.flip();
+        res.put(buf);
+        return res;
+    }
+
+    public void send(Frame frame) {
+        if(version == Transporter.BINARY) {
+            ByteBuffer head = ByteBuffer.allocate(5);
+            head.putInt(frame.payload.length + 1).put(frame.type).flip();
+            out.add(head);
+            out.add(ByteBuffer.wrap(frame.payload));
+        } else {
+            out.add(ByteBuffer.wrap(Transporter.hexEncode(frame.type, frame.payload)));
+        }
+    }
+
+    // 写出发送队列中的数据，全部写出时返回true
+    public boolean flush() throws IOException {
+        while(!out.isEmpty()) {
+            ByteBuffer[] bufs = out.toArray(new ByteBuffer[0]);
+            channel.write(bufs);
+            while(!out.isEmpty() && !out.peek().hasRemaining()) {
+                out.poll();
+            }
+            if(!out.isEmpty() && out.peek().hasRemaining()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 未协商压缩时原样返回
+    public Frame compress(Frame frame) {
+        Compressor c = compressor;
+        return c == null ? frame : c.compress(frame);
+    }
+
+    public Frame decompress(Frame frame) throws IOException {
+        Compressor c = compressor;
+        if(c == null) {
+            return frame;
+        }
+        // 解压后的长度同样受MAX_FRAME限制
+        byte[] payload = frame.payload;
+        if((frame.type & Compressor.COMPRESSED) != 0 && payload.length >= 4
+                && ByteBuffer.wrap(payload).getInt() > MAX_FRAME) {
+            throw new IOException(Error.InvalidPkgDataException);
+        }
+        return c.decompress(frame);
+    }
+
+    // 压缩的统计信息，未协商压缩时返回null
+    public Compressor compressor() {
+        return compressor;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
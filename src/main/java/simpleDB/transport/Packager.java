@@ -10,13 +10,29 @@ public class Packager {
     }
 
     public void send(Package pkg) throws Exception {
-        byte[] data = encoder.encode(pkg);
-        transpoter.send(data);
+        transpoter.send(encoder.encode(pkg));
     }
 
     public Package receive() throws Exception {
-        byte[] data = transpoter.receive();
-        return encoder.decode(data);
+        return encoder.decode(transpoter.receive());
+    }
+
+    public void send(Frame frame) throws Exception {
+        transpoter.send(frame);
+    }
+
+    public Frame receiveFrame() throws Exception {
+        return transpoter.receive();
+    }
+
+    // 协商的传输格式，见Transporter
+    public int version() {
+        return transpoter.version();
+    }
+
+    // 压缩的统计信息，未协商压缩时返回null
+    public Compressor compressor() {
+        return transpoter.compressor();
     }
 
     public void close() throws Exception {
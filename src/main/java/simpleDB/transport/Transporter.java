@@ -1,47 +1,186 @@
 package simpleDB.transport;
 
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
+import simpleDB.common.Error;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.Arrays;
 
+/**
+ * Transporter 在socket上收发帧，支持两种格式：
+ * HEX：每个帧为一行十六进制文本，内容为[Type][Payload]，以'\n'结尾
+ * BINARY：[Length][Type][Payload]，Length为4字节，是Type和Payload的总长度
+ * 连接总是以HEX开始，客户端调用negotiate发送HELLO，服务端支持BINARY时原样返回HELLO，此后双方都切换为BINARY
+ * 只支持HEX的服务端会把HELLO当作语句执行并返回错误，此时客户端继续使用HEX
+ * 切换为BINARY后客户端可以再发送COMPRESS协商压缩，服务端不支持时返回错误，双方都不压缩
+ * 协商压缩后双方发送的较大的帧被压缩，收到的帧按Type中的标记解压
+ */
 public class Transporter {
+    public static final int HEX = 1;
+    public static final int BINARY = 2;
+    // 以0开头，不会是一条合法的语句
+    static final byte[] HELLO = "\0simpledb binary 2".getBytes();
+    // 单个帧的最大长度，超过时认为数据损坏
+    static final int MAX_FRAME = 1 << 30;
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes();
+
     private Socket socket;
-    private BufferedReader reader;
-    private BufferedWriter writer;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private boolean server;
+    private boolean first = true;
+    private int version = HEX;
+    // 协商压缩后不为null
+    private Compressor compressor;
 
     public Transporter(Socket socket) throws IOException {
+        this(socket, false);
+    }
+
+    // server为true时接受客户端的第一个帧中的HELLO
+    public Transporter(Socket socket, boolean server) throws IOException {
         this.socket = socket;
-        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        this.server = server;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    // 客户端在连接建立后调用，返回协商的格式
+    public int negotiate() throws Exception {
+        return negotiate(false);
+    }
+
+    // compress为true时在BINARY上再协商压缩，服务端不支持时不压缩
+    public int negotiate(boolean compress) throws Exception {
+        send(new Frame(Frame.DATA, HELLO));
+        Frame res = receive();
+        if(res.type == Frame.DATA && Arrays.equals(res.payload, HELLO)) {
+            version = BINARY;
+        }
+        if(compress && version == BINARY) {
+            send(new Frame(Frame.COMPRESS, Compressor.DEFLATE));
+            res = receive();
+            if(res.type == Frame.DATA && Arrays.equals(res.payload, Compressor.DEFLATE)) {
+                compressor = new Compressor(Compressor.DEFAULT_THRESHOLD);
+            }
+        }
+        return version;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    // 压缩的统计信息，未协商压缩时返回null
+    public Compressor compressor() {
+        return compressor;
     }
 
-    public void send(byte[] data) throws Exception {
-        String raw = hexEncode(data);
-        writer.write(raw);
-        writer.flush();
+    public void send(Frame frame) throws Exception {
+        if(compressor != null) {
+            frame = compressor.compress(frame);
+        }
+        if(version == BINARY) {
+            out.writeInt(frame.payload.length + 1);
+            out.writeByte(frame.type);
+            out.write(frame.payload);
+        } else {
+            out.write(hexEncode(frame.type, frame.payload));
+        }
+        out.flush();
     }
 
-    public byte[] receive() throws Exception {
-        String line = reader.readLine();
-        if(line == null) {
+    public Frame receive() throws Exception {
+        Frame frame;
+        try {
+            frame = version == BINARY ? readFrame() : hexDecode(readLine());
+        } catch(EOFException e) {
             close();
+            throw e;
+        }
+        if(compressor != null) {
+            frame = compressor.decompress(frame);
         }
-        return hexDecode(line);
+        if(server && first) {
+            first = false;
+            if(version == HEX && frame.type == Frame.DATA && Arrays.equals(frame.payload, HELLO)) {
+                send(frame);
+                version = BINARY;
+                return receive();
+            }
+        }
+        if(server && version == BINARY && frame.type == Frame.COMPRESS) {
+            if(Arrays.equals(frame.payload, Compressor.DEFLATE)) {
+                send(new Frame(Frame.DATA, frame.payload));
+                compressor = new Compressor(Compressor.DEFAULT_THRESHOLD);
+            } else {
+                send(new Frame(Frame.ERROR, Error.UnsupportedCompressionException.getMessage().getBytes()));
+            }
+            return receive();
+        }
+        return frame;
     }
 
     public void close() throws IOException {
-        writer.close();
-        reader.close();
+        if(compressor != null) {
+            compressor.close();
+        }
+        out.close();
+        in.close();
         socket.close();
     }
 
-    private String hexEncode(byte[] buf) {
-        return Hex.encodeHexString(buf, true)+"\n";
+    private Frame readFrame() throws IOException {
+        int length = in.readInt();
+        if(length < 1 || length > MAX_FRAME) {
+            throw new IOException(Error.InvalidPkgDataException);
+        }
+        byte type = in.readByte();
+        byte[] payload = new byte[length-1];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    private byte[] readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != '\n') {
+            if(b == -1) {
+                throw new EOFException();
+            }
+            line.write(b);
+        }
+        return line.toByteArray();
     }
 
-    private byte[] hexDecode(String buf) throws DecoderException {
-        return Hex.decodeHex(buf);
+    static byte[] hexEncode(byte type, byte[] payload) {
+        byte[] raw = new byte[payload.length*2 + 3];
+        raw[0] = DIGITS[(type >> 4) & 0xf];
+        raw[1] = DIGITS[type & 0xf];
+        for(int i = 0; i < payload.length; i ++) {
+            raw[i*2 + 2] = DIGITS[(payload[i] >> 4) & 0xf];
+            raw[i*2 + 3] = DIGITS[payload[i] & 0xf];
+        }
+        raw[raw.length-1] = '\n';
+        return raw;
+    }
+
+    static Frame hexDecode(byte[] raw) throws IOException {
+        if(raw.length < 2 || raw.length % 2 != 0) {
+            throw new IOException(Error.InvalidPkgDataException);
+        }
+        byte[] payload = new byte[raw.length/2 - 1];
+        for(int i = 0; i < payload.length; i ++) {
+            payload[i] = (byte)(digit(raw[i*2 + 2]) << 4 | digit(raw[i*2 + 3]));
+        }
+        return new Frame((byte)(digit(raw[0]) << 4 | digit(raw[1])), payload);
+    }
+
+    private static int digit(byte b) throws IOException {
+        int d = Character.digit(b, 16);
+        if(d < 0) {
+            throw new IOException(Error.InvalidPkgDataException);
+        }
+        return d;
     }
 }
@@ -0,0 +1,161 @@
+package simpleDB.backend;
+
+import simpleDB.backend.dm.DataManager;
+import simpleDB.backend.server.Executor;
+import simpleDB.backend.server.Server;
+import simpleDB.backend.tbm.TableManager;
+import simpleDB.backend.tm.TransactionManager;
+import simpleDB.backend.vm.VersionManager;
+import simpleDB.backend.vm.VersionManagerImpl;
+import simpleDB.client.Client;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Packager;
+import simpleDB.transport.Transporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的数据库，建在临时目录中，通过Executor执行语句
+ */
+public class TestDB {
+    public static final long MEM = 1 << 24;
+
+    public final File dir;
+    public final String path;
+    public TransactionManager tm;
+    public DataManager dm;
+    public VersionManager vm;
+    public TableManager tbm;
+    public Executor exe;
+
+    private TestDB(File dir) {
+        this.dir = dir;
+        this.path = new File(dir, "db").getPath();
+    }
+
+    public static TestDB create() throws IOException {
+        TestDB db = new TestDB(Files.createTempDirectory("simpledb").toFile());
+        db.tm = TransactionManager.create(db.path);
+        db.dm = DataManager.create(db.path, MEM, db.tm);
+        db.vm = new VersionManagerImpl(db.tm, db.dm);
+        db.tbm = TableManager.create(db.path, db.vm, db.dm);
+        db.exe = new Executor(db.tbm);
+        return db;
+    }
+
+    // 正常关闭后重新打开
+    public void reopen() {
+        dm.close();
+        tm.close();
+        open();
+    }
+
+    // 不关闭直接重新打开，模拟崩溃，只有已写入日志的内容被恢复
+    public void crash() {
+        open();
+    }
+
+    private void open() {
+        tm = TransactionManager.open(path);
+        dm = DataManager.open(path, MEM, tm);
+        vm = new VersionManagerImpl(tm, dm);
+        tbm = TableManager.open(path, vm, dm);
+        exe = new Executor(tbm);
+    }
+
+    // 新的会话，与exe共用同一个数据库
+    public Executor session() {
+        return new Executor(tbm);
+    }
+
+    // 在后台线程中启动服务端，返回监听的端口，服务端直到测试进程退出才停止
+    public int serve() throws Exception {
+        int port;
+        try(ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        Server server = new Server(port, tbm);
+        Thread t = new Thread(server::start, "test-server");
+        t.setDaemon(true);
+        t.start();
+        for(int i = 0; ; i ++) {
+            try {
+                new Socket("localhost", port).close();
+                return port;
+            } catch(IOException e) {
+                if(i == 100) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    // 以二进制格式连接服务端
+    public static Client connect(int port, boolean compress) throws Exception {
+        Transporter t = new Transporter(new Socket("localhost", port));
+        t.negotiate(compress);
+        return new Client(new Packager(t, new Encoder()));
+    }
+
+    public static String exec(Executor exe, String sql) throws Exception {
+        return new String(exe.execute(sql.getBytes()));
+    }
+
+    public String exec(String sql) throws Exception {
+        return new String(exe.execute(sql.getBytes()));
+    }
+
+    // 结果中的每一行
+    public static List<String> rows(String res) {
+        List<String> rows = new ArrayList<>();
+        for(String line : res.split("\n")) {
+            if(line.startsWith("[")) {
+                rows.add(line);
+            }
+        }
+        return rows;
+    }
+
+    // 按记录输出的格式格式化一行
+    public static String row(Object... values) {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i = 0; i < values.length; i ++) {
+            sb.append(i == 0 ? "" : ", ").append(values[i]);
+        }
+        return sb.append("]").toString();
+    }
+
+    // 执行失败时返回错误信息
+    public String tryExec(String sql) {
+        try {
+            return exec(sql);
+        } catch(Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    public void close() {
+        try {
+            dm.close();
+            tm.close();
+        } catch(Exception ignored) {}
+        delete(dir);
+    }
+
+    public static void delete(File f) {
+        File[] children = f.listFiles();
+        if(children != null) {
+            for(File c : children) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,73 @@
+package simpleDB.backend.dm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.common.SubArray;
+import simpleDB.backend.dm.dataItem.DataItem;
+import simpleDB.backend.tm.TransactionManagerImpl;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ItemScannerTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private static int value(DataItem di) {
+        SubArray sa = di.data();
+        return ByteBuffer.wrap(sa.raw, sa.start, 4).getInt();
+    }
+
+    private static byte[] item(int v) {
+        // 足够大，使数据分布在多个页面中
+        return ByteBuffer.allocate(500).putInt(v).array();
+    }
+
+    @Test
+    public void testScanOnlyOwnSegment() throws Exception {
+        long a = db.dm.newSegment(), b = db.dm.newSegment();
+        for(int i = 0; i < 200; i ++) {
+            db.dm.insert(TransactionManagerImpl.SUPER_XID, a, item(i));
+            db.dm.insert(TransactionManagerImpl.SUPER_XID, b, item(-i - 1));
+        }
+        ItemScanner scanner = db.dm.scan(a);
+        assertTrue(scanner.pageNumber() > 1);
+        Set<Integer> seen = new HashSet<>();
+        for(DataItem di = scanner.next(); di != null; di = scanner.next()) {
+            assertTrue(seen.add(value(di)));
+        }
+        assertEquals(200, seen.size());
+        for(int v : seen) {
+            assertTrue(v >= 0);
+        }
+    }
+
+    @Test
+    public void testScanAfterReopen() throws Exception {
+        long a = db.dm.newSegment();
+        for(int i = 0; i < 50; i ++) {
+            db.dm.insert(TransactionManagerImpl.SUPER_XID, a, item(i));
+        }
+        db.reopen();
+        int n = 0;
+        ItemScanner scanner = db.dm.scan(a);
+        while(scanner.next() != null) {
+            n ++;
+        }
+        assertEquals(50, n);
+    }
+}
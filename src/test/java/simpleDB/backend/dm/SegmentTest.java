@@ -0,0 +1,113 @@
+package simpleDB.backend.dm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.tm.TransactionManagerImpl;
+
+import static org.junit.Assert.*;
+
+public class SegmentTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private long fill(int n) throws Exception {
+        long seg = db.dm.newSegment();
+        for(int i = 0; i < n; i ++) {
+            db.dm.insert(TransactionManagerImpl.SUPER_XID, seg, new byte[400]);
+        }
+        return seg;
+    }
+
+    private int count(long seg) throws Exception {
+        int n = 0;
+        ItemScanner scanner = db.dm.scan(seg);
+        while(scanner.next() != null) {
+            n ++;
+        }
+        return n;
+    }
+
+    @Test
+    public void testSegmentsOwnTheirPages() throws Exception {
+        long a = fill(100), b = fill(10);
+        long uid = db.dm.insert(TransactionManagerImpl.SUPER_XID, b, new byte[1]);
+        assertEquals(b, db.dm.ownerOf(uid));
+        assertEquals(100, count(a));
+        assertEquals(11, count(b));
+        assertTrue(db.dm.pageNumber(a) >= DataManagerImpl.EXTENT_PAGES);
+    }
+
+    @Test
+    public void testDropSurvivesReopen() throws Exception {
+        long a = fill(100), b = fill(100);
+        db.dm.dropSegment(a);
+        assertEquals(0, db.dm.pageNumber(a));
+        assertEquals(0, count(a));
+        db.reopen();
+        assertEquals(0, db.dm.pageNumber(a));
+        assertEquals(0, count(a));
+        assertEquals(100, count(b));
+    }
+
+    @Test
+    public void testDropSurvivesCrash() throws Exception {
+        long a = fill(100), b = fill(100);
+        db.dm.dropSegment(a);
+        // 不关闭直接重新打开，删除标记只能从日志中恢复
+        db.crash();
+        assertEquals(0, db.dm.pageNumber(a));
+        assertEquals(0, count(a));
+        assertEquals(100, count(b));
+    }
+
+    private int filePages() {
+        return ((DataManagerImpl)db.dm).pc.getPageNumber();
+    }
+
+    // 重新打开后已删除的段的页面被新的段复用，文件不再增长
+    @Test
+    public void testDroppedPagesReused() throws Exception {
+        long a = fill(100), b = fill(100);
+        int pages = db.dm.pageNumber(a), total = filePages();
+        db.dm.dropSegment(a);
+        db.reopen();
+        assertEquals(pages, ((DataManagerImpl)db.dm).freePageNumber());
+        long c = fill(100);
+        assertEquals(total, filePages());
+        assertEquals(0, ((DataManagerImpl)db.dm).freePageNumber());
+        assertEquals(100, count(c));
+        assertEquals(100, count(b));
+        assertEquals(0, count(a));
+
+        // 复用页面的重置日志在崩溃后被重做
+        db.crash();
+        assertEquals(100, count(c));
+        assertEquals(100, count(b));
+        assertEquals(0, count(a));
+        assertEquals(pages, db.dm.pageNumber(c));
+    }
+
+    // 崩溃时仍活跃的事务在页面被复用前写入的数据不再撤销
+    @Test
+    public void testUndoStopsAtReset() throws Exception {
+        long a = db.dm.newSegment();
+        long xid = db.tm.begin();
+        db.dm.insert(xid, a, new byte[400]);
+        db.dm.dropSegment(a);
+        db.reopen();
+        long c = fill(10);
+        db.crash();
+        assertEquals(10, count(c));
+    }
+}
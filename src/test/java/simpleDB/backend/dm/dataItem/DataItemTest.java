@@ -0,0 +1,69 @@
+package simpleDB.backend.dm.dataItem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.tm.TransactionManagerImpl;
+import simpleDB.backend.utils.Parser;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class DataItemTest {
+    private TestDB db;
+    private DataItem a, b;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        long seg = db.dm.newSegment();
+        // 空闲页面不止一个，插入直到有两条数据落在同一页面
+        long ua = db.dm.insert(TransactionManagerImpl.SUPER_XID, seg, new byte[8]);
+        long ub;
+        do {
+            ub = db.dm.insert(TransactionManagerImpl.SUPER_XID, seg, new byte[8]);
+        } while(Parser.uidToPageNo(ub) != Parser.uidToPageNo(ua));
+        a = db.dm.read(ua);
+        b = db.dm.read(ub);
+        assertSame(a.page(), b.page());
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    // 同一页面上的读取可以并发，修改等待所有读取结束
+    @Test(timeout = 10000)
+    public void testReadersShareThePage() throws Exception {
+        a.rLock();
+        CompletableFuture.runAsync(() -> {
+            b.rLock();
+            b.rUnLock();
+        }).get(1, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            b.before();
+            b.unBefore();
+        });
+        try {
+            writer.get(100, TimeUnit.MILLISECONDS);
+            fail();
+        } catch(TimeoutException ignored) {}
+        a.rUnLock();
+        writer.get(1, TimeUnit.SECONDS);
+    }
+
+    // 修改中的线程可以读取同一页面上的其他数据
+    @Test(timeout = 10000)
+    public void testWriterCanRead() {
+        a.before();
+        b.rLock();
+        b.rUnLock();
+        a.unBefore();
+    }
+}
@@ -0,0 +1,175 @@
+package simpleDB.backend.im;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.dm.DataManager;
+import simpleDB.backend.tm.TransactionManager;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BPlusTreeTest {
+    private File dir;
+    private String path;
+    private TransactionManager tm;
+    private DataManager dm;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("simpledb").toFile();
+        path = new File(dir, "db").getPath();
+        tm = TransactionManager.create(path);
+        dm = DataManager.create(path, TestDB.MEM, tm);
+    }
+
+    @After
+    public void tearDown() {
+        dm.close();
+        tm.close();
+        TestDB.delete(dir);
+    }
+
+    private BPlusTree newTree() throws Exception {
+        return BPlusTree.load(BPlusTree.create(dm, dm.newSegment()), dm);
+    }
+
+    private static byte[] intKey(int v) {
+        return ByteBuffer.allocate(4).putInt(v ^ Integer.MIN_VALUE).array();
+    }
+
+    private static byte[] strKey(String s) {
+        byte[] raw = s.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(raw.length + 2).put(raw).put((byte)0).put((byte)1).array();
+    }
+
+    @Test
+    public void testSplitsKeepAllKeys() throws Exception {
+        BPlusTree tree = newTree();
+        List<Integer> values = new ArrayList<>();
+        for(int i = -2000; i < 2000; i ++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new java.util.Random(3));
+        for(int v : values) {
+            tree.insert(intKey(v), v + 100000L);
+        }
+        for(int v = -2000; v < 2000; v += 37) {
+            assertEquals(List.of(v + 100000L), tree.search(intKey(v)));
+        }
+        List<Long> range = tree.searchRange(intKey(-10), intKey(10));
+        List<Long> expected = new ArrayList<>();
+        for(int v = -10; v <= 10; v ++) {
+            expected.add(v + 100000L);
+        }
+        assertEquals(expected, range);
+        assertEquals(4000, tree.searchRange(intKey(Integer.MIN_VALUE), intKey(Integer.MAX_VALUE)).size());
+    }
+
+    @Test
+    public void testStringKeysAfterReopen() throws Exception {
+        long boot = BPlusTree.create(dm, dm.newSegment());
+        BPlusTree tree = BPlusTree.load(boot, dm);
+        TreeMap<String, Long> expected = new TreeMap<>();
+        for(int i = 0; i < 1500; i ++) {
+            String s = "key-" + Integer.toString(i * 7919 % 1500, 36) + "-" + "x".repeat(i % 20);
+            expected.put(s, (long)i + 1);
+            tree.insert(strKey(s), i + 1);
+        }
+        dm.close();
+        tm.close();
+        tm = TransactionManager.open(path);
+        dm = DataManager.open(path, TestDB.MEM, tm);
+        tree = BPlusTree.load(boot, dm);
+        for(String s : expected.keySet()) {
+            assertEquals(s, List.of(expected.get(s)), tree.search(strKey(s)));
+        }
+        List<Long> all = tree.searchRange(strKey(""), BPlusTree.prefixUpperBound("key-".getBytes()));
+        assertEquals(new ArrayList<>(expected.values()), all);
+    }
+
+    @Test
+    public void testBatchInsert() throws Exception {
+        BPlusTree tree = newTree();
+        List<byte[]> keys = new ArrayList<>();
+        List<Long> uids = new ArrayList<>();
+        for(int i = 0; i < 3000; i ++) {
+            keys.add(intKey(i));
+            uids.add((long)i + 1);
+        }
+        tree.insert(keys, uids);
+        assertEquals(uids, tree.searchRange(intKey(0), intKey(2999)));
+        assertTrue(tree.search(intKey(3000)).isEmpty());
+    }
+
+    // 随机内容的长key，前缀压缩无效，每个叶子只能放下少量key
+    private static byte[] longKey(int i) {
+        byte[] key = new byte[400];
+        new java.util.Random(i).nextBytes(key);
+        System.arraycopy(intKey(i), 0, key, 0, 4);
+        return key;
+    }
+
+    @Test
+    public void testModificationInvalidatesOnlyChangedNodes() throws Exception {
+        BPlusTree tree = newTree();
+        List<byte[]> keys = new ArrayList<>();
+        List<Long> uids = new ArrayList<>();
+        for(int i = 0; i < 20000; i ++) {
+            keys.add(longKey(i));
+            uids.add((long)i + 1);
+        }
+        tree.insert(keys, uids);
+        Node.Internal root = tree.internal(tree.rootUid());
+        assertFalse(root.leafSons);
+        long leftUid = root.sons[0];
+        Node.Internal left = tree.internal(leftUid);
+        // 只在最右侧插入，叶子的分裂只修改最右侧路径上的内部节点，最左侧的内部节点仍然有效
+        for(int i = 20000; i < 20500; i ++) {
+            tree.insert(longKey(i), i + 1);
+        }
+        assertSame(left, tree.internal(leftUid));
+        assertEquals(List.of(1L), tree.search(longKey(0)));
+        assertEquals(List.of(20500L), tree.search(longKey(20499)));
+    }
+
+    @Test
+    public void testConcurrentInsertAndSearch() throws Exception {
+        BPlusTree tree = newTree();
+        int writers = 4, perWriter = 3000;
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for(int w = 0; w < writers; w ++) {
+            int ww = w;
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i = 0; i < perWriter; i ++) {
+                        int v = i * writers + ww;
+                        tree.insert(intKey(v), v + 1);
+                        // 自己插入的key必须立即可见
+                        assertEquals(List.of(v + 1L), tree.search(intKey(v)));
+                    }
+                } catch(Throwable t) {
+                    errors.add(t);
+                }
+            }));
+        }
+        for(Thread t : threads) {
+            t.start();
+        }
+        for(Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(writers * perWriter, tree.searchRange(intKey(0), intKey(writers * perWriter)).size());
+    }
+}
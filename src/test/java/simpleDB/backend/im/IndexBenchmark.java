@@ -0,0 +1,82 @@
+package simpleDB.backend.im;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import simpleDB.backend.TestDB;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较LinearHash和BPlusTree的等值查找
+ * 不在默认的测试中运行，通过 mvn test -Dtest=IndexBenchmark 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class IndexBenchmark {
+    static final int N = 50000;
+
+    private TestDB db;
+    private BPlusTree tree;
+    private LinearHash hash;
+
+    @Setup
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        List<byte[]> keys = new ArrayList<>();
+        List<Long> uids = new ArrayList<>();
+        for(int i = 0; i < N; i ++) {
+            keys.add(key(i));
+            uids.add((long)i + 1);
+        }
+        tree = BPlusTree.load(BPlusTree.create(db.dm, db.dm.newSegment()), db.dm);
+        tree.insert(keys, uids);
+        hash = LinearHash.load(LinearHash.create(db.dm, db.dm.newSegment()), db.dm);
+        for(int i = 0; i < N; i ++) {
+            hash.insert(keys.get(i), uids.get(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        db.close();
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(4).putInt(i ^ Integer.MIN_VALUE).array();
+    }
+
+    @Benchmark
+    public List<Long> bplusTreeLookup() throws Exception {
+        return tree.search(key(ThreadLocalRandom.current().nextInt(N)));
+    }
+
+    @Benchmark
+    public List<Long> linearHashLookup() throws Exception {
+        return hash.search(key(ThreadLocalRandom.current().nextInt(N)));
+    }
+
+    @Test
+    public void run() throws Exception {
+        new Runner(new OptionsBuilder().include(IndexBenchmark.class.getName()).build()).run();
+    }
+}
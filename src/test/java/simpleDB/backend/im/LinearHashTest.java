@@ -0,0 +1,143 @@
+package simpleDB.backend.im;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.im.Bucket.Entry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class LinearHashTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private static byte[] key(int i) {
+        // 长度不等的key，使桶中的entry大小不一
+        return ("k" + i + "-" + "p".repeat(i % 50)).getBytes();
+    }
+
+    @Test
+    public void testSplitsKeepAllEntries() throws Exception {
+        long boot = LinearHash.create(db.dm, db.dm.newSegment());
+        LinearHash h = LinearHash.load(boot, db.dm);
+        int n = 20000;
+        for(int i = 0; i < n; i ++) {
+            h.insert(key(i), i + 1);
+        }
+        assertTrue(h.bucketNumber() > 1);
+        for(int i = 0; i < n; i ++) {
+            assertEquals(List.of((long)i + 1), h.search(key(i)));
+        }
+        assertTrue(h.search("missing".getBytes()).isEmpty());
+
+        db.reopen();
+        h = LinearHash.load(boot, db.dm);
+        Set<Long> all = new HashSet<>(h.scan());
+        assertEquals(n, all.size());
+        for(int i = 0; i < n; i += 97) {
+            assertEquals(List.of((long)i + 1), h.search(key(i)));
+        }
+    }
+
+    @Test
+    public void testDuplicateKeys() throws Exception {
+        LinearHash h = LinearHash.load(LinearHash.create(db.dm, db.dm.newSegment()), db.dm);
+        for(int i = 0; i < 300; i ++) {
+            h.insert("dup".getBytes(), i);
+            h.insert(key(i), 1000 + i);
+        }
+        assertEquals(300, h.search("dup".getBytes()).size());
+    }
+
+    @Test
+    public void testRewriteChainAppendsOverflow() throws Exception {
+        LinearHash h = LinearHash.load(LinearHash.create(db.dm, db.dm.newSegment()), db.dm);
+        long bucketUid = h.bucketUid(0);
+        // 一个桶放不下的entries，重写时必须追加溢出桶而不能丢弃
+        List<Entry> entries = new ArrayList<>();
+        for(int i = 0; i < 200; i ++) {
+            Entry e = new Entry();
+            e.key = key(i);
+            e.hash = LinearHash.hash(e.key);
+            e.uid = i + 1;
+            entries.add(e);
+        }
+        h.rewriteChain(bucketUid, entries);
+        int buckets = 0;
+        int count = 0;
+        for(long uid = bucketUid; uid != 0; uid = Bucket.loadBucket(h, uid).overflow()) {
+            buckets ++;
+            count += Bucket.loadBucket(h, uid).entries().size();
+        }
+        assertTrue(buckets > 1);
+        assertEquals(entries.size(), count);
+    }
+
+    private static int chainLength(LinearHash h, long uid) throws Exception {
+        int n = 0;
+        for(; uid != 0; uid = Bucket.loadBucket(h, uid).overflow()) {
+            n ++;
+        }
+        return n;
+    }
+
+    // 分裂有溢出桶的桶后，桶链被截断，空出的溢出桶在之后新建桶链时被复用
+    @Test
+    public void testSplitShortensChain() throws Exception {
+        long boot = LinearHash.create(db.dm, db.dm.newSegment());
+        LinearHash h = LinearHash.load(boot, db.dm);
+        int i = 0;
+        long first = h.bucketUid(0);
+        while(h.bucketNumber() == 1) {
+            h.insert(key(i), i + 1);
+            i ++;
+        }
+        // 第一次分裂前唯一的桶有一个溢出桶，分裂后两半各放得下一个桶
+        assertEquals(first, h.bucketUid(0));
+        assertEquals(1, chainLength(h, h.bucketUid(0)));
+        assertEquals(1, chainLength(h, h.bucketUid(1)));
+        long freed = h.free;
+        assertNotEquals(0, freed);
+
+        db.reopen();
+        h = LinearHash.load(boot, db.dm);
+        assertEquals(freed, h.free);
+        // 下一次溢出复用空闲的桶
+        while(h.bucketNumber() == 2) {
+            h.insert(key(i), i + 1);
+            i ++;
+        }
+        assertNotEquals(freed, h.free);
+        Set<Long> uids = new HashSet<>();
+        for(int j = 0; j < h.bucketNumber(); j ++) {
+            for(long uid = h.bucketUid(j); uid != 0; uid = Bucket.loadBucket(h, uid).overflow()) {
+                assertTrue(uids.add(uid));
+            }
+        }
+        assertTrue(uids.contains(freed));
+        for(int j = 0; j < i; j ++) {
+            assertEquals(List.of((long)j + 1), h.search(key(j)));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testKeyTooLarge() throws Exception {
+        LinearHash h = LinearHash.load(LinearHash.create(db.dm, db.dm.newSegment()), db.dm);
+        h.insert(new byte[Bucket.MAX_KEY_SIZE + 1], 1);
+    }
+}
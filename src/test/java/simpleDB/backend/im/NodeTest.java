@@ -0,0 +1,96 @@
+package simpleDB.backend.im;
+
+import org.junit.Test;
+import simpleDB.backend.common.SubArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NodeTest {
+    private static SubArray encode(Node.Entries entries) {
+        // 放在缓冲区中间，检查编码不依赖raw.start为0
+        byte[] buf = new byte[Node.NODE_SIZE + 100];
+        SubArray raw = new SubArray(buf, 50, 50 + Node.NODE_SIZE);
+        Node.setRawEntries(raw, entries, 0, entries.size());
+        return raw;
+    }
+
+    private static Node.Entries sortedEntries(List<byte[]> keys, long sonBase) {
+        keys.sort(Node::compare);
+        Node.Entries entries = new Node.Entries();
+        for(int i = 0; i < keys.size(); i ++) {
+            entries.sons.add(sonBase + i * 0x100000001L);
+            entries.keys.add(keys.get(i));
+        }
+        return entries;
+    }
+
+    @Test
+    public void testFrontCodingRoundTrip() {
+        List<byte[]> keys = new ArrayList<>();
+        for(String s : new String[]{"", "a", "aa", "aaa", "aab", "ab", "abc\u0000", "abcÿ", "b", "bb"}) {
+            keys.add(s.getBytes());
+        }
+        Node.Entries entries = sortedEntries(keys, Long.MAX_VALUE / 2);
+        entries.sons.add(7L);
+        entries.keys.add(null);
+        SubArray raw = encode(entries);
+        assertEquals(entries.size(), Node.getRawNoKeys(raw));
+
+        Node.Entries decoded = Node.getRawEntries(raw);
+        assertEquals(entries.sons, decoded.sons);
+        for(int i = 0; i < entries.size(); i ++) {
+            assertArrayEquals(entries.keys.get(i), decoded.keys.get(i));
+        }
+        assertTrue(Node.rawSize(entries, 0, entries.size()) <= Node.NODE_SIZE);
+    }
+
+    @Test
+    public void testSharedPrefixesSaveSpace() {
+        List<byte[]> keys = new ArrayList<>();
+        for(int i = 0; i < 100; i ++) {
+            keys.add(String.format("customer-%05d", i).getBytes());
+        }
+        Node.Entries entries = sortedEntries(keys, 1);
+        int plain = Node.NODE_HEADER_SIZE + 100 * ("customer-00000".length() + 8);
+        assertTrue(Node.rawSize(entries, 0, entries.size()) < plain / 2);
+    }
+
+    @Test
+    public void testCursorCompareMatchesCompare() {
+        Random r = new Random(11);
+        List<byte[]> keys = new ArrayList<>();
+        for(int i = 0; i < 300; i ++) {
+            byte[] k = new byte[1 + r.nextInt(6)];
+            for(int j = 0; j < k.length; j ++) {
+                // 取值范围小，制造大量公共前缀
+                k[j] = (byte)(r.nextBoolean() ? 'a' : 0xf0 + r.nextInt(2));
+            }
+            keys.add(k);
+        }
+        SubArray raw = encode(sortedEntries(keys, 1));
+        for(int t = 0; t < 200; t ++) {
+            byte[] target = t < keys.size() ? keys.get(t) : Arrays.copyOf(keys.get(t % keys.size()), 3);
+            Node.Probe p = new Node.Probe(target);
+            Node.Cursor c = new Node.Cursor(raw);
+            int i = 0;
+            while(c.next()) {
+                assertEquals(Integer.signum(Node.compare(keys.get(i), target)), Integer.signum(c.compareTo(p)));
+                i ++;
+            }
+            assertEquals(keys.size(), i);
+        }
+    }
+
+    @Test
+    public void testShortestSeparator() {
+        byte[] left = "apple".getBytes(), right = "apricot".getBytes();
+        byte[] sep = Node.shortestSeparator(left, right);
+        assertArrayEquals("apr".getBytes(), sep);
+        assertTrue(Node.compare(left, sep) < 0 && Node.compare(sep, right) <= 0);
+    }
+}
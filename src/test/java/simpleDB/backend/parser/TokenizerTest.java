@@ -0,0 +1,48 @@
+package simpleDB.backend.parser;
+
+import org.junit.Test;
+import simpleDB.backend.parser.statement.Insert;
+import simpleDB.backend.parser.statement.Select;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TokenizerTest {
+    private static List<String> tokens(String stat) throws Exception {
+        Tokenizer t = new Tokenizer(stat.getBytes());
+        List<String> res = new ArrayList<>();
+        for(String tok = t.peek(); !"".equals(tok); tok = t.peek()) {
+            res.add(tok);
+            t.pop();
+        }
+        return res;
+    }
+
+    @Test
+    public void testNegativeLiteral() throws Exception {
+        assertEquals(List.of("insert", "into", "t", "values", "-3", "x", "-42"), tokens("insert into t values -3 x -42"));
+        assertEquals(List.of("a", ">", "-5"), tokens("a > -5"));
+        assertEquals(List.of("a", "<=", "-5"), tokens("a<=-5"));
+        assertEquals(List.of("(", "-1", ",", "-2", ")"), tokens("(-1, -2)"));
+    }
+
+    @Test
+    public void testQuotedNegativeStillWorks() throws Exception {
+        assertEquals(List.of("-3"), tokens("'-3'"));
+    }
+
+    @Test(expected = Exception.class)
+    public void testBareMinusRejected() throws Exception {
+        tokens("a > - 5");
+    }
+
+    @Test
+    public void testParseNegativeValues() throws Exception {
+        Insert insert = (Insert)Parser.Parse("insert into t values -3 -9000000000 name".getBytes());
+        assertArrayEquals(new String[]{"-3", "-9000000000", "name"}, insert.values[0]);
+        Select select = (Select)Parser.Parse("select * from t where a > -5".getBytes());
+        assertNotNull(select.where);
+    }
+}
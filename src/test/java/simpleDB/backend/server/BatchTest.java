@@ -0,0 +1,108 @@
+package simpleDB.backend.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+import simpleDB.transport.Package;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, s string (index a)");
+        db.exec("insert into t values 1 one");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private List<Package> batch(String... sqls) throws Exception {
+        List<byte[]> raw = new ArrayList<>();
+        for(String sql : sqls) {
+            raw.add(sql.getBytes());
+        }
+        return db.exe.batch(raw);
+    }
+
+    private static String data(Package pkg) {
+        assertNull(pkg.getErr());
+        return new String(pkg.getData());
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        List<Package> res = batch("insert into t values 2 two", "update t set s = uno where a = 1", "select * from t where a < 3");
+        assertEquals(3, res.size());
+        assertEquals("insert", data(res.get(0)));
+        assertEquals("update 1", data(res.get(1)));
+        assertEquals(TestDB.rows("[1, uno]\n[2, two]\n"), TestDB.rows(data(res.get(2))));
+        assertEquals("[2, two]\n", db.exec("select * from t where a = 2"));
+        assertEquals("begin", db.exec("begin"));
+        db.exec("commit");
+    }
+
+    // 失败的语句返回原来的错误，之后的语句不执行，临时事务回滚
+    @Test
+    public void testRollback() throws Exception {
+        List<Package> res = batch("insert into t values 2 two", "select * from nothing", "insert into t values 3 three");
+        assertEquals(2, res.size());
+        assertEquals("insert", data(res.get(0)));
+        assertNull(res.get(1).getData());
+        assertSame(Error.TableNotFoundException, res.get(1).getErr());
+        assertEquals("", db.exec("select * from t where a > 1"));
+
+        res = batch("delete from t where a = 1", "insert into t values 5");
+        assertEquals("delete 1", data(res.get(0)));
+        assertSame(Error.InvalidValuesException, res.get(1).getErr());
+        assertEquals("[1, one]\n", db.exec("select * from t"));
+        assertEquals("begin", db.exec("begin"));
+        db.exec("commit");
+    }
+
+    // 显式事务中失败时停止执行，之前的语句仍在事务中
+    @Test
+    public void testExplicitTransaction() throws Exception {
+        db.exec("begin");
+        List<Package> res = batch("insert into t values 2 two", "select * from nothing", "insert into t values 3 three");
+        assertEquals(2, res.size());
+        assertSame(Error.TableNotFoundException, res.get(1).getErr());
+        assertEquals(TestDB.rows("[1, one]\n[2, two]\n"), TestDB.rows(db.exec("select * from t")));
+        db.exec("commit");
+        assertEquals(TestDB.rows("[1, one]\n[2, two]\n"), TestDB.rows(db.exec("select * from t")));
+    }
+
+    // 无法解析或不能批量执行的语句使整个批次失败，不执行任何语句
+    @Test
+    public void testInvalid() throws Exception {
+        try {
+            batch("insert into t values 2 two", "selec * from t");
+            fail();
+        } catch(Exception e) {
+            assertEquals(db.tryExec("selec * from t"), e.getMessage());
+        }
+        for(String bad : new String[]{"begin", "create table u a int32 (index a)"}) {
+            try {
+                batch("insert into t values 2 two", bad);
+                fail(bad);
+            } catch(Exception e) {
+                assertSame(Error.InvalidCommandException, e);
+            }
+        }
+        db.exec("prepare b as select a from t");
+        db.exec("prepare q as select s from t where a = ?");
+        assertEquals("[one]\n", data(batch("execute q (1)").get(0)));
+        assertSame(Error.InvalidValuesException, batch("execute q").get(0).getErr());
+        assertEquals("[1]\n", db.exec("select a from t"));
+    }
+}
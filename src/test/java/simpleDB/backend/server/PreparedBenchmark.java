@@ -0,0 +1,91 @@
+package simpleDB.backend.server;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import simpleDB.backend.TestDB;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较直接执行语句与PREPARE后EXECUTE的延迟，两者每次都由字符串生成语句，结果相同
+ * autocommit为false时所有语句在同一个事务中执行，不计入每条语句开始和提交事务的开销
+ * 不在默认的测试中运行，通过 mvn test -Dtest=PreparedBenchmark 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class PreparedBenchmark {
+    static final int N = 20000;
+
+    @Param({"true", "false"})
+    public boolean autocommit;
+
+    private TestDB db;
+
+    @Setup
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, h int32, s string (index a hash(h))");
+        db.exec("begin");
+        for(int i = 0; i < N; i ++) {
+            db.exec(String.format("insert into t values %d %d s%d", i, i % 50, i));
+        }
+        db.exec("commit");
+        db.exec("prepare point as select a, s from t where a = ?");
+        db.exec("prepare range as select a from t where a between ? and ? and h = ?");
+        if(!autocommit) {
+            db.exec("begin");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public byte[] point() throws Exception {
+        int a = ThreadLocalRandom.current().nextInt(N);
+        return db.exe.execute(("select a, s from t where a = " + a).getBytes());
+    }
+
+    @Benchmark
+    public byte[] preparedPoint() throws Exception {
+        int a = ThreadLocalRandom.current().nextInt(N);
+        return db.exe.execute(("execute point (" + a + ")").getBytes());
+    }
+
+    @Benchmark
+    public byte[] range() throws Exception {
+        int a = ThreadLocalRandom.current().nextInt(N - 100);
+        return db.exe.execute(String.format("select a from t where a between %d and %d and h = %d", a, a + 100, a % 50).getBytes());
+    }
+
+    @Benchmark
+    public byte[] preparedRange() throws Exception {
+        int a = ThreadLocalRandom.current().nextInt(N - 100);
+        return db.exe.execute(String.format("execute range (%d, %d, %d)", a, a + 100, a % 50).getBytes());
+    }
+
+    @Test
+    public void run() throws Exception {
+        new Runner(new OptionsBuilder().include(PreparedBenchmark.class.getName()).build()).run();
+    }
+}
@@ -0,0 +1,128 @@
+package simpleDB.backend.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PreparedTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, h int32, s string (index a hash(h))");
+        db.exec("begin");
+        for(int i = 0; i < 2000; i ++) {
+            db.exec(String.format("insert into t values %d %d s%d", i, i % 50, i));
+        }
+        db.exec("commit");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private List<String> sorted(String sql) throws Exception {
+        List<String> rows = TestDB.rows(db.exec(sql));
+        Collections.sort(rows);
+        return rows;
+    }
+
+    // 每次执行的结果都与直接执行绑定了参数的语句相同
+    private void check(Random r) throws Exception {
+        for(int i = 0; i < 50; i ++) {
+            int a = r.nextInt(2200) - 100, b = a + r.nextInt(300), h = r.nextInt(60);
+            assertEquals(sorted("select a, s from t where a = " + a), sorted(String.format("execute q1 (%d)", a)));
+            assertEquals(sorted(String.format("select a from t where a between %d and %d or h in (%d, 3)", a, b, h)),
+                sorted(String.format("execute q2 (%d, %d, %d)", a, b, h)));
+            assertEquals(sorted(String.format("select a from t where h = %d and a < %d", h, b)),
+                sorted(String.format("execute q3 (%d, %d)", h, b)));
+            assertEquals(db.exec(String.format("select a from t where a >= %d and a < %d order by a desc limit 2", a, b)),
+                db.exec(String.format("execute q4 (%d, %d)", a, b)));
+        }
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        assertEquals("prepare q1", db.exec("prepare q1 as select a, s from t where a = ?"));
+        db.exec("prepare q2 as select a from t where a between ? and ? or h in (?, 3)");
+        db.exec("prepare q3 as select a from t where h = ? and a < ?");
+        db.exec("prepare q4 as select a from t where a >= ? and a < ? order by a desc limit 2");
+        check(new Random(1));
+        // analyze后按统计信息选择访问路径，路径缓存在prepare的语句中
+        db.exec("analyze t");
+        check(new Random(2));
+        db.exec("insert into t values 5000 7 new");
+        db.exec("analyze t");
+        assertEquals(TestDB.rows("[5000, new]\n"), TestDB.rows(db.exec("execute q1 (5000)")));
+        check(new Random(3));
+    }
+
+    @Test
+    public void testModify() throws Exception {
+        db.exec("prepare ins as insert into t values ? ? ?");
+        db.exec("prepare upd as update t set s = ? where a = ?");
+        db.exec("prepare del as delete from t where a = ?");
+        db.exec("prepare sel as select s from t where a = ?");
+        assertEquals("insert", db.exec("execute ins (9000, 1, x)"));
+        assertEquals("update 1", db.exec("execute upd ('-5', 9000)"));
+        assertEquals("[-5]\n", db.exec("execute sel (9000)"));
+        assertEquals("update 0", db.exec("execute upd (y, 9001)"));
+        assertEquals("delete 1", db.exec("execute del (9000)"));
+        assertEquals("", db.exec("execute sel (9000)"));
+        assertEquals("delete 1", db.exec("execute del (7)"));
+        assertEquals("", db.exec("execute sel (7)"));
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        db.exec("prepare q as select a from t where a = ?");
+        assertEquals(Error.DuplicatedPreparedException.getMessage(), db.tryExec("prepare q as select a from t"));
+        assertEquals(Error.PreparedNotFoundException.getMessage(), db.tryExec("execute nope"));
+        assertEquals(Error.InvalidValuesException.getMessage(), db.tryExec("execute q (1, 2)"));
+        assertEquals(Error.InvalidValuesException.getMessage(), db.tryExec("execute q"));
+        assertEquals(Error.InvalidCommandException.getMessage(), db.tryExec("prepare b as begin"));
+        assertEquals("[1]\n", db.exec("execute q (1)"));
+        assertEquals("deallocate q", db.exec("deallocate q"));
+        assertEquals(Error.PreparedNotFoundException.getMessage(), db.tryExec("execute q (1)"));
+        assertEquals(Error.PreparedNotFoundException.getMessage(), db.tryExec("deallocate q"));
+    }
+
+    // 表被删除后重建，prepare的语句使用新的表
+    @Test
+    public void testRecreatedTable() throws Exception {
+        db.exec("prepare q as select s from t where a = ?");
+        db.exec("analyze t");
+        assertEquals("[s5]\n", db.exec("execute q (5)"));
+        db.exec("drop table t");
+        assertEquals(Error.TableNotFoundException.getMessage(), db.tryExec("execute q (5)"));
+        db.exec("create table t a int32, s string (index a)");
+        db.exec("insert into t values 5 again");
+        assertEquals("[again]\n", db.exec("execute q (5)"));
+    }
+
+    // 每个会话的prepare的语句互不可见
+    @Test
+    public void testPerSession() throws Exception {
+        db.exec("prepare q as select s from t where a = ?");
+        Executor other = db.session();
+        try {
+            TestDB.exec(other, "execute q (1)");
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.PreparedNotFoundException, e);
+        }
+        TestDB.exec(other, "prepare q as select a from t where a = ?");
+        assertEquals("[1]\n", TestDB.exec(other, "execute q (1)"));
+        assertEquals("[s1]\n", db.exec("execute q (1)"));
+    }
+}
@@ -0,0 +1,114 @@
+package simpleDB.backend.server;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.client.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ServerTest {
+    static TestDB db;
+    static int port;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        System.setProperty("simpledb.lock.timeout", "1000");
+        try {
+            db = TestDB.create();
+        } finally {
+            System.clearProperty("simpledb.lock.timeout");
+        }
+        db.exec("create table t a int32, b int32 (index a)");
+        db.exec("insert into t values 1 0");
+        port = db.serve();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        Client c = TestDB.connect(port, false);
+        assertEquals("insert", new String(c.execute("insert into t values 2 0".getBytes())));
+        assertEquals("[2, 0]\n", new String(c.execute("select * from t where a = 2".getBytes())));
+        try {
+            c.execute("select * from nothing".getBytes());
+            fail();
+        } catch(RuntimeException e) {
+            assertEquals("Table not found!", e.getMessage());
+        }
+        assertEquals("delete 1", new String(c.execute("delete from t where a = 2".getBytes())));
+        c.close();
+    }
+
+    // 执行线程中抛出的Error同样作为错误返回，连接可以继续使用
+    @Test(timeout = 60000)
+    public void testWorkerError() throws Exception {
+        Client c = TestDB.connect(port, false);
+        StringBuilder sql = new StringBuilder("select * from t where ");
+        for(int i = 0; i < 200000; i ++) {
+            sql.append('(');
+        }
+        sql.append("a = 1");
+        for(int i = 0; i < 200000; i ++) {
+            sql.append(')');
+        }
+        try {
+            c.execute(sql.toString().getBytes());
+            fail();
+        } catch(RuntimeException e) {
+            assertTrue(e.getMessage().contains("StackOverflowError"));
+        }
+        assertTrue(new String(c.execute("select * from t where a = 1".getBytes())).startsWith("[1, "));
+        c.close();
+    }
+
+    /**
+     * 所有执行线程都被等待同一行锁的语句占用时，持有者的commit也需要一个执行线程
+     * 等待超时的语句被回滚并释放线程，commit最终得以执行
+     */
+    @Test(timeout = 60000)
+    public void testLockWaitersDoNotStarveHolder() throws Exception {
+        Client holder = TestDB.connect(port, false);
+        holder.execute("begin".getBytes());
+        assertEquals("update 1", new String(holder.execute("update t set b = 1 where a = 1".getBytes())));
+
+        List<Client> clients = new ArrayList<>();
+        List<CompletableFuture<String>> waiters = new ArrayList<>();
+        for(int i = 0; i < Server.WORKERS; i ++) {
+            Client c = TestDB.connect(port, false);
+            clients.add(c);
+            waiters.add(c.executeAsync("update t set b = 2 where a = 1".getBytes()).handle(
+                (res, e) -> e == null ? new String(res) : e.getCause() == null ? e.getMessage() : e.getCause().getMessage()));
+        }
+        Thread.sleep(200);
+        assertEquals("commit", new String(holder.execute("commit".getBytes())).trim());
+
+        int timeouts = 0;
+        for(CompletableFuture<String> w : waiters) {
+            String res = w.get(30, TimeUnit.SECONDS);
+            if(res.equals("Lock wait timeout!")) {
+                timeouts ++;
+            } else {
+                // 在commit之后获得行锁的语句更新成功，或因该行已被修改而失败
+                assertTrue(res, res.startsWith("update") || res.equals("Concurrent update issue!"));
+            }
+        }
+        assertTrue(timeouts > 0);
+        for(Client c : clients) {
+            c.close();
+        }
+        String row = new String(holder.execute("select * from t where a = 1".getBytes()));
+        assertTrue(row, row.equals("[1, 1]\n") || row.equals("[1, 2]\n"));
+        holder.close();
+    }
+}
@@ -0,0 +1,142 @@
+package simpleDB.backend.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreamTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, s string (index a)");
+        db.exec("begin");
+        for(int i = 0; i < 1000; i ++) {
+            db.exec("insert into t values " + i + " s" + i);
+        }
+        db.exec("commit");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    // 依次取出所有批，返回每批的行
+    private List<List<String>> drain(Executor exe, String sql, int fetchSize) throws Exception {
+        List<List<String>> batches = new ArrayList<>();
+        batches.add(TestDB.rows(new String(exe.stream(sql.getBytes(), fetchSize))));
+        while(exe.hasMore()) {
+            batches.add(TestDB.rows(new String(exe.fetchMore())));
+        }
+        return batches;
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        List<String> all = TestDB.rows(db.exec("select * from t where a < 700"));
+        assertEquals(700, all.size());
+        for(int fetchSize : new int[]{1, 7, 128, 700, 701, 0}) {
+            List<List<String>> batches = drain(db.exe, "select * from t where a < 700", fetchSize);
+            List<String> got = new ArrayList<>();
+            for(int i = 0; i < batches.size(); i ++) {
+                if(fetchSize > 0 && i < batches.size() - 1) {
+                    assertEquals(fetchSize, batches.get(i).size());
+                }
+                got.addAll(batches.get(i));
+            }
+            assertEquals(all, got);
+            assertEquals(fetchSize <= 0 ? 1 : (700 + fetchSize - 1) / fetchSize, batches.size());
+        }
+        assertEquals(1, drain(db.exe, "select * from t where a > 5000", 10).size());
+        assertEquals(5, drain(db.exe, "select a from t order by a desc limit 5", 1).size());
+    }
+
+    // 自动提交的流在临时事务中读取，读完或放弃后提交，期间的修改不可见
+    @Test
+    public void testTemporaryTransaction() throws Exception {
+        Executor writer = db.session();
+        db.exe.stream("select a from t where a < 10".getBytes(), 3);
+        assertTrue(db.exe.hasMore());
+        TestDB.exec(writer, "delete from t where a = 5");
+        List<String> rest = new ArrayList<>();
+        while(db.exe.hasMore()) {
+            rest.addAll(TestDB.rows(new String(db.exe.fetchMore())));
+        }
+        assertEquals(7, rest.size());
+        assertTrue(rest.contains("[5]"));
+        assertFalse(db.exe.hasMore());
+        assertEquals("begin", db.exec("begin"));
+        db.exec("commit");
+
+        db.exe.stream("select a from t".getBytes(), 10);
+        db.exe.closeStream();
+        assertFalse(db.exe.hasMore());
+        try {
+            db.exe.fetchMore();
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.CursorNotFoundException, e);
+        }
+        // 下一条语句放弃未读完的流
+        db.exe.stream("select a from t".getBytes(), 10);
+        assertEquals(0, TestDB.rows(db.exec("select a from t where a = 5")).size());
+        assertFalse(db.exe.hasMore());
+    }
+
+    @Test
+    public void testExplicitTransaction() throws Exception {
+        db.exec("begin");
+        db.exec("insert into t values 5000 new");
+        List<List<String>> batches = drain(db.exe, "select * from t where a >= 998", 2);
+        assertEquals(2, batches.size());
+        assertEquals(TestDB.row(5000, "new"), batches.get(1).get(0));
+        // 流结束后事务仍在进行
+        db.exec("abort");
+        assertEquals(0, TestDB.rows(db.exec("select * from t where a = 5000")).size());
+    }
+
+    @Test
+    public void testNonSelectAndErrors() throws Exception {
+        assertEquals("insert", new String(db.exe.stream("insert into t values 2000 x".getBytes(), 1)));
+        assertFalse(db.exe.hasMore());
+        try {
+            db.exe.stream("select * from nothing".getBytes(), 1);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.TableNotFoundException, e);
+        }
+        assertFalse(db.exe.hasMore());
+        assertEquals("begin", db.exec("begin"));
+        db.exec("abort");
+    }
+
+    @Test
+    public void testCursors() throws Exception {
+        assertEquals(Error.NoTransactionException.getMessage(), db.tryExec("declare c cursor for select a from t where a < 5"));
+        db.exec("begin");
+        assertEquals("declare c", db.exec("declare c cursor for select a from t where a < 5"));
+        assertEquals(Error.DuplicatedCursorException.getMessage(), db.tryExec("declare c cursor for select a from t"));
+        assertEquals(TestDB.rows("[0]\n"), TestDB.rows(db.exec("fetch c")));
+        assertEquals(TestDB.rows("[1]\n[2]\n"), TestDB.rows(db.exec("fetch 2 from c")));
+        db.exec("declare d cursor for select a from t where a >= 998");
+        assertEquals(TestDB.rows("[998]\n[999]\n"), TestDB.rows(db.exec("fetch all d")));
+        assertEquals(TestDB.rows("[3]\n[4]\n"), TestDB.rows(db.exec("fetch all from c")));
+        assertEquals("", db.exec("fetch c"));
+        assertEquals("close c", db.exec("close c"));
+        assertEquals(Error.CursorNotFoundException.getMessage(), db.tryExec("fetch c"));
+        db.exec("commit");
+        // 提交时关闭所有游标
+        db.exec("begin");
+        assertEquals(Error.CursorNotFoundException.getMessage(), db.tryExec("fetch d"));
+        db.exec("commit");
+    }
+}
@@ -0,0 +1,143 @@
+package simpleDB.backend.tbm;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class AggregateTest {
+    static final int N = 600;
+    // 字段依次为 a int32, h int64, s string, n int32, v int64，只保留未被删除的行
+    static List<Object[]> live = new ArrayList<>();
+    static TestDB db;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table g a int32, h int64, s string, n int32, v int64 (index a hash(h) (s include n) (n v))");
+        db.exec("create table em a int32, s string (index a (s))");
+        Random r = new Random(5);
+        List<Object[]> rows = new ArrayList<>();
+        for(int i = 1; i <= N; i ++) {
+            rows.add(new Object[]{i, (long)r.nextInt(31), String.format("g%02d", r.nextInt(13)), r.nextInt(101) - 50, (long)(r.nextInt(2000001) - 1000000)});
+        }
+        Collections.shuffle(rows, r);
+        for(Object[] row : rows) {
+            db.exec(String.format("insert into g values %d %d %s %d %d", row));
+        }
+        // 删除一部分，检查聚合只统计可见的行
+        db.exec("delete from g where a > 590 or a < 5 or n = 50 or n = -50");
+        for(Object[] row : rows) {
+            int a = (int)row[0], n = (int)row[3];
+            if(!(a > 590 || a < 5 || n == 50 || n == -50)) {
+                live.add(row);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    static String avg(long sum, long count) {
+        return BigDecimal.valueOf(sum).divide(BigDecimal.valueOf(count), 4, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+
+    @Test
+    public void testGlobalAggregates() throws Exception {
+        long sumV = 0, sumN = 0;
+        int minA = Integer.MAX_VALUE, maxA = Integer.MIN_VALUE;
+        String minS = null, maxS = null;
+        for(Object[] r : live) {
+            minA = Math.min(minA, (int)r[0]);
+            maxA = Math.max(maxA, (int)r[0]);
+            String s = (String)r[2];
+            minS = minS == null || s.compareTo(minS) < 0 ? s : minS;
+            maxS = maxS == null || s.compareTo(maxS) > 0 ? s : maxS;
+            sumV += (long)r[4];
+            sumN += (int)r[3];
+        }
+        assertEquals(TestDB.row(live.size()) + "\n", db.exec("select count(*) from g"));
+        assertEquals(TestDB.row(live.size(), minA, maxA) + "\n", db.exec("select count(*), min(a), max(a) from g"));
+        assertEquals(TestDB.row(minS, maxS) + "\n", db.exec("select min(s), max(s) from g"));
+        assertEquals(TestDB.row(sumV, avg(sumV, live.size()), avg(sumN, live.size()), live.size()) + "\n",
+            db.exec("select sum(v), avg(v), avg(n), count(n) from g"));
+    }
+
+    @Test
+    public void testGroupBy() throws Exception {
+        Map<Long, long[]> groups = new TreeMap<>();
+        for(Object[] r : live) {
+            long v = (long)r[4];
+            long[] g = groups.computeIfAbsent((long)r[1], k -> new long[]{0, 0, Long.MAX_VALUE, Long.MIN_VALUE, 0});
+            g[0] ++;
+            g[1] += (int)r[3];
+            g[2] = Math.min(g[2], v);
+            g[3] = Math.max(g[3], v);
+            g[4] += v;
+        }
+        List<String> expected = new ArrayList<>();
+        for(Map.Entry<Long, long[]> e : groups.entrySet()) {
+            long[] g = e.getValue();
+            expected.add(TestDB.row(e.getKey(), g[0], g[1], g[2], g[3], avg(g[4], g[0])));
+        }
+        List<String> got = TestDB.rows(db.exec("select h, count(*), sum(n), min(v), max(v), avg(v) from g group by h"));
+        Collections.sort(got);
+        Collections.sort(expected);
+        assertEquals(expected, got);
+
+        // order by聚合结果并limit
+        List<Map.Entry<Long, long[]>> entries = new ArrayList<>(groups.entrySet());
+        entries.sort((x, y) -> Long.compare(x.getValue()[4], y.getValue()[4]));
+        List<String> top = new ArrayList<>();
+        for(Map.Entry<Long, long[]> e : entries.subList(1, 4)) {
+            top.add(TestDB.row(e.getKey(), e.getValue()[4]));
+        }
+        assertEquals(top, TestDB.rows(db.exec("select h, sum(v) from g group by h order by sum(v) limit 3 offset 1")));
+    }
+
+    @Test
+    public void testGroupByWithWhereAndMultipleKeys() throws Exception {
+        Map<String, Integer> counts = new TreeMap<>();
+        for(Object[] r : live) {
+            if((long)r[1] < 3) {
+                counts.merge(TestDB.row(r[2], r[1]), 1, Integer::sum);
+            }
+        }
+        List<String> expected = new ArrayList<>();
+        for(Map.Entry<String, Integer> e : counts.entrySet()) {
+            expected.add("[" + e.getValue() + ", " + e.getKey().substring(1));
+        }
+        List<String> got = TestDB.rows(db.exec("select count(*), s, h from g where h < 3 group by s, h"));
+        Collections.sort(got);
+        Collections.sort(expected);
+        assertEquals(expected, got);
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        assertEquals("[0, null, null]\n", db.exec("select count(*), sum(v), min(a) from g where a > 100000"));
+        assertEquals("", db.exec("select s, count(*) from g where a > 100000 group by s"));
+        assertEquals("[null]\n", db.exec("select min(a) from em"));
+    }
+
+    @Test
+    public void testInvalidAggregates() {
+        assertEquals("Field not in group by!", db.tryExec("select a from g group by h"));
+        assertEquals("Field not found!", db.tryExec("select count(a) from g group by zz"));
+        assertEquals("Field not in group by!", db.tryExec("select h, count(*) from g group by h order by v"));
+        assertFalse(db.tryExec("select sum(s) from g").startsWith("["));
+    }
+}
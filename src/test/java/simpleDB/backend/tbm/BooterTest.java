@@ -0,0 +1,57 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class BooterTest {
+    private File dir;
+    private String path;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("simpledb").toFile();
+        path = new File(dir, "db").getPath();
+    }
+
+    @After
+    public void tearDown() {
+        TestDB.delete(dir);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Booter booter = Booter.create(path);
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        booter.update(data);
+        assertArrayEquals(data, Booter.open(path).load());
+    }
+
+    @Test
+    public void testOldFormatRejected() throws Exception {
+        // 旧格式只有8字节的uid
+        byte[] old = {0, 0, 0, 0, 0, 0, 1, 2};
+        try {
+            Booter.checkFormat(old);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.IncompatibleFormatException, e);
+        }
+        byte[] future = new byte[Booter.HEADER_SIZE + 8];
+        System.arraycopy(Booter.MAGIC, 0, future, 0, Booter.MAGIC.length);
+        future[Booter.HEADER_SIZE - 1] = (byte)(Booter.FORMAT_VERSION + 1);
+        try {
+            Booter.checkFormat(future);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.IncompatibleFormatException, e);
+        }
+    }
+}
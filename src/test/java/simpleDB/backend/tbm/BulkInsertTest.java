@@ -0,0 +1,112 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkInsertTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, b int64, s string (index a s)");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    // values (from, ...), ..., (to-1, ...)，行足够多时跨越多个页，走整页写入的路径
+    private static String values(int from, int to) {
+        StringBuilder sb = new StringBuilder("insert into t values ");
+        for(int i = from; i < to; i ++) {
+            sb.append(i == from ? "" : ", ").append(String.format("(%d, %d, 'row %05d padding padding padding')", i, -i * 3L, i));
+        }
+        return sb.toString();
+    }
+
+    private static String row(int i) {
+        return TestDB.row(i, -i * 3L, String.format("row %05d padding padding padding", i));
+    }
+
+    private void checkRows(int from, int to) throws Exception {
+        List<String> expected = new ArrayList<>();
+        for(int i = from; i < to; i ++) {
+            expected.add(row(i));
+        }
+        assertEquals(expected, TestDB.rows(db.exec("select * from t where a >= -100000 order by a")));
+        for(int i = from; i < to; i += 97) {
+            assertEquals(row(i) + "\n", db.exec("select * from t where a = " + i));
+            assertEquals(TestDB.row(i) + "\n", db.exec(String.format("select a from t where s = 'row %05d padding padding padding'", i)));
+        }
+        assertEquals(TestDB.row(to - from) + "\n", db.exec("select count(*) from t"));
+    }
+
+    @Test
+    public void testMultiRow() throws Exception {
+        assertEquals("insert", db.exec(values(0, 3)));
+        assertEquals("insert", db.exec(values(3, 2003)));
+        db.exec("insert into t values 2003 -6009 'row 02003 padding padding padding'");
+        checkRows(0, 2004);
+        assertEquals("Invalid values!", db.tryExec("insert into t values (1, 2), (3, 4, x)"));
+        assertEquals(TestDB.row(2004) + "\n", db.exec("select count(*) from t"));
+    }
+
+    // 整页写入的页在重启和崩溃恢复后仍然可见，未提交和回滚的批量插入不可见
+    @Test
+    public void testRecovery() throws Exception {
+        db.exec(values(0, 1500));
+        db.exec("begin");
+        db.exec(values(1500, 3000));
+        db.exec("abort");
+        checkRows(0, 1500);
+        db.reopen();
+        checkRows(0, 1500);
+
+        db.exec("begin");
+        db.exec(values(1500, 3000));
+        db.crash();
+        checkRows(0, 1500);
+        db.exec(values(1500, 2500));
+        db.crash();
+        checkRows(0, 2500);
+    }
+
+    @Test
+    public void testCopyFile() throws Exception {
+        File file = new File(db.dir, "rows.tsv");
+        try(PrintWriter out = new PrintWriter(file)) {
+            for(int i = 0; i < 5000; i ++) {
+                out.printf("%d\t%d\trow %05d padding padding padding%n", i, -i * 3L, i);
+                if(i % 1000 == 0) {
+                    out.println();
+                }
+            }
+        }
+        assertEquals("copy 5000", db.exec("copy t from '" + file.getPath() + "'"));
+        checkRows(0, 5000);
+        db.crash();
+        checkRows(0, 5000);
+
+        try(PrintWriter out = new PrintWriter(file)) {
+            out.println("6000\t1\tok");
+            out.println("6001\tx\tbad");
+        }
+        assertEquals("Line \"6001\tx\tbad\": For input string: \"x\"", db.tryExec("copy t from '" + file.getPath() + "'"));
+        try(PrintWriter out = new PrintWriter(file)) {
+            out.println("6000\t1");
+        }
+        assertEquals("Line \"6000\t1\": Invalid values!", db.tryExec("copy t from '" + file.getPath() + "'"));
+        checkRows(0, 5000);
+    }
+}
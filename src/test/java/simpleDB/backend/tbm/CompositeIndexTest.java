@@ -0,0 +1,93 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.server.Executor;
+
+import static org.junit.Assert.*;
+import static simpleDB.backend.TestDB.exec;
+
+public class CompositeIndexTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table c a int32, b string, c int64, d string (index d (a b include c) (b c))");
+        db.exec("insert into c values 1 x 10 p");
+        db.exec("insert into c values 1 y 11 q");
+        db.exec("insert into c values 2 z 12 r");
+        db.exec("insert into c values 3 w 13 s");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testShow() throws Exception {
+        assertEquals("{c: (a, int32, NoIndex), (b, string, NoIndex), (c, int64, NoIndex), (d, string, Index), Index(a, b) Include(c), Index(b, c)}\n",
+            db.exec("show"));
+    }
+
+    @Test
+    public void testLookups() throws Exception {
+        // 被索引覆盖的列直接从索引中读出
+        assertEquals("[1, x]\n[1, y]\n", db.exec("select a, b from c where a = 1"));
+        assertEquals("[z, 12, 2]\n[w, 13, 3]\n", db.exec("select b, c, a from c where a > 1"));
+        // 不被覆盖时回表
+        assertEquals("[1, x, 10, p]\n[1, y, 11, q]\n", db.exec("select * from c where a = 1"));
+        assertEquals("[r]\n", db.exec("select d from c where b = z"));
+        assertEquals("[11]\n[12]\n", db.exec("select c from c where b > x"));
+    }
+
+    @Test
+    public void testIndexFollowsDeleteAndUpdate() throws Exception {
+        assertEquals("delete 2", db.exec("delete from c where a = 1"));
+        assertEquals("", db.exec("select a, b from c where a = 1"));
+        assertEquals("update 1", db.exec("update c set c = 99 where a = 3"));
+        assertEquals("[3, w, 99]\n", db.exec("select a, b, c from c where a = 3"));
+        db.reopen();
+        assertEquals("[2, z, 12]\n[3, w, 99]\n", db.exec("select a, b, c from c where a > 0"));
+    }
+
+    @Test
+    public void testIndexOnlyScanVisibility() throws Exception {
+        Executor rr = db.session();
+        exec(rr, "begin isolation level repeatable read");
+        assertEquals("[1, x]\n[1, y]\n[2, z]\n[3, w]\n", exec(rr, "select a, b from c where a > 0"));
+
+        Executor w = db.session();
+        exec(w, "begin");
+        exec(w, "delete from c where a = 1");
+        exec(w, "insert into c values 4 v 14 t");
+        // 未提交的修改只对自己可见
+        assertEquals("[2, z]\n[3, w]\n[4, v]\n", exec(w, "select a, b from c where a > 0"));
+        assertEquals("[1, x]\n[1, y]\n[2, z]\n[3, w]\n", db.exec("select a, b from c where a > 0"));
+        exec(w, "commit");
+
+        // 可重复读的事务看不到之后提交的修改，新的事务可以看到
+        assertEquals("[1, x]\n[1, y]\n[2, z]\n[3, w]\n", exec(rr, "select a, b from c where a > 0"));
+        assertEquals("[2, z]\n[3, w]\n[4, v]\n", db.exec("select a, b from c where a > 0"));
+        exec(rr, "commit");
+    }
+
+    @Test
+    public void testAbortedChangesInvisible() throws Exception {
+        Executor w = db.session();
+        exec(w, "begin");
+        exec(w, "delete from c where a = 2");
+        exec(w, "insert into c values 5 u 15 o");
+        exec(w, "abort");
+        assertEquals("[1, x]\n[1, y]\n[2, z]\n[3, w]\n", db.exec("select a, b from c where a > 0"));
+    }
+
+    @Test
+    public void testInvalidDefinitions() {
+        assertNotEquals("create table e\n", db.tryExec("create table e a int32 ()"));
+        assertNotEquals("create table e\n", db.tryExec("create table e a int32 (index zz)"));
+    }
+}
@@ -0,0 +1,57 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+
+import static org.junit.Assert.*;
+
+public class DropTableTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testDropAndRecreate() throws Exception {
+        db.exec("create table t a int32, b string (index a b)");
+        db.exec("create table u x int32 (index x)");
+        for(int i = 0; i < 100; i ++) {
+            db.exec("insert into t values " + i + " v" + i);
+        }
+        db.exec("insert into u values 1");
+        assertEquals("drop table t", db.exec("drop table t"));
+        db.reopen();
+        assertEquals("[1]\n", db.exec("select * from u"));
+        assertFalse(db.tryExec("select * from t").startsWith("["));
+        db.exec("create table t a int32, b string (index a b)");
+        assertEquals("", db.exec("select * from t"));
+        db.exec("insert into t values 5 new");
+        assertEquals("[5, new]\n", db.exec("select * from t where b = new"));
+    }
+
+    // drop无法回滚，事务中的drop被拒绝，回滚后表和记录都还在
+    @Test
+    public void testDropInTransaction() throws Exception {
+        db.exec("create table t a int32 (index a)");
+        db.exec("insert into t values 1");
+        db.exec("begin");
+        db.exec("insert into t values 2");
+        assertEquals(Error.DropInTransactionException.getMessage(), db.tryExec("drop table t"));
+        db.exec("abort");
+        assertEquals("[1]\n", db.exec("select * from t"));
+        db.reopen();
+        assertEquals("[1]\n", db.exec("select * from t"));
+        assertEquals("drop table t", db.exec("drop table t"));
+        assertEquals(Error.TableNotFoundException.getMessage(), db.tryExec("select * from t"));
+    }
+}
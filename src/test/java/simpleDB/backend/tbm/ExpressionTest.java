@@ -0,0 +1,100 @@
+package simpleDB.backend.tbm;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class ExpressionTest {
+    static final int N = 800;
+    // 字段依次为 a int32, h int64, s string, n int32
+    static List<Object[]> rows = new ArrayList<>();
+    static TestDB db;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table e a int32, h int64, s string, n int32 (index a hash(h) (s include n))");
+        Random r = new Random(7);
+        for(int i = 1; i <= N; i ++) {
+            Object[] row = {i, (long)r.nextInt(51), String.format("s%03d", r.nextInt(201)), r.nextInt(11) - 5};
+            rows.add(row);
+            db.exec(String.format("insert into e values %d %d %s %d", row));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    private static int a(Object[] r) { return (int)r[0]; }
+    private static long h(Object[] r) { return (long)r[1]; }
+    private static String s(Object[] r) { return (String)r[2]; }
+    private static int n(Object[] r) { return (int)r[3]; }
+
+    // columns为select的字段在行中的下标
+    private static void check(String sql, Predicate<Object[]> f, int... columns) throws Exception {
+        List<String> expected = new ArrayList<>();
+        for(Object[] r : rows) {
+            if(f.test(r)) {
+                Object[] values = new Object[columns.length];
+                for(int i = 0; i < columns.length; i ++) {
+                    values[i] = r[columns[i]];
+                }
+                expected.add(TestDB.row(values));
+            }
+        }
+        List<String> got = TestDB.rows(db.exec(sql));
+        Collections.sort(expected);
+        Collections.sort(got);
+        assertEquals(sql, expected, got);
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        check("select a from e where a <= 5", r -> a(r) <= 5, 0);
+        check("select a from e where a >= 795", r -> a(r) >= 795, 0);
+        check("select a from e where a != 7 and a < 10", r -> a(r) != 7 && a(r) < 10, 0);
+        check("select a from e where a <> 7 and a < 10", r -> a(r) != 7 && a(r) < 10, 0);
+        check("select n from e where n < -3 and a < 400", r -> n(r) < -3 && a(r) < 400, 3);
+        check("select a, h from e where h = 7 and a < 300", r -> h(r) == 7 && a(r) < 300, 0, 1);
+        check("select a from e where h > 48", r -> h(r) > 48, 0);
+    }
+
+    @Test
+    public void testInAndBetween() throws Exception {
+        check("select a from e where a in (3, 9, 27, 81, 3)", r -> List.of(3, 9, 27, 81).contains(a(r)), 0);
+        check("select a from e where a between 100 and 110", r -> a(r) >= 100 && a(r) <= 110, 0);
+        check("select a from e where a not between 3 and 798", r -> a(r) < 3 || a(r) > 798, 0);
+        check("select a from e where h in (1, 2) and a < 200", r -> (h(r) == 1 || h(r) == 2) && a(r) < 200, 0);
+        check("select s from e where s between s050 and s052", r -> s(r).compareTo("s050") >= 0 && s(r).compareTo("s052") <= 0, 2);
+        check("select a from e where a in (5) or a in (6, 7)", r -> a(r) >= 5 && a(r) <= 7, 0);
+    }
+
+    @Test
+    public void testLike() throws Exception {
+        check("select s, n from e where s like 's00%'", r -> s(r).startsWith("s00"), 2, 3);
+        check("select a from e where s like '%99' and n >= 0", r -> s(r).endsWith("99") && n(r) >= 0, 0);
+        check("select a from e where s like 's_0_'", r -> s(r).matches("s.0."), 0);
+        check("select a from e where s not like 's1%' and a < 50", r -> !s(r).startsWith("s1") && a(r) < 50, 0);
+    }
+
+    @Test
+    public void testLogic() throws Exception {
+        check("select a from e where h = 3 or h = 4", r -> h(r) == 3 || h(r) == 4, 0);
+        check("select a from e where not (a > 10) or a = 700", r -> a(r) <= 10 || a(r) == 700, 0);
+        check("select a from e where (a < 5 or a > 796) and not a = 2", r -> (a(r) < 5 || a(r) > 796) && a(r) != 2, 0);
+        check("select a from e where a < 20 and (h < 10 or s >= s150)", r -> a(r) < 20 && (h(r) < 10 || s(r).compareTo("s150") >= 0), 0);
+        check("select a from e where a < 5 and a > 10", r -> false, 0);
+        check("select a from e where h = 1 and h = 2", r -> false, 0);
+    }
+}
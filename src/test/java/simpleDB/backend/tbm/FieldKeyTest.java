@@ -0,0 +1,80 @@
+package simpleDB.backend.tbm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FieldKeyTest {
+    // 索引key按无符号字节序比较
+    private static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    private static <T> void assertOrderPreserved(Field f, List<T> values, Comparator<T> cmp) {
+        for(T a : values) {
+            for(T b : values) {
+                int expected = Integer.signum(cmp.compare(a, b));
+                int actual = Integer.signum(compare(f.value2Key(a), f.value2Key(b)));
+                assertEquals(a + " vs " + b, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testInt32Order() {
+        Field f = new Field(null, "a", "int32", 0);
+        List<Integer> values = new ArrayList<>(List.of(Integer.MIN_VALUE, -65536, -256, -1, 0, 1, 255, 256, Integer.MAX_VALUE));
+        Random r = new Random(1);
+        for(int i = 0; i < 50; i ++) {
+            values.add(r.nextInt());
+        }
+        assertOrderPreserved(f, values, Integer::compare);
+    }
+
+    @Test
+    public void testInt64Order() {
+        Field f = new Field(null, "a", "int64", 0);
+        List<Long> values = new ArrayList<>(List.of(Long.MIN_VALUE, -(1L << 40), -1L, 0L, 1L, 1L << 40, Long.MAX_VALUE));
+        Random r = new Random(2);
+        for(int i = 0; i < 50; i ++) {
+            values.add(r.nextLong());
+        }
+        assertOrderPreserved(f, values, Long::compare);
+    }
+
+    @Test
+    public void testStringOrderAndPrefixes() {
+        Field f = new Field(null, "s", "string", 0);
+        List<String> values = List.of("", "a", "a\u0000", "a\u0000b", "a\u0001", "ab", "abc", "abd", "b", "ba", "z", "zz");
+        assertOrderPreserved(f, values, Comparator.naturalOrder());
+        // 没有key是另一个key的前缀，[Key][Uid]不会和更长的key交错
+        for(String a : values) {
+            for(String b : values) {
+                if(!a.equals(b)) {
+                    byte[] ka = f.value2Key(a), kb = f.value2Key(b);
+                    assertFalse(a + " prefix of " + b, kb.length > ka.length && Arrays.equals(ka, Arrays.copyOf(kb, ka.length)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParseKeyRoundTrip() {
+        Object[][] cases = {{"int32", -7}, {"int32", Integer.MAX_VALUE}, {"int64", Long.MIN_VALUE}, {"int64", 123456789012L},
+                            {"string", ""}, {"string", "with\u0000zero"}, {"string", "plain"}};
+        for(Object[] c : cases) {
+            Field f = new Field(null, "x", (String)c[0], 0);
+            byte[] key = f.value2Key(c[1]);
+            byte[] padded = new byte[key.length + 3];
+            System.arraycopy(key, 0, padded, 1, key.length);
+            assertEquals(c[1], f.parserKey(padded, 1).v);
+            assertEquals(key.length, f.skipKey(padded, 1));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package simpleDB.backend.tbm;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import simpleDB.backend.parser.Parser;
+import simpleDB.backend.parser.statement.Select;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较按批解码、过滤与逐行解码为Object[]再比较的吞吐量，每次操作处理ROWS行编码后的记录
+ * 不在默认的测试中运行，通过 mvn test -Dtest=FilterBenchmark 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class FilterBenchmark {
+    static final int ROWS = 100000;
+
+    private List<Field> fields;
+    private RowCodec codec;
+    private byte[][] raws;
+    private Predicate predicate;
+    private ColumnVector[] columns;
+    private ColumnVector[] loaded;
+    private Batch batch;
+
+    @Setup
+    public void setUp() throws Exception {
+        fields = RowCodecTest.fields("int32", "string", "int64", "string");
+        codec = new RowCodec(fields);
+        raws = new byte[ROWS][];
+        for(int i = 0; i < ROWS; i ++) {
+            raws[i] = codec.encode(new Object[]{i, "s" + (i % 10), (long)(i % 7), "payload" + i});
+        }
+        Select select = (Select)Parser.Parse("select * from t where f0 > 1000 and f2 = 3".getBytes());
+        predicate = Predicate.compile(name -> fields.get(Integer.parseInt(name.substring(1))), select.where);
+        columns = new ColumnVector[fields.size()];
+        columns[0] = new ColumnVector(fields.get(0), Batch.CAPACITY);
+        columns[2] = new ColumnVector(fields.get(2), Batch.CAPACITY);
+        loaded = new ColumnVector[]{columns[0], columns[2]};
+        batch = new Batch(columns, Batch.CAPACITY);
+    }
+
+    // 与ScanOperator和FilterOperator相同，只解码条件中的列
+    @Benchmark
+    public int batched() {
+        int hits = 0;
+        for(int from = 0; from < ROWS; from += Batch.CAPACITY) {
+            int rows = Math.min(Batch.CAPACITY, ROWS - from);
+            for(int r = 0; r < rows; r ++) {
+                for(ColumnVector c : loaded) {
+                    c.load(codec, raws[from + r], r);
+                }
+            }
+            batch.rows = rows;
+            batch.selectAll();
+            predicate.filter(batch);
+            hits += batch.size;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int rowAtATime() {
+        int hits = 0;
+        for(byte[] raw : raws) {
+            Object[] row = codec.decode(raw);
+            if(row[0] != null && (int)row[0] > 1000 && row[2] != null && (long)row[2] == 3) {
+                hits ++;
+            }
+        }
+        return hits;
+    }
+
+    @Test
+    public void run() throws Exception {
+        new Runner(new OptionsBuilder().include(FilterBenchmark.class.getName()).build()).run();
+    }
+}
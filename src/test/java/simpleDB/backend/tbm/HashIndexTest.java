@@ -0,0 +1,49 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import static org.junit.Assert.*;
+
+public class HashIndexTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table h id int32, name string, v int64 (index hash(id) hash(name))");
+        for(int i = 0; i < 3000; i ++) {
+            db.exec("insert into h values " + (i % 1500) + " n" + i + " " + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testEqualityLookups() throws Exception {
+        assertEquals("[7, n7, 7]\n[7, n1507, 1507]\n", db.exec("select * from h where id = 7"));
+        assertEquals("[999, n2499, 2499]\n", db.exec("select * from h where name = n2499"));
+        assertEquals("[7]\n[1507]\n[8]\n[1508]\n", db.exec("select v from h where id = 7 or id = 8"));
+        assertEquals("", db.exec("select v from h where id = 7 and id = 8"));
+        assertEquals("", db.exec("select v from h where name = nothing"));
+    }
+
+    @Test
+    public void testAfterReopen() throws Exception {
+        db.reopen();
+        assertEquals("[1499, n1499, 1499]\n[1499, n2999, 2999]\n", db.exec("select * from h where id = 1499"));
+        assertEquals("[17, n17, 17]\n", db.exec("select * from h where name = n17"));
+    }
+
+    @Test
+    public void testDeletedRowsInvisible() throws Exception {
+        db.exec("delete from h where id = 7");
+        assertEquals("", db.exec("select * from h where id = 7"));
+        assertEquals("[8, n8, 8]\n[8, n1508, 1508]\n", db.exec("select * from h where id = 8"));
+    }
+}
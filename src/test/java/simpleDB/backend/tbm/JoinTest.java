@@ -0,0 +1,127 @@
+package simpleDB.backend.tbm;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+
+import static org.junit.Assert.*;
+
+public class JoinTest {
+    // a: id int32, k int64, s string
+    static List<Object[]> as = new ArrayList<>();
+    // b: bid int32, ak int64, s string, g int32
+    static List<Object[]> bs = new ArrayList<>();
+    static TestDB db;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table a id int32, k int64, s string (index id)");
+        db.exec("create table b bid int32, ak int64, s string, g int32 (index bid ak)");
+        Random r = new Random(11);
+        for(int i = 1; i <= 600; i ++) {
+            Object[] row = {i, (long)r.nextInt(81), String.format("x%02d", r.nextInt(31))};
+            as.add(row);
+            db.exec(String.format("insert into a values %d %d %s", row));
+        }
+        for(int i = 1; i <= 400; i ++) {
+            Object[] row = {i, (long)r.nextInt(101), String.format("x%02d", r.nextInt(41)), r.nextInt(10)};
+            bs.add(row);
+            db.exec(String.format("insert into b values %d %d %s %d", row));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    private static final BiPredicate<Object[], Object[]> ON_K = (a, b) -> a[1].equals(b[1]);
+
+    private static List<String> join(BiPredicate<Object[], Object[]> on, BiPredicate<Object[], Object[]> where,
+                                     BiFunction<Object[], Object[], String> select) {
+        List<String> res = new ArrayList<>();
+        for(Object[] a : as) {
+            for(Object[] b : bs) {
+                if(on.test(a, b) && where.test(a, b)) {
+                    res.add(select.apply(a, b));
+                }
+            }
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    private static List<String> sorted(String sql) throws Exception {
+        List<String> rows = TestDB.rows(db.exec(sql));
+        Collections.sort(rows);
+        return rows;
+    }
+
+    @Test
+    public void testEquiJoin() throws Exception {
+        assertEquals(join(ON_K, (a, b) -> true, (a, b) -> TestDB.row(a[0], b[0])),
+            sorted("select a.id, b.bid from a join b on a.k = b.ak"));
+        assertEquals(join(ON_K, (a, b) -> (int)a[0] < 20, (a, b) -> TestDB.row(a[0], b[0])),
+            sorted("select id, bid from a inner join b on b.ak = a.k where id < 20"));
+        assertEquals(join(ON_K, (a, b) -> (int)b[0] == 7, (a, b) -> TestDB.row(a[0], b[0], b[3])),
+            sorted("select id, bid, g from a join b on a.k = ak where bid = 7"));
+        assertEquals(join(ON_K, (a, b) -> (int)a[0] == 5, (a, b) -> TestDB.row(a[0], a[1], a[2], b[0], b[1], b[2], b[3])),
+            sorted("select * from a join b on a.k = b.ak where a.id = 5"));
+    }
+
+    @Test
+    public void testStringKeyAndOr() throws Exception {
+        assertEquals(join((a, b) -> a[2].equals(b[2]), (a, b) -> (int)a[0] < 30 && (int)b[3] == 3, (a, b) -> TestDB.row(a[2], b[2])),
+            sorted("select a.s, b.s from a join b on a.s = b.s where a.id < 30 and b.g = 3"));
+        assertEquals(join(ON_K, (a, b) -> (int)a[0] < 100 || (int)b[0] < 5, (a, b) -> TestDB.row(a[0], b[0])),
+            sorted("select id, bid from a join b on a.k = b.ak where a.id < 100 or b.bid < 5"));
+    }
+
+    @Test
+    public void testOrderAndGroup() throws Exception {
+        List<int[]> pairs = new ArrayList<>();
+        Map<Integer, long[]> groups = new TreeMap<>();
+        for(Object[] a : as) {
+            for(Object[] b : bs) {
+                if(ON_K.test(a, b)) {
+                    if((int)a[0] < 200) {
+                        pairs.add(new int[]{(int)a[0], (int)b[0]});
+                    }
+                    long[] g = groups.computeIfAbsent((int)b[3], k -> new long[2]);
+                    g[0] ++;
+                    g[1] += (int)a[0];
+                }
+            }
+        }
+        pairs.sort((x, y) -> x[1] != y[1] ? Integer.compare(y[1], x[1]) : Integer.compare(x[0], y[0]));
+        List<String> top = new ArrayList<>();
+        for(int[] p : pairs.subList(2, 9)) {
+            top.add(TestDB.row(p[0], p[1]));
+        }
+        assertEquals(top, TestDB.rows(db.exec("select id, bid from a join b on a.k = b.ak where id < 200 order by bid desc, id limit 7 offset 2")));
+
+        List<String> expected = new ArrayList<>();
+        for(Map.Entry<Integer, long[]> e : groups.entrySet()) {
+            expected.add(TestDB.row(e.getKey(), e.getValue()[0], e.getValue()[1]));
+        }
+        assertEquals(expected, TestDB.rows(db.exec("select b.g, count(*), sum(a.id) from a join b on a.k = b.ak group by b.g order by b.g")));
+    }
+
+    @Test
+    public void testInvalidJoins() {
+        // 类型不同的字段不能连接，两个表都有的字段名必须带表名
+        assertTrue(TestDB.rows(db.tryExec("select id from a join b on a.s = b.bid")).isEmpty());
+        assertTrue(TestDB.rows(db.tryExec("select s from a join b on a.k = b.ak")).isEmpty());
+    }
+}
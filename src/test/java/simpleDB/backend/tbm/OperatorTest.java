@@ -0,0 +1,137 @@
+package simpleDB.backend.tbm;
+
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.parser.Parser;
+import simpleDB.backend.parser.statement.Select;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OperatorTest {
+    // f0 int32, f1 string, f2 int64
+    private List<Field> fields = RowCodecTest.fields("int32", "string", "int64");
+
+    // 将rows按每批batchSize行依次返回
+    private class Rows implements Operator {
+        Object[][] rows;
+        int batchSize, pos;
+
+        Rows(Object[][] rows, int batchSize) {
+            this.rows = rows;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public Batch next() {
+            if(pos >= rows.length) {
+                return null;
+            }
+            ColumnVector[] columns = new ColumnVector[fields.size()];
+            for(int i = 0; i < columns.length; i ++) {
+                columns[i] = new ColumnVector(fields.get(i), batchSize);
+            }
+            Batch b = new Batch(columns, batchSize);
+            while(b.rows < batchSize && pos < rows.length) {
+                for(int i = 0; i < columns.length; i ++) {
+                    columns[i].set(b.rows, rows[pos][i]);
+                }
+                b.uids[b.rows ++] = pos ++;
+            }
+            b.selectAll();
+            return b;
+        }
+    }
+
+    private Object[][] rows(int n) {
+        Object[][] rows = new Object[n][];
+        for(int i = 0; i < n; i ++) {
+            rows[i] = new Object[]{i % 3 == 0 ? null : i, "s" + (i % 10), (long)-i};
+        }
+        return rows;
+    }
+
+    private Predicate where(String cond) throws Exception {
+        Select select = (Select)Parser.Parse(("select * from t where " + cond).getBytes());
+        return Predicate.compile(name -> fields.get(Integer.parseInt(name.substring(1))), select.where);
+    }
+
+    // 返回通过的行的uid
+    private static List<Long> drain(Operator op) throws Exception {
+        List<Long> res = new ArrayList<>();
+        for(Batch b = op.next(); b != null; b = op.next()) {
+            for(int i = 0; i < b.size; i ++) {
+                res.add(b.uids[b.sel[i]]);
+            }
+        }
+        return res;
+    }
+
+    private List<Long> expected(Object[][] rows, java.util.function.Predicate<Object[]> p) {
+        List<Long> res = new ArrayList<>();
+        for(int i = 0; i < rows.length; i ++) {
+            if(p.test(rows[i])) {
+                res.add((long)i);
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void testFilterMatchesRowByRow() throws Exception {
+        Object[][] rows = rows(2500);
+        assertEquals(expected(rows, r -> r[0] != null && (int)r[0] > 100 && (int)r[0] <= 200),
+            drain(new FilterOperator(new Rows(rows, 1024), where("f0 > 100 and f0 <= 200"))));
+        assertEquals(expected(rows, r -> "s3".equals(r[1]) || (long)r[2] > -5),
+            drain(new FilterOperator(new Rows(rows, 1024), where("f1 = s3 or f2 > -5"))));
+        // null不满足比较条件，not对结果取补集
+        assertEquals(expected(rows, r -> !(r[0] != null && (int)r[0] < 2000)),
+            drain(new FilterOperator(new Rows(rows, 7), where("not f0 < 2000"))));
+    }
+
+    @Test
+    public void testFilterSkipsEmptyBatches() throws Exception {
+        Object[][] rows = rows(3000);
+        assertEquals(List.of(2999L), drain(new FilterOperator(new Rows(rows, 100), where("f0 = 2999"))));
+    }
+
+    @Test
+    public void testLimitAcrossBatches() throws Exception {
+        Object[][] rows = rows(100);
+        List<Long> res = drain(new LimitOperator(new Rows(rows, 7), 10, 15));
+        List<Long> expected = new ArrayList<>();
+        for(long i = 10; i < 25; i ++) {
+            expected.add(i);
+        }
+        assertEquals(expected, res);
+        assertTrue(drain(new LimitOperator(new Rows(rows, 7), 100, -1)).isEmpty());
+        assertEquals(100, drain(new LimitOperator(new Rows(rows, 7), 0, -1)).size());
+    }
+
+    @Test
+    public void testProjectReordersColumns() throws Exception {
+        ProjectOperator op = new ProjectOperator(new Rows(rows(5), 4), List.of(fields.get(2), fields.get(1)));
+        Batch b = op.next();
+        assertEquals(-1L, b.columns[0].get(1));
+        assertEquals("s1", b.columns[1].get(1));
+        assertEquals(4, b.size);
+    }
+
+    @Test
+    public void testSqlAcrossBatchBoundaries() throws Exception {
+        TestDB db = TestDB.create();
+        try {
+            db.exec("create table s a int32, b string, c int64 (index a)");
+            for(int i = 0; i < 2100; i ++) {
+                db.exec("insert into s values " + i + " s" + (i % 10) + " " + (i % 5));
+            }
+            String res = db.exec("select a from s where c = 4 and b = s9");
+            assertEquals(210, res.split("\n").length);
+            assertEquals("[1023]\n[1024]\n[1025]\n", db.exec("select a from s where a >= 1023 and a <= 1025"));
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package simpleDB.backend.tbm;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class OrderByTest {
+    static final int N = 1500;
+    static final List<String> NAMES = List.of("a", "h", "s", "n", "v");
+    static List<Object[]> rows = new ArrayList<>();
+    static TestDB db;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table o a int32, h int64, s string, n int32, v int64 (index a hash(h) (s include n))");
+        Random r = new Random(11);
+        for(int i = 1; i <= N; i ++) {
+            rows.add(new Object[]{i, (long)r.nextInt(51), String.format("s%03d", r.nextInt(201)), r.nextInt(11) - 5, (long)r.nextInt(1000001)});
+        }
+        Collections.shuffle(rows, r);
+        for(Object[] row : rows) {
+            db.exec(String.format("insert into o values %d %d %s %d %d", row));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    private static int col(String name) {
+        return NAMES.indexOf(name.replace(" desc", "").trim());
+    }
+
+    private static String format(Object[] r, String[] columns) {
+        Object[] values = new Object[columns.length];
+        for(int i = 0; i < columns.length; i ++) {
+            values[i] = r[col(columns[i])];
+        }
+        return TestDB.row(values);
+    }
+
+    /**
+     * 执行 select columns from o [where] order by orders [limit] [offset]
+     * 排序键相同的行之间顺序不确定，因此比较结果中排序键的序列，并检查每一行都满足条件
+     */
+    @SuppressWarnings("unchecked")
+    private static void check(String columns, String where, Predicate<Object[]> f, String orders, long limit, long offset) throws Exception {
+        String sql = "select " + columns + " from o" + (where == null ? "" : " where " + where)
+            + (orders == null ? "" : " order by " + orders) + (limit >= 0 ? " limit " + limit : "") + (offset > 0 ? " offset " + offset : "");
+        String[] cols = columns.split(", ");
+        String[] keys = orders == null ? new String[0] : orders.split(", ");
+
+        List<Object[]> expected = new ArrayList<>();
+        for(Object[] r : rows) {
+            if(f.test(r)) {
+                expected.add(r);
+            }
+        }
+        Set<String> all = new HashSet<>();
+        for(Object[] r : expected) {
+            all.add(format(r, cols));
+        }
+        Comparator<Object[]> cmp = (x, y) -> 0;
+        for(String key : keys) {
+            int c = col(key);
+            Comparator<Object[]> k = (x, y) -> ((Comparable<Object>)x[c]).compareTo(y[c]);
+            cmp = cmp.thenComparing(key.endsWith(" desc") ? k.reversed() : k);
+        }
+        expected.sort(cmp);
+        int from = (int)Math.min(offset, expected.size());
+        int to = limit < 0 ? expected.size() : (int)Math.min(from + limit, expected.size());
+        expected = expected.subList(from, to);
+
+        List<String> got = TestDB.rows(db.exec(sql));
+        assertEquals(sql, expected.size(), got.size());
+        for(int i = 0; i < got.size(); i ++) {
+            assertTrue(sql + " " + got.get(i), all.contains(got.get(i)));
+            String[] values = got.get(i).substring(1, got.get(i).length() - 1).split(", ");
+            for(String key : keys) {
+                int c = List.of(cols).indexOf(key.replace(" desc", ""));
+                assertEquals(sql, String.valueOf(expected.get(i)[col(key)]), values[c]);
+            }
+        }
+    }
+
+    @Test
+    public void testOrderByIndexedColumn() throws Exception {
+        check("a, v", null, r -> true, "a", 10, 0);
+        check("a, v", "a > 100", r -> (int)r[0] > 100, "a", 5, 20);
+        check("a", "a < 50", r -> (int)r[0] < 50, "a", -1, 0);
+        check("h, a", "h in (3, 4)", r -> (long)r[1] == 3 || (long)r[1] == 4, "a desc", -1, 0);
+        check("s, n", null, r -> true, "s", 15, 0);
+        check("s, n, a", "s >= s100", r -> ((String)r[2]).compareTo("s100") >= 0, "s", 9, 0);
+        check("s, a", "a < 300", r -> (int)r[0] < 300, "s desc", -1, 0);
+    }
+
+    @Test
+    public void testTopN() throws Exception {
+        check("a, v", null, r -> true, "v desc", 7, 0);
+        check("a, v", "n > 0", r -> (int)r[3] > 0, "v", 12, 3);
+        check("s, n", null, r -> true, "s, n", 15, 0);
+        check("n, h, a", null, r -> true, "n, h desc, a", 25, 100);
+        check("v", null, r -> true, "v", -1, 0);
+    }
+
+    @Test
+    public void testLimitOffsetEdges() throws Exception {
+        check("a", null, r -> true, null, 10, N - 10);
+        check("a", null, r -> true, "a", 0, 0);
+        check("a", null, r -> true, "a", 5, N + 100);
+    }
+}
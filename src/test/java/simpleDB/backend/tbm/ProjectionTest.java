@@ -0,0 +1,47 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import static org.junit.Assert.*;
+
+public class ProjectionTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table r s1 string, a int32, s2 string, b int64, s3 string (index a)");
+        db.exec("insert into r values hello 1 q 100 world");
+        db.exec("insert into r values \"two words\" 2 x -5 yz");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testSelectList() throws Exception {
+        assertEquals("[hello, 1, q, 100, world]\n[two words, 2, x, -5, yz]\n", db.exec("select * from r"));
+        assertEquals("[yz, -5]\n", db.exec("select s3, b from r where a = 2"));
+        assertEquals("[q, hello]\n", db.exec("select s2, s1 from r where a = 1"));
+        // where中的字段不在select列表中
+        assertEquals("[world]\n", db.exec("select s3 from r where b > 0"));
+    }
+
+    @Test
+    public void testAfterUpdateAndReopen() throws Exception {
+        db.exec("update r set s2 = changed where a = 1");
+        db.reopen();
+        assertEquals("[changed, hello]\n", db.exec("select s2, s1 from r where a = 1"));
+        assertEquals("[2, yz]\n", db.exec("select a, s3 from r where a = 2"));
+    }
+
+    @Test
+    public void testUnknownField() {
+        assertFalse(db.tryExec("select nope from r where a = 1").startsWith("["));
+    }
+}
@@ -0,0 +1,94 @@
+package simpleDB.backend.tbm;
+
+import com.google.common.primitives.Bytes;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较RowCodec与原来按字段拼接、解析到HashMap的记录编解码
+ * 不在默认的测试中运行，通过 mvn test -Dtest=RowCodecBenchmark 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class RowCodecBenchmark {
+    private List<Field> fields;
+    private RowCodec codec;
+    private Object[] row;
+    private Map<String, Object> entry;
+    private byte[] raw;
+    private byte[] oldRaw;
+
+    @Setup
+    public void setUp() {
+        fields = RowCodecTest.fields("int32", "string", "int64", "string", "int32", "int64", "string", "int32");
+        codec = new RowCodec(fields);
+        row = new Object[]{1, "alice", 100L, "some longer text value", -5, 1L << 40, "x", 42};
+        entry = new HashMap<>();
+        for(int i = 0; i < row.length; i ++) {
+            entry.put(fields.get(i).fieldName, row[i]);
+        }
+        raw = codec.encode(row);
+        oldRaw = oldEncode();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(row);
+    }
+
+    @Benchmark
+    public Object[] decode() {
+        return codec.decode(raw);
+    }
+
+    @Benchmark
+    public Object decodeOneColumn() {
+        return codec.get(raw, 6);
+    }
+
+    @Benchmark
+    public byte[] oldEncode() {
+        byte[] res = new byte[0];
+        for(Field field : fields) {
+            res = Bytes.concat(res, field.value2Raw(entry.get(field.fieldName)));
+        }
+        return res;
+    }
+
+    @Benchmark
+    public Map<String, Object> oldDecode() {
+        int pos = 0;
+        Map<String, Object> res = new HashMap<>();
+        for(Field field : fields) {
+            Field.ParseValueRes r = field.parserValue(java.util.Arrays.copyOfRange(oldRaw, pos, oldRaw.length));
+            res.put(field.fieldName, r.v);
+            pos += r.shift;
+        }
+        return res;
+    }
+
+    @Test
+    public void run() throws Exception {
+        new Runner(new OptionsBuilder().include(RowCodecBenchmark.class.getName()).build()).run();
+    }
+}
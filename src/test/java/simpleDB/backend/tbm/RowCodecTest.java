@@ -0,0 +1,59 @@
+package simpleDB.backend.tbm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RowCodecTest {
+    static List<Field> fields(String... types) {
+        List<Field> fields = new ArrayList<>();
+        for(int i = 0; i < types.length; i ++) {
+            Field f = new Field(null, "f" + i, types[i], 0);
+            f.position = i;
+            fields.add(f);
+        }
+        return fields;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        RowCodec codec = new RowCodec(fields("int32", "string", "int64", "string", "int32"));
+        Object[] row = {-1, "hello", Long.MIN_VALUE, "", Integer.MAX_VALUE};
+        byte[] raw = codec.encode(row);
+        assertArrayEquals(row, codec.decode(raw));
+        assertEquals(-1, codec.getInt(raw, 0));
+        assertEquals(Long.MIN_VALUE, codec.getLong(raw, 2));
+        assertEquals("hello", codec.getString(raw, 1));
+        assertEquals("", codec.getString(raw, 3));
+    }
+
+    @Test
+    public void testNulls() {
+        RowCodec codec = new RowCodec(fields("string", "int32", "string", "int64", "string", "string", "string", "string", "int32"));
+        Object[] row = {null, null, "x", null, null, "yz", null, "w", null};
+        byte[] raw = codec.encode(row);
+        assertArrayEquals(row, codec.decode(raw));
+        for(int i = 0; i < row.length; i ++) {
+            assertEquals(row[i] == null, codec.isNull(raw, i));
+        }
+    }
+
+    @Test
+    public void testPartialDecode() {
+        List<Field> fields = fields("int32", "string", "int64");
+        RowCodec codec = new RowCodec(fields);
+        byte[] raw = codec.encode(new Object[]{7, "seven", 77L});
+        assertArrayEquals(new Object[]{null, "seven", null}, codec.decode(raw, List.of(fields.get(1))));
+        assertEquals(77L, codec.get(raw, 2));
+    }
+
+    @Test
+    public void testEncodedSize() {
+        RowCodec codec = new RowCodec(fields("int32", "int64", "string"));
+        // 1字节位图 + 4 + 8 + 2字节VarEnd + 3字节string
+        assertEquals(18, codec.encode(new Object[]{1, 2L, "abc"}).length);
+    }
+}
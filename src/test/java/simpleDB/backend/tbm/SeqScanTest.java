@@ -0,0 +1,70 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.server.Executor;
+
+import static org.junit.Assert.*;
+import static simpleDB.backend.TestDB.exec;
+
+public class SeqScanTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table s a int32, b string, c int64 (index a)");
+        for(int i = 1; i <= 300; i ++) {
+            db.exec("insert into s values " + i + " s" + (i % 10) + " " + (i % 7));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private static int lines(String res) {
+        return res.isEmpty() ? 0 : res.split("\n").length;
+    }
+
+    @Test
+    public void testNonIndexedPredicates() throws Exception {
+        assertEquals("[3]\n[10]\n[17]\n[24]\n", db.exec("select a from s where c = 3 and a < 30"));
+        assertEquals(30, lines(db.exec("select a from s where b = s3")));
+        assertEquals(42, lines(db.exec("select a from s where c = 0")));
+    }
+
+    @Test
+    public void testScanSeesUpdatesAndDeletes() throws Exception {
+        assertEquals("update 43", db.exec("update s set c = 100 where c = 6"));
+        assertEquals(43, lines(db.exec("select a from s where c = 100")));
+        assertEquals("", db.exec("select a from s where c = 6"));
+        assertEquals("delete 30", db.exec("delete from s where b = s3"));
+        assertEquals("", db.exec("select a from s where b = s3"));
+        db.reopen();
+        // 被删除的行中有5行的c为100
+        assertEquals(38, lines(db.exec("select a from s where c = 100")));
+        assertEquals(270, lines(db.exec("select a from s where c < 1000")));
+    }
+
+    @Test
+    public void testScanVisibility() throws Exception {
+        Executor w = db.session();
+        exec(w, "begin");
+        exec(w, "delete from s where c = 1");
+        assertEquals("", exec(w, "select a from s where c = 1"));
+        assertEquals(43, lines(db.exec("select a from s where c = 1")));
+        exec(w, "abort");
+        assertEquals(43, lines(db.exec("select a from s where c = 1")));
+    }
+
+    @Test
+    public void testEmptyTable() throws Exception {
+        db.exec("create table t x int32, y int32 (index x)");
+        assertEquals("", db.exec("select * from t where y = 1"));
+        assertEquals("", db.exec("select * from t"));
+    }
+}
@@ -0,0 +1,85 @@
+package simpleDB.backend.tbm;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 两张表都超过HashJoinOperator.MAX_BUILD_ROWS行，连接和分组都会写出临时文件
+ * 无论结果是否被读完，语句结束后都不能留下临时文件
+ */
+public class SpillTest {
+    static final int ROWS = HashJoinOperator.MAX_BUILD_ROWS + 4464;
+    static TestDB db;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table a id int32, k int64 (index id)");
+        db.exec("create table b bid int32, ak int64 (index bid)");
+        File file = new File(db.dir, "rows.tsv");
+        try(PrintWriter out = new PrintWriter(file)) {
+            for(int i = 0; i < ROWS; i ++) {
+                out.println(i + "\t" + i);
+            }
+        }
+        assertEquals("copy " + ROWS, db.exec("copy a from '" + file.getPath() + "'"));
+        assertEquals("copy " + ROWS, db.exec("copy b from '" + file.getPath() + "'"));
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    private static Set<String> spillFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.endsWith(".spill"));
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        Set<String> before = spillFiles();
+        assertEquals("[" + ROWS + "]\n", db.exec("select count(*) from a join b on a.k = b.ak"));
+        assertEquals(before, spillFiles());
+    }
+
+    @Test
+    public void testLimitedJoin() throws Exception {
+        Set<String> before = spillFiles();
+        assertEquals(1, TestDB.rows(db.exec("select id, bid from a join b on a.k = b.ak limit 1")).size());
+        assertEquals(before, spillFiles());
+    }
+
+    @Test
+    public void testLimitedGroupBy() throws Exception {
+        Set<String> before = spillFiles();
+        assertEquals(2, TestDB.rows(db.exec("select id, count(*) from a group by id limit 2")).size());
+        assertEquals(before, spillFiles());
+    }
+
+    // 结果流被提前关闭时，执行计划删除尚未读取的分区
+    @Test
+    public void testClosedStream() throws Exception {
+        Set<String> before = spillFiles();
+        db.exe.stream("select id, bid from a join b on a.k = b.ak".getBytes(), 10);
+        assertTrue(db.exe.hasMore());
+        assertNotEquals(before, spillFiles());
+        db.exe.closeStream();
+        assertEquals(before, spillFiles());
+
+        db.exe.stream("select id, count(*) from a group by id".getBytes(), 10);
+        assertNotEquals(before, spillFiles());
+        db.exe.closeStream();
+        assertEquals(before, spillFiles());
+    }
+}
@@ -0,0 +1,138 @@
+package simpleDB.backend.tbm;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.backend.parser.Parser;
+import simpleDB.backend.parser.statement.Select;
+import simpleDB.backend.tm.TransactionManagerImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class StatsTest {
+    // id int32, c int32, d int64, w string，c中7的比例远高于其他值
+    static List<Object[]> rows = new ArrayList<>();
+    static TestDB db;
+
+    static final String[] QUERIES = {
+        "select id from s where c = 7",
+        "select id from s where c = 3 and d < 1000",
+        "select id from s where c = 3 and w < t010",
+        "select id from s where c = 3 or d = 17",
+        "select id from s where c = 3 or w = t100 or id < 5",
+        "select id from s where c < 10 or c > 90",
+        "select id from s where id < 1000 and c in (1, 2) and w >= t150",
+        "select id from s where c = 3 or d > 5",
+        "select id from s where not c = 7 and d = 5",
+    };
+    static final List<Predicate<Object[]>> FILTERS = List.of(
+        r -> c(r) == 7,
+        r -> c(r) == 3 && d(r) < 1000,
+        r -> c(r) == 3 && w(r).compareTo("t010") < 0,
+        r -> c(r) == 3 || d(r) == 17,
+        r -> c(r) == 3 || w(r).equals("t100") || id(r) < 5,
+        r -> c(r) < 10 || c(r) > 90,
+        r -> id(r) < 1000 && (c(r) == 1 || c(r) == 2) && w(r).compareTo("t150") >= 0,
+        r -> c(r) == 3 || d(r) > 5,
+        r -> c(r) != 7 && d(r) == 5
+    );
+
+    private static int id(Object[] r) { return (int)r[0]; }
+    private static int c(Object[] r) { return (int)r[1]; }
+    private static long d(Object[] r) { return (long)r[2]; }
+    private static String w(Object[] r) { return (String)r[3]; }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table s id int32, c int32, d int64, w string (index id c hash(d) w)");
+        Random r = new Random(5);
+        for(int i = 1; i <= 1500; i ++) {
+            int c = r.nextInt(150);
+            Object[] row = {i, c < 50 ? 7 : c - 50, (long)r.nextInt(2001), String.format("t%03d", r.nextInt(301))};
+            rows.add(row);
+            db.exec(String.format("insert into s values %d %d %d %s", row));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    private static void checkQueries() throws Exception {
+        for(int i = 0; i < QUERIES.length; i ++) {
+            List<String> expected = new ArrayList<>();
+            for(Object[] row : rows) {
+                if(FILTERS.get(i).test(row)) {
+                    expected.add(TestDB.row(row[0]));
+                }
+            }
+            List<String> got = TestDB.rows(db.exec(QUERIES[i]));
+            Collections.sort(expected);
+            Collections.sort(got);
+            assertEquals(QUERIES[i], expected, got);
+        }
+    }
+
+    private static Table table() {
+        return ((TableManagerImpl)db.tbm).table("s");
+    }
+
+    private static double selectivity(TableStats stats, String cond) throws Exception {
+        Select select = (Select)Parser.Parse(("select * from s where " + cond).getBytes());
+        return stats.selectivity(table(), select.where);
+    }
+
+    private static double fraction(Predicate<Object[]> filter) {
+        return (double)rows.stream().filter(filter).count() / rows.size();
+    }
+
+    // analyze前后、插入新记录并重启后，按统计信息选择的访问路径返回的结果都与逐行过滤相同
+    @Test
+    public void testPlansKeepResults() throws Exception {
+        checkQueries();
+        assertEquals("analyze s", db.exec("analyze s").trim());
+        assertNotNull(table().stats);
+        checkQueries();
+
+        Object[] row = {9999, 3, 17L, "t100"};
+        rows.add(row);
+        db.exec(String.format("insert into s values %d %d %d %s", row));
+        db.reopen();
+        assertNotNull(table().stats);
+        checkQueries();
+
+        TableStats stats = table().stats;
+        assertEquals(1500, stats.rows);
+        assertTrue(selectivity(stats, "c = 7") > 10 * selectivity(stats, "c = 3"));
+        assertEquals(fraction(FILTERS.get(0)), selectivity(stats, "c = 7"), 0.05);
+        assertEquals(fraction(r -> c(r) < 10 || c(r) > 90), selectivity(stats, "c < 10 or c > 90"), 0.05);
+        assertEquals(fraction(r -> d(r) < 1000), selectivity(stats, "d < 1000"), 0.05);
+        assertEquals(1 - selectivity(stats, "c = 7"), selectivity(stats, "not c = 7"), 1e-9);
+        assertEquals(0, selectivity(stats, "c > 1000"), 0.01);
+    }
+
+    @Test
+    public void testEncodeParse() throws Exception {
+        TableStats stats = TableStats.collect(table(), TransactionManagerImpl.SUPER_XID);
+        TableStats parsed = TableStats.parse(stats.encode(), 4);
+        assertEquals(stats.rows, parsed.rows);
+        assertEquals(stats.pages, parsed.pages);
+        for(int i = 0; i < 4; i ++) {
+            assertEquals(stats.columns[i].nulls, parsed.columns[i].nulls);
+            assertEquals(stats.columns[i].distinct, parsed.columns[i].distinct);
+            assertArrayEquals(stats.columns[i].bounds, parsed.columns[i].bounds);
+        }
+        assertEquals(Math.min(TableStats.BUCKETS, rows.size()) + 1, stats.columns[0].bounds.length);
+        assertEquals(rows.size(), stats.columns[0].distinct);
+        assertTrue(stats.columns[1].distinct <= 100);
+    }
+}
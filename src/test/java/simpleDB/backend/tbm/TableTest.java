@@ -0,0 +1,62 @@
+package simpleDB.backend.tbm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TableTest {
+    private TestDB db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private static String sorted(String res) {
+        String[] lines = res.split("\n");
+        Arrays.sort(lines);
+        return String.join("\n", lines);
+    }
+
+    @Test
+    public void testNegativeValuesUseIndexOrder() throws Exception {
+        db.exec("create table t id int32, v int64 (index id v)");
+        for(int i = -5; i <= 5; i ++) {
+            db.exec("insert into t values " + i + " " + (i * 10000000000L));
+        }
+        assertEquals("[-3, -30000000000]\n", db.exec("select * from t where id = -3"));
+        assertEquals("[-5, -50000000000]\n[-4, -40000000000]\n",
+            db.exec("select * from t where id < -3"));
+        assertEquals("[-1, -10000000000]\n[0, 0]\n[1, 10000000000]\n",
+            db.exec("select * from t where v > -20000000000 and v < 20000000000"));
+    }
+
+    @Test
+    public void testStringIndex() throws Exception {
+        db.exec("create table s name string, id int32 (index name)");
+        String[] names = {"b", "a", "ab", "abc", "aa", "ba", "b"};
+        for(int i = 0; i < names.length; i ++) {
+            db.exec("insert into s values '" + names[i] + "' " + i);
+        }
+        assertEquals(sorted("[b, 0]\n[b, 6]\n"), sorted(db.exec("select * from s where name = 'b'")));
+        assertEquals(sorted("[aa, 4]\n[ab, 2]\n[abc, 3]\n"), sorted(db.exec("select * from s where name > 'a' and name < 'b'")));
+    }
+
+    @Test
+    public void testReopenChecksFormat() throws Exception {
+        db.exec("create table t id int32 (index id)");
+        db.exec("insert into t values -1");
+        db.reopen();
+        assertEquals("[-1]\n", db.exec("select * from t where id = -1"));
+    }
+}
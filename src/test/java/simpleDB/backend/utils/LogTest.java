@@ -0,0 +1,196 @@
+package simpleDB.backend.utils;
+
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Log的级别、输出文件和慢查询阈值在类加载时确定，因此在子进程中以指定的系统属性运行main，检查写出的日志
+ */
+public class LogTest {
+    static final int FLOOD = 100000;
+    static final Pattern LINE = Pattern.compile("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d{3} (DEBUG|INFO|WARN|ERROR) \\[([^\\]]+)\\] (.*)");
+    static final Pattern DROPPED = Pattern.compile("Dropped (\\d+) log entries");
+    static final String PHASE = "=\\d+\\.\\d{3}ms";
+
+    public static void main(String[] args) throws Exception {
+        Log.info("plain {} and {} bytes={}", 1, "two", "raw".getBytes());
+        Log.debug("debug {}", 1);
+        Log.warn("with stack", new RuntimeException("boom"));
+        Log.error("extra {} args", 1, 2);
+        Log.info("no args {}");
+
+        TestDB db = TestDB.create();
+        db.exec("create table t id int32 (index id)");
+        db.exec("insert into t values 1");
+        db.exec("select * from t where id = 1");
+        db.exe.stream("select * from t".getBytes(), 10);
+        db.tryExec("select * from nothing");
+        db.close();
+
+        // 没有消息时后台线程挂起而不是定时轮询，放入消息时被唤醒
+        if(Log.enabled(Log.WARN)) {
+            Thread.sleep(200);
+            Thread writer = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("simpledb-log")).findFirst().get();
+            Log.warn("writer {}", writer.getState());
+            Thread.sleep(200);
+            Log.warn("wake");
+            File file = new File(System.getProperty("simpledb.log.file"));
+            boolean woken = false;
+            for(int i = 0; i < 200 && !woken; i ++) {
+                Thread.sleep(10);
+                woken = Files.readAllLines(file.toPath()).stream().anyMatch(l -> l.endsWith("] wake"));
+            }
+            Log.warn("woken {}", woken);
+        }
+
+        // 缓冲区满时丢弃消息，调用方不阻塞
+        if(Log.enabled(Log.ERROR)) {
+            int level = Log.enabled(Log.DEBUG) ? Log.DEBUG : Log.enabled(Log.INFO) ? Log.INFO : Log.WARN;
+            Log.setLevel(Log.ERROR);
+            for(int i = 0; i < FLOOD; i ++) {
+                Log.error("flood {}", i);
+            }
+            Log.warn("hidden");
+            // 等待后台线程写出缓冲区中的消息，否则之后的消息也会被丢弃
+            Thread.sleep(500);
+            Log.setLevel(level);
+            Log.warn("done");
+        }
+        Log.close();
+        Log.warn("after close");
+        System.exit(0);
+    }
+
+    // 在子进程中运行main，返回日志文件的所有行
+    private static List<String> run(String... props) throws Exception {
+        File file = File.createTempFile("simpledb", ".log");
+        try {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add("-Dsimpledb.log.file=" + file.getPath());
+            cmd.addAll(Arrays.asList(props));
+            cmd.add(LogTest.class.getName());
+            Process p = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            assertTrue(p.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, p.exitValue());
+            return Files.readAllLines(file.toPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    // 返回以suffix结尾的日志消息，不存在时返回null
+    private static String find(List<String> lines, String suffix) {
+        for(String l : lines) {
+            Matcher m = LINE.matcher(l);
+            if(m.matches() && m.group(3).endsWith(suffix)) {
+                return m.group(3);
+            }
+        }
+        return null;
+    }
+
+    private static long count(List<String> lines, String prefix) {
+        return lines.stream().filter(l -> {
+            Matcher m = LINE.matcher(l);
+            return m.matches() && m.group(3).startsWith(prefix);
+        }).count();
+    }
+
+    // 每条消息要么写出，要么计入丢弃的条数
+    private static void checkFlood(List<String> lines) {
+        long dropped = 0;
+        for(String l : lines) {
+            Matcher m = LINE.matcher(l);
+            if(m.matches() && m.group(2).equals("simpledb-log")) {
+                Matcher d = DROPPED.matcher(m.group(3));
+                assertTrue(l, d.matches());
+                dropped += Long.parseLong(d.group(1));
+            }
+        }
+        assertEquals(FLOOD, count(lines, "flood ") + dropped);
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        List<String> lines = run("-Dsimpledb.log.level=info");
+        Matcher m = LINE.matcher(lines.get(0));
+        assertTrue(lines.get(0), m.matches());
+        assertEquals("INFO", m.group(1));
+        assertEquals("main", m.group(2));
+        assertEquals("plain 1 and two bytes=raw", m.group(3));
+
+        // 最后一个参数为Throwable时输出其调用栈
+        m = LINE.matcher(lines.get(1));
+        assertTrue(m.matches());
+        assertEquals("WARN", m.group(1));
+        assertEquals("with stack", m.group(3));
+        assertEquals("java.lang.RuntimeException: boom", lines.get(2));
+        assertTrue(lines.get(3), lines.get(3).trim().startsWith("at simpleDB.backend.utils.LogTest.main"));
+
+        assertEquals("extra 1 args", find(lines, "args"));
+        assertEquals("no args {}", find(lines, "no args {}"));
+        assertNull(find(lines, "debug 1"));
+        assertNull(find(lines, "hidden"));
+        assertNull(find(lines, "after close"));
+        assertEquals(0, count(lines, "Slow query"));
+        assertEquals("writer WAITING", find(lines, "writer WAITING"));
+        assertEquals("woken true", find(lines, "woken true"));
+        checkFlood(lines);
+        assertTrue(lines.get(lines.size() - 1).endsWith("WARN [main] done"));
+    }
+
+    @Test
+    public void testLevel() throws Exception {
+        List<String> lines = run("-Dsimpledb.log.level=DEBUG");
+        assertEquals("debug 1", find(lines, "debug 1"));
+        assertEquals("Execute: select * from t where id = 1", find(lines, "select * from t where id = 1"));
+
+        lines = run("-Dsimpledb.log.level=warn");
+        assertNull(find(lines, "plain 1 and two bytes=raw"));
+        assertNull(find(lines, "no args {}"));
+        assertEquals("with stack", find(lines, "with stack"));
+        assertEquals("extra 1 args", find(lines, "args"));
+        checkFlood(lines);
+
+        lines = run("-Dsimpledb.log.level=off");
+        assertEquals(Arrays.asList(), lines);
+    }
+
+    // 慢查询日志记录每个阶段的耗时
+    @Test
+    public void testSlowLog() throws Exception {
+        List<String> lines = run("-Dsimpledb.log.level=warn", "-Dsimpledb.slowlog.ms=0");
+        String slow = "Slow query \\d+\\.\\d{3}ms:";
+        assertTrue(find(lines, "sql: create table t id int32 (index id)").matches(
+            slow + " parse" + PHASE + " begin" + PHASE + " execute" + PHASE + " commit" + PHASE + " sql: .*"));
+        assertTrue(find(lines, "sql: insert into t values 1").matches(
+            slow + " parse" + PHASE + " begin" + PHASE + " execute" + PHASE + " commit" + PHASE + " sql: .*"));
+        assertTrue(find(lines, "sql: select * from t where id = 1").matches(
+            slow + " parse" + PHASE + " begin" + PHASE + " plan" + PHASE + " execute" + PHASE + " commit" + PHASE + " sql: .*"));
+        assertTrue(find(lines, "sql: select * from t").matches(
+            slow + " parse" + PHASE + " begin" + PHASE + " plan" + PHASE + " fetch" + PHASE + " sql: .*"));
+        assertTrue(find(lines, "sql: select * from nothing").matches(
+            slow + " parse" + PHASE + " begin" + PHASE + " abort" + PHASE + " sql: .*"));
+
+        // 超过阈值的语句才被记录，采样率为0时不记录
+        lines = run("-Dsimpledb.log.level=warn", "-Dsimpledb.slowlog.ms=60000");
+        assertEquals(0, count(lines, "Slow query"));
+        lines = run("-Dsimpledb.log.level=warn", "-Dsimpledb.slowlog.ms=0", "-Dsimpledb.slowlog.sample=0");
+        assertEquals(0, count(lines, "Slow query"));
+    }
+}
@@ -0,0 +1,93 @@
+package simpleDB.backend.vm;
+
+import org.junit.Test;
+import simpleDB.common.Error;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LockTableTest {
+
+    @Test
+    public void testGrantInOrder() throws Exception {
+        LockTable lt = new LockTable(0);
+        assertNull(lt.add(1, 100));
+        assertNull(lt.add(1, 100));
+        assertNull(lt.add(2, 200));
+        CountDownLatch l2 = lt.add(2, 100);
+        assertNotNull(l2);
+        assertEquals(1, l2.getCount());
+
+        lt.remove(1);
+        assertEquals(0, l2.getCount());
+        // 2 持有100后，3需要等待2
+        CountDownLatch l3 = lt.add(3, 100);
+        assertNotNull(l3);
+        lt.remove(2);
+        assertEquals(0, l3.getCount());
+        assertNull(lt.add(3, 200));
+    }
+
+    @Test
+    public void testDeadlock() throws Exception {
+        LockTable lt = new LockTable(0);
+        assertNull(lt.add(1, 100));
+        assertNull(lt.add(2, 200));
+        CountDownLatch l2 = lt.add(2, 100);
+        try {
+            lt.add(1, 200);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.DeadlockException, e);
+        }
+        // 1 被选为牺牲者，回滚后2获得100
+        lt.remove(1);
+        assertEquals(0, l2.getCount());
+        assertNotNull(lt.add(3, 100));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        LockTable lt = new LockTable(50);
+        assertNull(lt.add(1, 100));
+        CountDownLatch l2 = lt.add(2, 100);
+        CountDownLatch l3 = lt.add(3, 100);
+        long start = System.nanoTime();
+        assertFalse(lt.await(l2));
+        assertTrue(System.nanoTime() - start >= 40_000_000);
+        // 超时的等待者放弃后，不会再被选中
+        lt.remove(2);
+        lt.remove(1);
+        assertTrue(lt.await(l3));
+        assertNotNull(lt.add(4, 100));
+    }
+
+    @Test
+    public void testWaitForever() throws Exception {
+        LockTable lt = new LockTable(0);
+        assertNull(lt.add(1, 100));
+        CountDownLatch l2 = lt.add(2, 100);
+        Thread holder = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch(InterruptedException ignored) {}
+            lt.remove(1);
+        });
+        holder.start();
+        assertTrue(lt.await(l2));
+        holder.join();
+    }
+
+    // 等待中被回滚时唤醒等待者，持有者释放时不再选择它
+    @Test
+    public void testRemoveWaiter() throws Exception {
+        LockTable lt = new LockTable(0);
+        assertNull(lt.add(1, 100));
+        CountDownLatch l2 = lt.add(2, 100);
+        lt.remove(2);
+        assertEquals(0, l2.getCount());
+        lt.remove(1);
+        assertNull(lt.add(3, 100));
+    }
+}
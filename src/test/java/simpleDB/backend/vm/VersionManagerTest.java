@@ -0,0 +1,156 @@
+package simpleDB.backend.vm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+
+import static org.junit.Assert.*;
+
+public class VersionManagerTest {
+    private static final int READ_COMMITTED = 0;
+    private static final int REPEATABLE_READ = 1;
+
+    private TestDB db;
+    private VersionManager vm;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDB.create();
+        vm = db.vm;
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private long committed(String data) throws Exception {
+        long xid = vm.begin(READ_COMMITTED);
+        long uid = vm.insert(xid, data.getBytes());
+        vm.commit(xid);
+        return uid;
+    }
+
+    private String read(long xid, long uid) throws Exception {
+        byte[] raw = vm.read(xid, uid);
+        return raw == null ? null : new String(raw);
+    }
+
+    @Test
+    public void testReadCommitted() throws Exception {
+        long t1 = vm.begin(READ_COMMITTED);
+        long t2 = vm.begin(READ_COMMITTED);
+        long uid = vm.insert(t1, "a".getBytes());
+        assertEquals("a", read(t1, uid));
+        assertNull(read(t2, uid));
+        vm.commit(t1);
+        assertEquals("a", read(t2, uid));
+
+        long t3 = vm.begin(READ_COMMITTED);
+        assertTrue(vm.delete(t3, uid));
+        assertNull(read(t3, uid));
+        assertEquals("a", read(t2, uid));
+        vm.commit(t3);
+        assertNull(read(t2, uid));
+        vm.commit(t2);
+    }
+
+    @Test
+    public void testRepeatableRead() throws Exception {
+        long old = committed("old");
+        long t2 = vm.begin(REPEATABLE_READ);
+        long t1 = vm.begin(READ_COMMITTED);
+        long uid = vm.insert(t1, "a".getBytes());
+        assertTrue(vm.delete(t1, old));
+        vm.commit(t1);
+        // t2 开始时t1还未提交，t1的修改对t2不可见
+        assertNull(read(t2, uid));
+        assertEquals("old", read(t2, old));
+        long t3 = vm.begin(REPEATABLE_READ);
+        assertEquals("a", read(t3, uid));
+        assertNull(read(t3, old));
+        vm.commit(t2);
+        vm.commit(t3);
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        long uid = committed("a");
+        long t1 = vm.begin(READ_COMMITTED);
+        long inserted = vm.insert(t1, "b".getBytes());
+        assertTrue(vm.delete(t1, uid));
+        assertFalse(vm.delete(t1, uid));
+        vm.abort(t1);
+        long t2 = vm.begin(READ_COMMITTED);
+        assertEquals("a", read(t2, uid));
+        assertNull(read(t2, inserted));
+        vm.commit(t2);
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws Exception {
+        long uid = committed("a");
+        long t2 = vm.begin(REPEATABLE_READ);
+        long t1 = vm.begin(READ_COMMITTED);
+        assertTrue(vm.delete(t1, uid));
+        vm.commit(t1);
+        assertEquals("a", read(t2, uid));
+        try {
+            vm.delete(t2, uid);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.ConcurrentUpdateException, e);
+        }
+        // 自动回滚后该事务的语句都返回同样的错误
+        try {
+            vm.read(t2, uid);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.ConcurrentUpdateException, e);
+        }
+        vm.abort(t2);
+    }
+
+    // 等待行锁超时的事务被回滚，持有者不受影响，之后的事务可以获得该行
+    @Test
+    public void testLockTimeout() throws Exception {
+        System.setProperty("simpledb.lock.timeout", "100");
+        try {
+            vm = new VersionManagerImpl(db.tm, db.dm);
+        } finally {
+            System.clearProperty("simpledb.lock.timeout");
+        }
+        long uid = committed("a");
+        long other = committed("b");
+        long t1 = vm.begin(READ_COMMITTED);
+        long t2 = vm.begin(READ_COMMITTED);
+        assertTrue(vm.delete(t1, uid));
+        assertTrue(vm.delete(t2, other));
+        try {
+            vm.delete(t2, uid);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.LockTimeoutException, e);
+        }
+        try {
+            vm.read(t2, other);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.LockTimeoutException, e);
+        }
+        vm.abort(t2);
+
+        // t2 被回滚，释放了other
+        long t3 = vm.begin(READ_COMMITTED);
+        assertTrue(vm.delete(t3, other));
+        vm.abort(t1);
+        assertTrue(vm.delete(t3, uid));
+        vm.commit(t3);
+        long t4 = vm.begin(READ_COMMITTED);
+        assertNull(read(t4, uid));
+        assertNull(read(t4, other));
+        vm.commit(t4);
+    }
+}
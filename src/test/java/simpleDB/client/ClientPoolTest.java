@@ -0,0 +1,183 @@
+package simpleDB.client;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ClientPoolTest {
+    static TestDB db;
+    static int port;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t id int32, v string (index id)");
+        db.exec("insert into t values 1 one");
+        port = db.serve();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    private static ClientPool pool(int min, int max, long borrowTimeout, long checkInterval, long idleTimeout) throws Exception {
+        return new ClientPool("localhost", port, min, max, false, borrowTimeout, checkInterval, idleTimeout);
+    }
+
+    private static String exec(Client c, String sql) throws Exception {
+        return new String(c.execute(sql.getBytes()));
+    }
+
+    @Test
+    public void testBorrowAndTimeout() throws Exception {
+        ClientPool pool = pool(1, 2, 200, 60000, 60000);
+        assertEquals("connections 1 (idle 1, min 1, max 2)", pool.toString());
+        Client a = pool.borrow();
+        Client b = pool.borrow();
+        assertNotSame(a, b);
+        assertEquals("connections 2 (idle 0, min 1, max 2)", pool.toString());
+        long start = System.nanoTime();
+        try {
+            pool.borrow();
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.PoolTimeoutException, e);
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+
+        // 等待中的borrow得到归还的连接
+        CompletableFuture<Client> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        pool.release(a);
+        assertSame(a, waiting.get(5, TimeUnit.SECONDS));
+        pool.release(a);
+        pool.release(b);
+        // 最近归还的先借出
+        assertSame(b, pool.borrow());
+        pool.release(b);
+        assertEquals("[one]\n", new String(pool.execute("select v from t where id = 1".getBytes())));
+        assertEquals("[1]\n", pool.run(c -> exec(c, "select id from t")));
+
+        pool.close();
+        try {
+            pool.borrow();
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.PoolClosedException, e);
+        }
+        assertEquals("connections 0 (idle 0, min 1, max 2)", pool.toString());
+    }
+
+    // 归还时回滚未结束的事务、关闭未读完的结果和游标，prepare的语句保留
+    @Test
+    public void testReset() throws Exception {
+        ClientPool pool = pool(1, 1, 1000, 60000, 60000);
+        Client c = pool.borrow();
+        exec(c, "prepare q as select v from t where id = ?");
+        exec(c, "begin");
+        exec(c, "insert into t values 2 two");
+        exec(c, "declare cur cursor for select id from t");
+        c.query("select id from t".getBytes(), 1);
+        pool.release(c);
+
+        Client again = pool.borrow();
+        assertSame(c, again);
+        assertEquals("", exec(again, "select v from t where id = 2"));
+        assertEquals("begin", exec(again, "begin"));
+        try {
+            exec(again, "fetch cur");
+            fail();
+        } catch(RuntimeException e) {
+            assertEquals(Error.CursorNotFoundException.getMessage(), e.getMessage());
+        }
+        exec(again, "commit");
+        assertEquals("[one]\n", exec(again, "execute q (1)"));
+        pool.release(again);
+        pool.close();
+    }
+
+    // 关闭的连接在归还时被丢弃，后台检查补足min个连接
+    @Test
+    public void testBrokenConnections() throws Exception {
+        ClientPool pool = pool(2, 2, 1000, 100, 60000);
+        Client a = pool.borrow();
+        a.close();
+        pool.release(a);
+        assertEquals("connections 1 (idle 1, min 2, max 2)", pool.toString());
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!pool.toString().equals("connections 2 (idle 2, min 2, max 2)") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("connections 2 (idle 2, min 2, max 2)", pool.toString());
+        Client b = pool.borrow();
+        Client c = pool.borrow();
+        assertNotSame(a, b);
+        assertNotSame(a, c);
+        assertTrue(b.ping());
+        assertFalse(a.ping());
+        pool.release(b);
+        pool.release(c);
+        pool.close();
+    }
+
+    // 空闲超过idleTimeout且多于min的连接被关闭
+    @Test
+    public void testIdleTimeout() throws Exception {
+        ClientPool pool = pool(1, 3, 1000, 50, 100);
+        Client a = pool.borrow(), b = pool.borrow(), c = pool.borrow();
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals("connections 3 (idle 3, min 1, max 3)", pool.toString());
+        long deadline = System.currentTimeMillis() + 5000;
+        // 检查期间连接不在idle中，等到检查结束
+        while(!pool.toString().equals("connections 1 (idle 1, min 1, max 3)") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("connections 1 (idle 1, min 1, max 3)", pool.toString());
+        assertEquals("[one]\n", new String(pool.execute("select v from t where id = 1".getBytes())));
+        pool.close();
+    }
+
+    // 服务端只支持HEX时无法建立连接池
+    @Test
+    public void testHexOnlyServer() throws Exception {
+        try(ServerSocket old = new ServerSocket(0)) {
+            CompletableFuture.runAsync(() -> {
+                try(Socket s = old.accept()) {
+                    InputStream in = s.getInputStream();
+                    while(in.read() != '\n') {
+                    }
+                    OutputStream out = s.getOutputStream();
+                    out.write("01496e76616c696420636f6d6d616e6421\n".getBytes());
+                    out.flush();
+                    in.read();
+                } catch(Exception ignored) {}
+            });
+            try {
+                new ClientPool("localhost", old.getLocalPort(), 1, 1);
+                fail();
+            } catch(Exception e) {
+                assertSame(Error.BinaryProtocolRequiredException, e);
+            }
+        }
+    }
+}
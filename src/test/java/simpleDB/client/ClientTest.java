@@ -0,0 +1,130 @@
+package simpleDB.client;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Package;
+import simpleDB.transport.Packager;
+import simpleDB.transport.Transporter;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class ClientTest {
+    static TestDB db;
+    static int port;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, s string (index a)");
+        port = db.serve();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    // 连续发送的语句按发送的顺序执行并返回
+    @Test
+    public void testPipeline() throws Exception {
+        for(boolean binary : new boolean[]{true, false}) {
+            Transporter t = new Transporter(new Socket("localhost", port));
+            if(binary) {
+                t.negotiate();
+            }
+            Client c = new Client(new Packager(t, new Encoder()));
+            int base = binary ? 0 : 1000;
+            List<CompletableFuture<byte[]>> res = new ArrayList<>();
+            res.add(c.executeAsync("begin".getBytes()));
+            for(int i = 0; i < 200; i ++) {
+                res.add(c.executeAsync(("insert into t values " + (base + i) + " p").getBytes()));
+                res.add(c.executeAsync(("select count(*) from t where a >= " + base + " and a < " + (base + 1000)).getBytes()));
+            }
+            CompletableFuture<byte[]> bad = c.executeAsync("select * from nothing".getBytes());
+            res.add(c.executeAsync("commit".getBytes()));
+            for(int i = 0; i < 200; i ++) {
+                assertEquals("insert", new String(res.get(1 + i*2).get()));
+                assertEquals(TestDB.rows(TestDB.row(i + 1) + "\n"), TestDB.rows(new String(res.get(2 + i*2).get())));
+            }
+            try {
+                bad.get();
+                fail();
+            } catch(Exception e) {
+                assertEquals("Table not found!", e.getCause().getMessage());
+            }
+            assertEquals("commit", new String(res.get(res.size() - 1).get()).trim());
+            c.close();
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Client c = TestDB.connect(port, false);
+        List<Package> res = c.executeBatch(Arrays.asList("insert into t values 50000 b".getBytes(),
+            "select s from t where a = 50000".getBytes()));
+        assertEquals(2, res.size());
+        assertEquals("insert", new String(res.get(0).getData()));
+        assertEquals("[b]\n", new String(res.get(1).getData()));
+
+        // 失败的语句返回与单独执行时相同的错误
+        res = c.executeBatch(Arrays.asList("insert into t values 50001 c".getBytes(),
+            "insert into t values 50002".getBytes(), "insert into t values 50002 d".getBytes()));
+        assertEquals(2, res.size());
+        assertNull(res.get(0).getErr());
+        assertNull(res.get(1).getData());
+        assertEquals("Invalid values!", res.get(1).getErr().getMessage());
+        assertEquals("", new String(c.execute("select * from t where a > 50000".getBytes())));
+
+        try {
+            c.executeBatch(Arrays.asList("insert into t values 50003 e".getBytes(), "drop table t".getBytes()));
+            fail();
+        } catch(RuntimeException e) {
+            assertEquals("Invalid command!", e.getMessage());
+        }
+        assertTrue(c.executeBatchAsync(new ArrayList<>()).get().isEmpty());
+        c.close();
+    }
+
+    // 协商压缩后结果与不压缩时相同，两个方向上较大的帧都被压缩
+    @Test
+    public void testCompression() throws Exception {
+        Client plain = TestDB.connect(port, false);
+        Client c = TestDB.connect(port, true);
+        assertNull(plain.compressor());
+        assertNotNull(c.compressor());
+        StringBuilder sb = new StringBuilder("insert into t values ");
+        for(int i = 0; i < 1000; i ++) {
+            sb.append(i == 0 ? "" : ", ").append(String.format("(%d, 'compressed row %d')", 70000 + i, i % 10));
+        }
+        assertEquals("insert", new String(c.execute(sb.toString().getBytes())));
+        String sql = "select * from t where a >= 70000 and a < 71000";
+        String expected = new String(plain.execute(sql.getBytes()));
+        assertEquals(1000, TestDB.rows(expected).size());
+        assertEquals(expected, new String(c.execute(sql.getBytes())));
+        ResultStream rs = c.query(sql.getBytes(), 100);
+        StringBuilder streamed = new StringBuilder();
+        for(byte[] b = rs.next(); b != null; b = rs.next()) {
+            streamed.append(new String(b));
+        }
+        assertEquals(expected, streamed.toString());
+        Matcher m = Pattern.compile("ratio (\\d+\\.\\d+)").matcher(c.compressor().toString());
+        for(int i = 0; i < 2; i ++) {
+            assertTrue(c.compressor().toString(), m.find());
+            assertTrue(c.compressor().toString(), Double.parseDouble(m.group(1)) > 3);
+        }
+        c.execute("delete from t where a >= 70000 and a < 71000".getBytes());
+        plain.close();
+        c.close();
+    }
+}
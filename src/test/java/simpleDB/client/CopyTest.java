@@ -0,0 +1,115 @@
+package simpleDB.client;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Packager;
+import simpleDB.transport.Transporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+public class CopyTest {
+    static TestDB db;
+    static int port;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, s string (index a)");
+        port = db.serve();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    // 行数足够多时分成多块发送
+    private static InputStream rows(int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = from; i < to; i ++) {
+            sb.append(i).append('\t').append("row").append(i).append("-0123456789abcdef0123456789abcdef\n");
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes());
+    }
+
+    private static String count(Client c, int from, int to) throws Exception {
+        return new String(c.execute(String.format("select count(*) from t where a >= %d and a < %d", from, to).getBytes()));
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        Client c = TestDB.connect(port, false);
+        assertEquals("copy 30000", new String(c.copy("t", rows(0, 30000))));
+        assertEquals(TestDB.row(30000) + "\n", count(c, 0, 30000));
+        assertEquals("[row29999-0123456789abcdef0123456789abcdef]\n", new String(c.execute("select s from t where a = 29999".getBytes())));
+
+        // 任一行出错时整个导入回滚，错误在最后返回
+        InputStream bad = new SequenceInputStream(rows(100000, 120000),
+            new SequenceInputStream(new ByteArrayInputStream("x\ty\n".getBytes()), rows(120000, 130000)));
+        try {
+            c.copy("t", bad);
+            fail();
+        } catch(RuntimeException e) {
+            assertEquals("Line \"x\ty\": For input string: \"x\"", e.getMessage());
+        }
+        assertEquals(TestDB.row(0) + "\n", count(c, 100000, 130000));
+        try {
+            c.copy("nothing", rows(0, 1));
+            fail();
+        } catch(RuntimeException e) {
+            assertEquals("Table not found!", e.getMessage());
+        }
+
+        // 在显式的事务中导入，随事务回滚
+        c.execute("begin".getBytes());
+        assertEquals("copy 100", new String(c.copy("t", rows(200000, 200100))));
+        assertEquals(TestDB.row(100) + "\n", count(c, 200000, 300000));
+        c.execute("abort".getBytes());
+        assertEquals(TestDB.row(0) + "\n", count(c, 200000, 300000));
+        c.close();
+    }
+
+    // 读取数据失败时放弃导入，连接可以继续使用
+    @Test
+    public void testReadFailure() throws Exception {
+        Client c = TestDB.connect(port, false);
+        InputStream failing = new SequenceInputStream(rows(300000, 320000), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("disk gone");
+            }
+        });
+        try {
+            c.copy("t", failing);
+            fail();
+        } catch(IOException e) {
+            assertEquals("disk gone", e.getMessage());
+        }
+        assertEquals(TestDB.row(0) + "\n", count(c, 300000, 400000));
+        assertEquals("begin", new String(c.execute("begin".getBytes())));
+        c.execute("commit".getBytes());
+        c.close();
+    }
+
+    @Test
+    public void testHexConnection() throws Exception {
+        Client c = new Client(new Packager(new Transporter(new Socket("localhost", port)), new Encoder()));
+        try {
+            c.copy("t", rows(0, 1));
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.BinaryProtocolRequiredException, e);
+        }
+        c.close();
+    }
+}
@@ -0,0 +1,92 @@
+package simpleDB.client;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Packager;
+import simpleDB.transport.Transporter;
+
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+public class ResultStreamTest {
+    static TestDB db;
+    static int port;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, s string (index a)");
+        db.exec("begin");
+        for(int i = 0; i < 500; i ++) {
+            db.exec("insert into t values " + i + " s" + i);
+        }
+        db.exec("commit");
+        port = db.serve();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    private static String drain(ResultStream rs) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(byte[] b = rs.next(); b != null; b = rs.next()) {
+            sb.append(new String(b));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        Client c = TestDB.connect(port, false);
+        String all = new String(c.execute("select * from t where a < 300".getBytes()));
+        ResultStream rs = c.query("select * from t where a < 300".getBytes(), 64);
+        assertFalse(rs.isDone());
+        byte[] first = rs.next();
+        assertEquals(64, TestDB.rows(new String(first)).size());
+        assertEquals(all, new String(first) + drain(rs));
+        assertTrue(rs.isDone());
+        assertNull(rs.next());
+
+        // 放弃剩余的记录后连接可以继续使用
+        rs = c.query("select a from t".getBytes(), 10);
+        assertEquals(10, TestDB.rows(new String(rs.next())).size());
+        rs.close();
+        assertTrue(rs.isDone());
+        assertNull(rs.next());
+        assertEquals("begin", new String(c.execute("begin".getBytes())));
+        c.execute("commit".getBytes());
+
+        // 执行下一条语句时未读完的结果被关闭
+        rs = c.query("select a from t".getBytes(), 10);
+        assertEquals("[7]\n", new String(c.execute("select a from t where a = 7".getBytes())));
+        assertNull(rs.next());
+
+        rs = c.query("insert into t values 1000 x".getBytes(), 10);
+        assertEquals("insert", new String(rs.next()));
+        assertTrue(rs.isDone());
+        try {
+            c.query("select * from nothing".getBytes(), 10);
+            fail();
+        } catch(RuntimeException e) {
+            assertEquals("Table not found!", e.getMessage());
+        }
+        c.execute("delete from t where a = 1000".getBytes());
+        c.close();
+    }
+
+    // 未协商二进制格式时一次返回全部结果
+    @Test
+    public void testHexFallback() throws Exception {
+        Client c = new Client(new Packager(new Transporter(new Socket("localhost", port)), new Encoder()));
+        ResultStream rs = c.query("select * from t where a < 300".getBytes(), 10);
+        assertEquals(300, TestDB.rows(new String(rs.next())).size());
+        assertTrue(rs.isDone());
+        c.close();
+    }
+}
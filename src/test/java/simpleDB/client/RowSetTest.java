@@ -0,0 +1,152 @@
+package simpleDB.client;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import simpleDB.backend.TestDB;
+import simpleDB.common.Error;
+import simpleDB.transport.Columns;
+import simpleDB.transport.Encoder;
+import simpleDB.transport.Packager;
+import simpleDB.transport.Transporter;
+
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+public class RowSetTest {
+    static TestDB db;
+    static int port;
+    static Client c;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        db = TestDB.create();
+        db.exec("create table t a int32, b int64, s string (index a)");
+        db.exec("begin");
+        for(int i = 0; i < 300; i ++) {
+            db.exec(String.format("insert into t values %d %d s%d", i, (long)i * 10000000000L, i % 13));
+        }
+        db.exec("commit");
+        port = db.serve();
+        c = TestDB.connect(port, false);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        c.close();
+        db.close();
+    }
+
+    // 按记录输出的格式输出RowSet中的所有行
+    private static String text(RowSet rs) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while(rs.next()) {
+            Object[] row = new Object[rs.columnCount()];
+            for(int i = 0; i < row.length; i ++) {
+                row[i] = rs.getObject(i);
+            }
+            sb.append(TestDB.row(row)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameAsText() throws Exception {
+        String[] queries = {
+            "select * from t",
+            "select s, a from t where a < 37 order by s",
+            "select count(*), min(b), max(s) from t",
+            "select min(a), count(*) from t where a < 0",
+            "select a from t where a < 0",
+            "select s, count(*), sum(a) from t group by s",
+        };
+        for(String q : queries) {
+            String expected = new String(c.execute(q.getBytes()));
+            for(int fetchSize : new int[]{0, 1, 7, 1000}) {
+                assertEquals(q + " " + fetchSize, expected, text(c.queryRows(q.getBytes(), fetchSize)));
+            }
+        }
+    }
+
+    @Test
+    public void testTyped() throws Exception {
+        RowSet rs = c.queryRows("select a, b, s from t where a >= 298".getBytes(), 1);
+        assertNull(rs.message());
+        assertEquals(3, rs.columnCount());
+        assertEquals(Columns.INT32, rs.columnType(0));
+        assertEquals(Columns.INT64, rs.columnType(1));
+        assertEquals(Columns.STRING, rs.columnType(2));
+        assertEquals(2, rs.column("s"));
+        try {
+            rs.getInt(0);
+            fail();
+        } catch(IllegalStateException ignored) {}
+        assertTrue(rs.next());
+        assertEquals(298, rs.getInt(0));
+        assertEquals(298L, rs.getLong(0));
+        assertEquals(2980000000000L, rs.getLong(1));
+        assertEquals("s12", rs.getString(2));
+        assertFalse(rs.isNull(0));
+        try {
+            rs.getInt(1);
+            fail();
+        } catch(IllegalArgumentException e) {
+            assertEquals("Column b is not int32", e.getMessage());
+        }
+        try {
+            rs.getString(0);
+            fail();
+        } catch(IllegalArgumentException e) {
+            assertEquals("Column a is not string", e.getMessage());
+        }
+        try {
+            rs.column("x");
+            fail();
+        } catch(IllegalArgumentException ignored) {}
+        assertTrue(rs.next());
+        assertEquals(299, rs.getInt(0));
+        assertFalse(rs.next());
+        assertFalse(rs.next());
+
+        rs = c.queryRows("select min(b), max(s) from t where a < 0".getBytes(), 10);
+        assertTrue(rs.next());
+        assertTrue(rs.isNull(0));
+        assertNull(rs.getObject(0));
+        assertNull(rs.getString(1));
+        assertFalse(rs.next());
+    }
+
+    @Test
+    public void testMessageAndClose() throws Exception {
+        RowSet rs = c.queryRows("update t set s = x where a = 1000".getBytes(), 10);
+        assertEquals("update 0", new String(rs.message()));
+        assertEquals(0, rs.columnCount());
+        assertFalse(rs.next());
+
+        rs = c.queryRows("select a from t".getBytes(), 10);
+        assertTrue(rs.next());
+        rs.close();
+        assertFalse(rs.next());
+        assertEquals("begin", new String(c.execute("begin".getBytes())));
+        c.execute("commit".getBytes());
+        try {
+            c.queryRows("select * from nothing".getBytes(), 10);
+            fail();
+        } catch(RuntimeException e) {
+            assertEquals("Table not found!", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testHexConnection() throws Exception {
+        Client hex = new Client(new Packager(new Transporter(new Socket("localhost", port)), new Encoder()));
+        try {
+            hex.queryRows("select a from t".getBytes(), 10);
+            fail();
+        } catch(Exception e) {
+            assertSame(Error.BinaryProtocolRequiredException, e);
+        }
+        hex.close();
+    }
+}
@@ -0,0 +1,85 @@
+package simpleDB.transport;
+
+import org.junit.Test;
+import simpleDB.common.Error;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ColumnsTest {
+
+    private static byte[] sample(int rows) throws Exception {
+        Columns.Writer w = new Columns.Writer(new byte[]{Columns.INT32, Columns.INT64, Columns.STRING}, new String[]{"a", "b", "s"});
+        for(int i = 0; i < rows; i ++) {
+            if(i % 3 == 0) {
+                w.writeNull(0);
+            } else {
+                w.writeInt(0, -i);
+            }
+            if(i % 5 == 0) {
+                w.writeNull(1);
+            } else {
+                w.writeLong(1, (long)i << 40);
+            }
+            if(i % 7 == 0) {
+                w.writeNull(2);
+            } else {
+                w.writeString(2, i % 2 == 0 ? "" : "s" + i);
+            }
+        }
+        return w.encode();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for(int rows : new int[]{0, 1, 8, 9, 100}) {
+            Columns c = Columns.decode(sample(rows));
+            assertEquals(3, c.columnCount());
+            assertEquals(rows, c.rows());
+            assertEquals("a", c.name(0));
+            assertEquals("s", c.name(2));
+            assertEquals(Columns.INT32, c.type(0));
+            assertEquals(Columns.INT64, c.type(1));
+            assertEquals(Columns.STRING, c.type(2));
+            for(int i = 0; i < rows; i ++) {
+                assertEquals(i % 3 == 0, c.isNull(0, i));
+                assertEquals(i % 5 == 0, c.isNull(1, i));
+                assertEquals(i % 7 == 0, c.isNull(2, i));
+                if(i % 3 != 0) {
+                    assertEquals(-i, c.getInt(0, i));
+                }
+                if(i % 5 != 0) {
+                    assertEquals((long)i << 40, c.getLong(1, i));
+                }
+                if(i % 7 != 0) {
+                    assertEquals(i % 2 == 0 ? "" : "s" + i, c.getString(2, i));
+                }
+            }
+        }
+        Columns empty = Columns.decode(new Columns.Writer(new byte[0], new String[0]).encode());
+        assertEquals(0, empty.columnCount());
+        assertEquals(0, empty.rows());
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        byte[] raw = sample(20);
+        for(int n : new int[]{0, 1, 5, raw.length / 2, raw.length - 1}) {
+            try {
+                Columns.decode(Arrays.copyOf(raw, n));
+                fail("length " + n);
+            } catch(RuntimeException e) {
+                assertSame(Error.InvalidPkgDataException, e);
+            }
+        }
+        // 第一列的类型改为未知的值
+        raw[2] = 9;
+        try {
+            Columns.decode(raw);
+            fail();
+        } catch(RuntimeException e) {
+            assertSame(Error.InvalidPkgDataException, e);
+        }
+    }
+}
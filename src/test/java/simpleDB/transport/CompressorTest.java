@@ -0,0 +1,83 @@
+package simpleDB.transport;
+
+import org.junit.Test;
+import simpleDB.common.Error;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressorTest {
+
+    private static byte[] text(int n) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; sb.length() < n; i ++) {
+            sb.append('[').append(i).append(", row").append(i % 100).append("]\n");
+        }
+        return sb.substring(0, n).getBytes();
+    }
+
+    private static void assertInvalid(Compressor c, Frame frame) {
+        try {
+            c.decompress(frame);
+            fail();
+        } catch(IOException e) {
+            assertSame(Error.InvalidPkgDataException, e.getCause());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Compressor sender = new Compressor(Compressor.DEFAULT_THRESHOLD);
+        Compressor receiver = new Compressor(Compressor.DEFAULT_THRESHOLD);
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        for(byte[] payload : new byte[][]{new byte[0], text(100), text(Compressor.DEFAULT_THRESHOLD), text(1 << 20), random}) {
+            Frame frame = sender.compress(new Frame(Frame.ROWS, payload));
+            // 较大且可压缩的帧被压缩，其余原样发送
+            boolean compressible = payload.length >= Compressor.DEFAULT_THRESHOLD && payload != random;
+            assertEquals(compressible, (frame.type & Compressor.COMPRESSED) != 0);
+            if(compressible) {
+                assertTrue(frame.payload.length < (payload.length > 10000 ? payload.length / 3 : payload.length));
+            } else {
+                assertSame(payload, frame.payload);
+            }
+            Frame got = receiver.decompress(frame);
+            assertEquals(Frame.ROWS, got.type);
+            assertArrayEquals(payload, got.payload);
+        }
+        assertTrue(sender.toString(), sender.toString().startsWith("sent " + (100 + Compressor.DEFAULT_THRESHOLD + (1 << 20) + 4096) + " -> "));
+        assertTrue(receiver.toString(), receiver.toString().contains("received " + (100 + Compressor.DEFAULT_THRESHOLD + (1 << 20) + 4096) + " -> "));
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        Compressor sender = new Compressor(0);
+        Compressor receiver = new Compressor(0);
+        Frame frame = sender.compress(new Frame(Frame.DATA, text(10000)));
+        byte type = frame.type;
+
+        assertInvalid(receiver, new Frame(type, new byte[]{0, 0}));
+        byte[] negative = frame.payload.clone();
+        ByteBuffer.wrap(negative).putInt(-1);
+        assertInvalid(receiver, new Frame(type, negative));
+        // 原始长度大于实际解压的长度
+        byte[] longer = frame.payload.clone();
+        ByteBuffer.wrap(longer).putInt(20000);
+        assertInvalid(receiver, new Frame(type, longer));
+        assertInvalid(receiver, new Frame(type, Arrays.copyOf(frame.payload, frame.payload.length / 2)));
+        byte[] garbage = frame.payload.clone();
+        Arrays.fill(garbage, 4, garbage.length, (byte)0xff);
+        assertInvalid(receiver, new Frame(type, garbage));
+
+        // 出错后仍可以解压之后的帧
+        assertArrayEquals(text(10000), receiver.decompress(frame).payload);
+        sender.close();
+        receiver.close();
+    }
+}
@@ -0,0 +1,360 @@
+package simpleDB.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpleDB.common.Error;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class TransporterTest {
+    private ServerSocket listener;
+    private Socket clientSocket, serverSocket;
+    private Transporter client, server;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = new ServerSocket(0);
+        clientSocket = new Socket("localhost", listener.getLocalPort());
+        serverSocket = listener.accept();
+        client = new Transporter(clientSocket);
+        server = new Transporter(serverSocket, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clientSocket.close();
+        serverSocket.close();
+        listener.close();
+    }
+
+    private static byte[] random(int n) {
+        byte[] raw = new byte[n];
+        new Random(n).nextBytes(raw);
+        return raw;
+    }
+
+    // 服务端在另一个线程中收到第一个帧时完成协商
+    private int negotiate(boolean compress) throws Exception {
+        CompletableFuture<Frame> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return server.receive();
+            } catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        int version = client.negotiate(compress);
+        client.send(new Frame(Frame.DATA, "select 1".getBytes()));
+        assertArrayEquals("select 1".getBytes(), first.get().payload);
+        return version;
+    }
+
+    private void roundTrip(Frame frame) throws Exception {
+        client.send(frame);
+        Frame got = server.receive();
+        assertEquals(frame.type, got.type);
+        assertArrayEquals(frame.payload, got.payload);
+        server.send(frame);
+        got = client.receive();
+        assertEquals(frame.type, got.type);
+        assertArrayEquals(frame.payload, got.payload);
+    }
+
+    @Test
+    public void testHexEncoding() throws Exception {
+        byte[] payload = {0, 1, (byte)0x7f, (byte)0x80, (byte)0xff, '\n'};
+        byte[] raw = Transporter.hexEncode(Frame.ERROR, payload);
+        assertEquals("01" + "00017f80ff0a" + "\n", new String(raw));
+        Frame frame = Transporter.hexDecode(Arrays.copyOf(raw, raw.length - 1));
+        assertEquals(Frame.ERROR, frame.type);
+        assertArrayEquals(payload, frame.payload);
+        for(String bad : new String[]{"", "0", "001", "0g", "00zz"}) {
+            try {
+                Transporter.hexDecode(bad.getBytes());
+                fail(bad);
+            } catch(IOException ignored) {}
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        assertEquals(Transporter.BINARY, negotiate(false));
+        assertEquals(Transporter.BINARY, client.version());
+        roundTrip(new Frame(Frame.DATA, new byte[0]));
+        roundTrip(new Frame(Frame.DATA, "\n\0 not a line".getBytes()));
+        roundTrip(new Frame(Frame.ERROR, "Table not found!".getBytes()));
+        roundTrip(new Frame(Frame.BATCH, random(1 << 20)));
+        assertNull(client.compressor());
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws Exception {
+        assertEquals(Transporter.BINARY, negotiate(true));
+        assertNotNull(client.compressor());
+        byte[] text = new byte[100000];
+        Arrays.fill(text, (byte)'a');
+        roundTrip(new Frame(Frame.DATA, text));
+        roundTrip(new Frame(Frame.DATA, random(5000)));
+        roundTrip(new Frame(Frame.DATA, "short".getBytes()));
+    }
+
+    // 只支持HEX的服务端把HELLO当作语句执行并返回错误，客户端继续使用HEX
+    @Test
+    public void testHexFallback() throws Exception {
+        Transporter old = new Transporter(serverSocket);
+        CompletableFuture<Void> reply = CompletableFuture.runAsync(() -> {
+            try {
+                old.receive();
+                old.send(new Frame(Frame.ERROR, "Invalid command!".getBytes()));
+            } catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(Transporter.HEX, client.negotiate(true));
+        reply.get();
+        assertNull(client.compressor());
+        client.send(new Frame(Frame.DATA, "\n\0".getBytes()));
+        Frame got = old.receive();
+        assertArrayEquals("\n\0".getBytes(), got.payload);
+    }
+
+    @Test
+    public void testInvalidLength() throws Exception {
+        negotiate(false);
+        DataOutputStream raw = new DataOutputStream(serverSocket.getOutputStream());
+        raw.writeInt(0);
+        raw.flush();
+        try {
+            client.receive();
+            fail();
+        } catch(IOException e) {
+            assertEquals(Error.InvalidPkgDataException, e.getCause());
+        }
+    }
+
+    @Test
+    public void testTruncatedFrame() throws Exception {
+        negotiate(false);
+        DataOutputStream raw = new DataOutputStream(serverSocket.getOutputStream());
+        raw.writeInt(10);
+        raw.write(new byte[]{Frame.DATA, 1, 2});
+        raw.flush();
+        serverSocket.shutdownOutput();
+        try {
+            client.receive();
+            fail();
+        } catch(EOFException ignored) {}
+    }
+
+    @Test
+    public void testPackUnpack() {
+        List<byte[]> list = Arrays.asList(new byte[0], "a".getBytes(), random(1000));
+        List<byte[]> got = Frame.unpack(Frame.pack(list));
+        assertEquals(list.size(), got.size());
+        for(int i = 0; i < list.size(); i ++) {
+            assertArrayEquals(list.get(i), got.get(i));
+        }
+        assertTrue(Frame.unpack(Frame.pack(new ArrayList<>())).isEmpty());
+
+        Frame stream = Frame.stream("select * from t".getBytes(), 100);
+        assertEquals(Frame.STREAM, stream.type);
+        assertEquals(100, stream.fetchSize());
+        assertArrayEquals("select * from t".getBytes(), stream.statement());
+        Frame columns = Frame.columns("select 1".getBytes(), 7);
+        assertEquals(Frame.COLUMNS, columns.type);
+        assertEquals(7, columns.fetchSize());
+    }
+
+    @Test
+    public void testEncoder() throws Exception {
+        Encoder encoder = new Encoder();
+        Frame data = encoder.encode(new Package("ok".getBytes(), null));
+        assertEquals(Frame.DATA, data.type);
+        assertArrayEquals("ok".getBytes(), encoder.decode(data).getData());
+        Frame err = encoder.encode(new Package(null, new RuntimeException("Field not found!")));
+        assertEquals(Frame.ERROR, err.type);
+        assertEquals("Field not found!", encoder.decode(err).getErr().getMessage());
+        assertEquals("Intern server error!", new String(encoder.encode(new Package(null, new RuntimeException())).payload));
+        try {
+            encoder.decode(new Frame(Frame.ROWS, new byte[0]));
+            fail();
+        } catch(RuntimeException e) {
+            assertSame(Error.InvalidPkgDataException, e);
+        }
+    }
+
+    // 帧被拆成多次到达时，NioTransporter等到完整后才返回
+    @Test
+    public void testNioPartialReads() throws Exception {
+        try(ServerSocketChannel ssc = ServerSocketChannel.open()) {
+            ssc.bind(new InetSocketAddress("localhost", 0));
+            Socket socket = new Socket("localhost", ssc.socket().getLocalPort());
+            SocketChannel channel = ssc.accept();
+            channel.configureBlocking(false);
+            NioTransporter nio = new NioTransporter(channel);
+            Transporter t = new Transporter(socket);
+
+            CompletableFuture<Integer> version = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return t.negotiate();
+                } catch(Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            long deadline = System.currentTimeMillis() + 5000;
+            while(!version.isDone() && System.currentTimeMillis() < deadline) {
+                assertTrue(nio.read().isEmpty());
+                nio.flush();
+                Thread.sleep(1);
+            }
+            assertEquals(Transporter.BINARY, (int)version.get());
+
+            byte[] payload = random(50000);
+            OutputStream out = socket.getOutputStream();
+            byte[] head = {0, 0, (byte)0xc3, 0x51, Frame.DATA};
+            out.write(head, 0, 3);
+            out.flush();
+            Thread.sleep(20);
+            assertTrue(nio.read().isEmpty());
+            out.write(head, 3, 2);
+            out.write(payload, 0, 20000);
+            out.flush();
+            Thread.sleep(20);
+            assertTrue(nio.read().isEmpty());
+            out.write(payload, 20000, payload.length - 20000);
+            // 紧跟一个完整的帧
+            out.write(new byte[]{0, 0, 0, 3, Frame.MORE, 'o', 'k'});
+            out.flush();
+            List<Frame> frames = new ArrayList<>();
+            deadline = System.currentTimeMillis() + 5000;
+            while(frames.size() < 2 && System.currentTimeMillis() < deadline) {
+                frames.addAll(nio.read());
+            }
+            assertEquals(2, frames.size());
+            assertArrayEquals(payload, frames.get(0).payload);
+            assertEquals(Frame.MORE, frames.get(1).type);
+            assertArrayEquals("ok".getBytes(), frames.get(1).payload);
+
+            nio.send(new Frame(Frame.DATA, payload));
+            while(!nio.flush()) {
+                Thread.sleep(1);
+            }
+            assertArrayEquals(payload, t.receive().payload);
+
+            out.write(new byte[]{(byte)0x80, 0, 0, 0});
+            out.flush();
+            deadline = System.currentTimeMillis() + 5000;
+            try {
+                while(System.currentTimeMillis() < deadline) {
+                    nio.read();
+                }
+                fail();
+            } catch(IOException ignored) {}
+            socket.close();
+            nio.close();
+        }
+    }
+
+    // 帧头声明的长度或十六进制行超过MAX_FRAME时立即报错，不等待数据到达
+    @Test
+    public void testNioFrameLimit() throws Exception {
+        try(ServerSocketChannel ssc = ServerSocketChannel.open()) {
+            ssc.bind(new InetSocketAddress("localhost", 0));
+            Socket socket = new Socket("localhost", ssc.socket().getLocalPort());
+            SocketChannel channel = ssc.accept();
+            channel.configureBlocking(false);
+            NioTransporter nio = new NioTransporter(channel);
+            OutputStream out = socket.getOutputStream();
+            byte[] line = new byte[2 * (NioTransporter.MAX_FRAME + 1) + 2];
+            Arrays.fill(line, (byte)'0');
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+                try {
+                    out.write(line);
+                    out.flush();
+                } catch(IOException ignored) {}
+            });
+            assertInvalid(nio);
+            socket.close();
+            nio.close();
+            write.get();
+        }
+
+        try(ServerSocketChannel ssc = ServerSocketChannel.open()) {
+            ssc.bind(new InetSocketAddress("localhost", 0));
+            Socket socket = new Socket("localhost", ssc.socket().getLocalPort());
+            SocketChannel channel = ssc.accept();
+            channel.configureBlocking(false);
+            NioTransporter nio = new NioTransporter(channel);
+            negotiate(nio, socket);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            // 合法的长度只在数据到达后才读出
+            out.writeInt(NioTransporter.MAX_FRAME);
+            out.writeByte(Frame.DATA);
+            out.write(new byte[1000]);
+            out.flush();
+            Thread.sleep(20);
+            assertTrue(nio.read().isEmpty());
+            socket.close();
+            nio.close();
+        }
+
+        try(ServerSocketChannel ssc = ServerSocketChannel.open()) {
+            ssc.bind(new InetSocketAddress("localhost", 0));
+            Socket socket = new Socket("localhost", ssc.socket().getLocalPort());
+            SocketChannel channel = ssc.accept();
+            channel.configureBlocking(false);
+            NioTransporter nio = new NioTransporter(channel);
+            negotiate(nio, socket);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(NioTransporter.MAX_FRAME + 1);
+            out.flush();
+            assertInvalid(nio);
+            socket.close();
+            nio.close();
+        }
+    }
+
+    private static void negotiate(NioTransporter nio, Socket socket) throws Exception {
+        Transporter t = new Transporter(socket);
+        CompletableFuture<Integer> version = CompletableFuture.supplyAsync(() -> {
+            try {
+                return t.negotiate();
+            } catch(Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while(!version.isDone()) {
+            nio.read();
+            nio.flush();
+            Thread.sleep(1);
+        }
+        assertEquals(Transporter.BINARY, (int)version.get());
+    }
+
+    private static void assertInvalid(NioTransporter nio) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        try {
+            while(System.currentTimeMillis() < deadline) {
+                nio.read();
+            }
+            fail();
+        } catch(IOException e) {
+            assertSame(Error.InvalidPkgDataException, e.getCause());
+        }
+    }
+}